@@ -0,0 +1,63 @@
+package com.ubiqconn.mycamera;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.RectF;
+import android.view.View;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.google.mediapipe.tasks.components.containers.Category;
+import com.google.mediapipe.tasks.components.containers.Detection;
+import com.ubiqconn.mycamera.pipeline.BoxTransform;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class OverlayViewTest {
+
+    private static final int SIZE = 400;
+
+    private static List<Detection> box(float left, float top, float right, float bottom) {
+        return Collections.singletonList(Detection.create(
+                Collections.singletonList(Category.create(0.9f, 0, "cup", "cup")),
+                new RectF(left, top, right, bottom)));
+    }
+
+    private static Bitmap render(OverlayView view) {
+        Bitmap bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        view.draw(new Canvas(bitmap));
+        return bitmap;
+    }
+
+    @Test
+    public void movingBoxesAreDrawnThroughTheNewTransform() throws Throwable {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            OverlayView view = new OverlayView(context, null);
+            view.measure(View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY),
+                    View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY));
+            view.layout(0, 0, SIZE, SIZE);
+
+            // The first result both moves the boxes and brings a non-identity transform.
+            BoxTransform doubled = new BoxTransform(2f, 2f, 0f, 0f);
+            view.setResults(box(10, 50, 60, 100), doubled);
+            view.setResults(box(20, 50, 70, 100), doubled);
+
+            Bitmap bitmap = render(view);
+            // Left edge at 20 image px is drawn at 40 view px, not at 20.
+            assertEquals(Color.RED, bitmap.getPixel(40, 150));
+            assertNotEquals(Color.RED, bitmap.getPixel(20, 150));
+            bitmap.recycle();
+        });
+    }
+}
@@ -0,0 +1,32 @@
+package com.ubiqconn.mycamera;
+
+import android.view.TextureView;
+import android.view.View;
+import android.widget.TextView;
+
+import com.ubiqconn.mycamera.pipeline.PipelineMetrics;
+
+/**
+ * One streaming camera's place on screen: its grid tile, the preview and overlay
+ * in it, and the metrics they report to. Looked up by camera ID on every frame and
+ * result, so MainActivity keeps them in a map rather than in numbered fields.
+ */
+final class CameraSlot {
+
+    final String cameraId;
+    final View tile;
+    final TextureView textureView;
+    final OverlayView overlayView;
+    final TextView statsView;
+    final PipelineMetrics.CameraMetrics metrics;
+
+    CameraSlot(String cameraId, View tile, PipelineMetrics.CameraMetrics metrics) {
+        this.cameraId = cameraId;
+        this.tile = tile;
+        this.textureView = tile.findViewById(R.id.texture_view);
+        this.overlayView = tile.findViewById(R.id.overlay_view);
+        this.statsView = tile.findViewById(R.id.stats_view);
+        this.metrics = metrics;
+        overlayView.setMetrics(metrics);
+    }
+}
@@ -0,0 +1,201 @@
+package com.ubiqconn.mycamera;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+import android.util.Log;
+
+import com.google.mediapipe.framework.image.BitmapImageBuilder;
+import com.google.mediapipe.tasks.components.containers.Category;
+import com.google.mediapipe.tasks.components.containers.Detection;
+import com.google.mediapipe.tasks.vision.core.RunningMode;
+import com.ubiqconn.mycamera.pipeline.CascadeSelector;
+import com.ubiqconn.mycamera.pipeline.DetectorConfig;
+import com.ubiqconn.mycamera.pipeline.FrameGeometry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Second cascade stage behind the per-frame detector. The fast model runs with a
+ * lowered score threshold; its confident detections pass straight through, and
+ * crops around the uncertain ones, as many as the {@link CascadeSelector} budget
+ * allows, are re-scored by a larger model. A candidate the larger model confirms is
+ * replaced by its box and categories; any other uncertain detection is dropped, so
+ * without budget the output is what the fast model alone reports at the high threshold.
+ *
+ * Crops come from the {@link FrameHolder}; results that arrive after their frame was
+ * released are only filtered.
+ */
+final class CascadeRefiner {
+
+    private static final String TAG = "Cascade";
+    // Context around a candidate, as a fraction of its size on each side.
+    private static final float PADDING = 0.25f;
+    private static final int MIN_CROP_SIZE = 96;
+    private static final int MAX_CROPS_PER_FRAME = 3;
+    private static final int BURST = 6;
+    // A refined box must overlap its candidate this much to confirm it.
+    private static final float MATCH_IOU = 0.3f;
+    private static final int MAX_DETECTIONS = 100;
+    private static final long STATS_INTERVAL_FRAMES = 300;
+
+    // Per camera; used on the thread holding that camera's frame only.
+    private static final class CameraState {
+        final CascadeSelector selector;
+        final float[] boxes = new float[MAX_DETECTIONS * FrameGeometry.BOX_STRIDE];
+        final float[] scores = new float[MAX_DETECTIONS];
+        final int[] candidates = new int[MAX_CROPS_PER_FRAME];
+        final int[] crops = new int[MAX_CROPS_PER_FRAME * FrameGeometry.BOX_STRIDE];
+        final float[] refinedBoxes = new float[MAX_DETECTIONS * FrameGeometry.BOX_STRIDE];
+
+        CameraState(CascadeSelector selector) {
+            this.selector = selector;
+        }
+    }
+
+    private final FrameHolder frames;
+    private final DetectorPool refinePool;
+    private final float lowScore;
+    private final float highScore;
+    private final double cropsPerSecond;
+    private final long detectorTimeoutMs;
+    private final ConcurrentHashMap<String, CameraState> cameras = new ConcurrentHashMap<>();
+
+    /**
+     * @param lowScore       the fast model's threshold; detections from here to {@code highScore} are uncertain
+     * @param highScore      the score a detection needs, from either model, to be shown
+     * @param cropsPerSecond re-scoring budget per camera
+     */
+    CascadeRefiner(Context context, FrameHolder frames, String modelAsset, DetectorConfig.Backend backend,
+            float lowScore, float highScore, double cropsPerSecond, long detectorTimeoutMs) {
+        this.frames = frames;
+        this.lowScore = lowScore;
+        this.highScore = highScore;
+        this.cropsPerSecond = cropsPerSecond;
+        this.detectorTimeoutMs = detectorTimeoutMs;
+        // Crops are detected synchronously, so the listener never hears of them.
+        refinePool = new DetectorPool(context, RunningMode.IMAGE, modelAsset, highScore,
+                new DetectorConfig(backend, 1), new DetectorPool.ResultListener() {
+                    @Override
+                    public void onResults(String cameraId, List<Detection> detections, long timestampMs) {
+                    }
+
+                    @Override
+                    public void onDropped(String cameraId) {
+                    }
+                });
+        refinePool.start();
+        Log.i(TAG, modelAsset + ", uncertain " + lowScore + ".." + highScore + ", " + cropsPerSecond
+                + " crops/s per camera");
+    }
+
+    /**
+     * The fast model's {@code detections} with uncertain ones re-scored or dropped.
+     * Blocks on the larger model for the selected crops, at most the budget allows.
+     */
+    List<Detection> refine(String cameraId, List<Detection> detections, long nowMs) {
+        if (detections == null) {
+            return null;
+        }
+        FrameHolder.Held frame = frames.get(cameraId);
+        if (frame == null || frame.bitmap == null) {
+            return confidentOnly(detections);
+        }
+        CameraState state = cameras.computeIfAbsent(cameraId, id -> new CameraState(new CascadeSelector(lowScore,
+                highScore, PADDING, MIN_CROP_SIZE, MAX_CROPS_PER_FRAME, cropsPerSecond, BURST)));
+        CascadeSelector selector = state.selector;
+        int count = Math.min(detections.size(), MAX_DETECTIONS);
+        for (int i = 0; i < count; i++) {
+            Detection detection = detections.get(i);
+            RectF box = detection.boundingBox();
+            int b = i * FrameGeometry.BOX_STRIDE;
+            state.boxes[b] = box.left;
+            state.boxes[b + 1] = box.top;
+            state.boxes[b + 2] = box.right;
+            state.boxes[b + 3] = box.bottom;
+            List<Category> categories = detection.categories();
+            state.scores[i] = categories.isEmpty() ? 0f : categories.get(0).score();
+        }
+        Bitmap bitmap = frame.bitmap;
+        int picked = selector.select(nowMs, state.boxes, state.scores, count, bitmap.getWidth(),
+                bitmap.getHeight(), state.candidates, state.crops);
+
+        List<Detection> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (selector.isConfident(state.scores[i])) {
+                out.add(detections.get(i));
+            }
+        }
+        for (int c = 0; c < picked; c++) {
+            Detection refined = refineCandidate(state, bitmap, c);
+            if (refined != null) {
+                out.add(refined);
+            }
+        }
+        if (selector.getFrameCount() % STATS_INTERVAL_FRAMES == 0) {
+            Log.i(TAG, "CameraId " + cameraId + " " + selector + ", " + refinePool);
+        }
+        return out;
+    }
+
+    // Runs the larger model on candidate c's crop; its matching detection in frame pixels, or null.
+    private Detection refineCandidate(CameraState state, Bitmap bitmap, int c) {
+        int k = c * FrameGeometry.BOX_STRIDE;
+        int left = state.crops[k];
+        int top = state.crops[k + 1];
+        long startNanos = System.nanoTime();
+        Bitmap crop = Bitmap.createBitmap(bitmap, left, top, state.crops[k + 2] - left, state.crops[k + 3] - top);
+        List<Detection> results;
+        try {
+            results = refinePool.detectNow(new BitmapImageBuilder(crop).build(), detectorTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            results = null;
+        } finally {
+            crop.recycle();
+        }
+        if (results == null) {
+            // Larger model still loading or busy with another camera: the candidate stays uncertain.
+            return null;
+        }
+        int count = Math.min(results.size(), MAX_DETECTIONS);
+        for (int i = 0; i < count; i++) {
+            RectF box = results.get(i).boundingBox();
+            int b = i * FrameGeometry.BOX_STRIDE;
+            state.refinedBoxes[b] = box.left + left;
+            state.refinedBoxes[b + 1] = box.top + top;
+            state.refinedBoxes[b + 2] = box.right + left;
+            state.refinedBoxes[b + 3] = box.bottom + top;
+        }
+        int match = CascadeSelector.match(state.boxes, state.candidates[c] * FrameGeometry.BOX_STRIDE,
+                state.refinedBoxes, count, MATCH_IOU);
+        state.selector.onRefined(match >= 0, System.nanoTime() - startNanos);
+        if (match < 0) {
+            return null;
+        }
+        int b = match * FrameGeometry.BOX_STRIDE;
+        return Detection.create(results.get(match).categories(), new RectF(state.refinedBoxes[b],
+                state.refinedBoxes[b + 1], state.refinedBoxes[b + 2], state.refinedBoxes[b + 3]));
+    }
+
+    private List<Detection> confidentOnly(List<Detection> detections) {
+        List<Detection> out = new ArrayList<>(detections.size());
+        for (int i = 0, n = detections.size(); i < n; i++) {
+            List<Category> categories = detections.get(i).categories();
+            if (!categories.isEmpty() && categories.get(0).score() >= highScore) {
+                out.add(detections.get(i));
+            }
+        }
+        return out;
+    }
+
+    void close() {
+        refinePool.close();
+        for (Map.Entry<String, CameraState> entry : cameras.entrySet()) {
+            Log.i(TAG, "CameraId " + entry.getKey() + " " + entry.getValue().selector);
+        }
+    }
+}
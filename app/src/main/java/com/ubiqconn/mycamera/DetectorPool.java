@@ -0,0 +1,463 @@
+package com.ubiqconn.mycamera;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.mediapipe.framework.image.BitmapImageBuilder;
+import com.google.mediapipe.framework.image.MPImage;
+import com.google.mediapipe.tasks.components.containers.Detection;
+import com.google.mediapipe.tasks.core.BaseOptions;
+import com.google.mediapipe.tasks.core.Delegate;
+import com.google.mediapipe.tasks.vision.core.ImageProcessingOptions;
+import com.google.mediapipe.tasks.vision.core.RunningMode;
+import com.google.mediapipe.tasks.vision.objectdetector.ObjectDetectionResult;
+import com.google.mediapipe.tasks.vision.objectdetector.ObjectDetector;
+import com.google.mediapipe.tasks.vision.objectdetector.ObjectDetector.ObjectDetectorOptions;
+import com.ubiqconn.mycamera.pipeline.DetectorConfig;
+import com.ubiqconn.mycamera.pipeline.DetectorTuner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Shared pool of ObjectDetectors, loaded eagerly on a background thread and kept
+ * for the lifetime of the activity. Frames from any camera borrow an idle detector;
+ * a frame that finds none idle is dropped rather than queued.
+ *
+ * The delegate and number of detectors come from a {@link DetectorConfig}, which
+ * can be tuned on the device before loading (see {@link #start(DetectorTuner, int)}).
+ */
+public class DetectorPool {
+
+    private static final String TAG = "DetectorPool";
+    static final String MODEL_ASSET = "efficientdet_lite0.tflite";
+    static final float SCORE_THRESHOLD = 0.5f;
+    private static final int MAX_POOL_SIZE = 4;
+    // Warm-up and auto-tuning run this frame (bundled in assets if present) through the model.
+    private static final String CALIBRATION_ASSET = "calibration.jpg";
+    private static final int CALIBRATION_SIZE = 320;
+    private static final int TUNE_WARMUP_RUNS = 3;
+    private static final int TUNE_RUNS_PER_WORKER = 20;
+
+    public interface ResultListener {
+        void onResults(String cameraId, List<Detection> detections, long timestampMs);
+
+        /** A submitted frame will never produce results (no idle detector, or dropped by the graph). */
+        void onDropped(String cameraId);
+
+        /** The configuration the pool is loading with, once known (after tuning, if any). */
+        default void onConfigured(DetectorConfig config) {
+        }
+
+        /** The first detector is loaded and warmed up: frames from now on get results. */
+        default void onFirstDetectorReady() {
+        }
+    }
+
+    private static class PooledDetector {
+        ObjectDetector detector;
+        long lastTimestampMs;
+        // LIVE_STREAM results only carry a timestamp; map it back to the submitting camera.
+        final ConcurrentSkipListMap<Long, String> pendingCameras = new ConcurrentSkipListMap<>();
+    }
+
+    private final Context context;
+    private final RunningMode runningMode;
+    private final String modelAsset;
+    private final float scoreThreshold;
+    private volatile DetectorConfig config;
+    private final ResultListener listener;
+    private final ArrayBlockingQueue<PooledDetector> idle;
+    private final List<PooledDetector> all = new ArrayList<>();
+    // Loader thread only.
+    private MPImage warmUpImage;
+    private volatile boolean closed;
+
+    private final long createdAtMs = SystemClock.uptimeMillis();
+    private volatile long loadTimeMs = -1;
+    private volatile long warmUpTimeMs = -1;
+    private volatile long firstDetectionMs = -1;
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public DetectorPool(Context context, RunningMode runningMode, DetectorConfig config, ResultListener listener) {
+        this(context, runningMode, MODEL_ASSET, SCORE_THRESHOLD, config, listener);
+    }
+
+    /** A pool of {@code modelAsset} detectors reporting detections scored at least {@code scoreThreshold}. */
+    public DetectorPool(Context context, RunningMode runningMode, String modelAsset, float scoreThreshold,
+            DetectorConfig config, ResultListener listener) {
+        this.context = context.getApplicationContext();
+        this.runningMode = runningMode;
+        this.modelAsset = modelAsset;
+        this.scoreThreshold = scoreThreshold;
+        this.config = clamp(config);
+        this.listener = listener;
+        this.idle = new ArrayBlockingQueue<>(MAX_POOL_SIZE);
+    }
+
+    public static int defaultSize() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(MAX_POOL_SIZE, cores / DetectorConfig.CORES_PER_CPU_INSTANCE));
+    }
+
+    private static DetectorConfig clamp(DetectorConfig config) {
+        if (config.getInstances() <= MAX_POOL_SIZE) {
+            return config;
+        }
+        return new DetectorConfig(config.getBackend(), MAX_POOL_SIZE);
+    }
+
+    /** Loads all detectors on a background thread; frames are dropped until the first is ready. */
+    public void start() {
+        start(null, 0);
+    }
+
+    /**
+     * Like {@link #start()}, but first replaces the configuration with the one
+     * {@code tuner} has cached, or measures the candidates for {@code cameraCount}
+     * cameras and caches the fastest. Tuning takes a few seconds on first launch.
+     */
+    public void start(DetectorTuner tuner, int cameraCount) {
+        Thread loader = new Thread(() -> {
+            if (tuner != null) {
+                tune(tuner, cameraCount);
+            }
+            listener.onConfigured(config);
+            load();
+        }, "DetectorPoolLoader");
+        loader.start();
+    }
+
+    private void tune(DetectorTuner tuner, int cameraCount) {
+        DetectorConfig tuned = tuner.cached();
+        if (tuned != null) {
+            Log.i(TAG, "Using tuned configuration " + tuned);
+        } else {
+            long startMs = SystemClock.uptimeMillis();
+            if (warmUpImage == null) {
+                warmUpImage = loadCalibrationImage();
+            }
+            MPImage calibration = warmUpImage;
+            List<DetectorConfig> candidates = DetectorConfig.candidates(Runtime.getRuntime().availableProcessors(),
+                    cameraCount, true);
+            try {
+                tuned = tuner.tune(candidates, candidate -> measure(candidate, cameraCount, calibration));
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to cache tuning result", e);
+            }
+            Log.i(TAG, "Tuned in " + (SystemClock.uptimeMillis() - startMs) + " ms: " + tuner.describe() + " -> "
+                    + tuned);
+        }
+        if (tuned != null && !closed) {
+            config = clamp(tuned);
+        }
+    }
+
+    /**
+     * Inferences per second on {@code calibration} with {@code candidate}: one thread
+     * per worker the scheduler would run, each on its own detector.
+     */
+    private double measure(DetectorConfig candidate, int cameraCount, MPImage calibration) throws Exception {
+        List<ObjectDetector> detectors = new ArrayList<>();
+        try {
+            for (int i = 0; i < candidate.getInstances(); i++) {
+                ObjectDetector detector = ObjectDetector.createFromOptions(context, options(candidate,
+                        RunningMode.IMAGE, null).build());
+                // Listed before the warm-up so the finally block closes it if that fails.
+                detectors.add(detector);
+                for (int run = 0; run < TUNE_WARMUP_RUNS; run++) {
+                    detector.detect(calibration);
+                }
+            }
+            int workers = candidate.getWorkers(cameraCount);
+            CountDownLatch done = new CountDownLatch(workers);
+            AtomicReference<RuntimeException> failure = new AtomicReference<>();
+            long startNanos = System.nanoTime();
+            for (int w = 0; w < workers; w++) {
+                ObjectDetector detector = detectors.get(w);
+                new Thread(() -> {
+                    try {
+                        for (int run = 0; run < TUNE_RUNS_PER_WORKER; run++) {
+                            detector.detect(calibration);
+                        }
+                    } catch (RuntimeException e) {
+                        failure.set(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }, "DetectorTuner-" + w).start();
+            }
+            done.await();
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            return workers * TUNE_RUNS_PER_WORKER * 1e9 / (System.nanoTime() - startNanos);
+        } finally {
+            for (ObjectDetector detector : detectors) {
+                detector.close();
+            }
+        }
+    }
+
+    /**
+     * Runs one inference before the detector takes camera frames: the first call
+     * initialises the delegate and packs the weights, which would otherwise stall
+     * the first frame.
+     */
+    private void warmUp(PooledDetector pooled) {
+        long startMs = SystemClock.uptimeMillis();
+        if (warmUpImage == null) {
+            warmUpImage = loadCalibrationImage();
+        }
+        if (runningMode == RunningMode.LIVE_STREAM) {
+            // No camera is pending under this timestamp, so the result is ignored.
+            long timestampMs = Math.max(startMs, pooled.lastTimestampMs + 1);
+            pooled.lastTimestampMs = timestampMs;
+            pooled.detector.detectAsync(warmUpImage, timestampMs);
+        } else {
+            pooled.detector.detect(warmUpImage);
+        }
+        if (warmUpTimeMs < 0) {
+            warmUpTimeMs = SystemClock.uptimeMillis() - startMs;
+        }
+    }
+
+    private MPImage loadCalibrationImage() {
+        Bitmap bitmap = null;
+        try (InputStream in = context.getAssets().open(CALIBRATION_ASSET)) {
+            bitmap = BitmapFactory.decodeStream(in);
+        } catch (IOException e) {
+            // No bundled frame: a synthetic one costs the model the same.
+        }
+        if (bitmap == null) {
+            bitmap = Bitmap.createBitmap(CALIBRATION_SIZE, CALIBRATION_SIZE, Bitmap.Config.ARGB_8888);
+            bitmap.eraseColor(Color.GRAY);
+        }
+        return new BitmapImageBuilder(bitmap).build();
+    }
+
+    private void load() {
+        long nativeBefore = Debug.getNativeHeapAllocatedSize();
+        int size = config.getInstances();
+        for (int i = 0; i < size && !closed; i++) {
+            PooledDetector pooled = new PooledDetector();
+            try {
+                pooled.detector = createDetector(pooled);
+                warmUp(pooled);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to load model", e);
+                if (pooled.detector != null) {
+                    pooled.detector.close();
+                }
+                break;
+            }
+            synchronized (all) {
+                if (closed) {
+                    pooled.detector.close();
+                    return;
+                }
+                all.add(pooled);
+            }
+            giveBack(pooled);
+            if (i == 0) {
+                listener.onFirstDetectorReady();
+            }
+        }
+        loadTimeMs = SystemClock.uptimeMillis() - createdAtMs;
+        long nativeAfter = Debug.getNativeHeapAllocatedSize();
+        Log.i(TAG, "Loaded " + all.size() + "/" + size + " " + modelAsset + " detectors (" + runningMode + ", "
+                + config + ") in " + loadTimeMs
+                + " ms, native heap +" + (nativeAfter - nativeBefore) / (1024 * 1024) + " MB");
+    }
+
+    private ObjectDetector createDetector(PooledDetector pooled) {
+        return ObjectDetector.createFromOptions(context, options(config, runningMode, pooled).build());
+    }
+
+    private ObjectDetectorOptions.Builder options(DetectorConfig config, RunningMode runningMode,
+            PooledDetector pooled) {
+        // MediaPipe Tasks has no interpreter thread setting; CPU parallelism comes from the instance count.
+        BaseOptions.Builder baseOptionsBuilder = BaseOptions.builder()
+                .setModelAssetPath(modelAsset)
+                .setDelegate(config.getBackend() == DetectorConfig.Backend.GPU ? Delegate.GPU : Delegate.CPU);
+
+        ObjectDetectorOptions.Builder optionsBuilder = ObjectDetectorOptions.builder()
+                .setBaseOptions(baseOptionsBuilder.build())
+                .setRunningMode(runningMode)
+                .setScoreThreshold(scoreThreshold);
+
+        if (runningMode == RunningMode.LIVE_STREAM) {
+            // MediaPipe drops frames internally while busy; results arrive here.
+            optionsBuilder
+                    .setResultListener((result, input) -> {
+                        long timestampMs = result.timestampMs();
+                        String cameraId = pooled.pendingCameras.remove(timestampMs);
+                        // Anything older was dropped inside the graph and will never complete.
+                        Map.Entry<Long, String> stale;
+                        while ((stale = pooled.pendingCameras.firstEntry()) != null && stale.getKey() < timestampMs) {
+                            if (pooled.pendingCameras.remove(stale.getKey()) != null) {
+                                listener.onDropped(stale.getValue());
+                            }
+                        }
+                        if (cameraId != null) {
+                            deliver(cameraId, result.detections(), timestampMs);
+                        }
+                    })
+                    .setErrorListener(e -> Log.e(TAG, "Live stream error", e));
+        }
+        return optionsBuilder;
+    }
+
+    /**
+     * Runs detection for one camera frame on an idle detector. In IMAGE mode the
+     * listener is called before this returns, once the detector is back in the pool;
+     * in LIVE_STREAM mode it is called from MediaPipe's result thread. Returns false
+     * if the frame was dropped because no detector was idle.
+     */
+    public boolean detect(String cameraId, MPImage image, ImageProcessingOptions options) {
+        PooledDetector pooled = idle.poll();
+        if (pooled == null) {
+            misses.incrementAndGet();
+            listener.onDropped(cameraId);
+            return false;
+        }
+        borrows.incrementAndGet();
+        long timestampMs;
+        ObjectDetectionResult result;
+        try {
+            // LIVE_STREAM requires strictly increasing timestamps per detector.
+            timestampMs = Math.max(SystemClock.uptimeMillis(), pooled.lastTimestampMs + 1);
+            pooled.lastTimestampMs = timestampMs;
+
+            if (runningMode == RunningMode.LIVE_STREAM) {
+                // The input is copied into the graph, so the caller may release the frame on return.
+                pooled.pendingCameras.put(timestampMs, cameraId);
+                pooled.detector.detectAsync(image, options, timestampMs);
+                return true;
+            }
+            result = pooled.detector.detect(image, options);
+        } finally {
+            giveBack(pooled);
+        }
+        // The listener may take a while (cascade, snapshots); the detections no longer need
+        // the detector, so other cameras can have it meanwhile.
+        deliver(cameraId, result.detections(), timestampMs);
+        return true;
+    }
+
+    /**
+     * Runs IMAGE-mode detection on {@code image} and returns the detections, waiting up
+     * to {@code timeoutMs} for a detector to become idle; the listener is not called.
+     * Used for the tiles of one frame, which run on several detectors at once. Returns
+     * null if no detector became idle in time or the pool is closed.
+     */
+    public List<Detection> detectNow(MPImage image, long timeoutMs) throws InterruptedException {
+        if (runningMode != RunningMode.IMAGE) {
+            throw new IllegalStateException("detectNow needs RunningMode.IMAGE, not " + runningMode);
+        }
+        PooledDetector pooled = closed ? null : idle.poll(timeoutMs, TimeUnit.MILLISECONDS);
+        if (pooled == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        borrows.incrementAndGet();
+        try {
+            return pooled.detector.detect(image).detections();
+        } finally {
+            giveBack(pooled);
+        }
+    }
+
+    private void deliver(String cameraId, List<Detection> detections, long timestampMs) {
+        if (firstDetectionMs < 0) {
+            firstDetectionMs = SystemClock.uptimeMillis() - createdAtMs;
+            Log.i(TAG, "Time to first detection " + firstDetectionMs + " ms");
+        }
+        listener.onResults(cameraId, detections, timestampMs);
+    }
+
+    private void giveBack(PooledDetector pooled) {
+        if (closed) {
+            pooled.detector.close();
+        } else {
+            idle.offer(pooled);
+            // close() may have drained the queue between the check and the offer.
+            if (closed && idle.remove(pooled)) {
+                pooled.detector.close();
+            }
+        }
+    }
+
+    /** Closes idle detectors now; borrowed ones are closed when they are given back. */
+    public void close() {
+        closed = true;
+        PooledDetector pooled;
+        while ((pooled = idle.poll()) != null) {
+            pooled.detector.close();
+        }
+    }
+
+    public int getSize() {
+        return config.getInstances();
+    }
+
+    public DetectorConfig getConfig() {
+        return config;
+    }
+
+    public int getLoadedCount() {
+        synchronized (all) {
+            return all.size();
+        }
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public long getBorrowCount() {
+        return borrows.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /** Milliseconds from construction until all detectors were loaded, or -1. */
+    public long getLoadTimeMs() {
+        return loadTimeMs;
+    }
+
+    /** Duration of the first detector's warm-up inference, or -1. */
+    public long getWarmUpTimeMs() {
+        return warmUpTimeMs;
+    }
+
+    /** Milliseconds from construction until the first result was delivered, or -1. */
+    public long getTimeToFirstDetectionMs() {
+        return firstDetectionMs;
+    }
+
+    @Override
+    public String toString() {
+        return "DetectorPool{" + modelAsset + ", " + runningMode + ", " + config + ", loaded=" + getLoadedCount()
+                + "/" + getSize()
+                + ", idle=" + getIdleCount() + ", borrows=" + borrows.get() + ", misses=" + misses.get() + ", loadMs="
+                + loadTimeMs + ", warmUpMs=" + warmUpTimeMs + ", firstDetectionMs=" + firstDetectionMs + "}";
+    }
+}
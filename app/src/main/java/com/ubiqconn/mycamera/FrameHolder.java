@@ -0,0 +1,56 @@
+package com.ubiqconn.mycamera;
+
+import android.graphics.Bitmap;
+import android.media.Image;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The frame each camera is detecting on, held around the detector call so that
+ * result handlers can read its pixels: {@link SnapshotCapture} copies it and
+ * {@link CascadeRefiner} crops it. A held frame is only handed out on the thread
+ * that holds it, where it is known to be still valid; results that arrive after
+ * their frame was released (LIVE_STREAM mode, or another camera's mosaic) get none.
+ */
+final class FrameHolder {
+
+    /** A camera's frame: an upright bitmap, or an analysis image in sensor orientation. */
+    static final class Held {
+        final Thread thread = Thread.currentThread();
+        final Bitmap bitmap;
+        final Image image;
+        final int rotationDegrees;
+
+        Held(Bitmap bitmap, Image image, int rotationDegrees) {
+            this.bitmap = bitmap;
+            this.image = image;
+            this.rotationDegrees = rotationDegrees;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Held> held = new ConcurrentHashMap<>();
+
+    /** {@code bitmap} is about to be detected on this thread; valid until {@link #release}. */
+    void hold(String cameraId, Bitmap bitmap) {
+        held.put(cameraId, new Held(bitmap, null, 0));
+    }
+
+    /** {@code image} is about to be detected on this thread; valid until {@link #release}. */
+    void hold(String cameraId, Image image, int rotationDegrees) {
+        held.put(cameraId, new Held(null, image, rotationDegrees));
+    }
+
+    void release(String cameraId) {
+        held.remove(cameraId);
+    }
+
+    /** The frame {@code cameraId} holds on this thread, or null. */
+    Held get(String cameraId) {
+        Held frame = held.get(cameraId);
+        return frame != null && frame.thread == Thread.currentThread() ? frame : null;
+    }
+
+    void clear() {
+        held.clear();
+    }
+}
@@ -3,6 +3,8 @@ package com.ubiqconn.mycamera;
 import android.Manifest;
 import android.content.Context;
 import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
 import android.graphics.Matrix;
 import android.graphics.RectF;
 import android.graphics.SurfaceTexture;
@@ -15,6 +17,7 @@ import android.hardware.camera2.CaptureRequest;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.Surface;
 import android.view.TextureView;
@@ -32,17 +35,40 @@ import android.util.Size;
 import android.view.WindowManager;
 
 import com.google.mediapipe.framework.image.MPImage;
-import com.google.mediapipe.framework.image.MediaImageBuilder;
-import com.google.mediapipe.tasks.core.BaseOptions;
+import com.google.mediapipe.framework.image.ByteBufferImageBuilder;
+import com.google.mediapipe.tasks.components.containers.Category;
+import com.google.mediapipe.tasks.components.containers.Detection;
 import com.google.mediapipe.tasks.vision.core.RunningMode;
-import com.google.mediapipe.tasks.vision.objectdetector.ObjectDetector;
-import com.google.mediapipe.tasks.vision.objectdetector.ObjectDetector.ObjectDetectorOptions;
-import com.google.mediapipe.tasks.vision.objectdetector.ObjectDetectionResult;
+import com.ubiqconn.mycamera.pipeline.BoxTracker;
+import com.ubiqconn.mycamera.pipeline.BoxTransform;
+import com.ubiqconn.mycamera.pipeline.CameraGrid;
+import com.ubiqconn.mycamera.pipeline.CameraSelection;
+import com.ubiqconn.mycamera.pipeline.DetectionServer;
+import com.ubiqconn.mycamera.pipeline.DetectorConfig;
+import com.ubiqconn.mycamera.pipeline.DetectorTuner;
+import com.ubiqconn.mycamera.pipeline.Frame;
+import com.ubiqconn.mycamera.pipeline.FrameGeometry;
+import com.ubiqconn.mycamera.pipeline.FrameMailbox;
+import com.ubiqconn.mycamera.pipeline.FramePacer;
+import com.ubiqconn.mycamera.pipeline.FramePool;
+import com.ubiqconn.mycamera.pipeline.InferenceScheduler;
+import com.ubiqconn.mycamera.pipeline.Mosaic;
+import com.ubiqconn.mycamera.pipeline.MotionGate;
+import com.ubiqconn.mycamera.pipeline.PipelineDriver;
+import com.ubiqconn.mycamera.pipeline.PipelineMetrics;
+import com.ubiqconn.mycamera.pipeline.ReplayFrameSource;
+import com.ubiqconn.mycamera.pipeline.Resolution;
+import com.ubiqconn.mycamera.pipeline.SnapshotTrigger;
+import com.ubiqconn.mycamera.pipeline.StartupMetrics;
+import com.ubiqconn.mycamera.pipeline.StreamPlanner;
+import com.ubiqconn.mycamera.pipeline.StreamSizes;
+import com.ubiqconn.mycamera.pipeline.ThermalGovernor;
+import com.ubiqconn.mycamera.pipeline.TileLayout;
+import com.ubiqconn.mycamera.pipeline.TileMerger;
+import com.ubiqconn.mycamera.pipeline.YuvConverter;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -52,53 +78,436 @@ public class MainActivity extends AppCompatActivity {
 
     private static final int REQUEST_CAMERA_PERMISSION = 200;
 
-    private TextureView mTextureView1;
-    private TextureView mTextureView2;
+    // Feed the detector from a dedicated YUV ImageReader stream instead of
+    // polling TextureView.getBitmap() on the UI thread.
+    private static final boolean USE_ANALYSIS_STREAM = true;
+    // EfficientDet-Lite0 input; frames are captured at most this large, since the
+    // detector would only downscale anything bigger.
+    private static final int MODEL_INPUT_SIZE = 320;
+    private static final int ANALYSIS_MIN_WIDTH = MODEL_INPUT_SIZE;
+    // One image being analysed, one waiting in the scheduler slot, one arriving.
+    private static final int ANALYSIS_MAX_IMAGES = 3;
+    // One bitmap being filled on the UI thread, one waiting in the mailbox and one
+    // being detected.
+    private static final int FRAME_POOL_CAPACITY = 3;
+    private static final int FRAME_POOL_STATS_INTERVAL = 100;
+    // Most cameras streamed at once, however many the device can run concurrently.
+    private static final int MAX_CAMERAS = 8;
+    // Landscape aspect of a typical sensor; the grid aims for tiles of this shape.
+    private static final float PREVIEW_ASPECT = 4f / 3f;
+
+    // "image" (default) runs synchronous detect(); "live_stream" runs detectAsync()
+    // with a result listener, e.g. adb shell am start -n ... --es running_mode live_stream
+    public static final String EXTRA_RUNNING_MODE = "running_mode";
+    // "latency" (default) keeps detection latency under the target; "throughput"
+    // analyses as many frames as the detector can take.
+    public static final String EXTRA_PACING_MODE = "pacing_mode";
+    private static final float PACING_MIN_FPS = 2;
+    private static final float PACING_MAX_FPS = 15;
+    private static final long PACING_TARGET_LATENCY_MS = 200;
+    // Shared by all cameras: two cameras at 10 FPS each, as the old fixed loop ran.
+    private static final double PACING_BUDGET_FPS = 20;
+
+    // Booleans: show the per-camera stats HUD / append metrics snapshots to
+    // files/metrics/pipeline_metrics.txt.
+    public static final String EXTRA_STATS_HUD = "stats_hud";
+    public static final String EXTRA_METRICS_DUMP = "metrics_dump";
+    private static final long METRICS_SNAPSHOT_INTERVAL_MS = 1000;
+    private static final int METRICS_DUMP_EVERY_SNAPSHOTS = 10;
+
+    // Boolean, default true: track boxes between detector runs and draw them at
+    // display rate, which lets the detector itself run slower.
+    public static final String EXTRA_TRACKING = "tracking";
+    private static final float PACING_MAX_FPS_TRACKING = 10;
+
+    // Boolean, default true: skip inference on frames that barely differ from the
+    // last analysed one and reuse its results. The float threshold is the fraction
+    // of thumbnail pixels that must change, e.g. --ef motion_threshold 0.02
+    public static final String EXTRA_MOTION_GATE = "motion_gate";
+    public static final String EXTRA_MOTION_THRESHOLD = "motion_threshold";
+    private static final float MOTION_THRESHOLD_DEFAULT = 0.01f;
+    private static final int MOTION_THUMBNAIL_WIDTH = 32;
+    private static final int MOTION_THUMBNAIL_HEIGHT = 24;
+    private static final int MOTION_PIXEL_NOISE = 12;
+    // Safety net: analyse at least this often even if nothing seems to move.
+    private static final long MOTION_REFRESH_MS = 2000;
+
+    // Analysis frames go to a shared scheduler instead of running on each camera's
+    // handler thread. Int, default 1; 0 runs inference on the camera threads as before.
+    public static final String EXTRA_INFERENCE_WORKERS = "inference_workers";
+    // "round_robin" (default) or "weighted", with one int weight per camera in
+    // inference_weights, e.g. --es inference_policy weighted --eia inference_weights 2,1
+    public static final String EXTRA_INFERENCE_POLICY = "inference_policy";
+    public static final String EXTRA_INFERENCE_WEIGHTS = "inference_weights";
+    // How long closing the cameras waits on the UI thread for the frame in inference;
+    // past that, the old readers are closed in the background once it is done.
+    private static final long CLOSE_IDLE_WAIT_MS = 100;
+    private static final long CLOSE_DRAIN_TIMEOUT_MS = 2000;
+
+    // Detector delegate, "cpu" (default) or "gpu", and number of detector instances
+    // (default one per four cores). With auto_tune, the first launch instead measures
+    // the candidates on a calibration frame and caches the fastest in
+    // files/detector_tuning.properties; delete it to tune again. Unless
+    // inference_workers is given, a chosen instance count also sets the workers.
+    public static final String EXTRA_DETECTOR_DELEGATE = "detector_delegate";
+    public static final String EXTRA_DETECTOR_INSTANCES = "detector_instances";
+    public static final String EXTRA_AUTO_TUNE = "auto_tune";
+    private static final String DETECTOR_TUNING_FILE = "detector_tuning.properties";
+
+    // Benchmark without cameras: replay a FrameRecorder file (RGBA, path relative to
+    // the app's external files dir) through the gate, scheduler and detector, once per
+    // stream, and log the throughput, e.g. --es replay lobby.mcfr --ei replay_streams 2
+    // --ef replay_fps 30. replay_fps defaults to 0, as fast as the pipeline takes frames.
+    public static final String EXTRA_REPLAY = "replay";
+    public static final String EXTRA_REPLAY_STREAMS = "replay_streams";
+    public static final String EXTRA_REPLAY_FPS = "replay_fps";
+
+    // Warm resume (default): onPause only closes the cameras and readers, keeping the
+    // detectors, inference workers, camera threads and frame pools for onResume. They
+    // are released on onTrimMemory instead (threads and pools from BACKGROUND, the
+    // detectors from MODERATE). false tears everything but the detectors down on pause.
+    public static final String EXTRA_WARM_RESUME = "warm_resume";
+
+    // Preview and analysis sizes are planned for all cameras together. With more than
+    // one camera they stay within the sizes concurrent sessions are guaranteed (PRIV up
+    // to 1440p next to YUV up to 720p); stream_budget_mpx additionally caps the pixel
+    // rate of all streams together, in megapixels per second, e.g. --ef
+    // stream_budget_mpx 150 for an ISP that stutters above that. Default: no cap.
+    public static final String EXTRA_STREAM_BUDGET = "stream_budget_mpx";
+    private static final Resolution CONCURRENT_MAX_PREVIEW = new Resolution(1920, 1440);
+    private static final Resolution CONCURRENT_MAX_ANALYSIS = new Resolution(1280, 720);
+    private static final int STREAM_FPS = 30;
+
+    // Boolean, default true: follow the thermal status and battery, stepping down
+    // through halving the analysis budget, a 15 FPS sensor range, a smaller analysis
+    // stream and finally no inference on the secondary cameras, and back up once cool.
+    public static final String EXTRA_THERMAL_GOVERNOR = "thermal_governor";
+    private static final double THROTTLED_BUDGET_FPS = PACING_BUDGET_FPS / 2;
+    private static final int THROTTLED_SENSOR_FPS = 15;
+    private static final int THROTTLED_ANALYSIS_MIN_WIDTH = ANALYSIS_MIN_WIDTH / 2;
+    private static final long GOVERNOR_TICK_MS = 5000;
+
+    // Tiled inference for small and distant objects, e.g. --es tiles 2x2 (default off):
+    // each captured frame is split into overlapping tiles of about the model input,
+    // plus the whole frame, run on several detectors at once and merged with cross-tile
+    // NMS. tile_overlap (float, default 0.2) is the fraction neighbouring tiles share;
+    // tile_threads (int, default one per detector) is how many tiles run at once.
+    // Tiles are crops of the TextureView capture, so this uses IMAGE mode and no
+    // analysis stream.
+    public static final String EXTRA_TILES = "tiles";
+    public static final String EXTRA_TILE_OVERLAP = "tile_overlap";
+    public static final String EXTRA_TILE_THREADS = "tile_threads";
+    private static final float TILE_OVERLAP_DEFAULT = 0.2f;
+    private static final float TILE_IOU_THRESHOLD = 0.5f;
+    private static final float TILE_CONTAINMENT_THRESHOLD = 0.7f;
+    // Longest a tile waits for a detector before the frame goes on without it.
+    private static final long TILE_DETECTOR_TIMEOUT_MS = 500;
+
+    // Mosaic batching with two or more cameras, "side_by_side", "stacked" or "auto"
+    // (default off): the cameras' latest frames are packed into one model-sized input
+    // and detected with a single call, on a single detector unless detector_instances
+    // says otherwise. Like tiling it works on TextureView captures, in IMAGE mode; the
+    // two cannot be combined.
+    public static final String EXTRA_MOSAIC = "mosaic";
+    // A camera that has not delivered for this long does not hold up the others.
+    private static final long MOSAIC_MAX_WAIT_MS = 150;
+
+    // Evidence snapshots: a JPEG of the frame is saved to files/snapshots whenever one
+    // of these categories is detected, e.g. --es snapshot_labels person,car:30000 with
+    // an optional per-category cooldown in ms. snapshot_cooldown_ms (int, default 5000)
+    // is the cooldown for the rest; snapshot_quota_mb (int, default 100) caps the
+    // directory, deleting the least recently used snapshots first.
+    public static final String EXTRA_SNAPSHOT_LABELS = "snapshot_labels";
+    public static final String EXTRA_SNAPSHOT_COOLDOWN_MS = "snapshot_cooldown_ms";
+    public static final String EXTRA_SNAPSHOT_QUOTA_MB = "snapshot_quota_mb";
+    private static final float SNAPSHOT_MIN_SCORE = 0.6f;
+
+    // Int, default off: stream every camera's detections to local subscribers on this
+    // loopback port (see DetectionCodec for the format), e.g. --ei result_port 7070 and
+    // adb forward tcp:7070 tcp:7070. Subscribers that fall behind skip to the newest frame.
+    public static final String EXTRA_RESULT_PORT = "result_port";
+    private static final int RESULT_CLIENT_BUFFER_BYTES = 64 * 1024;
+    private static final int RESULT_MAX_DETECTIONS = 100;
+
+    // Confidence cascade, e.g. --es cascade_model efficientdet_lite2.tflite (default off;
+    // the asset must be bundled): the per-frame model reports down to a 0.3 score, and
+    // crops around its detections between 0.3 and 0.5 are re-scored by this larger model,
+    // which keeps or drops them. cascade_rate (float, default 4) caps the crops re-scored
+    // per second and camera. Crops come from the TextureView capture, so this uses IMAGE
+    // mode and no analysis stream.
+    public static final String EXTRA_CASCADE_MODEL = "cascade_model";
+    public static final String EXTRA_CASCADE_RATE = "cascade_rate";
+    private static final float CASCADE_LOW_SCORE = 0.3f;
+    private static final float CASCADE_RATE_DEFAULT = 4f;
+    // Captures are kept larger than the model input so crops keep their detail.
+    private static final int CASCADE_FRAME_SIZE = 640;
+    private static final long CASCADE_DETECTOR_TIMEOUT_MS = 100;
 
     private CameraManager mCameraManager;
     private Map<String, CameraDevice> mCameraDevices = new HashMap<>();
+    // Filled once at startup; characteristics never change while the app runs.
+    private java.util.concurrent.ConcurrentHashMap<String, CameraCharacteristics> mCameraCharacteristics = new java.util.concurrent.ConcurrentHashMap<>();
+    // Cameras whose preview session has been requested; UI thread only.
+    private Set<String> mPreviewsStarted = new java.util.HashSet<>();
     private Map<String, CameraCaptureSession> mCaptureSessions = new HashMap<>();
     private Map<String, Handler> mBackgroundHandlers = new HashMap<>();
     private Map<String, ImageReader> mImageReaders = new HashMap<>();
-    private Map<String, ObjectDetector> mObjectDetectors = new HashMap<>();
-    private java.util.concurrent.ConcurrentHashMap<String, Boolean> mIsProcessingFrames = new java.util.concurrent.ConcurrentHashMap<>();
+    private java.util.concurrent.ConcurrentHashMap<String, Integer> mRotationCompensations = new java.util.concurrent.ConcurrentHashMap<>();
+    // RGBA detector input converted from each camera's analysis frames.
+    private java.util.concurrent.ConcurrentHashMap<String, YuvConverter> mYuvConverters = new java.util.concurrent.ConcurrentHashMap<>();
+    private java.util.concurrent.ConcurrentHashMap<String, FramePool<CapturedFrame>> mFramePools = new java.util.concurrent.ConcurrentHashMap<>();
+    private java.util.concurrent.ConcurrentHashMap<String, FrameMailbox<CapturedFrame>> mFrameMailboxes = new java.util.concurrent.ConcurrentHashMap<>();
+    // elapsedRealtimeNanos() at capture of the frame each camera has in inference, or 0 if unknown.
+    private java.util.concurrent.ConcurrentHashMap<String, java.util.concurrent.atomic.AtomicLong> mInferenceCaptureNanos = new java.util.concurrent.ConcurrentHashMap<>();
+    private Map<String, Size> mFramePoolSizes = new HashMap<>();
+    private java.util.concurrent.ConcurrentHashMap<String, Size> mFrameSizes = new java.util.concurrent.ConcurrentHashMap<>();
+    // Planned by the first session to start, for every camera; cleared when they close.
+    private final Object mStreamPlanLock = new Object();
+    private StreamPlanner.Plan mStreamPlan;
+    private float mStreamBudgetMpx;
+
+    private boolean mGovernorEnabled;
+    // Step down every 30 s at MODERATE, 10 s at SEVERE; up after 60 s cool; below 15% battery.
+    private final ThermalGovernor mThermalGovernor = new ThermalGovernor(30000, 10000, 60000, 15);
+    private volatile ThermalGovernor.Level mGovernorLevel = ThermalGovernor.Level.NORMAL;
+    private final Handler mGovernorHandler = new Handler(android.os.Looper.getMainLooper());
+    private android.os.PowerManager.OnThermalStatusChangedListener mThermalListener;
+    private final Runnable mGovernorTick = new Runnable() {
+        @Override
+        public void run() {
+            evaluateGovernor();
+            mGovernorHandler.postDelayed(this, GOVERNOR_TICK_MS);
+        }
+    };
+    // Kept to re-issue the repeating request when the sensor FPS range changes.
+    private java.util.concurrent.ConcurrentHashMap<String, CaptureRequest.Builder> mPreviewRequests = new java.util.concurrent.ConcurrentHashMap<>();
+    private java.util.concurrent.ConcurrentHashMap<String, android.util.Range<Integer>> mDefaultFpsRanges = new java.util.concurrent.ConcurrentHashMap<>();
+
+    // Off in tiled mode, whose tiles are cropped from TextureView captures.
+    private boolean mUseAnalysisStream = USE_ANALYSIS_STREAM;
+    private TileLayout mTileLayout;
+    private java.util.concurrent.ExecutorService mTileExecutor;
+    // Crops and merge buffers per camera; used on that camera's background thread only.
+    private java.util.concurrent.ConcurrentHashMap<String, TiledFrame> mTiledFrames = new java.util.concurrent.ConcurrentHashMap<>();
+    private boolean mMosaicEnabled;
+    // Null for "auto"; the batcher then picks what suits the frames.
+    private Mosaic.Arrangement mMosaicArrangement;
+    // Replaced with the camera grid.
+    private volatile MosaicBatcher mMosaicBatcher;
+    // Null unless snapshot_labels or cascade_model is given: the frame each camera is detecting on.
+    private FrameHolder mFrameHolder;
+    // Null unless snapshot_labels is given; closed in onDestroy.
+    private SnapshotCapture mSnapshotCapture;
+    // Null unless result_port is given; closed in onDestroy.
+    private volatile DetectionServer mResultServer;
+    // Null unless cascade_model is given; closed in onDestroy.
+    private CascadeRefiner mCascadeRefiner;
+    // Results are flattened for the codec here, one camera at a time.
+    private final float[] mResultBoxes = new float[RESULT_MAX_DETECTIONS * FrameGeometry.BOX_STRIDE];
+    private final int[] mResultCategories = new int[RESULT_MAX_DETECTIONS];
+    private final float[] mResultScores = new float[RESULT_MAX_DETECTIONS];
+    private RunningMode mRunningMode = RunningMode.IMAGE;
+    private FramePacer.Mode mPacingMode = FramePacer.Mode.LATENCY_BOUNDED;
+    private final FramePacer.Budget mFrameBudget = new FramePacer.Budget(PACING_BUDGET_FPS);
+    private java.util.concurrent.ConcurrentHashMap<String, FramePacer> mFramePacers = new java.util.concurrent.ConcurrentHashMap<>();
+    // Shared by all cameras and kept across pause/resume; closed in onDestroy, or on
+    // memory pressure while in the background and then recreated by onResume.
+    private volatile DetectorPool mDetectorPool;
+    private DetectorConfig mDetectorConfig;
+    private DetectorTuner mDetectorTuner;
+    private boolean mWorkersFollowDetectors;
+    private int mCameraCount;
+
+    private boolean mWarmResume = true;
+    // Between onResume and onPause; UI thread only.
+    private boolean mResumed;
+    // Milestones since the last onResume, and whether it found the pipeline warm.
+    private volatile StartupMetrics mResumeMetrics;
+    private volatile boolean mResumedWarm;
+
+    private final PipelineMetrics mMetrics = new PipelineMetrics();
+    // Cold-start milestones since process start, appended to files/metrics/startup_metrics.txt
+    // once the first detection is in.
+    private final StartupMetrics mStartupMetrics = new StartupMetrics(android.os.Process.getStartUptimeMillis());
+    private java.util.Set<String> mRealtimeTimestampCameras = java.util.concurrent.ConcurrentHashMap.newKeySet();
+    private boolean mStatsHud;
+    private boolean mMetricsDump;
+    private java.util.concurrent.ScheduledExecutorService mMetricsExecutor;
+    private int mMetricsSnapshots;
+
+    private boolean mTracking = true;
+    private java.util.concurrent.ConcurrentHashMap<String, BoxTracker> mTrackers = new java.util.concurrent.ConcurrentHashMap<>();
+
+    private boolean mMotionGating = true;
+    private float mMotionThreshold = MOTION_THRESHOLD_DEFAULT;
+    private java.util.concurrent.ConcurrentHashMap<String, MotionGate> mMotionGates = new java.util.concurrent.ConcurrentHashMap<>();
+    private java.util.concurrent.ConcurrentHashMap<String, List<Detection>> mLastDetections = new java.util.concurrent.ConcurrentHashMap<>();
+
+    private int mInferenceWorkers = 1;
+    private InferenceScheduler.Policy mInferencePolicy = InferenceScheduler.Policy.ROUND_ROBIN;
+    private int[] mInferenceWeights;
+    // Created in onResume and closed in onPause, before the readers its images come from.
+    private volatile InferenceScheduler<Image> mInferenceScheduler;
+
+    private String mReplayPath;
+    private int mReplayStreams;
+    private float mReplayFps;
+    private Thread mReplayThread;
+    private volatile PipelineDriver<Frame> mReplayDriver;
+
+    // Set by configureTransform; UI thread only.
+    private boolean mPreviewCenterCrop;
+    private final BoxTransform mOverlayTransform = new BoxTransform();
 
-    private void initObjectDetector(String cameraId) {
-        try {
-            BaseOptions.Builder baseOptionsBuilder = BaseOptions.builder()
-                    .setModelAssetPath("efficientdet_lite0.tflite");
+    // private java.util.concurrent.ConcurrentHashMap<String, Long>
+    // mLastAnalysisTimes = new java.util.concurrent.ConcurrentHashMap<>();
 
-            ObjectDetectorOptions options = ObjectDetectorOptions.builder()
-                    .setBaseOptions(baseOptionsBuilder.build())
-                    .setRunningMode(RunningMode.IMAGE)
-                    .setScoreThreshold(0.5f)
-                    .build();
+    // The cameras being streamed, in grid order, and their tiles by camera ID.
+    private List<String> mCameraIds;
+    private java.util.concurrent.ConcurrentHashMap<String, CameraSlot> mCameraSlots = new java.util.concurrent.ConcurrentHashMap<>();
 
-            ObjectDetector detector = ObjectDetector.createFromOptions(this, options);
-            mObjectDetectors.put(cameraId, detector);
-        } catch (Exception e) {
-            Log.e("MediaPipe", "Failed to load model", e);
+    /** A pooled TextureView capture on its way from the UI thread to the detector. */
+    private static final class CapturedFrame {
+        final Bitmap bitmap;
+        FramePool<CapturedFrame> pool;
+        long captureNanos;
+
+        CapturedFrame(Bitmap bitmap) {
+            this.bitmap = bitmap;
         }
     }
-    // private java.util.concurrent.ConcurrentHashMap<String, Long>
-    // mLastAnalysisTimes = new java.util.concurrent.ConcurrentHashMap<>();
-
-    private OverlayView mOverlayView1;
-    private OverlayView mOverlayView2;
 
-    private String[] mCameraIds;
+    /** Tile crops of one camera's frames and the merger their detections go through. */
+    private static final class TiledFrame {
+        final int[] tiles;
+        final Bitmap[] crops;
+        final android.graphics.Canvas[] canvases;
+        final TileMerger merger;
+        int sourceWidth;
+        int sourceHeight;
+        int tileCount;
+
+        TiledFrame(TileLayout layout) {
+            tiles = new int[layout.getTileCount() * FrameGeometry.BOX_STRIDE];
+            crops = new Bitmap[layout.getTileCount()];
+            canvases = new android.graphics.Canvas[layout.getTileCount()];
+            merger = new TileMerger(layout.getTileCount() * BoxTracker.DEFAULT_CAPACITY, TILE_IOU_THRESHOLD,
+                    TILE_CONTAINMENT_THRESHOLD);
+        }
+    }
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        mTextureView1 = findViewById(R.id.texture_view_1);
-        mTextureView2 = findViewById(R.id.texture_view_2);
-        mOverlayView1 = findViewById(R.id.overlay_view_1);
-        mOverlayView2 = findViewById(R.id.overlay_view_2);
-
         mCameraManager = (CameraManager) getSystemService(Context.CAMERA_SERVICE);
+        markStartup("activity_created");
+        // Overlaps the characteristics queries with model loading and layout.
+        new Thread(this::prefetchCameraInfo, "CameraInfo").start();
+
+        String runningMode = getIntent().getStringExtra(EXTRA_RUNNING_MODE);
+        if ("live_stream".equalsIgnoreCase(runningMode)) {
+            mRunningMode = RunningMode.LIVE_STREAM;
+        }
+        if ("throughput".equalsIgnoreCase(getIntent().getStringExtra(EXTRA_PACING_MODE))) {
+            mPacingMode = FramePacer.Mode.MAX_THROUGHPUT;
+        }
+        mStatsHud = getIntent().getBooleanExtra(EXTRA_STATS_HUD, false);
+        mMetricsDump = getIntent().getBooleanExtra(EXTRA_METRICS_DUMP, false);
+        mTracking = getIntent().getBooleanExtra(EXTRA_TRACKING, true);
+        mMotionGating = getIntent().getBooleanExtra(EXTRA_MOTION_GATE, true);
+        mMotionThreshold = getIntent().getFloatExtra(EXTRA_MOTION_THRESHOLD, MOTION_THRESHOLD_DEFAULT);
+        mInferenceWorkers = getIntent().getIntExtra(EXTRA_INFERENCE_WORKERS, 1);
+        if ("weighted".equalsIgnoreCase(getIntent().getStringExtra(EXTRA_INFERENCE_POLICY))) {
+            mInferencePolicy = InferenceScheduler.Policy.WEIGHTED;
+        }
+        mInferenceWeights = getIntent().getIntArrayExtra(EXTRA_INFERENCE_WEIGHTS);
+        mReplayPath = getIntent().getStringExtra(EXTRA_REPLAY);
+        mReplayStreams = Math.max(1, getIntent().getIntExtra(EXTRA_REPLAY_STREAMS, 2));
+        mReplayFps = getIntent().getFloatExtra(EXTRA_REPLAY_FPS, 0);
+        Log.i("MediaPipe", "Running mode " + mRunningMode + ", pacing " + mPacingMode + ", tracking "
+                + mTracking + ", motion gate " + (mMotionGating ? mMotionThreshold : "off") + ", inference workers "
+                + mInferenceWorkers + " " + mInferencePolicy);
+
+        DetectorConfig.Backend backend = "gpu".equalsIgnoreCase(getIntent().getStringExtra(EXTRA_DETECTOR_DELEGATE))
+                ? DetectorConfig.Backend.GPU : DetectorConfig.Backend.CPU;
+        mDetectorConfig = new DetectorConfig(backend,
+                Math.max(1, getIntent().getIntExtra(EXTRA_DETECTOR_INSTANCES, DetectorPool.defaultSize())));
+        boolean autoTune = getIntent().getBooleanExtra(EXTRA_AUTO_TUNE, false);
+        mWorkersFollowDetectors = (autoTune || getIntent().hasExtra(EXTRA_DETECTOR_INSTANCES))
+                && !getIntent().hasExtra(EXTRA_INFERENCE_WORKERS) && mInferenceWorkers > 0;
+        mCameraCount = mReplayPath != null ? mReplayStreams : countCameras();
+        mWarmResume = getIntent().getBooleanExtra(EXTRA_WARM_RESUME, true);
+        mStreamBudgetMpx = getIntent().getFloatExtra(EXTRA_STREAM_BUDGET, 0);
+        mGovernorEnabled = getIntent().getBooleanExtra(EXTRA_THERMAL_GOVERNOR, true);
+        try {
+            mTileLayout = TileLayout.parse(getIntent().getStringExtra(EXTRA_TILES),
+                    getIntent().getFloatExtra(EXTRA_TILE_OVERLAP, TILE_OVERLAP_DEFAULT), true);
+        } catch (IllegalArgumentException e) {
+            Log.w("MediaPipe", "Invalid tiles " + getIntent().getStringExtra(EXTRA_TILES) + "; tiling off", e);
+            mTileLayout = null;
+        }
+        if (mTileLayout != null) {
+            mRunningMode = RunningMode.IMAGE;
+            mUseAnalysisStream = false;
+            int threads = Math.max(1, getIntent().getIntExtra(EXTRA_TILE_THREADS, mDetectorConfig.getInstances()));
+            mTileExecutor = java.util.concurrent.Executors.newFixedThreadPool(threads);
+            Log.i("MediaPipe", "Tiled inference " + mTileLayout + ", " + threads + " threads");
+        }
+        SnapshotTrigger snapshotTrigger = SnapshotTrigger.parse(getIntent().getStringExtra(EXTRA_SNAPSHOT_LABELS),
+                getIntent().getIntExtra(EXTRA_SNAPSHOT_COOLDOWN_MS, 5000), SNAPSHOT_MIN_SCORE);
+        String cascadeModel = getIntent().getStringExtra(EXTRA_CASCADE_MODEL);
+        if (snapshotTrigger != null || cascadeModel != null) {
+            mFrameHolder = new FrameHolder();
+        }
+        if (snapshotTrigger != null) {
+            mSnapshotCapture = new SnapshotCapture(mFrameHolder, snapshotTrigger,
+                    new java.io.File(getFilesDir(), "snapshots"),
+                    getIntent().getIntExtra(EXTRA_SNAPSHOT_QUOTA_MB, 100) * 1024L * 1024L);
+        }
+        int resultPort = getIntent().getIntExtra(EXTRA_RESULT_PORT, 0);
+        if (resultPort > 0) {
+            startResultServer(resultPort);
+        }
+        if (cascadeModel != null) {
+            mRunningMode = RunningMode.IMAGE;
+            mUseAnalysisStream = false;
+            mCascadeRefiner = new CascadeRefiner(this, mFrameHolder, cascadeModel, backend, CASCADE_LOW_SCORE,
+                    DetectorPool.SCORE_THRESHOLD, getIntent().getFloatExtra(EXTRA_CASCADE_RATE, CASCADE_RATE_DEFAULT),
+                    CASCADE_DETECTOR_TIMEOUT_MS);
+        }
+        String mosaic = getIntent().getStringExtra(EXTRA_MOSAIC);
+        if (mosaic != null && !"off".equalsIgnoreCase(mosaic)) {
+            if (mTileLayout != null || mReplayPath != null || mCameraCount < 2) {
+                Log.w("MediaPipe", "Mosaic needs two or more cameras and no tiles or replay; ignored");
+            } else {
+                mMosaicEnabled = true;
+                if ("side_by_side".equalsIgnoreCase(mosaic)) {
+                    mMosaicArrangement = Mosaic.Arrangement.SIDE_BY_SIDE;
+                } else if ("stacked".equalsIgnoreCase(mosaic)) {
+                    mMosaicArrangement = Mosaic.Arrangement.STACKED;
+                }
+                mRunningMode = RunningMode.IMAGE;
+                mUseAnalysisStream = false;
+                if (!getIntent().hasExtra(EXTRA_DETECTOR_INSTANCES)) {
+                    // One inference per tick needs only one model copy.
+                    mDetectorConfig = new DetectorConfig(mDetectorConfig.getBackend(), 1);
+                }
+                Log.i("MediaPipe", "Mosaic batching " + (mMosaicArrangement != null ? mMosaicArrangement : "auto")
+                        + ", " + mDetectorConfig);
+            }
+        }
+        if (autoTune) {
+            // Everything the fastest configuration depends on.
+            String key = android.os.Build.MANUFACTURER + " " + android.os.Build.MODEL + "|sdk"
+                    + android.os.Build.VERSION.SDK_INT + "|cores" + Runtime.getRuntime().availableProcessors() + "|"
+                    + DetectorPool.MODEL_ASSET + "|" + mRunningMode + "|cameras" + mCameraCount;
+            mDetectorTuner = new DetectorTuner(new java.io.File(getFilesDir(), DETECTOR_TUNING_FILE), key);
+        }
+
+        // Load the model while the cameras come up instead of on the first frame.
+        createDetectorPool();
 
         if (ActivityCompat.checkSelfPermission(this, Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
             ActivityCompat.requestPermissions(this, new String[] { Manifest.permission.CAMERA },
@@ -108,59 +517,192 @@ public class MainActivity extends AppCompatActivity {
         updateLayoutForScreenAspectRatio();
     }
 
+    private void createDetectorPool() {
+        final boolean workersFollowDetectors = mWorkersFollowDetectors;
+        final int cameraCount = mCameraCount;
+        // With a cascade the uncertain detections are reported too, for the larger model to judge.
+        float scoreThreshold = mCascadeRefiner != null ? CASCADE_LOW_SCORE : DetectorPool.SCORE_THRESHOLD;
+        mDetectorPool = new DetectorPool(this, mRunningMode, DetectorPool.MODEL_ASSET, scoreThreshold,
+                mDetectorConfig, new DetectorPool.ResultListener() {
+                    @Override
+                    public void onResults(String cameraId, List<Detection> detections, long timestampMs) {
+                        handleResults(cameraId, detections, timestampMs);
+                    }
+
+                    @Override
+                    public void onDropped(String cameraId) {
+                        onFrameDropped(cameraId);
+                    }
+
+                    @Override
+                    public void onFirstDetectorReady() {
+                        markStartup("first_detector_ready");
+                    }
+
+                    @Override
+                    public void onConfigured(DetectorConfig config) {
+                        if (workersFollowDetectors) {
+                            runOnUiThread(() -> setInferenceWorkers(config.getWorkers(cameraCount)));
+                        }
+                    }
+                });
+        // Once tuned, the result is cached, so a recreated pool skips the measurement.
+        mDetectorPool.start(mDetectorTuner, cameraCount);
+    }
+
+    // Detector results for one frame, from the pool's listener or the tiled path.
+    private void handleResults(String cameraId, List<Detection> detections, long timestampMs) {
+        if (markStartup("first_detection")) {
+            saveStartupMetrics();
+        }
+        StartupMetrics resume = mResumeMetrics;
+        if (resume != null && resume.mark("first_detection", SystemClock.uptimeMillis())) {
+            Log.i("Startup", "Resume (" + (mResumedWarm ? "warm" : "cold") + ") to first detection "
+                    + resume.get("first_detection") + " ms");
+        }
+        long latencyMs = SystemClock.uptimeMillis() - timestampMs;
+        getFramePacer(cameraId).onFrameCompleted(latencyMs);
+        PipelineMetrics.CameraMetrics metrics = mMetrics.camera(cameraId);
+        metrics.recordMicros(PipelineMetrics.Stage.INFERENCE, latencyMs * 1000);
+        metrics.onProcessed();
+        if (mCascadeRefiner != null) {
+            // Before anything sees them: uncertain detections are re-scored on the held frame or dropped.
+            detections = mCascadeRefiner.refine(cameraId, detections, SystemClock.uptimeMillis());
+        }
+        if (detections != null) {
+            mLastDetections.put(cameraId, detections);
+        }
+        if (mSnapshotCapture != null) {
+            // Copies the frame on this thread only if a category fires; encoding happens elsewhere.
+            mSnapshotCapture.onResults(cameraId, detections, SystemClock.uptimeMillis());
+        }
+        Size frameSize = mFrameSizes.get(cameraId);
+        DetectionServer resultServer = mResultServer;
+        if (resultServer != null && frameSize != null && detections != null) {
+            streamResults(resultServer, cameraId, detections, frameSize);
+        }
+        if (frameSize != null) {
+            if (mTracking) {
+                trackResults(cameraId, detections, timestampMs);
+            }
+            publishResults(cameraId, detections, timestampMs, frameSize.getWidth(), frameSize.getHeight());
+        }
+    }
+
+    private void startResultServer(int port) {
+        // Binding is socket I/O, kept off the UI thread.
+        new Thread(() -> {
+            DetectionServer server = new DetectionServer(port, RESULT_CLIENT_BUFFER_BYTES);
+            try {
+                server.start();
+                mResultServer = server;
+                if (isDestroyed()) {
+                    // onDestroy ran before the server was up.
+                    server.close();
+                    return;
+                }
+                Log.i("MediaPipe", "Streaming detections on 127.0.0.1:" + server.getPort());
+            } catch (java.io.IOException e) {
+                Log.e("MediaPipe", "Cannot stream detections on port " + port, e);
+            }
+        }, "DetectionServerStart").start();
+    }
+
+    // Never blocks on subscribers; see DetectionServer.
+    private void streamResults(DetectionServer server, String cameraId, List<Detection> detections, Size frameSize) {
+        if (server.getClientCount() == 0) {
+            return;
+        }
+        synchronized (mResultBoxes) {
+            int count = Math.min(detections.size(), RESULT_MAX_DETECTIONS);
+            for (int i = 0; i < count; i++) {
+                Detection detection = detections.get(i);
+                RectF box = detection.boundingBox();
+                int b = i * FrameGeometry.BOX_STRIDE;
+                mResultBoxes[b] = box.left;
+                mResultBoxes[b + 1] = box.top;
+                mResultBoxes[b + 2] = box.right;
+                mResultBoxes[b + 3] = box.bottom;
+                List<Category> categories = detection.categories();
+                Category top = categories.isEmpty() ? null : categories.get(0);
+                mResultCategories[i] = top != null ? top.index() : -1;
+                mResultScores[i] = top != null ? top.score() : 0f;
+            }
+            // Capture time on the elapsedRealtimeNanos() clock, or 0 where the sensor uses another.
+            server.publish(cameraId, getInferenceCaptureNanos(cameraId).get(), frameSize.getWidth(),
+                    frameSize.getHeight(), mResultBoxes, mResultCategories, mResultScores, count);
+        }
+    }
+
     @Override
     public void onConfigurationChanged(@NonNull android.content.res.Configuration newConfig) {
         super.onConfigurationChanged(newConfig);
         updateLayoutForScreenAspectRatio();
+        for (String cameraId : mRotationCompensations.keySet()) {
+            mRotationCompensations.put(cameraId, getRotationCompensation(cameraId, this));
+        }
+    }
+
+    // UI thread. Replaces the tiles when the set of streamed cameras changes.
+    private void buildCameraGrid(List<String> cameraIds) {
+        android.widget.GridLayout root = findViewById(R.id.main_container);
+        root.removeAllViews();
+        mCameraSlots.clear();
+        for (String cameraId : cameraIds) {
+            View tile = getLayoutInflater().inflate(R.layout.camera_tile, root, false);
+            mCameraSlots.put(cameraId, new CameraSlot(cameraId, tile, mMetrics.camera(cameraId)));
+            root.addView(tile);
+        }
+        mCameraIds = new ArrayList<>(cameraIds);
+        if (mMosaicEnabled) {
+            MosaicBatcher previous = mMosaicBatcher;
+            mMosaicBatcher = new MosaicBatcher(cameraIds, mMosaicArrangement, MODEL_INPUT_SIZE, MOSAIC_MAX_WAIT_MS,
+                    new MosaicBatcher.Listener() {
+                        @Override
+                        public void onResults(String cameraId, List<Detection> detections, long timestampMs) {
+                            handleResults(cameraId, detections, timestampMs);
+                        }
+
+                        @Override
+                        public void onDropped(String cameraId) {
+                            onFrameDropped(cameraId);
+                        }
+                    });
+            if (previous != null) {
+                previous.close();
+            }
+        }
+        updateLayoutForScreenAspectRatio();
     }
 
     private void updateLayoutForScreenAspectRatio() {
+        android.widget.GridLayout root = findViewById(R.id.main_container);
+        if (root == null || mCameraIds == null || mCameraIds.isEmpty())
+            return;
+
         android.util.DisplayMetrics metrics = new android.util.DisplayMetrics();
         getWindowManager().getDefaultDisplay().getMetrics(metrics);
 
         int width = metrics.widthPixels;
         int height = metrics.heightPixels;
-
-        android.widget.LinearLayout root = findViewById(R.id.main_container);
-        android.widget.FrameLayout container1 = findViewById(R.id.container_1);
-        android.widget.FrameLayout container2 = findViewById(R.id.container_2);
-
-        if (root == null || container1 == null || container2 == null)
-            return;
-
-        android.widget.LinearLayout.LayoutParams params1 = (android.widget.LinearLayout.LayoutParams) container1
-                .getLayoutParams();
-        android.widget.LinearLayout.LayoutParams params2 = (android.widget.LinearLayout.LayoutParams) container2
-                .getLayoutParams();
-
-        if (width > height) {
-            // Landscape-ish: Split Horizontally (Left/Right)
-            root.setOrientation(android.widget.LinearLayout.HORIZONTAL);
-
-            // Width = 0, Weight = 1, Height = Match Parent
-            params1.width = 0;
-            params1.height = android.view.ViewGroup.LayoutParams.MATCH_PARENT;
-            params1.weight = 1;
-
-            params2.width = 0;
-            params2.height = android.view.ViewGroup.LayoutParams.MATCH_PARENT;
-            params2.weight = 1;
-        } else {
-            // Portrait-ish: Split Vertically (Top/Bottom)
-            root.setOrientation(android.widget.LinearLayout.VERTICAL);
-
-            // Width = Match Parent, Height = 0, Weight = 1
-            params1.width = android.view.ViewGroup.LayoutParams.MATCH_PARENT;
-            params1.height = 0;
-            params1.weight = 1;
-
-            params2.width = android.view.ViewGroup.LayoutParams.MATCH_PARENT;
-            params2.height = 0;
-            params2.weight = 1;
+        // Sensors are landscape; in portrait the previews are rotated upright.
+        float tileAspect = width > height ? PREVIEW_ASPECT : 1f / PREVIEW_ASPECT;
+        CameraGrid grid = CameraGrid.layout(mCameraIds.size(), width, height, tileAspect);
+        Log.d("CAMERA", "Grid " + grid + " on " + width + "x" + height);
+
+        // Tiles keep their parent (a detached TextureView loses its surface): only the
+        // cells they span change. Equal weights share the screen evenly.
+        for (int i = 0; i < mCameraIds.size(); i++) {
+            CameraSlot slot = mCameraSlots.get(mCameraIds.get(i));
+            android.widget.GridLayout.LayoutParams params = new android.widget.GridLayout.LayoutParams(
+                    android.widget.GridLayout.spec(grid.row(i), 1f),
+                    android.widget.GridLayout.spec(grid.column(i), 1f));
+            params.width = 0;
+            params.height = 0;
+            slot.tile.setLayoutParams(params);
         }
-
-        container1.setLayoutParams(params1);
-        container2.setLayoutParams(params2);
+        root.setColumnCount(grid.getColumns());
+        root.setRowCount(grid.getRows());
         root.requestLayout();
     }
 
@@ -180,10 +722,57 @@ public class MainActivity extends AppCompatActivity {
 
     private void setupCameras() {
         try {
-            mCameraIds = mCameraManager.getCameraIdList();
-            Log.d("CAMERA", "getCameraIdList " + mCameraIds.length);
+            String[] allIds = mCameraManager.getCameraIdList();
+            Log.d("CAMERA", "getCameraIdList " + allIds.length);
+            List<String> selected = selectCameras();
+            if (selected.isEmpty())
+                return;
+
+            if (allIds.length < 2) {
+                Toast.makeText(this, "This device has less than two cameras.", Toast.LENGTH_LONG).show();
+            } else if (selected.size() < 2) {
+                Toast.makeText(this, "Device does not support concurrent cameras. Opening one camera.",
+                        Toast.LENGTH_LONG).show();
+            } else {
+                Toast.makeText(this, "Device supports " + selected.size() + " concurrent cameras.",
+                        Toast.LENGTH_SHORT).show();
+            }
+
+            // Kept across resumes so the previews' surfaces survive.
+            if (!selected.equals(mCameraIds)) {
+                buildCameraGrid(selected);
+            }
+            applyInferenceWeights();
+            for (String cameraId : mCameraIds) {
+                startCamera(cameraId, mCameraSlots.get(cameraId).textureView);
+            }
+        } catch (CameraAccessException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // The largest set of cameras the device can stream at once.
+    private List<String> selectCameras() throws CameraAccessException {
+        List<String> cameraIds = Arrays.asList(mCameraManager.getCameraIdList());
+        Set<Set<String>> concurrent = java.util.Collections.emptySet();
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.R) {
+            concurrent = mCameraManager.getConcurrentCameraIds();
+            Log.d("CAMERA", "ConcurrentCameraIds " + concurrent);
+        }
+        List<String> selected = CameraSelection.select(cameraIds, concurrent, MAX_CAMERAS);
+        Log.i("CAMERA", "Streaming cameras " + selected);
+        return selected;
+    }
+
+    /**
+     * Fetches every camera's characteristics into the cache (they never change while
+     * the app runs) and logs them. Runs off the UI thread at startup, so session setup
+     * and rotation handling later find them in memory.
+     */
+    private void prefetchCameraInfo() {
+        try {
             for (String cameraId : mCameraManager.getCameraIdList()) {
-                CameraCharacteristics cc = mCameraManager.getCameraCharacteristics(cameraId);
+                CameraCharacteristics cc = getCharacteristics(cameraId);
 
                 Integer lensFacing = cc.get(CameraCharacteristics.LENS_FACING);
                 if (lensFacing != null) {
@@ -213,68 +802,20 @@ public class MainActivity extends AppCompatActivity {
                     }
                 }
             }
-
-            if (mCameraIds.length < 2) {
-                Toast.makeText(this, "This device has less than two cameras.", Toast.LENGTH_LONG).show();
-                // Hide the second texture view if there's only one camera
-                mTextureView2.setVisibility(View.GONE);
-                if (mCameraIds.length > 0) {
-                    if (mTextureView1.isAvailable()) {
-                        openCamera(mCameraIds[0], mTextureView1);
-                    } else {
-                        mTextureView1
-                                .setSurfaceTextureListener(createSurfaceTextureListener(mCameraIds[0], mTextureView1));
-                    }
-                }
-                return;
-            }
-
-            boolean concurrentSupport = false;
-            if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.R) {
-                try {
-                    Set<Set<String>> concurrentCameraIdCombinations = mCameraManager.getConcurrentCameraIds();
-                    Log.d("CAMERA", "ConcurrentCameraIds " + concurrentCameraIdCombinations.size());
-                    for (Set<String> combination : concurrentCameraIdCombinations) {
-                        Log.i("MainActivity", "CameraId: " + combination);
-                        if (combination.contains(mCameraIds[0]) && combination.contains(mCameraIds[1])) {
-                            concurrentSupport = true;
-                            break;
-                        }
-                    }
-                } catch (CameraAccessException e) {
-                    e.printStackTrace();
-                }
-            }
-
-            if (concurrentSupport) {
-                Toast.makeText(this, "Device supports concurrent cameras.", Toast.LENGTH_SHORT).show();
-                if (mTextureView1.isAvailable()) {
-                    openCamera(mCameraIds[0], mTextureView1);
-                } else {
-                    mTextureView1.setSurfaceTextureListener(createSurfaceTextureListener(mCameraIds[0], mTextureView1));
-                }
-
-                if (mTextureView2.isAvailable()) {
-                    openCamera(mCameraIds[1], mTextureView2);
-                } else {
-                    mTextureView2.setSurfaceTextureListener(createSurfaceTextureListener(mCameraIds[1], mTextureView2));
-                }
-            } else {
-                Toast.makeText(this, "Device does not support concurrent cameras. Opening one camera.",
-                        Toast.LENGTH_LONG).show();
-                mTextureView2.setVisibility(View.GONE);
-                if (mTextureView1.isAvailable()) {
-                    openCamera(mCameraIds[0], mTextureView1);
-                } else {
-                    mTextureView1.setSurfaceTextureListener(createSurfaceTextureListener(mCameraIds[0], mTextureView1));
-                }
-            }
-
         } catch (CameraAccessException e) {
             e.printStackTrace();
         }
     }
 
+    private CameraCharacteristics getCharacteristics(String cameraId) throws CameraAccessException {
+        CameraCharacteristics characteristics = mCameraCharacteristics.get(cameraId);
+        if (characteristics == null) {
+            characteristics = mCameraManager.getCameraCharacteristics(cameraId);
+            mCameraCharacteristics.put(cameraId, characteristics);
+        }
+        return characteristics;
+    }
+
     private String capabilityToString(int cap) {
         switch (cap) {
             case CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES_BACKWARD_COMPATIBLE:
@@ -316,9 +857,12 @@ public class MainActivity extends AppCompatActivity {
 
     private TextureView.SurfaceTextureListener createSurfaceTextureListener(String cameraId, TextureView textureView) {
         return new TextureView.SurfaceTextureListener() {
+            private final String previewMilestone = "first_preview_" + cameraId;
+            private boolean previewShown;
+
             @Override
             public void onSurfaceTextureAvailable(@NonNull SurfaceTexture surface, int width, int height) {
-                openCamera(cameraId, textureView);
+                startPreviewIfReady(cameraId, textureView);
             }
 
             @Override
@@ -332,10 +876,33 @@ public class MainActivity extends AppCompatActivity {
 
             @Override
             public void onSurfaceTextureUpdated(@NonNull SurfaceTexture surface) {
+                if (!previewShown) {
+                    previewShown = true;
+                    markStartup(previewMilestone);
+                }
             }
         };
     }
 
+    /**
+     * Opens the camera right away, in parallel with the other camera and with the
+     * view's surface coming up; the preview session starts once both are ready.
+     */
+    private void startCamera(String cameraId, TextureView textureView) {
+        textureView.setSurfaceTextureListener(createSurfaceTextureListener(cameraId, textureView));
+        openCamera(cameraId, textureView);
+    }
+
+    // UI thread: called when the device opens and when the surface becomes available.
+    private void startPreviewIfReady(String cameraId, TextureView textureView) {
+        if (!textureView.isAvailable() || !mCameraDevices.containsKey(cameraId) || !mPreviewsStarted.add(cameraId))
+            return;
+        Handler handler = mBackgroundHandlers.get(cameraId);
+        if (handler != null) {
+            handler.post(() -> createCameraPreviewSession(cameraId, textureView));
+        }
+    }
+
     private void openCamera(String cameraId, TextureView textureView) {
         try {
             if (ActivityCompat.checkSelfPermission(this,
@@ -355,7 +922,8 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onOpened(@NonNull CameraDevice camera) {
                 mCameraDevices.put(cameraId, camera);
-                createCameraPreviewSession(cameraId, textureView);
+                markStartup("camera_open_" + cameraId);
+                runOnUiThread(() -> startPreviewIfReady(cameraId, textureView));
             }
 
             @Override
@@ -387,12 +955,21 @@ public class MainActivity extends AppCompatActivity {
             SurfaceTexture texture = textureView.getSurfaceTexture();
             assert texture != null;
 
-            CameraCharacteristics characteristics = mCameraManager.getCameraCharacteristics(cameraId);
+            CameraCharacteristics characteristics = getCharacteristics(cameraId);
             StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
             assert map != null;
 
-            Size optimalSize = chooseOptimalSize(map.getOutputSizes(SurfaceTexture.class), textureView.getWidth(),
-                    textureView.getHeight());
+            // Sensor timestamps can only be compared with elapsedRealtimeNanos() on REALTIME sources.
+            Integer timestampSource = characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+            if (timestampSource != null
+                    && timestampSource == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME) {
+                mRealtimeTimestampCameras.add(cameraId);
+            }
+
+            StreamPlanner.Choice planned = getStreamPlan().get(cameraId);
+            Size optimalSize = planned != null ? toSize(planned.getPreview())
+                    : chooseOptimalSize(map.getOutputSizes(SurfaceTexture.class), textureView.getWidth(),
+                            textureView.getHeight());
             texture.setDefaultBufferSize(optimalSize.getWidth(), optimalSize.getHeight());
 
             runOnUiThread(() -> configureTransform(textureView.getWidth(), textureView.getHeight(), optimalSize,
@@ -409,11 +986,34 @@ public class MainActivity extends AppCompatActivity {
             final CaptureRequest.Builder previewRequestBuilder = cameraDevice
                     .createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
             previewRequestBuilder.addTarget(surface);
+            android.util.Range<Integer> defaultFpsRange = previewRequestBuilder
+                    .get(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE);
+            if (defaultFpsRange != null) {
+                mDefaultFpsRanges.put(cameraId, defaultFpsRange);
+            }
+            applySensorFpsRange(cameraId, previewRequestBuilder);
+
+            if (mUseAnalysisStream) {
+                // YUV analysis stream next to the preview; frames are handed to the
+                // detector on this camera's background handler, never the UI thread.
+                Size analysisSize = planned != null && planned.getAnalysis() != null
+                        ? toSize(planned.getAnalysis())
+                        : chooseAnalysisSize(map.getOutputSizes(ImageFormat.YUV_420_888), optimalSize);
+                ImageReader imageReader = ImageReader.newInstance(analysisSize.getWidth(),
+                        analysisSize.getHeight(), ImageFormat.YUV_420_888, ANALYSIS_MAX_IMAGES);
+                imageReader.setOnImageAvailableListener(reader -> processAnalysisImage(reader, cameraId),
+                        mBackgroundHandlers.get(cameraId));
+                ImageReader previousReader = mImageReaders.put(cameraId, imageReader);
+                if (previousReader != null) {
+                    previousReader.close();
+                }
+                mRotationCompensations.put(cameraId, getRotationCompensation(cameraId, this));
 
-            // ImageReader removed in favor of TextureView.getBitmap()
-            // Conditional ML Kit Setup: Only for the FIRST camera
-            // if (mCameraIds != null && mCameraIds.length > 0 &&
-            // cameraId.equals(mCameraIds[0])) { ... }
+                targets.add(imageReader.getSurface());
+                previewRequestBuilder.addTarget(imageReader.getSurface());
+                Log.d("CAMERA", "CameraId " + cameraId + " analysis stream " + analysisSize + ", "
+                        + analysisSize.getWidth() * analysisSize.getHeight() * 3 / 2 / 1024 + " KB/frame");
+            }
 
             cameraDevice.createCaptureSession(targets,
                     new CameraCaptureSession.StateCallback() {
@@ -423,15 +1023,18 @@ public class MainActivity extends AppCompatActivity {
                                 return;
                             }
                             mCaptureSessions.put(cameraId, session);
+                            mPreviewRequests.put(cameraId, previewRequestBuilder);
                             try {
                                 previewRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE,
                                         CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
                                 session.setRepeatingRequest(previewRequestBuilder.build(), null,
                                         mBackgroundHandlers.get(cameraId));
 
-                                // Use TextureView.getBitmap() loop for ML
-                                // Now enabling for ALL cameras
-                                startDetectionLoop(cameraId);
+                                // Analysis stream drives detection by itself; otherwise
+                                // fall back to the TextureView.getBitmap() loop.
+                                if (!mUseAnalysisStream) {
+                                    startDetectionLoop(cameraId);
+                                }
                             } catch (CameraAccessException e) {
                                 e.printStackTrace();
                             }
@@ -455,15 +1058,10 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void run() {
                 try {
-                    final TextureView targetTexture;
-                    if (mCameraIds.length > 0 && cameraId.equals(mCameraIds[0]))
-                        targetTexture = mTextureView1;
-                    else if (mCameraIds.length > 1 && cameraId.equals(mCameraIds[1]))
-                        targetTexture = mTextureView2;
-                    else
-                        targetTexture = null;
-
-                    if (targetTexture != null && targetTexture.isAvailable()) {
+                    CameraSlot slot = mCameraSlots.get(cameraId);
+                    final TextureView targetTexture = slot != null ? slot.textureView : null;
+
+                    if (targetTexture != null && targetTexture.isAvailable() && !isInferencePaused(cameraId)) {
                         // This must be called on main thread? No, documentation says:
                         // "This method usually invokes the underlying SurfaceTexture's updateTexImage()
                         // method..."
@@ -481,91 +1079,638 @@ public class MainActivity extends AppCompatActivity {
                         // created the TextureView."
                         // So we MUST call getBitmap() on UI thread.
 
+                        final long tickNanos = System.nanoTime();
                         runOnUiThread(() -> {
-                            android.graphics.Bitmap bitmap = targetTexture.getBitmap();
-                            if (bitmap != null) {
-                                // Process in background to avoid blocking UI
-                                Handler bgHandler = mBackgroundHandlers.get(cameraId);
-                                if (bgHandler != null) {
-                                    bgHandler.post(() -> processImage(bitmap, cameraId));
-                                }
+                            PipelineMetrics.CameraMetrics metrics = mMetrics.camera(cameraId);
+                            long copyStartNanos = System.nanoTime();
+                            metrics.recordNanos(PipelineMetrics.Stage.CAPTURE, copyStartNanos - tickNanos);
+
+                            FramePool<CapturedFrame> pool = getFramePool(cameraId, targetTexture);
+                            if (pool == null)
+                                return;
+                            // Null when every pooled bitmap is still in flight: skip this tick.
+                            CapturedFrame frame = pool.acquire();
+                            if (frame == null)
+                                return;
+
+                            // Fill the pooled bitmap in place instead of allocating a new one.
+                            try {
+                                targetTexture.getBitmap(frame.bitmap);
+                            } catch (RuntimeException e) {
+                                // E.g. the surface went away mid-copy: the bitmap holds nothing
+                                // usable and would otherwise never leave flight.
+                                Log.w("MediaPipe", "CameraId " + cameraId + " capture failed", e);
+                                pool.discard(frame);
+                                return;
+                            }
+                            frame.captureNanos = SystemClock.elapsedRealtimeNanos();
+                            frame.pool = pool;
+                            metrics.recordNanos(PipelineMetrics.Stage.COPY, System.nanoTime() - copyStartNanos);
+
+                            // Latest wins: a frame the background thread has not picked up yet is
+                            // stale now, and goes straight back to its pool.
+                            FrameMailbox<CapturedFrame> mailbox = getFrameMailbox(cameraId);
+                            if (!mailbox.publish(frame)) {
+                                metrics.onDropped();
+                            }
+
+                            // Process in background to avoid blocking UI
+                            Handler bgHandler = mBackgroundHandlers.get(cameraId);
+                            if (bgHandler == null || !bgHandler.post(() -> processLatestFrame(cameraId))) {
+                                mailbox.clear();
                             }
                         });
                     }
                 } catch (Exception e) {
                     Log.e("MediaPipe", "Loop error", e);
                 } finally {
-                    // Schedule next frame
+                    // Schedule next frame at the pace the detector is keeping up with
                     if (mCaptureSessions.containsKey(cameraId)) // Stop if camera closed
-                        handler.postDelayed(this, 100); // 10 FPS
+                        handler.postDelayed(this, getFramePacer(cameraId).getIntervalMs());
                 }
             }
         };
         handler.post(detectionRunnable);
     }
 
-    private void processImage(android.graphics.Bitmap bitmap, String cameraId) {
-        if (mIsProcessingFrames.getOrDefault(cameraId, false)) {
-            // Drop frame if busy, but recycle bitmap!
-            bitmap.recycle();
-            return;
+    private FrameMailbox<CapturedFrame> getFrameMailbox(String cameraId) {
+        return mFrameMailboxes.computeIfAbsent(cameraId,
+                id -> new FrameMailbox<>(frame -> frame.pool.release(frame)));
+    }
+
+    // Camera's background thread. Posted once per captured frame; frames replaced in
+    // the mailbox meanwhile leave nothing to do.
+    private void processLatestFrame(String cameraId) {
+        CapturedFrame frame = getFrameMailbox(cameraId).take();
+        if (frame != null) {
+            processImage(frame, cameraId);
         }
-        mIsProcessingFrames.put(cameraId, true);
+    }
 
+    private void processImage(CapturedFrame frame, String cameraId) {
+        FramePool<CapturedFrame> pool = frame.pool;
+        Bitmap bitmap = frame.bitmap;
+        FramePacer pacer = getFramePacer(cameraId);
+        long now = SystemClock.uptimeMillis();
+        if (mMotionGating) {
+            long gateStartNanos = System.nanoTime();
+            MotionGate gate = getMotionGate(cameraId);
+            sampleLuma(bitmap, gate);
+            boolean analyse = gate.shouldAnalyze(now);
+            mMetrics.camera(cameraId).recordNanos(PipelineMetrics.Stage.GATE, System.nanoTime() - gateStartNanos);
+            if (!analyse) {
+                pool.release(frame);
+                pacer.onFrameSkipped(now);
+                reuseResults(cameraId, now);
+                return;
+            }
+        }
+        pacer.onFrameSubmitted(now);
+
+        // Frames reach the detector one at a time per camera: they come out of the
+        // mailbox on this camera's single background thread.
         try {
-            if (!mObjectDetectors.containsKey(cameraId)) {
-                initObjectDetector(cameraId);
+            // Bitmap from TextureView is ARGB_8888 by default.
+            MPImage mpImage = new com.google.mediapipe.framework.image.BitmapImageBuilder(bitmap).build();
+
+            // TextureView bitmap is already oriented
+            getInferenceCaptureNanos(cameraId).set(frame.captureNanos);
+            if (mFrameHolder != null) {
+                mFrameHolder.hold(cameraId, bitmap);
+            }
+            MosaicBatcher mosaicBatcher = mMosaicBatcher;
+            if (mTileLayout != null) {
+                runTiledDetection(cameraId, bitmap, mpImage);
+            } else if (mosaicBatcher != null) {
+                // Detections come back in this frame's pixels, maybe from another camera's thread.
+                mFrameSizes.put(cameraId, new Size(bitmap.getWidth(), bitmap.getHeight()));
+                mosaicBatcher.submit(cameraId, bitmap, mDetectorPool);
+            } else {
+                runDetection(cameraId, mpImage, 0, bitmap.getWidth(), bitmap.getHeight());
             }
+        } catch (Exception e) {
+            Log.e("MediaPipe", "Error processing image: " + e.toString(), e);
+            onFrameDropped(cameraId);
+        } finally {
+            if (mFrameHolder != null) {
+                mFrameHolder.release(cameraId);
+            }
+            // Important: Return the bitmap so the next getBitmap(Bitmap) can reuse it
+            pool.release(frame);
+            long frames = pool.getHitCount() + pool.getMissCount();
+            if (frames % FRAME_POOL_STATS_INTERVAL == 0) {
+                Log.d("FramePool", "CameraId " + cameraId + " " + pool + " " + getFrameMailbox(cameraId));
+            }
+        }
+    }
+
+    private java.util.concurrent.atomic.AtomicLong getInferenceCaptureNanos(String cameraId) {
+        return mInferenceCaptureNanos.computeIfAbsent(cameraId, id -> new java.util.concurrent.atomic.AtomicLong());
+    }
 
-            ObjectDetector detector = mObjectDetectors.get(cameraId);
-            if (detector != null) {
-                // Bitmap from TextureView is ARGB_8888 by default.
-                MPImage mpImage = new com.google.mediapipe.framework.image.BitmapImageBuilder(bitmap).build();
+    private FramePool<CapturedFrame> getFramePool(String cameraId, TextureView textureView) {
+        final int width = textureView.getWidth();
+        final int height = textureView.getHeight();
+        if (width == 0 || height == 0)
+            return null;
+
+        // Pooled bitmaps hold the view scaled to fit the model input (getBitmap scales
+        // for us); start a new pool when the view is resized.
+        // Tiled, so large that each tile comes out about the model input.
+        Resolution limit = mTileLayout != null ? mTileLayout.frameSizeFor(MODEL_INPUT_SIZE, MODEL_INPUT_SIZE)
+                : mCascadeRefiner != null ? new Resolution(CASCADE_FRAME_SIZE, CASCADE_FRAME_SIZE)
+                : new Resolution(MODEL_INPUT_SIZE, MODEL_INPUT_SIZE);
+        Resolution fit = StreamSizes.fitWithin(width, height, limit.getWidth(), limit.getHeight());
+        Size size = new Size(fit.getWidth(), fit.getHeight());
+        FramePool<CapturedFrame> pool = mFramePools.get(cameraId);
+        if (pool != null && size.equals(mFramePoolSizes.get(cameraId))) {
+            return pool;
+        }
+        if (pool != null) {
+            pool.close();
+        }
+        pool = new FramePool<>(FRAME_POOL_CAPACITY, new FramePool.Allocator<CapturedFrame>() {
+            @Override
+            public CapturedFrame allocate() {
+                return new CapturedFrame(
+                        Bitmap.createBitmap(size.getWidth(), size.getHeight(), Bitmap.Config.ARGB_8888));
+            }
 
-                com.google.mediapipe.tasks.vision.core.ImageProcessingOptions imageProcessingOptions = com.google.mediapipe.tasks.vision.core.ImageProcessingOptions
-                        .builder()
-                        .setRotationDegrees(0) // TextureView bitmap is already oriented
-                        .build();
+            @Override
+            public void free(CapturedFrame frame) {
+                frame.bitmap.recycle();
+            }
+        });
+        mFramePools.put(cameraId, pool);
+        mFramePoolSizes.put(cameraId, size);
+        Log.d("FramePool", "CameraId " + cameraId + " view " + width + "x" + height + " captured at " + size + ", "
+                + size.getWidth() * size.getHeight() * 4 / 1024 + " KB/frame (was " + width * height * 4 / 1024
+                + " KB)");
+        return pool;
+    }
+
+    private void processAnalysisImage(ImageReader reader, String cameraId) {
+        // Only the newest frame matters; older queued frames are dropped here.
+        Image image = reader.acquireLatestImage();
+        if (image == null)
+            return;
+        if (isInferencePaused(cameraId)) {
+            image.close();
+            return;
+        }
 
-                // Synchronous detection
-                ObjectDetectionResult result = detector.detect(mpImage, imageProcessingOptions);
+        // The camera delivers faster than we analyse; only take frames at the paced rate.
+        FramePacer pacer = getFramePacer(cameraId);
+        long now = SystemClock.uptimeMillis();
+        if (!pacer.shouldCapture(now)) {
+            image.close();
+            return;
+        }
 
-                runOnUiThread(() -> {
-                    OverlayView targetOverlay = null;
-                    if (mCameraIds.length > 0 && cameraId.equals(mCameraIds[0]))
-                        targetOverlay = mOverlayView1;
-                    else if (mCameraIds.length > 1 && cameraId.equals(mCameraIds[1]))
-                        targetOverlay = mOverlayView2;
+        PipelineMetrics.CameraMetrics metrics = mMetrics.camera(cameraId);
+        if (mMotionGating) {
+            long gateStartNanos = System.nanoTime();
+            MotionGate gate = getMotionGate(cameraId);
+            Image.Plane luma = image.getPlanes()[0];
+            MotionGate.sampleLuma(luma.getBuffer(), luma.getRowStride(), luma.getPixelStride(), image.getWidth(),
+                    image.getHeight(), gate.thumbnail(), gate.getThumbnailWidth(), gate.getThumbnailHeight());
+            boolean analyse = gate.shouldAnalyze(now);
+            metrics.recordNanos(PipelineMetrics.Stage.GATE, System.nanoTime() - gateStartNanos);
+            if (!analyse) {
+                image.close();
+                pacer.onFrameSkipped(now);
+                reuseResults(cameraId, now);
+                return;
+            }
+        }
+        pacer.onFrameSubmitted(now);
 
-                    if (targetOverlay != null) {
-                        int displayWidth = bitmap.getWidth();
-                        int displayHeight = bitmap.getHeight();
+        if (mRealtimeTimestampCameras.contains(cameraId)) {
+            metrics.recordNanos(PipelineMetrics.Stage.CAPTURE, SystemClock.elapsedRealtimeNanos() - image.getTimestamp());
+        }
 
-                        if (result.detections() != null && !result.detections().isEmpty()) {
-                            Log.d("MediaPipe", "Detected: " + result.detections().size());
-                        }
+        InferenceScheduler<Image> scheduler = mInferenceScheduler;
+        if (scheduler != null) {
+            // Latest wins: a frame still waiting for this camera is closed and counted as dropped.
+            scheduler.submit(cameraId, image);
+        } else {
+            analyseImage(cameraId, image);
+        }
+    }
 
-                        targetOverlay.setResults(result.detections(), displayHeight,
-                                displayWidth);
-                    }
-                });
+    private void analyseImage(String cameraId, Image image) {
+        PipelineMetrics.CameraMetrics metrics = mMetrics.camera(cameraId);
+        try {
+            Integer rotation = mRotationCompensations.get(cameraId);
+            int rotationDegrees = rotation != null ? rotation : 0;
+            long copyStartNanos = System.nanoTime();
+            // The detector only takes Bitmap- or ByteBuffer-backed images, not a media.Image.
+            Image.Plane[] planes = image.getPlanes();
+            java.nio.ByteBuffer rgba = getYuvConverter(cameraId).convert(planes[0].getBuffer(),
+                    planes[0].getRowStride(), planes[0].getPixelStride(), planes[1].getBuffer(),
+                    planes[2].getBuffer(), planes[1].getRowStride(), planes[1].getPixelStride(), image.getWidth(),
+                    image.getHeight());
+            MPImage mpImage = new ByteBufferImageBuilder(rgba, image.getWidth(), image.getHeight(),
+                    MPImage.IMAGE_FORMAT_RGBA).build();
+            metrics.recordNanos(PipelineMetrics.Stage.COPY, System.nanoTime() - copyStartNanos);
+
+            // Detections come back in the rotated (upright) image's coordinates.
+            boolean swapped = rotationDegrees == 90 || rotationDegrees == 270;
+            int uprightWidth = swapped ? image.getHeight() : image.getWidth();
+            int uprightHeight = swapped ? image.getWidth() : image.getHeight();
+            // Sensor timestamps share elapsedRealtimeNanos()'s clock only on some cameras.
+            boolean realtime = mRealtimeTimestampCameras.contains(cameraId);
+            getInferenceCaptureNanos(cameraId).set(realtime ? image.getTimestamp() : 0);
+            if (mFrameHolder != null) {
+                mFrameHolder.hold(cameraId, image, rotationDegrees);
             }
+            runDetection(cameraId, mpImage, rotationDegrees, uprightWidth, uprightHeight);
         } catch (Exception e) {
-            Log.e("MediaPipe", "Error processing image: " + e.toString(), e);
+            Log.e("MediaPipe", "Error processing analysis image: " + e.toString(), e);
+            onFrameDropped(cameraId);
         } finally {
-            // Important: Recycle the bitmap we created with getBitmap()
-            if (!bitmap.isRecycled()) {
-                bitmap.recycle();
+            if (mFrameHolder != null) {
+                mFrameHolder.release(cameraId);
             }
-            mIsProcessingFrames.put(cameraId, false);
+            image.close();
+        }
+    }
+
+    // A camera's analysis frames are never converted concurrently, so one buffer each.
+    private YuvConverter getYuvConverter(String cameraId) {
+        return mYuvConverters.computeIfAbsent(cameraId, id -> new YuvConverter());
+    }
+
+    private void runDetection(String cameraId, MPImage mpImage, int rotationDegrees, int imageWidth,
+            int imageHeight) {
+        com.google.mediapipe.tasks.vision.core.ImageProcessingOptions imageProcessingOptions = com.google.mediapipe.tasks.vision.core.ImageProcessingOptions
+                .builder()
+                .setRotationDegrees(rotationDegrees)
+                .build();
+
+        // Results come back through the pool's listener, which reads the frame size from here.
+        mFrameSizes.put(cameraId, new Size(imageWidth, imageHeight));
+        // Returns false, dropping the frame, while no detector is idle (still loading or
+        // busy with the other camera).
+        DetectorPool detectorPool = mDetectorPool;
+        if (detectorPool != null) {
+            detectorPool.detect(cameraId, mpImage, imageProcessingOptions);
+        } else {
+            onFrameDropped(cameraId);
+        }
+    }
+
+    // Camera's background thread. Runs the tiles of {@code bitmap} on the detector pool in
+    // parallel and hands the merged detections on as one frame's results.
+    private void runTiledDetection(String cameraId, Bitmap bitmap, MPImage fullFrame) throws InterruptedException {
+        DetectorPool detectorPool = mDetectorPool;
+        if (detectorPool == null) {
+            onFrameDropped(cameraId);
+            return;
+        }
+        long timestampMs = SystemClock.uptimeMillis();
+        mFrameSizes.put(cameraId, new Size(bitmap.getWidth(), bitmap.getHeight()));
+        TiledFrame tiled = getTiledFrame(cameraId, bitmap.getWidth(), bitmap.getHeight());
+
+        List<java.util.concurrent.Callable<List<Detection>>> tasks = new ArrayList<>(tiled.tileCount);
+        for (int i = 0; i < tiled.tileCount; i++) {
+            final MPImage image;
+            if (tiled.crops[i] == null) {
+                // The full-frame tile.
+                image = fullFrame;
+            } else {
+                int t = i * FrameGeometry.BOX_STRIDE;
+                tiled.canvases[i].drawBitmap(bitmap, -tiled.tiles[t], -tiled.tiles[t + 1], null);
+                image = new com.google.mediapipe.framework.image.BitmapImageBuilder(tiled.crops[i]).build();
+            }
+            tasks.add(() -> detectorPool.detectNow(image, TILE_DETECTOR_TIMEOUT_MS));
+        }
+        List<java.util.concurrent.Future<List<Detection>>> results = mTileExecutor.invokeAll(tasks);
+
+        TileMerger merger = tiled.merger;
+        merger.begin();
+        int completed = 0;
+        for (int i = 0; i < tiled.tileCount; i++) {
+            List<Detection> detections;
+            try {
+                detections = results.get(i).get();
+            } catch (java.util.concurrent.ExecutionException e) {
+                Log.e("MediaPipe", "Tile " + i + " failed", e.getCause());
+                continue;
+            }
+            if (detections == null) {
+                continue;
+            }
+            completed++;
+            int t = i * FrameGeometry.BOX_STRIDE;
+            for (int d = 0, n = detections.size(); d < n; d++) {
+                Detection detection = detections.get(d);
+                RectF box = detection.boundingBox();
+                List<Category> categories = detection.categories();
+                Category top = categories.isEmpty() ? null : categories.get(0);
+                merger.add(i, tiled.tiles[t], tiled.tiles[t + 1], box.left, box.top, box.right, box.bottom,
+                        top != null ? top.score() : 0f, top != null ? top.index() : -1,
+                        top != null ? top.categoryName() : null);
+            }
+        }
+        if (completed == 0) {
+            // No detector became idle for any tile.
+            onFrameDropped(cameraId);
+            return;
+        }
+        int count = merger.merge();
+        float[] boxes = merger.boxes();
+        float[] scores = merger.scores();
+        int[] categories = merger.categories();
+        String[] labels = merger.labels();
+        List<Detection> merged = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int b = i * FrameGeometry.BOX_STRIDE;
+            merged.add(Detection.create(
+                    java.util.Collections.singletonList(
+                            Category.create(scores[i], categories[i], labels[i], labels[i])),
+                    new RectF(boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3])));
+        }
+        handleResults(cameraId, merged, timestampMs);
+    }
+
+    private TiledFrame getTiledFrame(String cameraId, int width, int height) {
+        TiledFrame tiled = mTiledFrames.computeIfAbsent(cameraId, id -> new TiledFrame(mTileLayout));
+        if (tiled.sourceWidth == width && tiled.sourceHeight == height) {
+            return tiled;
+        }
+        // New capture size: lay the tiles out again and reallocate their crops.
+        for (Bitmap crop : tiled.crops) {
+            if (crop != null) {
+                crop.recycle();
+            }
+        }
+        tiled.tileCount = mTileLayout.layout(width, height, tiled.tiles);
+        for (int i = 0; i < tiled.tileCount; i++) {
+            int t = i * FrameGeometry.BOX_STRIDE;
+            int tileWidth = tiled.tiles[t + 2] - tiled.tiles[t];
+            int tileHeight = tiled.tiles[t + 3] - tiled.tiles[t + 1];
+            if (tileWidth == width && tileHeight == height) {
+                // The full frame goes to the detector as it is.
+                tiled.crops[i] = null;
+                tiled.canvases[i] = null;
+            } else {
+                tiled.crops[i] = Bitmap.createBitmap(tileWidth, tileHeight, Bitmap.Config.ARGB_8888);
+                tiled.canvases[i] = new android.graphics.Canvas(tiled.crops[i]);
+            }
+        }
+        tiled.sourceWidth = width;
+        tiled.sourceHeight = height;
+        Log.d("MediaPipe", "CameraId " + cameraId + " " + tiled.tileCount + " tiles of " + width + "x" + height);
+        return tiled;
+    }
+
+    private void onFrameDropped(String cameraId) {
+        getFramePacer(cameraId).onFrameDropped();
+        mMetrics.camera(cameraId).onDropped();
+    }
+
+    private FramePacer getFramePacer(String cameraId) {
+        return mFramePacers.computeIfAbsent(cameraId, id -> new FramePacer(mPacingMode, PACING_MIN_FPS,
+                mTracking ? PACING_MAX_FPS_TRACKING : PACING_MAX_FPS, PACING_TARGET_LATENCY_MS, mFrameBudget));
+    }
+
+    private void publishResults(String cameraId, List<Detection> detections, long timestampMs, int imageWidth,
+            int imageHeight) {
+        long latencyMs = SystemClock.uptimeMillis() - timestampMs;
+        final long postNanos = System.nanoTime();
+        final long captureNanos = getInferenceCaptureNanos(cameraId).get();
+        runOnUiThread(() -> {
+            PipelineMetrics.CameraMetrics metrics = mMetrics.camera(cameraId);
+            metrics.recordNanos(PipelineMetrics.Stage.UI_POST, System.nanoTime() - postNanos);
+            if (captureNanos > 0) {
+                metrics.recordNanos(PipelineMetrics.Stage.END_TO_END, SystemClock.elapsedRealtimeNanos() - captureNanos);
+            }
+
+            CameraSlot slot = mCameraSlots.get(cameraId);
+            OverlayView targetOverlay = slot != null ? slot.overlayView : null;
+
+            if (targetOverlay != null && targetOverlay.getWidth() > 0) {
+                // Detections are in the analysed frame's pixels; place that frame the way
+                // configureTransform placed the preview under the overlay.
+                if (mPreviewCenterCrop) {
+                    mOverlayTransform.setCenterCrop(imageWidth, imageHeight, targetOverlay.getWidth(),
+                            targetOverlay.getHeight());
+                } else {
+                    mOverlayTransform.setStretch(imageWidth, imageHeight, targetOverlay.getWidth(),
+                            targetOverlay.getHeight());
+                }
+
+                if (detections != null && !detections.isEmpty()) {
+                    Log.d("MediaPipe", "Detected: " + detections.size() + " (" + mRunningMode + ", "
+                            + latencyMs + " ms)");
+                }
+
+                if (mTracking) {
+                    targetOverlay.setTracker(getTracker(cameraId), mOverlayTransform);
+                } else {
+                    targetOverlay.setResults(detections, mOverlayTransform);
+                }
+            }
+        });
+    }
+
+    private boolean markStartup(String milestone) {
+        return mStartupMetrics.mark(milestone, SystemClock.uptimeMillis());
+    }
+
+    private void saveStartupMetrics() {
+        final java.io.File file = new java.io.File(new java.io.File(getFilesDir(), "metrics"), "startup_metrics.txt");
+        new Thread(() -> {
+            String version;
+            try {
+                version = getPackageManager().getPackageInfo(getPackageName(), 0).versionName;
+            } catch (PackageManager.NameNotFoundException e) {
+                version = "unknown";
+            }
+            Log.i("Startup", mStartupMetrics.format() + " (" + mDetectorPool + ")");
+            try {
+                mStartupMetrics.append(file, version, System.currentTimeMillis());
+            } catch (java.io.IOException e) {
+                Log.e("Startup", "Failed to write " + file, e);
+            }
+        }, "StartupMetrics").start();
+    }
+
+    // Cameras streamed at once; sizes the detector pool and inference workers.
+    private int countCameras() {
+        try {
+            return Math.max(1, selectCameras().size());
+        } catch (CameraAccessException e) {
+            return 1;
+        }
+    }
+
+    // UI thread. Restarts a running scheduler with the new worker count.
+    private void setInferenceWorkers(int workers) {
+        if (workers == mInferenceWorkers)
+            return;
+        Log.i("MediaPipe", "Inference workers " + mInferenceWorkers + " -> " + workers);
+        mInferenceWorkers = workers;
+        if (mInferenceScheduler != null) {
+            stopInferenceScheduler();
+            startInferenceScheduler();
+        }
+    }
+
+    private void applyInferenceWeights() {
+        if (mInferenceScheduler != null && mInferenceWeights != null && mCameraIds != null) {
+            for (int i = 0; i < Math.min(mCameraIds.size(), mInferenceWeights.length); i++) {
+                mInferenceScheduler.setWeight(mCameraIds.get(i), Math.max(1, mInferenceWeights[i]));
+            }
+        }
+    }
+
+    private void startInferenceScheduler() {
+        if (mInferenceWorkers <= 0 || mInferenceScheduler != null)
+            return;
+        mInferenceScheduler = new InferenceScheduler<>(mInferenceWorkers, mInferencePolicy,
+                new InferenceScheduler.Worker<Image>() {
+                    @Override
+                    public void process(String cameraId, Image image) {
+                        analyseImage(cameraId, image);
+                    }
+
+                    @Override
+                    public void discard(String cameraId, Image image) {
+                        image.close();
+                        onFrameDropped(cameraId);
+                    }
+                }, "Inference");
+        applyInferenceWeights();
+        mInferenceScheduler.start();
+    }
+
+    private void startReplay() {
+        if (mReplayThread != null)
+            return;
+        final java.io.File recording = new java.io.File(getExternalFilesDir(null), mReplayPath);
+        mReplayThread = new Thread(() -> {
+            MediaPipeDetector detector = null;
+            try {
+                detector = new MediaPipeDetector(this);
+                PipelineDriver<Frame> driver = new PipelineDriver<>(detector, PipelineDriver.FRAMES,
+                        Math.max(1, mInferenceWorkers), mInferencePolicy, mMetrics);
+                if (mMotionGating) {
+                    driver.setMotionGate(MOTION_THUMBNAIL_WIDTH, MOTION_THUMBNAIL_HEIGHT, MOTION_PIXEL_NOISE,
+                            mMotionThreshold, MOTION_REFRESH_MS);
+                }
+                for (int i = 0; i < mReplayStreams; i++) {
+                    driver.addSource("replay" + i, new ReplayFrameSource(recording, mReplayFps, false));
+                }
+                mReplayDriver = driver;
+                long elapsedNanos = driver.run();
+                for (int i = 0; i < mReplayStreams; i++) {
+                    String id = "replay" + i;
+                    PipelineMetrics.CameraMetrics metrics = mMetrics.camera(id);
+                    Log.i("MediaPipe", "Replay " + id + ": " + driver.getAcquiredCount(id) + " frames, "
+                            + metrics.getProcessedCount() + " processed in " + elapsedNanos / 1_000_000 + " ms ("
+                            + String.format(java.util.Locale.US, "%.1f",
+                                    metrics.getProcessedCount() * 1e9 / elapsedNanos) + " inferences/s)");
+                }
+                Log.i("MediaPipe", mMetrics.snapshot(System.nanoTime()));
+            } catch (java.io.IOException e) {
+                Log.e("MediaPipe", "Replay of " + recording + " failed", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                mReplayDriver = null;
+                if (detector != null) {
+                    detector.close();
+                }
+            }
+        }, "Replay");
+        mReplayThread.start();
+    }
+
+    private void stopReplay() {
+        if (mReplayThread == null)
+            return;
+        PipelineDriver<Frame> driver = mReplayDriver;
+        if (driver != null) {
+            driver.stop();
+        }
+        try {
+            mReplayThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mReplayThread = null;
+    }
+
+    private void stopInferenceScheduler() {
+        if (mInferenceScheduler == null)
+            return;
+        InferenceScheduler<Image> scheduler = mInferenceScheduler;
+        mInferenceScheduler = null;
+        scheduler.close();
+        Log.d("MediaPipe", scheduler.toString());
+    }
+
+    private MotionGate getMotionGate(String cameraId) {
+        return mMotionGates.computeIfAbsent(cameraId, id -> new MotionGate(MOTION_THUMBNAIL_WIDTH,
+                MOTION_THUMBNAIL_HEIGHT, MOTION_PIXEL_NOISE, mMotionThreshold, MOTION_REFRESH_MS));
+    }
+
+    private static void sampleLuma(Bitmap bitmap, MotionGate gate) {
+        byte[] thumbnail = gate.thumbnail();
+        int width = gate.getThumbnailWidth();
+        int height = gate.getThumbnailHeight();
+        for (int ty = 0; ty < height; ty++) {
+            int y = (ty * 2 + 1) * bitmap.getHeight() / (height * 2);
+            for (int tx = 0; tx < width; tx++) {
+                int x = (tx * 2 + 1) * bitmap.getWidth() / (width * 2);
+                thumbnail[ty * width + tx] = (byte) MotionGate.luma(bitmap.getPixel(x, y));
+            }
+        }
+    }
+
+    // The scene has not changed since the last analysed frame: show its results again.
+    private void reuseResults(String cameraId, long timestampMs) {
+        mMetrics.camera(cameraId).onSkipped();
+        List<Detection> detections = mLastDetections.get(cameraId);
+        Size frameSize = mFrameSizes.get(cameraId);
+        if (detections == null || frameSize == null)
+            return;
+        if (mTracking) {
+            trackResults(cameraId, detections, timestampMs);
+        }
+        publishResults(cameraId, detections, timestampMs, frameSize.getWidth(), frameSize.getHeight());
+    }
+
+    private BoxTracker getTracker(String cameraId) {
+        return mTrackers.computeIfAbsent(cameraId, id -> new BoxTracker());
+    }
+
+    private void trackResults(String cameraId, List<Detection> detections, long timestampMs) {
+        BoxTracker tracker = getTracker(cameraId);
+        // LIVE_STREAM may deliver two results for one camera at once; keep each frame together.
+        synchronized (tracker) {
+            if (detections != null) {
+                for (Detection detection : detections) {
+                    RectF box = detection.boundingBox();
+                    String label = null;
+                    float score = 0f;
+                    if (detection.categories() != null && !detection.categories().isEmpty()) {
+                        label = detection.categories().get(0).categoryName();
+                        score = detection.categories().get(0).score();
+                    }
+                    tracker.stage(box.left, box.top, box.right, box.bottom, score, label);
+                }
+            }
+            tracker.update(timestampMs);
         }
     }
 
     private int getRotationCompensation(String cameraId, android.app.Activity activity) {
         try {
-            CameraCharacteristics characteristics = mCameraManager.getCameraCharacteristics(cameraId);
+            CameraCharacteristics characteristics = getCharacteristics(cameraId);
             int deviceRotation = activity.getWindowManager().getDefaultDisplay().getRotation();
-            int rotationCompensation = 0;
             Integer sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
             if (sensorOrientation == null)
                 sensorOrientation = 0;
@@ -573,28 +1718,8 @@ public class MainActivity extends AppCompatActivity {
             Integer lensFacing = characteristics.get(CameraCharacteristics.LENS_FACING);
             boolean isFrontFacing = lensFacing != null && lensFacing == CameraCharacteristics.LENS_FACING_FRONT;
 
-            int surfaceRotation = 0;
-            switch (deviceRotation) {
-                case Surface.ROTATION_0:
-                    surfaceRotation = 0;
-                    break;
-                case Surface.ROTATION_90:
-                    surfaceRotation = 90;
-                    break;
-                case Surface.ROTATION_180:
-                    surfaceRotation = 180;
-                    break;
-                case Surface.ROTATION_270:
-                    surfaceRotation = 270;
-                    break;
-            }
-
-            if (isFrontFacing) {
-                rotationCompensation = (sensorOrientation + surfaceRotation) % 360;
-            } else { // Back-facing
-                rotationCompensation = (sensorOrientation - surfaceRotation + 360) % 360;
-            }
-            return rotationCompensation;
+            // Surface.ROTATION_* are quarter turns.
+            return FrameGeometry.rotationCompensation(sensorOrientation, deviceRotation * 90, isFrontFacing);
         } catch (CameraAccessException e) {
             e.printStackTrace();
             return 0;
@@ -606,63 +1731,246 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
         int rotation = getWindowManager().getDefaultDisplay().getRotation();
+        // In landscape the buffer is scaled to cover the view; otherwise TextureView stretches it.
+        mPreviewCenterCrop = rotation == Surface.ROTATION_90 || rotation == Surface.ROTATION_270;
+        float[] values = new float[9];
+        FrameGeometry.previewTransform(viewWidth, viewHeight, previewSize.getWidth(), previewSize.getHeight(),
+                rotation, values);
+        values[8] = 1;
         Matrix matrix = new Matrix();
-        RectF viewRect = new RectF(0, 0, viewWidth, viewHeight);
-        RectF bufferRect = new RectF(0, 0, previewSize.getHeight(), previewSize.getWidth());
-        float centerX = viewRect.centerX();
-        float centerY = viewRect.centerY();
-        if (Surface.ROTATION_90 == rotation || Surface.ROTATION_270 == rotation) {
-            bufferRect.offset(centerX - bufferRect.centerX(), centerY - bufferRect.centerY());
-            matrix.setRectToRect(viewRect, bufferRect, Matrix.ScaleToFit.FILL);
-            float scale = Math.max(
-                    (float) viewHeight / previewSize.getHeight(),
-                    (float) viewWidth / previewSize.getWidth());
-            matrix.postScale(scale, scale, centerX, centerY);
-            matrix.postRotate(90 * (rotation - 2), centerX, centerY);
-        } else if (Surface.ROTATION_180 == rotation) {
-            matrix.postRotate(180, centerX, centerY);
-        }
+        matrix.setValues(values);
         textureView.setTransform(matrix);
     }
 
-    private Size chooseOptimalSize(Size[] choices, int textureViewWidth, int textureViewHeight) {
-        List<Size> bigEnough = new ArrayList<>();
-        List<Size> notBigEnough = new ArrayList<>();
-        int w = choices[0].getWidth();
-        int h = choices[0].getHeight();
-        for (Size option : choices) {
-            if (option.getHeight() == option.getWidth() * h / w &&
-                    option.getWidth() >= textureViewWidth && option.getHeight() >= textureViewHeight) {
-                bigEnough.add(option);
-            } else {
-                notBigEnough.add(option);
+    /**
+     * Sizes for every streamed camera whose view is laid out, planned once per session
+     * start so concurrent cameras share the ISP instead of each taking what it likes.
+     */
+    private StreamPlanner.Plan getStreamPlan() {
+        synchronized (mStreamPlanLock) {
+            if (mStreamPlan != null)
+                return mStreamPlan;
+            List<StreamPlanner.CameraStreams> cameras = new ArrayList<>();
+            for (String cameraId : mCameraIds) {
+                CameraSlot slot = mCameraSlots.get(cameraId);
+                StreamConfigurationMap map;
+                try {
+                    map = getCharacteristics(cameraId).get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+                } catch (CameraAccessException e) {
+                    // Left to the per-camera choice in createCameraPreviewSession.
+                    continue;
+                }
+                if (slot == null || map == null || slot.textureView.getWidth() == 0)
+                    continue;
+                Resolution[] analysisSizes = mUseAnalysisStream
+                        ? toResolutions(map.getOutputSizes(ImageFormat.YUV_420_888)) : new Resolution[0];
+                cameras.add(new StreamPlanner.CameraStreams(cameraId, toResolutions(map.getOutputSizes(SurfaceTexture.class)),
+                        analysisSizes, slot.textureView.getWidth(), slot.textureView.getHeight()));
             }
+            boolean concurrent = mCameraIds.size() > 1;
+            StreamPlanner.Limits limits = new StreamPlanner.Limits(concurrent ? CONCURRENT_MAX_PREVIEW : null,
+                    concurrent ? CONCURRENT_MAX_ANALYSIS : null, (long) (mStreamBudgetMpx * 1000000), STREAM_FPS);
+            mStreamPlan = StreamPlanner.plan(cameras, limits, getAnalysisMinWidth());
+            Log.i("CAMERA", mStreamPlan.toString());
+            return mStreamPlan;
         }
+    }
 
-        if (bigEnough.size() > 0) {
-            return Collections.min(bigEnough, new Comparator<Size>() {
-                @Override
-                public int compare(Size lhs, Size rhs) {
-                    return Long.compare((long) lhs.getWidth() * lhs.getHeight(),
-                            (long) rhs.getWidth() * rhs.getHeight());
-                }
-            });
-        } else if (notBigEnough.size() > 0) {
-            return Collections.max(notBigEnough, new Comparator<Size>() {
+    private int getAnalysisMinWidth() {
+        return mGovernorLevel.includes(ThermalGovernor.Level.ANALYSIS_RESOLUTION) ? THROTTLED_ANALYSIS_MIN_WIDTH
+                : ANALYSIS_MIN_WIDTH;
+    }
+
+    private void startGovernor() {
+        if (!mGovernorEnabled || mThermalListener != null)
+            return;
+        android.os.PowerManager power = (android.os.PowerManager) getSystemService(Context.POWER_SERVICE);
+        mThermalListener = status -> evaluateGovernor();
+        power.addThermalStatusListener(getMainExecutor(), mThermalListener);
+        mGovernorHandler.post(mGovernorTick);
+    }
+
+    private void stopGovernor() {
+        if (mThermalListener == null)
+            return;
+        android.os.PowerManager power = (android.os.PowerManager) getSystemService(Context.POWER_SERVICE);
+        power.removeThermalStatusListener(mThermalListener);
+        mThermalListener = null;
+        mGovernorHandler.removeCallbacks(mGovernorTick);
+    }
 
-                @Override
-                public int compare(Size lhs, Size rhs) {
-                    return Long.compare((long) lhs.getWidth() * lhs.getHeight(),
-                            (long) rhs.getWidth() * rhs.getHeight());
+    // UI thread: on every tick and every thermal status change.
+    private void evaluateGovernor() {
+        android.os.PowerManager power = (android.os.PowerManager) getSystemService(Context.POWER_SERVICE);
+        // Sticky broadcast: returns the last battery state without registering anything.
+        android.content.Intent battery = registerReceiver(null,
+                new android.content.IntentFilter(android.content.Intent.ACTION_BATTERY_CHANGED));
+        int batteryPercent = -1;
+        boolean charging = false;
+        if (battery != null) {
+            int level = battery.getIntExtra(android.os.BatteryManager.EXTRA_LEVEL, -1);
+            int scale = battery.getIntExtra(android.os.BatteryManager.EXTRA_SCALE, -1);
+            if (level >= 0 && scale > 0) {
+                batteryPercent = level * 100 / scale;
+            }
+            charging = battery.getIntExtra(android.os.BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        }
+        ThermalGovernor.Level level = mThermalGovernor.update(SystemClock.uptimeMillis(),
+                power.getCurrentThermalStatus(), batteryPercent, charging, power.isPowerSaveMode());
+        if (level != mGovernorLevel) {
+            applyGovernorLevel(mGovernorLevel, level, power.getCurrentThermalStatus(), batteryPercent);
+        }
+    }
+
+    private void applyGovernorLevel(ThermalGovernor.Level from, ThermalGovernor.Level to, int thermalStatus,
+            int batteryPercent) {
+        Log.i("Thermal", "Level " + from + " -> " + to + " (thermal status " + thermalStatus + ", battery "
+                + batteryPercent + "%)");
+        mGovernorLevel = to;
+        mFrameBudget.setTotalFps(to.includes(ThermalGovernor.Level.ANALYSIS_FPS) ? THROTTLED_BUDGET_FPS
+                : PACING_BUDGET_FPS);
+        // A rebuilt session picks up the sensor range too. Without an analysis stream there
+        // is no analysis resolution to change, and a rebuilt session would start a second
+        // TextureView capture loop next to the running one.
+        if (mUseAnalysisStream && from.includes(ThermalGovernor.Level.ANALYSIS_RESOLUTION) != to
+                .includes(ThermalGovernor.Level.ANALYSIS_RESOLUTION)) {
+            restartPreviewSessions();
+        } else if (from.includes(ThermalGovernor.Level.SENSOR_FPS) != to.includes(ThermalGovernor.Level.SENSOR_FPS)) {
+            for (String cameraId : mPreviewRequests.keySet()) {
+                Handler handler = mBackgroundHandlers.get(cameraId);
+                if (handler != null) {
+                    handler.post(() -> updateRepeatingRequest(cameraId));
+                }
+            }
+        }
+        if (to.includes(ThermalGovernor.Level.SECONDARY_PAUSED) && mCameraIds != null) {
+            // Paused cameras would otherwise keep showing their last boxes.
+            for (int i = 1; i < mCameraIds.size(); i++) {
+                CameraSlot slot = mCameraSlots.get(mCameraIds.get(i));
+                if (slot != null) {
+                    slot.overlayView.setResults(null, mOverlayTransform);
                 }
+            }
+        }
+    }
+
+    // Only the first camera keeps its detector while the governor pauses the others.
+    private boolean isInferencePaused(String cameraId) {
+        List<String> cameraIds = mCameraIds;
+        return mGovernorLevel.includes(ThermalGovernor.Level.SECONDARY_PAUSED) && cameraIds != null
+                && !cameraIds.isEmpty() && !cameraIds.get(0).equals(cameraId);
+    }
 
+    private void applySensorFpsRange(String cameraId, CaptureRequest.Builder builder) {
+        android.util.Range<Integer> range = mDefaultFpsRanges.get(cameraId);
+        if (mGovernorLevel.includes(ThermalGovernor.Level.SENSOR_FPS)) {
+            android.util.Range<Integer> throttled = getThrottledFpsRange(cameraId);
+            if (throttled != null) {
+                range = throttled;
+            }
+        }
+        if (range != null) {
+            builder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, range);
+        }
+    }
+
+    private android.util.Range<Integer> getThrottledFpsRange(String cameraId) {
+        try {
+            android.util.Range<Integer>[] available = getCharacteristics(cameraId)
+                    .get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+            if (available == null)
+                return null;
+            int[][] ranges = new int[available.length][];
+            for (int i = 0; i < available.length; i++) {
+                ranges[i] = new int[] { available[i].getLower(), available[i].getUpper() };
+            }
+            int index = ThermalGovernor.chooseThrottledFpsRange(ranges, THROTTLED_SENSOR_FPS);
+            return index >= 0 ? available[index] : null;
+        } catch (CameraAccessException e) {
+            return null;
+        }
+    }
+
+    // Camera background thread.
+    private void updateRepeatingRequest(String cameraId) {
+        CaptureRequest.Builder builder = mPreviewRequests.get(cameraId);
+        CameraCaptureSession session = mCaptureSessions.get(cameraId);
+        if (builder == null || session == null)
+            return;
+        applySensorFpsRange(cameraId, builder);
+        try {
+            session.setRepeatingRequest(builder.build(), null, mBackgroundHandlers.get(cameraId));
+        } catch (CameraAccessException | IllegalStateException e) {
+            // The session closed in the meantime; the next one picks up the range.
+            Log.w("Thermal", "Failed to update camera " + cameraId, e);
+        }
+    }
+
+    /**
+     * Rebuilds every running capture session, re-planning the stream sizes; the
+     * devices stay open. Analysis stream only: TextureView sessions each start their
+     * own capture loop. UI thread.
+     */
+    private void restartPreviewSessions() {
+        synchronized (mStreamPlanLock) {
+            mStreamPlan = null;
+        }
+        for (String cameraId : mPreviewRequests.keySet()) {
+            CameraSlot slot = mCameraSlots.get(cameraId);
+            Handler handler = mBackgroundHandlers.get(cameraId);
+            if (slot == null || handler == null)
+                continue;
+            handler.post(() -> {
+                // As in closeCameras(): stop the old session before its reader is closed (by
+                // createCameraPreviewSession), and let no Image from that reader reach the detector.
+                CameraCaptureSession session = mCaptureSessions.remove(cameraId);
+                if (session != null) {
+                    session.close();
+                }
+                ImageReader reader = mImageReaders.get(cameraId);
+                if (reader != null) {
+                    reader.setOnImageAvailableListener(null, null);
+                }
+                InferenceScheduler<Image> scheduler = mInferenceScheduler;
+                if (scheduler != null) {
+                    scheduler.discardPending();
+                    try {
+                        scheduler.awaitIdle();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                createCameraPreviewSession(cameraId, slot.textureView);
             });
-        } else {
-            return choices[0];
         }
     }
 
+    private Size chooseOptimalSize(Size[] choices, int textureViewWidth, int textureViewHeight) {
+        return toSize(StreamSizes.chooseOptimalSize(toResolutions(choices), textureViewWidth, textureViewHeight));
+    }
+
+    private Size chooseAnalysisSize(Size[] choices, Size previewSize) {
+        return toSize(StreamSizes.chooseAnalysisSize(toResolutions(choices),
+                new Resolution(previewSize.getWidth(), previewSize.getHeight()), getAnalysisMinWidth()));
+    }
+
+    private static Resolution[] toResolutions(Size[] sizes) {
+        Resolution[] resolutions = new Resolution[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            resolutions[i] = new Resolution(sizes[i].getWidth(), sizes[i].getHeight());
+        }
+        return resolutions;
+    }
+
+    private static Size toSize(Resolution resolution) {
+        return new Size(resolution.getWidth(), resolution.getHeight());
+    }
+
     private void startBackgroundThread(String cameraId) {
+        // Still running after a warm pause.
+        if (mBackgroundHandlers.containsKey(cameraId))
+            return;
         HandlerThread thread = new HandlerThread("CameraBackground_" + cameraId);
         thread.start();
         Handler handler = new Handler(thread.getLooper());
@@ -695,28 +2003,169 @@ public class MainActivity extends AppCompatActivity {
             }
         }
         mCameraDevices.clear();
+        mPreviewsStarted.clear();
+        mPreviewRequests.clear();
+        synchronized (mStreamPlanLock) {
+            mStreamPlan = null;
+        }
 
-        for (ObjectDetector detector : mObjectDetectors.values()) {
-            detector.close();
+        // mDetectorPool is intentionally kept: reloading the model on every resume is expensive.
+        Log.d("DetectorPool", String.valueOf(mDetectorPool));
+
+        for (Map.Entry<String, FramePacer> entry : mFramePacers.entrySet()) {
+            Log.d("FramePacer", "CameraId " + entry.getKey() + " " + entry.getValue());
+            entry.getValue().close();
         }
-        mObjectDetectors.clear();
+        mFramePacers.clear();
 
+        // A warm scheduler outlives the readers: drop what it still holds from them and
+        // let the frame in inference finish before its Image goes away.
         for (ImageReader reader : mImageReaders.values()) {
-            reader.close();
+            reader.setOnImageAvailableListener(null, null);
         }
+        List<ImageReader> readers = new ArrayList<>(mImageReaders.values());
         mImageReaders.clear();
+        InferenceScheduler<Image> scheduler = mInferenceScheduler;
+        boolean idle = true;
+        if (scheduler != null) {
+            scheduler.discardPending();
+            try {
+                idle = scheduler.awaitIdle(CLOSE_IDLE_WAIT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (idle) {
+            closeImageReaders(readers);
+        } else {
+            Log.w("MediaPipe", "Inference still busy after " + CLOSE_IDLE_WAIT_MS
+                    + " ms; closing the image readers in the background");
+            new Thread(() -> {
+                try {
+                    if (!scheduler.awaitIdle(CLOSE_DRAIN_TIMEOUT_MS)) {
+                        Log.w("MediaPipe", "Inference still busy after " + CLOSE_DRAIN_TIMEOUT_MS
+                                + " ms; closing the image readers anyway");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                closeImageReaders(readers);
+            }, "ImageReaderClose").start();
+        }
+        mRotationCompensations.clear();
+        mFrameSizes.clear();
+        mYuvConverters.clear();
+        // Boxes from the old session would be extrapolated across the gap.
+        for (BoxTracker tracker : mTrackers.values()) {
+            tracker.reset();
+        }
+        for (MotionGate gate : mMotionGates.values()) {
+            gate.reset();
+        }
+        mLastDetections.clear();
+
+        // In-flight bitmaps are recycled when processImage hands them back.
+        for (FrameMailbox<CapturedFrame> mailbox : mFrameMailboxes.values()) {
+            mailbox.clear();
+        }
+    }
+
+    private static void closeImageReaders(List<ImageReader> readers) {
+        for (ImageReader reader : readers) {
+            reader.close();
+        }
+    }
+
+    private void releaseFramePools() {
+        for (FramePool<CapturedFrame> pool : mFramePools.values()) {
+            pool.close();
+        }
+        mFramePools.clear();
+        mFramePoolSizes.clear();
+        MosaicBatcher mosaicBatcher = mMosaicBatcher;
+        if (mosaicBatcher != null) {
+            // Recreates its bitmap on the next frame.
+            mosaicBatcher.close();
+        }
     }
 
     @Override
     protected void onPause() {
+        mResumed = false;
+        stopGovernor();
+        stopMetricsReporting();
+        stopReplay();
+        if (!mWarmResume) {
+            stopInferenceScheduler();
+        }
         closeCameras();
-        stopBackgroundThreads();
+        if (!mWarmResume) {
+            releaseFramePools();
+            stopBackgroundThreads();
+        }
         super.onPause();
     }
 
+    @Override
+    protected void onStop() {
+        // Bitmaps are the largest thing kept warm and cheap to reallocate.
+        releaseFramePools();
+        super.onStop();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // TRIM_MEMORY_RUNNING_* levels arrive while the cameras are in use.
+        if (mResumed || level < TRIM_MEMORY_BACKGROUND)
+            return;
+        Log.i("MediaPipe", "Trim memory " + level + ": releasing warm resources");
+        stopInferenceScheduler();
+        stopBackgroundThreads();
+        releaseFramePools();
+        if (level >= TRIM_MEMORY_MODERATE && mDetectorPool != null) {
+            mDetectorPool.close();
+            mDetectorPool = null;
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        stopInferenceScheduler();
+        stopBackgroundThreads();
+        releaseFramePools();
+        if (mTileExecutor != null) {
+            mTileExecutor.shutdownNow();
+        }
+        if (mSnapshotCapture != null) {
+            mSnapshotCapture.close();
+        }
+        if (mCascadeRefiner != null) {
+            mCascadeRefiner.close();
+        }
+        if (mFrameHolder != null) {
+            mFrameHolder.clear();
+        }
+        DetectionServer resultServer = mResultServer;
+        if (resultServer != null) {
+            resultServer.close();
+        }
+        if (mDetectorPool != null) {
+            mDetectorPool.close();
+        }
+        super.onDestroy();
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
+        mResumed = true;
+        mResumedWarm = mDetectorPool != null && mDetectorPool.getLoadedCount() > 0
+                && (mInferenceWorkers <= 0 || mInferenceScheduler != null);
+        mResumeMetrics = new StartupMetrics(SystemClock.uptimeMillis());
+        if (mDetectorPool == null) {
+            createDetectorPool();
+        }
         // When the screen is turned off and turned back on, the SurfaceTexture is
         // already
         // available, and "onSurfaceTextureAvailable" will not be called. In that case,
@@ -724,8 +2173,52 @@ public class MainActivity extends AppCompatActivity {
         // a camera and start preview from here (otherwise, we wait until the surface is
         // ready in
         // the SurfaceTextureListener).
+        if (mReplayPath != null) {
+            startReplay();
+            startMetricsReporting();
+            return;
+        }
+        startInferenceScheduler();
         if (ActivityCompat.checkSelfPermission(this, Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED) {
             setupCameras();
         }
+        startMetricsReporting();
+        startGovernor();
+    }
+
+    private void startMetricsReporting() {
+        if (!mStatsHud && !mMetricsDump)
+            return;
+
+        final java.io.File dumpFile = new java.io.File(new java.io.File(getFilesDir(), "metrics"),
+                "pipeline_metrics.txt");
+        mMetricsExecutor = java.util.concurrent.Executors.newSingleThreadScheduledExecutor();
+        mMetricsExecutor.scheduleAtFixedRate(() -> {
+            String snapshot = mMetrics.snapshot(System.nanoTime());
+            if (mMetricsDump && ++mMetricsSnapshots % METRICS_DUMP_EVERY_SNAPSHOTS == 0) {
+                try {
+                    PipelineMetrics.appendSnapshot(dumpFile, System.currentTimeMillis(), snapshot);
+                } catch (java.io.IOException e) {
+                    Log.e("PipelineMetrics", "Failed to write " + dumpFile, e);
+                }
+            }
+            if (mStatsHud) {
+                runOnUiThread(this::updateStatsViews);
+            }
+        }, METRICS_SNAPSHOT_INTERVAL_MS, METRICS_SNAPSHOT_INTERVAL_MS, java.util.concurrent.TimeUnit.MILLISECONDS);
+    }
+
+    private void stopMetricsReporting() {
+        if (mMetricsExecutor != null) {
+            mMetricsExecutor.shutdownNow();
+            mMetricsExecutor = null;
+        }
+    }
+
+    private void updateStatsViews() {
+        for (CameraSlot slot : mCameraSlots.values()) {
+            slot.statsView.setText(mMetrics.describe(slot.cameraId));
+            slot.statsView.setVisibility(View.VISIBLE);
+        }
     }
 }
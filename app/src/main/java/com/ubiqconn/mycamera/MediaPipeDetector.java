@@ -0,0 +1,70 @@
+package com.ubiqconn.mycamera;
+
+import android.content.Context;
+import android.graphics.RectF;
+
+import com.google.mediapipe.framework.image.ByteBufferImageBuilder;
+import com.google.mediapipe.framework.image.MPImage;
+import com.google.mediapipe.tasks.components.containers.Category;
+import com.google.mediapipe.tasks.components.containers.Detection;
+import com.google.mediapipe.tasks.core.BaseOptions;
+import com.google.mediapipe.tasks.vision.core.RunningMode;
+import com.google.mediapipe.tasks.vision.objectdetector.ObjectDetectorResult;
+import com.google.mediapipe.tasks.vision.objectdetector.ObjectDetector;
+import com.google.mediapipe.tasks.vision.objectdetector.ObjectDetector.ObjectDetectorOptions;
+import com.ubiqconn.mycamera.pipeline.Detections;
+import com.ubiqconn.mycamera.pipeline.Detector;
+import com.ubiqconn.mycamera.pipeline.Frame;
+
+import java.util.List;
+
+/**
+ * {@link Detector} backed by a MediaPipe ObjectDetector in IMAGE mode, for driving
+ * the pipeline from a {@link com.ubiqconn.mycamera.pipeline.FrameSource} such as a
+ * replayed recording. Takes RGBA frames; one inference at a time.
+ */
+public class MediaPipeDetector implements Detector<Frame> {
+
+    private final ObjectDetector detector;
+
+    public MediaPipeDetector(Context context) {
+        ObjectDetectorOptions options = ObjectDetectorOptions.builder()
+                .setBaseOptions(BaseOptions.builder().setModelAssetPath(DetectorPool.MODEL_ASSET).build())
+                .setRunningMode(RunningMode.IMAGE)
+                .setScoreThreshold(DetectorPool.SCORE_THRESHOLD)
+                .build();
+        detector = ObjectDetector.createFromOptions(context.getApplicationContext(), options);
+    }
+
+    @Override
+    public synchronized void detect(Frame frame, Detections out) {
+        if (frame.getFormat() != Frame.FORMAT_RGBA8888) {
+            throw new IllegalArgumentException("MediaPipe needs RGBA frames, got format " + frame.getFormat());
+        }
+        // Wraps the (possibly memory-mapped) pixels without copying them.
+        MPImage image = new ByteBufferImageBuilder(frame.getData(), frame.getWidth(), frame.getHeight(),
+                MPImage.IMAGE_FORMAT_RGBA).build();
+        ObjectDetectorResult result = detector.detect(image);
+        out.clear();
+        List<Detection> detections = result.detections();
+        for (int i = 0, n = detections.size(); i < n; i++) {
+            Detection detection = detections.get(i);
+            RectF box = detection.boundingBox();
+            String label = null;
+            float score = 0f;
+            List<Category> categories = detection.categories();
+            if (categories != null && !categories.isEmpty()) {
+                label = categories.get(0).categoryName();
+                score = categories.get(0).score();
+            }
+            if (!out.add(box.left, box.top, box.right, box.bottom, score, label)) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        detector.close();
+    }
+}
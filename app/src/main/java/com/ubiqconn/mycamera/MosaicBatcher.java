@@ -0,0 +1,225 @@
+package com.ubiqconn.mycamera;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.mediapipe.framework.image.BitmapImageBuilder;
+import com.google.mediapipe.framework.image.MPImage;
+import com.google.mediapipe.tasks.components.containers.Detection;
+import com.ubiqconn.mycamera.pipeline.BoxTransform;
+import com.ubiqconn.mycamera.pipeline.FrameGeometry;
+import com.ubiqconn.mycamera.pipeline.Mosaic;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Batches the cameras into one inference: each camera's latest frame is drawn into
+ * its region of a shared model-sized mosaic, and once every camera has a fresh
+ * frame there (or the oldest has waited {@code maxWaitMs}) one detector call covers
+ * them all. Its detections are split back per camera by {@link Mosaic}.
+ *
+ * Called on the cameras' background threads. The mosaic is locked while it is drawn
+ * and detected, so a camera arriving meanwhile waits for the running detection;
+ * its mailbox keeps only the newest frame in the meantime.
+ */
+final class MosaicBatcher {
+
+    private static final String TAG = "Mosaic";
+    private static final int STATS_INTERVAL = 100;
+    // Longest the mosaic waits for an idle detector before its frames are dropped.
+    private static final long DETECTOR_TIMEOUT_MS = 500;
+
+    interface Listener {
+        /** {@code detections} are in the pixels of the camera's submitted frame. */
+        void onResults(String cameraId, List<Detection> detections, long timestampMs);
+
+        /** The camera's frame will never produce results (replaced, or no detector). */
+        void onDropped(String cameraId);
+    }
+
+    private final List<String> cameraIds;
+    private final Mosaic.Arrangement arrangement;
+    private final int size;
+    private final long maxWaitMs;
+    private final Listener listener;
+
+    private final Object lock = new Object();
+    private final Paint framePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint barPaint = new Paint();
+    private final Matrix matrix = new Matrix();
+    private final float[] box = new float[FrameGeometry.BOX_STRIDE];
+    private Mosaic mosaic;
+    private Bitmap bitmap;
+    private Canvas canvas;
+    // Per region: a frame not yet detected, its size and when it was submitted.
+    private final boolean[] fresh;
+    private final int[] frameWidths;
+    private final int[] frameHeights;
+    private final long[] submittedMs;
+
+    private final long createdAtMs = SystemClock.uptimeMillis();
+    private long inferences;
+    private long framesCovered;
+
+    /** @param arrangement null to pick the one that suits the first frame's aspect */
+    MosaicBatcher(List<String> cameraIds, Mosaic.Arrangement arrangement, int size, long maxWaitMs,
+            Listener listener) {
+        this.cameraIds = new ArrayList<>(cameraIds);
+        this.arrangement = arrangement;
+        this.size = size;
+        this.maxWaitMs = maxWaitMs;
+        this.listener = listener;
+        int count = cameraIds.size();
+        fresh = new boolean[count];
+        frameWidths = new int[count];
+        frameHeights = new int[count];
+        submittedMs = new long[count];
+        barPaint.setColor(Color.BLACK);
+    }
+
+    /**
+     * Draws {@code frame} into the camera's region; the caller may reuse it on return.
+     * Runs the detection on this thread if the mosaic is complete.
+     */
+    void submit(String cameraId, Bitmap frame, DetectorPool detectorPool) {
+        int region = cameraIds.indexOf(cameraId);
+        if (region < 0) {
+            listener.onDropped(cameraId);
+            return;
+        }
+        synchronized (lock) {
+            long now = SystemClock.uptimeMillis();
+            draw(region, frame);
+            if (fresh[region]) {
+                // Not detected yet: the new frame replaces it.
+                listener.onDropped(cameraId);
+            }
+            fresh[region] = true;
+            submittedMs[region] = now;
+            if (isReady(now)) {
+                detect(detectorPool);
+            }
+        }
+    }
+
+    // Called with the lock held.
+    private void draw(int region, Bitmap frame) {
+        if (mosaic == null) {
+            Mosaic.Arrangement chosen = arrangement != null ? arrangement
+                    : Mosaic.bestArrangement(cameraIds.size(), size, size, frame.getWidth(), frame.getHeight());
+            mosaic = new Mosaic(chosen, cameraIds.size(), size, size);
+            bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+            canvas = new Canvas(bitmap);
+            Log.i(TAG, mosaic + " for cameras " + cameraIds);
+        }
+        if (frameWidths[region] != frame.getWidth() || frameHeights[region] != frame.getHeight()) {
+            // New frame size: clear the region so no old pixels remain in the letterbox bars.
+            int r = region * FrameGeometry.BOX_STRIDE;
+            float[] regions = mosaic.regions();
+            canvas.drawRect(regions[r], regions[r + 1], regions[r + 2], regions[r + 3], barPaint);
+            frameWidths[region] = frame.getWidth();
+            frameHeights[region] = frame.getHeight();
+        }
+        BoxTransform placement = mosaic.place(region, frame.getWidth(), frame.getHeight());
+        matrix.setScale(placement.getScaleX(), placement.getScaleY());
+        matrix.postTranslate(placement.getOffsetX(), placement.getOffsetY());
+        canvas.drawBitmap(frame, matrix, framePaint);
+    }
+
+    // Called with the lock held.
+    private boolean isReady(long now) {
+        long oldest = Long.MAX_VALUE;
+        boolean all = true;
+        for (int i = 0; i < fresh.length; i++) {
+            if (fresh[i]) {
+                oldest = Math.min(oldest, submittedMs[i]);
+            } else {
+                all = false;
+            }
+        }
+        // A stalled camera must not hold the others back.
+        return all || now - oldest >= maxWaitMs;
+    }
+
+    // Called with the lock held.
+    private void detect(DetectorPool detectorPool) {
+        List<Detection> detections = null;
+        if (detectorPool != null) {
+            MPImage image = new BitmapImageBuilder(bitmap).build();
+            try {
+                detections = detectorPool.detectNow(image, DETECTOR_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        int count = fresh.length;
+        if (detections == null) {
+            for (int i = 0; i < count; i++) {
+                if (fresh[i]) {
+                    fresh[i] = false;
+                    listener.onDropped(cameraIds.get(i));
+                }
+            }
+            return;
+        }
+
+        List<List<Detection>> split = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            split.add(fresh[i] ? new ArrayList<>() : null);
+        }
+        for (int d = 0, n = detections.size(); d < n; d++) {
+            Detection detection = detections.get(d);
+            RectF boundingBox = detection.boundingBox();
+            box[0] = boundingBox.left;
+            box[1] = boundingBox.top;
+            box[2] = boundingBox.right;
+            box[3] = boundingBox.bottom;
+            int region = mosaic.regionOf(box, 0);
+            // Regions without a fresh frame show an old one, whose results were delivered already.
+            if (region < 0 || split.get(region) == null || !mosaic.unmap(region, box, 0)) {
+                continue;
+            }
+            split.get(region).add(Detection.create(detection.categories(), new RectF(box[0], box[1], box[2], box[3])));
+        }
+
+        inferences++;
+        for (int i = 0; i < count; i++) {
+            if (fresh[i]) {
+                fresh[i] = false;
+                framesCovered++;
+                listener.onResults(cameraIds.get(i), split.get(i), submittedMs[i]);
+            }
+        }
+        if (inferences % STATS_INTERVAL == 0) {
+            double seconds = (SystemClock.uptimeMillis() - createdAtMs) / 1000.0;
+            Log.d(TAG, String.format(java.util.Locale.US,
+                    "%d inferences (%.1f/s) for %d camera frames (%.1f/s), native heap %d MB, %s", inferences,
+                    inferences / seconds, framesCovered, framesCovered / seconds,
+                    Debug.getNativeHeapAllocatedSize() / (1024 * 1024), detectorPool));
+        }
+    }
+
+    void close() {
+        synchronized (lock) {
+            if (bitmap != null) {
+                bitmap.recycle();
+                bitmap = null;
+            }
+            mosaic = null;
+            canvas = null;
+            for (int i = 0; i < fresh.length; i++) {
+                fresh[i] = false;
+                frameWidths[i] = 0;
+                frameHeights[i] = 0;
+            }
+        }
+    }
+}
@@ -4,25 +4,46 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.view.View;
-import android.util.Log;
 
 import android.graphics.RectF;
+import com.google.mediapipe.tasks.components.containers.Category;
 import com.google.mediapipe.tasks.components.containers.Detection;
-import java.util.ArrayList;
+import com.ubiqconn.mycamera.pipeline.BoxTracker;
+import com.ubiqconn.mycamera.pipeline.BoxTransform;
+import com.ubiqconn.mycamera.pipeline.FrameGeometry;
+import com.ubiqconn.mycamera.pipeline.LabelCache;
+import com.ubiqconn.mycamera.pipeline.OverlayBuffer;
+import com.ubiqconn.mycamera.pipeline.PipelineMetrics;
 import java.util.List;
 
+/**
+ * Draws detection boxes over a camera preview. Results are copied into a
+ * preallocated double buffer and the view only redraws when boxes, labels or
+ * scores actually change; onDraw itself does not allocate.
+ */
 public class OverlayView extends View {
 
-    private List<Detection> results = new ArrayList<>();
+    // Boxes that moved less than this (in image pixels) are not worth a redraw.
+    private static final float MOVE_TOLERANCE_PX = 0.5f;
+
     private final Paint boxPaint = new Paint();
     private final Paint textPaint = new Paint();
-    private int imageWidth;
-    private int imageHeight;
+    // Analysed frame to view coordinates, supplied with each result.
+    private final BoxTransform imageToView = new BoxTransform();
+
+    // Image-space boxes in the buffer; view-space copies for drawing.
+    private OverlayBuffer buffer = new OverlayBuffer(BoxTracker.DEFAULT_CAPACITY);
+    private float[] viewBoxes = new float[BoxTracker.DEFAULT_CAPACITY * FrameGeometry.BOX_STRIDE];
+    private final LabelCache labelCache = new LabelCache();
+
+    private PipelineMetrics.CameraMetrics metrics;
 
-    // Scale factor to map image coordinates to view coordinates
-    private float scaleFactor = 1.0f;
+    // When set, boxes come from the tracker, extrapolated to each vsync.
+    private BoxTracker tracker;
+    private int[] trackIds;
 
     public OverlayView(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -39,78 +60,105 @@ public class OverlayView extends View {
         textPaint.setStyle(Paint.Style.FILL);
     }
 
-    public void setResults(List<Detection> detectionResults, int imageHeight, int imageWidth) {
-        this.results = detectionResults;
-        this.imageHeight = imageHeight;
-        this.imageWidth = imageWidth;
-        postInvalidate();
+    public void setMetrics(PipelineMetrics.CameraMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /** Shows {@code detectionResults} as they are. Must be called on the UI thread. */
+    public void setResults(List<Detection> detectionResults, BoxTransform imageToView) {
+        tracker = null;
+        buffer.begin();
+        if (detectionResults != null) {
+            // Indexed loop: no iterator per result.
+            for (int i = 0, n = detectionResults.size(); i < n; i++) {
+                Detection detection = detectionResults.get(i);
+                RectF boundingBox = detection.boundingBox();
+                String label = null;
+                float score = 0f;
+                List<Category> categories = detection.categories();
+                if (categories != null && !categories.isEmpty()) {
+                    label = categories.get(0).categoryName();
+                    score = categories.get(0).score();
+                }
+                if (!buffer.add(boundingBox.left, boundingBox.top, boundingBox.right, boundingBox.bottom, score,
+                        label)) {
+                    break;
+                }
+            }
+        }
+        boolean changed = buffer.commit(MOVE_TOLERANCE_PX);
+        // Always store the transform, also when the boxes moved.
+        boolean transformChanged = setImageToView(imageToView);
+        if (changed || transformChanged) {
+            // On hardware-accelerated views the platform ignores dirty rects, so skipping
+            // unchanged frames entirely is what saves UI-thread time.
+            invalidate();
+        }
+    }
+
+    /** Draws the tracker's boxes at display rate until they stop moving. Must be called on the UI thread. */
+    public void setTracker(BoxTracker tracker, BoxTransform imageToView) {
+        if (this.tracker != tracker) {
+            int capacity = Math.max(tracker.getCapacity(), buffer.getCapacity());
+            if (capacity > buffer.getCapacity()) {
+                buffer = new OverlayBuffer(capacity);
+                viewBoxes = new float[capacity * FrameGeometry.BOX_STRIDE];
+            }
+            trackIds = new int[capacity];
+            this.tracker = tracker;
+        }
+        setImageToView(imageToView);
+        postInvalidateOnAnimation();
+    }
+
+    private boolean setImageToView(BoxTransform imageToView) {
+        boolean changed = !this.imageToView.equals(imageToView);
+        this.imageToView.set(imageToView);
+        return changed;
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
 
-        // Log.d("OverlayView", "onDraw called " + getWidth() + "x" + getHeight());
-
-        // DEBUG: Force drawing something to verify overlay visibility
-        // Paint debugPaint = new Paint();
-        // debugPaint.setColor(Color.GREEN);
-        // debugPaint.setTextSize(100);
-        // canvas.drawText("DEBUG VIEW", 50, 200, debugPaint);
+        long startNanos = System.nanoTime();
+        if (tracker != null) {
+            // Detection timestamps are uptimeMillis() at submission, so this also hides inference latency.
+            int count = tracker.predict(SystemClock.uptimeMillis(), buffer.backBoxes(), trackIds,
+                    buffer.backScores(), buffer.backLabels());
+            buffer.setBackCount(count);
+            if (buffer.commit(MOVE_TOLERANCE_PX)) {
+                // Still moving: draw again next vsync. A new result restarts this.
+                postInvalidateOnAnimation();
+            }
+        }
+        drawResults(canvas);
+        if (metrics != null) {
+            metrics.recordNanos(PipelineMetrics.Stage.DRAW, System.nanoTime() - startNanos);
+        }
+    }
 
-        if (results == null || results.isEmpty())
+    private void drawResults(Canvas canvas) {
+        int count = buffer.count();
+        if (count == 0)
             return;
 
-        if (imageWidth == 0 || imageHeight == 0)
-            return;
+        // MediaPipe boxes are in pixels of the (upright) analysed image.
+        imageToView.mapBoxes(buffer.boxes(), viewBoxes, count);
 
-        // Calculate scale factor assuming CENTER_CROP or FIT usually,
-        // but here we just scale to fit width for simplicity or use the matrix in
-        // MainActivity.
-        // MainActivity uses a matrix to scale the TextureView. The OverlayView is
-        // likely on top.
-        // We really need the scale relevant to the OverlayView's size.
-
-        // Assuming the image fills the view or consistent aspect ratio,
-        // we scale coordinates based on View dimensions vs Image dimensions.
-        // Since we are using TextureView.getBitmap(), the image size PROBABLY matches
-        // the View size
-        // (unless scale type splits them).
-        // Let's check the relation.
-        float scaleX = (float) getWidth() / imageWidth;
-        float scaleY = (float) getHeight() / imageHeight;
-
-        // Log.d("OverlayView", "View: " + getWidth() + "x" + getHeight() + " Image: " +
-        // imageWidth + "x" + imageHeight + " Scale: " + scaleX + "," + scaleY);
-
-        // int count = 0;
-        for (Detection detection : results) {
-            RectF boundingBox = detection.boundingBox();
-            // if (count < 3) {
-            // Log.d("OverlayView", "Raw Box: " + boundingBox.toString());
-            // }
-            // count++;
-
-            // MediaPipe detection bounding box is in pixel coordinates of the input image.
-            // If scaleX/Y are not 1, we map them to View coordinates.
-            // Since we use TextureView.getBitmap(), the bitmap is scaled/rotated to match
-            // View.
-            // So scaleX/Y should be ~1.0.
-            float top = boundingBox.top * scaleY;
-            float bottom = boundingBox.bottom * scaleY;
-            float left = boundingBox.left * scaleX;
-            float right = boundingBox.right * scaleX;
+        float[] scores = buffer.scores();
+        String[] labels = buffer.labels();
+        for (int i = 0; i < count; i++) {
+            int b = i * FrameGeometry.BOX_STRIDE;
+            float left = viewBoxes[b];
+            float top = viewBoxes[b + 1];
 
             // Draw bounding box
-            RectF rect = new RectF(left, top, right, bottom);
-            canvas.drawRect(rect, boxPaint);
+            canvas.drawRect(left, top, viewBoxes[b + 2], viewBoxes[b + 3], boxPaint);
 
             // Draw label and score
-            if (detection.categories() != null && !detection.categories().isEmpty()) {
-                String label = detection.categories().get(0).categoryName();
-                float score = detection.categories().get(0).score();
-                String text = String.format("%s %.2f", label, score);
-                canvas.drawText(text, left, top - 10, textPaint);
+            if (labels[i] != null) {
+                canvas.drawText(labelCache.get(labels[i], scores[i]), left, top - 10, textPaint);
             }
         }
     }
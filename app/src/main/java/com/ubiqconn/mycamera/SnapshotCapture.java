@@ -0,0 +1,172 @@
+package com.ubiqconn.mycamera;
+
+import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.media.Image;
+import android.util.Log;
+
+import com.google.mediapipe.tasks.components.containers.Category;
+import com.google.mediapipe.tasks.components.containers.Detection;
+import com.ubiqconn.mycamera.pipeline.DiskQuota;
+import com.ubiqconn.mycamera.pipeline.SnapshotTrigger;
+import com.ubiqconn.mycamera.pipeline.SnapshotWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Saves a JPEG of the frame whenever a watched category is detected. When the
+ * results name a category the {@link SnapshotTrigger} fires for, the frame held in
+ * the {@link FrameHolder} is copied and handed to a {@link SnapshotWriter}, which
+ * compresses and writes it off the detection thread and keeps the directory within
+ * its quota.
+ *
+ * Results that arrive after their frame was released find nothing held and leave
+ * the trigger armed.
+ */
+final class SnapshotCapture {
+
+    private static final String TAG = "Snapshot";
+    // A few snapshots in flight; beyond that the oldest is dropped.
+    private static final int QUEUE_CAPACITY = 4;
+    private static final int ENCODER_THREADS = 1;
+    private static final int JPEG_QUALITY = 90;
+
+    /** A copy of a frame on its way to the encoder: an upright bitmap or NV21 bytes. */
+    static final class Snapshot {
+        final Bitmap bitmap;
+        final byte[] nv21;
+        final int width;
+        final int height;
+
+        Snapshot(Bitmap bitmap) {
+            this.bitmap = bitmap;
+            this.nv21 = null;
+            this.width = bitmap.getWidth();
+            this.height = bitmap.getHeight();
+        }
+
+        Snapshot(byte[] nv21, int width, int height) {
+            this.bitmap = null;
+            this.nv21 = nv21;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private final FrameHolder frames;
+    private final SnapshotTrigger trigger;
+    private final DiskQuota quota;
+    private final SnapshotWriter<Snapshot> writer;
+
+    SnapshotCapture(FrameHolder frames, SnapshotTrigger trigger, File directory, long quotaBytes) {
+        this.frames = frames;
+        this.trigger = trigger;
+        quota = new DiskQuota(directory, quotaBytes);
+        writer = new SnapshotWriter<>(directory, QUEUE_CAPACITY, ENCODER_THREADS,
+                new SnapshotWriter.Encoder<Snapshot>() {
+                    @Override
+                    public void encode(Snapshot snapshot, OutputStream out) throws IOException {
+                        boolean ok = snapshot.bitmap != null
+                                ? snapshot.bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out)
+                                : new YuvImage(snapshot.nv21, ImageFormat.NV21, snapshot.width, snapshot.height, null)
+                                        .compressToJpeg(new Rect(0, 0, snapshot.width, snapshot.height), JPEG_QUALITY,
+                                                out);
+                        if (!ok) {
+                            throw new IOException("JPEG compression failed");
+                        }
+                    }
+
+                    @Override
+                    public void release(Snapshot snapshot) {
+                        if (snapshot.bitmap != null) {
+                            snapshot.bitmap.recycle();
+                        }
+                    }
+                }, quota, "SnapshotEncoder");
+        writer.start();
+        Log.i(TAG, trigger + ", " + directory + ", quota " + quotaBytes / (1024 * 1024) + " MB");
+    }
+
+    /** Queues a snapshot of the held frame if {@code detections} trigger one. Never blocks on I/O. */
+    void onResults(String cameraId, List<Detection> detections, long nowMs) {
+        FrameHolder.Held frame = frames.get(cameraId);
+        if (frame == null || detections == null) {
+            return;
+        }
+        for (int i = 0, n = detections.size(); i < n; i++) {
+            List<Category> categories = detections.get(i).categories();
+            if (categories == null || categories.isEmpty()) {
+                continue;
+            }
+            Category top = categories.get(0);
+            if (trigger.fire(cameraId, top.categoryName(), top.score(), nowMs)) {
+                // One snapshot per frame, however many categories fire.
+                capture(cameraId, top.categoryName(), frame);
+                return;
+            }
+        }
+    }
+
+    private void capture(String cameraId, String label, FrameHolder.Held frame) {
+        Snapshot snapshot;
+        String suffix = "";
+        if (frame.bitmap != null) {
+            snapshot = new Snapshot(frame.bitmap.copy(Bitmap.Config.ARGB_8888, false));
+        } else {
+            Image image = frame.image;
+            snapshot = new Snapshot(toNv21(image), image.getWidth(), image.getHeight());
+            // Analysis frames are in sensor orientation; the name says how to turn them upright.
+            if (frame.rotationDegrees != 0) {
+                suffix = "_rot" + frame.rotationDegrees;
+            }
+        }
+        String name = String.format(Locale.US, "%1$tY%1$tm%1$td-%1$tH%1$tM%1$tS-%1$tL_cam%2$s_%3$s%4$s.jpg",
+                System.currentTimeMillis(), cameraId, label.replaceAll("[^A-Za-z0-9]", "_"), suffix);
+        if (!writer.submit(name, snapshot)) {
+            Log.w(TAG, "Queue full, dropped the oldest snapshot: " + writer);
+        } else {
+            Log.d(TAG, "Queued " + name + ", " + writer);
+        }
+    }
+
+    // Interleaves the YUV_420_888 planes into NV21 (Y, then V/U pairs), whatever their strides.
+    private static byte[] toNv21(Image image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] out = new byte[width * height * 3 / 2];
+        Image.Plane[] planes = image.getPlanes();
+        ByteBuffer y = planes[0].getBuffer();
+        int yRowStride = planes[0].getRowStride();
+        int yPixelStride = planes[0].getPixelStride();
+        int i = 0;
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                out[i++] = y.get(row * yRowStride + col * yPixelStride);
+            }
+        }
+        ByteBuffer u = planes[1].getBuffer();
+        ByteBuffer v = planes[2].getBuffer();
+        int uvRowStride = planes[1].getRowStride();
+        int uvPixelStride = planes[1].getPixelStride();
+        for (int row = 0; row < height / 2; row++) {
+            for (int col = 0; col < width / 2; col++) {
+                int offset = row * uvRowStride + col * uvPixelStride;
+                out[i++] = v.get(offset);
+                out[i++] = u.get(offset);
+            }
+        }
+        return out;
+    }
+
+    void close() {
+        writer.close();
+        Log.i(TAG, "Closed: " + writer);
+    }
+}
@@ -0,0 +1,58 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracker cost per detector result (update) and per display frame (predict).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BoxTrackerBenchmark {
+
+    @Param({"5", "25"})
+    int objectCount;
+
+    BoxTracker tracker;
+    long timeMs;
+    final float[] boxes = new float[BoxTracker.DEFAULT_CAPACITY * FrameGeometry.BOX_STRIDE];
+    final int[] ids = new int[BoxTracker.DEFAULT_CAPACITY];
+    final float[] scores = new float[BoxTracker.DEFAULT_CAPACITY];
+    final String[] labels = new String[BoxTracker.DEFAULT_CAPACITY];
+
+    @Setup
+    public void setUp() {
+        tracker = new BoxTracker();
+        for (int i = 0; i < 5; i++) {
+            update();
+        }
+    }
+
+    @Benchmark
+    public int update() {
+        // Objects on a grid, each drifting 2 px per frame.
+        timeMs += 100;
+        float drift = (timeMs / 100) % 50 * 2;
+        for (int i = 0; i < objectCount; i++) {
+            float left = (i % 5) * 300 + drift;
+            float top = (i / 5) * 200;
+            tracker.stage(left, top, left + 120, top + 120, 0.8f, "person");
+        }
+        tracker.update(timeMs);
+        return tracker.getTrackCount();
+    }
+
+    @Benchmark
+    public int predict() {
+        return tracker.predict(timeMs + 16, boxes, ids, scores, labels);
+    }
+}
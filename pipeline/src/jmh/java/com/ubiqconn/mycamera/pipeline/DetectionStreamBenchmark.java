@@ -0,0 +1,90 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result streaming cost: encoding one frame's detections, and a loopback round
+ * trip from publish() to a decoded message at a subscriber (1e9 / ns/op is the
+ * messages per second one subscriber gets when it keeps up).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DetectionStreamBenchmark {
+
+    @Param({"5", "25"})
+    int detectionCount;
+
+    final byte[] cameraId = DetectionCodec.cameraId("0");
+    final float[] boxes = new float[25 * FrameGeometry.BOX_STRIDE];
+    final int[] categories = new int[25];
+    final float[] scores = new float[25];
+    ByteBuffer encoded;
+    final ByteBuffer in = ByteBuffer.allocate(1 << 16);
+    DetectionServer server;
+    SocketChannel client;
+    long timestampNs;
+
+    @Setup
+    public void setUp() throws Exception {
+        for (int i = 0; i < 25; i++) {
+            int b = i * FrameGeometry.BOX_STRIDE;
+            boxes[b] = i * 20;
+            boxes[b + 1] = i * 10;
+            boxes[b + 2] = i * 20 + 100;
+            boxes[b + 3] = i * 10 + 120;
+            categories[i] = i;
+            scores[i] = 0.5f + i * 0.01f;
+        }
+        encoded = ByteBuffer.allocate(DetectionCodec.encodedSize(cameraId, detectionCount));
+        server = new DetectionServer(0, 64 * 1024);
+        server.start();
+        client = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+        while (server.getClientCount() == 0) {
+            Thread.sleep(1);
+        }
+        in.flip();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        encoded.clear();
+        DetectionCodec.encode(encoded, cameraId, ++timestampNs, 1280, 960, boxes, categories, scores, detectionCount);
+        return encoded;
+    }
+
+    @Benchmark
+    public DetectionCodec.Message loopback() throws IOException {
+        server.publish("0", ++timestampNs, 1280, 960, boxes, categories, scores, detectionCount);
+        while (true) {
+            DetectionCodec.Message message = DetectionCodec.decode(in);
+            if (message != null) {
+                return message;
+            }
+            in.compact();
+            client.read(in);
+            in.flip();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory-bandwidth proxy for one captured frame: copying an ARGB_8888 frame at the
+ * old view size versus one fitted to the 320x320 model input.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FrameCopyBenchmark {
+
+    // 1080x960: half of a 1080x1920 portrait screen per camera; 320x284: fitted to the model.
+    @Param({"1080x960", "320x284"})
+    String frameSize;
+
+    int[] src;
+    int[] dst;
+
+    @Setup
+    public void setUp() {
+        String[] parts = frameSize.split("x");
+        int pixels = Integer.parseInt(parts[0]) * Integer.parseInt(parts[1]);
+        src = new int[pixels];
+        dst = new int[pixels];
+    }
+
+    @Benchmark
+    public int[] copyFrame() {
+        System.arraycopy(src, 0, dst, 0, src.length);
+        return dst;
+    }
+}
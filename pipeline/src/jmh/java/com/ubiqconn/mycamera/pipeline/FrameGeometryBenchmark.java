@@ -0,0 +1,64 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame box mapping (OverlayView.onDraw) and per-session rotation math
+ * (getRotationCompensation / configureTransform).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FrameGeometryBenchmark {
+
+    // The detector returns at most a handful of boxes above the score threshold.
+    @Param({"5", "25"})
+    int boxCount;
+
+    float[] src;
+    float[] dst;
+    final float[] affine = new float[FrameGeometry.AFFINE_SIZE];
+    int displayRotation;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        src = new float[boxCount * FrameGeometry.BOX_STRIDE];
+        dst = new float[src.length];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = random.nextFloat() * 1920;
+        }
+        displayRotation = 1;
+    }
+
+    @Benchmark
+    public float[] scaleBoxes() {
+        FrameGeometry.scaleBoxes(src, dst, boxCount, 0.5625f, 0.5625f);
+        return dst;
+    }
+
+    @Benchmark
+    public void rotationCompensation(Blackhole blackhole) {
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            blackhole.consume(FrameGeometry.rotationCompensation(90, rotation, false));
+            blackhole.consume(FrameGeometry.rotationCompensation(270, rotation, true));
+        }
+    }
+
+    @Benchmark
+    public float[] previewTransform() {
+        FrameGeometry.previewTransform(1080, 960, 1920, 1080, displayRotation, affine);
+        return affine;
+    }
+}
@@ -0,0 +1,86 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The processImage() handoff without the detector: take a pooled buffer, publish
+ * it to the camera's mailbox, take it out on the inference side and give it back.
+ * The grouped variant runs two camera threads side by side, as on the device.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FrameHandoffBenchmark {
+
+    FramePool<int[]> pool0;
+    FramePool<int[]> pool1;
+    FrameMailbox<int[]> mailbox0;
+    FrameMailbox<int[]> mailbox1;
+
+    @Setup
+    public void setUp() {
+        FramePool.Allocator<int[]> allocator = new FramePool.Allocator<int[]>() {
+            @Override
+            public int[] allocate() {
+                return new int[64];
+            }
+
+            @Override
+            public void free(int[] frame) {
+            }
+        };
+        pool0 = new FramePool<>(2, allocator);
+        pool1 = new FramePool<>(2, allocator);
+        mailbox0 = new FrameMailbox<>(pool0::release);
+        mailbox1 = new FrameMailbox<>(pool1::release);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool0.close();
+        pool1.close();
+    }
+
+    @Benchmark
+    @Group("oneCamera")
+    public boolean handoff() {
+        return handoff(pool0, mailbox0);
+    }
+
+    @Benchmark
+    @Group("twoCameras")
+    public boolean camera0() {
+        return handoff(pool0, mailbox0);
+    }
+
+    @Benchmark
+    @Group("twoCameras")
+    public boolean camera1() {
+        return handoff(pool1, mailbox1);
+    }
+
+    private boolean handoff(FramePool<int[]> pool, FrameMailbox<int[]> mailbox) {
+        int[] frame = pool.acquire();
+        if (frame == null) {
+            return false;
+        }
+        mailbox.publish(frame);
+        int[] taken = mailbox.take();
+        if (taken == null) {
+            return false;
+        }
+        taken[0]++;
+        pool.release(taken);
+        return true;
+    }
+}
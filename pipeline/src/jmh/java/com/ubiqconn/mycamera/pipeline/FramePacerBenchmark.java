@@ -0,0 +1,41 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pacing cost per inference: one completed frame on each of four cameras sharing
+ * a budget, which re-divides the budget every time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FramePacerBenchmark {
+
+    final FramePacer.Budget budget = new FramePacer.Budget(30);
+    final FramePacer[] pacers = new FramePacer[4];
+    long latencyMs;
+
+    public FramePacerBenchmark() {
+        for (int i = 0; i < pacers.length; i++) {
+            pacers[i] = new FramePacer(FramePacer.Mode.MAX_THROUGHPUT, 1, 30, 0, budget);
+        }
+    }
+
+    @Benchmark
+    public long completeFourCameras() {
+        long interval = 0;
+        for (FramePacer pacer : pacers) {
+            pacer.onFrameSubmitted(latencyMs);
+            pacer.onFrameCompleted(20 + (latencyMs++ & 15));
+            interval += pacer.getIntervalMs();
+        }
+        return interval;
+    }
+}
@@ -0,0 +1,54 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Motion gate cost per frame: sampling a 640x480 Y plane down to 32x24 and
+ * comparing it with the reference thumbnail.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MotionGateBenchmark {
+
+    static final int WIDTH = 640;
+    static final int HEIGHT = 480;
+    static final int ROW_STRIDE = 640;
+
+    final MotionGate gate = new MotionGate(32, 24, 12, 0.01f, Long.MAX_VALUE);
+    ByteBuffer plane;
+    byte[] other;
+    long timeMs;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        plane = ByteBuffer.allocateDirect(ROW_STRIDE * HEIGHT);
+        for (int i = 0; i < plane.capacity(); i++) {
+            plane.put(i, (byte) random.nextInt(256));
+        }
+        other = new byte[32 * 24];
+        random.nextBytes(other);
+    }
+
+    @Benchmark
+    public boolean sampleAndCompare() {
+        MotionGate.sampleLuma(plane, ROW_STRIDE, 1, WIDTH, HEIGHT, gate.thumbnail(), 32, 24);
+        return gate.shouldAnalyze(timeMs++);
+    }
+
+    @Benchmark
+    public int countChanged() {
+        return MotionGate.countChanged(gate.thumbnail(), other, other.length, 12);
+    }
+}
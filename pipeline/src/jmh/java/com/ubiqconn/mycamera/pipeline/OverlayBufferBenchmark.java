@@ -0,0 +1,63 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The overlay's per-result and per-draw work without the Canvas: fill and commit
+ * the double buffer, scale to view space and look up label text. Run with the gc
+ * profiler; all of it should report 0 B/op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OverlayBufferBenchmark {
+
+    static final String[] LABELS = {"person", "car", "bicycle", "dog", "cup"};
+
+    @Param({"5", "25"})
+    int boxCount;
+
+    final OverlayBuffer buffer = new OverlayBuffer(BoxTracker.DEFAULT_CAPACITY);
+    final float[] viewBoxes = new float[BoxTracker.DEFAULT_CAPACITY * FrameGeometry.BOX_STRIDE];
+    final LabelCache labels = new LabelCache();
+    int frame;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < 4; i++) {
+            results();
+        }
+    }
+
+    @Benchmark
+    public boolean results() {
+        frame++;
+        buffer.begin();
+        for (int i = 0; i < boxCount; i++) {
+            float left = (i % 5) * 300 + (frame & 7);
+            float top = (i / 5) * 200;
+            buffer.add(left, top, left + 120, top + 120, 0.5f + (frame & 3) * 0.1f, LABELS[i % LABELS.length]);
+        }
+        return buffer.commit(0.5f);
+    }
+
+    @Benchmark
+    public void draw(Blackhole blackhole) {
+        int count = buffer.count();
+        FrameGeometry.scaleBoxes(buffer.boxes(), viewBoxes, count, 0.5625f, 0.5625f);
+        for (int i = 0; i < count; i++) {
+            blackhole.consume(labels.get(buffer.labels()[i], buffer.scores()[i]));
+        }
+        blackhole.consume(viewBoxes);
+    }
+}
@@ -0,0 +1,73 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pipeline overhead without a camera or a model: two streams of a 60-frame
+ * 640x480 RGBA recording replayed through the motion gate, scheduler and tracker
+ * into a detector that does nothing. Time per op is one full replay.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReplayBenchmark {
+
+    static final int WIDTH = 640;
+    static final int HEIGHT = 480;
+    static final int FRAMES = 60;
+
+    File recording;
+
+    @Setup
+    public void setUp() throws IOException {
+        recording = File.createTempFile("replay", ".mcfr");
+        Random random = new Random(7);
+        byte[] pixels = new byte[WIDTH * HEIGHT * 4];
+        try (FrameRecorder recorder = new FrameRecorder(recording, WIDTH, HEIGHT, Frame.FORMAT_RGBA8888)) {
+            for (int i = 0; i < FRAMES; i++) {
+                // Fresh noise every third frame, so the gate both passes and skips.
+                if (i % 3 == 0) {
+                    random.nextBytes(pixels);
+                }
+                recorder.append(ByteBuffer.wrap(pixels), i * 33_333_333L);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        recording.delete();
+    }
+
+    @Benchmark
+    public long twoStreams() throws Exception {
+        PipelineDriver<Frame> driver = new PipelineDriver<>(new Detector<Frame>() {
+            @Override
+            public void detect(Frame frame, Detections out) {
+                out.clear();
+                out.add(0, 0, 10, 10, frame.getData().get(0) & 0xff, null);
+            }
+
+            @Override
+            public void close() {
+            }
+        }, PipelineDriver.FRAMES, 1, InferenceScheduler.Policy.ROUND_ROBIN, new PipelineMetrics());
+        driver.setMotionGate(32, 24, 12, 0.01f, 2000);
+        driver.addSource("a", new ReplayFrameSource(recording, 0, false));
+        driver.addSource("b", new ReplayFrameSource(recording, 0, false));
+        return driver.run();
+    }
+}
@@ -0,0 +1,41 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Output size selection, run once per capture session per camera.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StreamSizesBenchmark {
+
+    // A typical SurfaceTexture size list from a phone back camera.
+    final Resolution[] choices = {
+            new Resolution(4032, 3024), new Resolution(4000, 3000), new Resolution(3840, 2160),
+            new Resolution(3264, 2448), new Resolution(2560, 1440), new Resolution(1920, 1440),
+            new Resolution(1920, 1080), new Resolution(1600, 1200), new Resolution(1440, 1080),
+            new Resolution(1280, 960), new Resolution(1280, 720), new Resolution(1024, 768),
+            new Resolution(800, 600), new Resolution(720, 480), new Resolution(640, 480),
+            new Resolution(640, 360), new Resolution(352, 288), new Resolution(320, 240),
+            new Resolution(176, 144),
+    };
+    final Resolution preview = new Resolution(1920, 1080);
+
+    @Benchmark
+    public Resolution chooseOptimalSize() {
+        return StreamSizes.chooseOptimalSize(choices, 1080, 960);
+    }
+
+    @Benchmark
+    public Resolution chooseAnalysisSize() {
+        return StreamSizes.chooseAnalysisSize(choices, preview, 640);
+    }
+}
@@ -0,0 +1,52 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cross-tile merge cost per frame: a 2x2 layout plus the full frame, with
+ * {@code boxesPerTile} synthetic detections each and duplicates in the overlaps.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TileMergeBenchmark {
+
+    @Param({"5", "25"})
+    int boxesPerTile;
+
+    final TileLayout layout = new TileLayout(2, 2, 0.2f, true);
+    final int[] tiles = new int[5 * FrameGeometry.BOX_STRIDE];
+    TileMerger merger;
+
+    @Setup
+    public void setUp() {
+        layout.layout(1280, 960, tiles);
+        merger = new TileMerger(5 * boxesPerTile, 0.5f, 0.7f);
+    }
+
+    @Benchmark
+    public int merge() {
+        merger.begin();
+        for (int tile = 0; tile < 5; tile++) {
+            int t = tile * FrameGeometry.BOX_STRIDE;
+            for (int i = 0; i < boxesPerTile; i++) {
+                // Frame-space grid, so neighbouring tiles report the same objects.
+                float left = (i % 5) * 240 + 20;
+                float top = (i / 5) * 180 + 20;
+                merger.add(tile, tiles[t], tiles[t + 1], left - tiles[t], top - tiles[t + 1],
+                        left + 100 - tiles[t], top + 100 - tiles[t + 1], 0.5f + 0.01f * ((i + tile) % 40), 0,
+                        "person");
+            }
+        }
+        return merger.merge();
+    }
+}
@@ -0,0 +1,52 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Analysis frame to detector input: a 640x480 YUV_420_888 frame with NV21-style
+ * interleaved chroma converted to RGBA.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class YuvConvertBenchmark {
+
+    static final int WIDTH = 640;
+    static final int HEIGHT = 480;
+
+    final YuvConverter converter = new YuvConverter();
+    ByteBuffer y;
+    ByteBuffer u;
+    ByteBuffer v;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        y = ByteBuffer.allocateDirect(WIDTH * HEIGHT);
+        ByteBuffer vu = ByteBuffer.allocateDirect(WIDTH * HEIGHT / 2);
+        for (int i = 0; i < y.capacity(); i++) {
+            y.put(i, (byte) random.nextInt(256));
+        }
+        for (int i = 0; i < vu.capacity(); i++) {
+            vu.put(i, (byte) random.nextInt(256));
+        }
+        v = vu.duplicate();
+        vu.position(1);
+        u = vu.slice();
+    }
+
+    @Benchmark
+    public ByteBuffer convert() {
+        return converter.convert(y, WIDTH, 1, u, v, WIDTH, 2, WIDTH, HEIGHT);
+    }
+}
@@ -0,0 +1,305 @@
+package com.ubiqconn.mycamera.pipeline;
+
+/**
+ * Lightweight multi-object tracker that sits between the detector and the overlay.
+ * Detections are associated to tracks greedily by IoU; each track runs a
+ * constant-velocity alpha-beta filter (a steady-state Kalman filter) on its
+ * centre and size, so boxes can be extrapolated at display rate between
+ * detector runs.
+ *
+ * All state lives in preallocated primitive arrays; neither {@link #update} nor
+ * {@link #predict} allocates. Detections for one frame are staged with
+ * {@link #stage} and then committed with {@link #update}; callers that may
+ * deliver results for the same camera from several threads should hold the
+ * tracker's monitor across both.
+ */
+public class BoxTracker {
+
+    public static final int DEFAULT_CAPACITY = 32;
+
+    // Per-track filter state: centre x/y, width, height and their velocities (px/s).
+    private static final int STATE_SIZE = 8;
+    private static final int CX = 0, CY = 1, W = 2, H = 3, VCX = 4, VCY = 5, VW = 6, VH = 7;
+
+    private static final float DEFAULT_IOU_THRESHOLD = 0.3f;
+    private static final int DEFAULT_MAX_MISSES = 3;
+    private static final float DEFAULT_ALPHA = 0.6f;
+    private static final float DEFAULT_BETA = 0.2f;
+    // Never extrapolate further than this past the last measurement.
+    private static final long MAX_PREDICT_MS = 500;
+    private static final float MIN_SIZE = 1f;
+
+    private final int capacity;
+    private final float iouThreshold;
+    private final int maxMisses;
+    private final float alpha;
+    private final float beta;
+
+    // Tracks, compacted into [0, trackCount).
+    private final int[] ids;
+    private final float[] state;
+    private final long[] updatedAtMs;
+    private final int[] misses;
+    private final float[] scores;
+    private final String[] labels;
+    private int trackCount;
+    private int nextId = 1;
+    private long lastUpdateMs = Long.MIN_VALUE;
+
+    // Staged detections, as left/top/right/bottom.
+    private final float[] stagedBoxes;
+    private final float[] stagedScores;
+    private final String[] stagedLabels;
+    private int stagedCount;
+
+    // Association scratch.
+    private final float[] predicted;
+    private final float[] iou;
+    private final boolean[] trackMatched;
+    private final boolean[] detectionMatched;
+
+    public BoxTracker() {
+        this(DEFAULT_CAPACITY, DEFAULT_IOU_THRESHOLD, DEFAULT_MAX_MISSES, DEFAULT_ALPHA, DEFAULT_BETA);
+    }
+
+    /**
+     * @param capacity     maximum number of live tracks, and of detections per frame
+     * @param iouThreshold minimum IoU between a predicted track and a detection to associate them
+     * @param maxMisses    consecutive frames a track may go unmatched before it is dropped
+     * @param alpha        position gain, 0..1; higher follows measurements more tightly
+     * @param beta         velocity gain, 0..1; higher reacts faster to changes in motion
+     */
+    public BoxTracker(int capacity, float iouThreshold, int maxMisses, float alpha, float beta) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.iouThreshold = iouThreshold;
+        this.maxMisses = maxMisses;
+        this.alpha = alpha;
+        this.beta = beta;
+        ids = new int[capacity];
+        state = new float[capacity * STATE_SIZE];
+        updatedAtMs = new long[capacity];
+        misses = new int[capacity];
+        scores = new float[capacity];
+        labels = new String[capacity];
+        stagedBoxes = new float[capacity * FrameGeometry.BOX_STRIDE];
+        stagedScores = new float[capacity];
+        stagedLabels = new String[capacity];
+        predicted = new float[capacity * FrameGeometry.BOX_STRIDE];
+        iou = new float[capacity * capacity];
+        trackMatched = new boolean[capacity];
+        detectionMatched = new boolean[capacity];
+    }
+
+    /** Adds one detection to the next {@link #update}; returns false if the frame is already full. */
+    public synchronized boolean stage(float left, float top, float right, float bottom, float score, String label) {
+        if (stagedCount == capacity) {
+            return false;
+        }
+        int b = stagedCount * FrameGeometry.BOX_STRIDE;
+        stagedBoxes[b] = left;
+        stagedBoxes[b + 1] = top;
+        stagedBoxes[b + 2] = right;
+        stagedBoxes[b + 3] = bottom;
+        stagedScores[stagedCount] = score;
+        stagedLabels[stagedCount] = label;
+        stagedCount++;
+        return true;
+    }
+
+    /**
+     * Associates the staged detections, measured at {@code timestampMs}, with the
+     * existing tracks and clears the stage. Results older than the last update are
+     * discarded, since they would rewind the filters.
+     */
+    public synchronized void update(long timestampMs) {
+        int detectionCount = stagedCount;
+        stagedCount = 0;
+        if (timestampMs < lastUpdateMs) {
+            clearStagedLabels(detectionCount);
+            return;
+        }
+        lastUpdateMs = timestampMs;
+
+        for (int t = 0; t < trackCount; t++) {
+            predictBox(t, timestampMs, predicted, t * FrameGeometry.BOX_STRIDE);
+            trackMatched[t] = false;
+        }
+        for (int d = 0; d < detectionCount; d++) {
+            detectionMatched[d] = false;
+            for (int t = 0; t < trackCount; t++) {
+                iou[t * capacity + d] = iou(predicted, t * FrameGeometry.BOX_STRIDE,
+                        stagedBoxes, d * FrameGeometry.BOX_STRIDE);
+            }
+        }
+
+        // Greedy association: repeatedly take the best remaining pair.
+        while (true) {
+            float best = iouThreshold;
+            int bestTrack = -1;
+            int bestDetection = -1;
+            for (int t = 0; t < trackCount; t++) {
+                if (trackMatched[t]) {
+                    continue;
+                }
+                for (int d = 0; d < detectionCount; d++) {
+                    float value = iou[t * capacity + d];
+                    if (!detectionMatched[d] && value >= best) {
+                        best = value;
+                        bestTrack = t;
+                        bestDetection = d;
+                    }
+                }
+            }
+            if (bestTrack < 0) {
+                break;
+            }
+            trackMatched[bestTrack] = true;
+            detectionMatched[bestDetection] = true;
+            correct(bestTrack, bestDetection, timestampMs);
+        }
+
+        // Age out unmatched tracks, compacting by moving the last track into the hole.
+        for (int t = trackCount - 1; t >= 0; t--) {
+            if (!trackMatched[t] && ++misses[t] > maxMisses) {
+                removeTrack(t);
+            }
+        }
+
+        for (int d = 0; d < detectionCount && trackCount < capacity; d++) {
+            if (!detectionMatched[d]) {
+                startTrack(d, timestampMs);
+            }
+        }
+        clearStagedLabels(detectionCount);
+    }
+
+    /**
+     * Writes every live track's box extrapolated to {@code timeMs} into
+     * {@code outBoxes} (left/top/right/bottom), with its id, score and label.
+     * Returns the number of tracks written, at most {@link #getCapacity()}.
+     */
+    public synchronized int predict(long timeMs, float[] outBoxes, int[] outIds, float[] outScores,
+            String[] outLabels) {
+        for (int t = 0; t < trackCount; t++) {
+            predictBox(t, timeMs, outBoxes, t * FrameGeometry.BOX_STRIDE);
+            outIds[t] = ids[t];
+            outScores[t] = scores[t];
+            outLabels[t] = labels[t];
+        }
+        return trackCount;
+    }
+
+    public synchronized int getTrackCount() {
+        return trackCount;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** Drops all tracks, e.g. when the camera session restarts. Track ids keep increasing. */
+    public synchronized void reset() {
+        for (int t = 0; t < trackCount; t++) {
+            labels[t] = null;
+        }
+        clearStagedLabels(stagedCount);
+        trackCount = 0;
+        stagedCount = 0;
+        lastUpdateMs = Long.MIN_VALUE;
+    }
+
+    private void predictBox(int t, long timeMs, float[] out, int offset) {
+        long elapsedMs = Math.max(0, Math.min(MAX_PREDICT_MS, timeMs - updatedAtMs[t]));
+        float dt = elapsedMs / 1000f;
+        int s = t * STATE_SIZE;
+        float cx = state[s + CX] + state[s + VCX] * dt;
+        float cy = state[s + CY] + state[s + VCY] * dt;
+        float halfW = Math.max(MIN_SIZE, state[s + W] + state[s + VW] * dt) / 2f;
+        float halfH = Math.max(MIN_SIZE, state[s + H] + state[s + VH] * dt) / 2f;
+        out[offset] = cx - halfW;
+        out[offset + 1] = cy - halfH;
+        out[offset + 2] = cx + halfW;
+        out[offset + 3] = cy + halfH;
+    }
+
+    private void correct(int t, int d, long timestampMs) {
+        int s = t * STATE_SIZE;
+        int p = t * FrameGeometry.BOX_STRIDE;
+        int b = d * FrameGeometry.BOX_STRIDE;
+        float dt = (timestampMs - updatedAtMs[t]) / 1000f;
+        correctAxis(s, CX, VCX, (predicted[p] + predicted[p + 2]) / 2f,
+                (stagedBoxes[b] + stagedBoxes[b + 2]) / 2f, dt);
+        correctAxis(s, CY, VCY, (predicted[p + 1] + predicted[p + 3]) / 2f,
+                (stagedBoxes[b + 1] + stagedBoxes[b + 3]) / 2f, dt);
+        correctAxis(s, W, VW, predicted[p + 2] - predicted[p], stagedBoxes[b + 2] - stagedBoxes[b], dt);
+        correctAxis(s, H, VH, predicted[p + 3] - predicted[p + 1], stagedBoxes[b + 3] - stagedBoxes[b + 1], dt);
+        updatedAtMs[t] = timestampMs;
+        misses[t] = 0;
+        scores[t] = stagedScores[d];
+        labels[t] = stagedLabels[d];
+    }
+
+    private void correctAxis(int s, int position, int velocity, float predictedValue, float measured, float dt) {
+        float residual = measured - predictedValue;
+        state[s + position] = predictedValue + alpha * residual;
+        if (dt > 0) {
+            state[s + velocity] += beta * residual / dt;
+        }
+    }
+
+    private void startTrack(int d, long timestampMs) {
+        int t = trackCount++;
+        int s = t * STATE_SIZE;
+        int b = d * FrameGeometry.BOX_STRIDE;
+        state[s + CX] = (stagedBoxes[b] + stagedBoxes[b + 2]) / 2f;
+        state[s + CY] = (stagedBoxes[b + 1] + stagedBoxes[b + 3]) / 2f;
+        state[s + W] = stagedBoxes[b + 2] - stagedBoxes[b];
+        state[s + H] = stagedBoxes[b + 3] - stagedBoxes[b + 1];
+        state[s + VCX] = 0;
+        state[s + VCY] = 0;
+        state[s + VW] = 0;
+        state[s + VH] = 0;
+        ids[t] = nextId++;
+        updatedAtMs[t] = timestampMs;
+        misses[t] = 0;
+        scores[t] = stagedScores[d];
+        labels[t] = stagedLabels[d];
+    }
+
+    private void removeTrack(int t) {
+        int last = --trackCount;
+        if (t != last) {
+            System.arraycopy(state, last * STATE_SIZE, state, t * STATE_SIZE, STATE_SIZE);
+            ids[t] = ids[last];
+            updatedAtMs[t] = updatedAtMs[last];
+            misses[t] = misses[last];
+            scores[t] = scores[last];
+            labels[t] = labels[last];
+            trackMatched[t] = trackMatched[last];
+        }
+        labels[last] = null;
+    }
+
+    private void clearStagedLabels(int count) {
+        for (int d = 0; d < count; d++) {
+            stagedLabels[d] = null;
+        }
+    }
+
+    static float iou(float[] a, int ai, float[] b, int bi) {
+        float left = Math.max(a[ai], b[bi]);
+        float top = Math.max(a[ai + 1], b[bi + 1]);
+        float right = Math.min(a[ai + 2], b[bi + 2]);
+        float bottom = Math.min(a[ai + 3], b[bi + 3]);
+        if (right <= left || bottom <= top) {
+            return 0f;
+        }
+        float intersection = (right - left) * (bottom - top);
+        float areaA = (a[ai + 2] - a[ai]) * (a[ai + 3] - a[ai + 1]);
+        float areaB = (b[bi + 2] - b[bi]) * (b[bi + 3] - b[bi + 1]);
+        return intersection / (areaA + areaB - intersection);
+    }
+}
@@ -0,0 +1,136 @@
+package com.ubiqconn.mycamera.pipeline;
+
+/**
+ * Axis-aligned affine map {@code x' = x * scaleX + offsetX, y' = y * scaleY + offsetY},
+ * enough to carry boxes between the camera frame, the model input and the overlay
+ * (scaling, cropping and letterboxing never rotate or shear). Mutable like
+ * android.graphics.Matrix so per-frame code can reuse one instance.
+ */
+public final class BoxTransform {
+
+    private float scaleX = 1f;
+    private float scaleY = 1f;
+    private float offsetX;
+    private float offsetY;
+
+    public BoxTransform() {
+    }
+
+    public BoxTransform(float scaleX, float scaleY, float offsetX, float offsetY) {
+        set(scaleX, scaleY, offsetX, offsetY);
+    }
+
+    public BoxTransform set(float scaleX, float scaleY, float offsetX, float offsetY) {
+        this.scaleX = scaleX;
+        this.scaleY = scaleY;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        return this;
+    }
+
+    public BoxTransform set(BoxTransform other) {
+        return set(other.scaleX, other.scaleY, other.offsetX, other.offsetY);
+    }
+
+    public BoxTransform reset() {
+        return set(1f, 1f, 0f, 0f);
+    }
+
+    /** Stretches {@code src} onto {@code dst}, as TextureView does with its buffer by default. */
+    public BoxTransform setStretch(int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+        return set((float) dstWidth / srcWidth, (float) dstHeight / srcHeight, 0f, 0f);
+    }
+
+    /**
+     * Scales {@code src} uniformly to fit inside {@code dst} and centres it, leaving
+     * bars on two sides: the letterbox used to feed a fixed-size model input.
+     */
+    public BoxTransform setLetterbox(int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+        float scale = Math.min((float) dstWidth / srcWidth, (float) dstHeight / srcHeight);
+        return setCentred(scale, srcWidth, srcHeight, dstWidth, dstHeight);
+    }
+
+    /** Scales {@code src} uniformly to cover {@code dst} and centres it, cropping two sides. */
+    public BoxTransform setCenterCrop(int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+        float scale = Math.max((float) dstWidth / srcWidth, (float) dstHeight / srcHeight);
+        return setCentred(scale, srcWidth, srcHeight, dstWidth, dstHeight);
+    }
+
+    private BoxTransform setCentred(float scale, int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+        return set(scale, scale, (dstWidth - srcWidth * scale) / 2f, (dstHeight - srcHeight * scale) / 2f);
+    }
+
+    /** Replaces this with its inverse, e.g. model input back to the source frame. */
+    public BoxTransform invert() {
+        float inverseX = 1f / scaleX;
+        float inverseY = 1f / scaleY;
+        return set(inverseX, inverseY, -offsetX * inverseX, -offsetY * inverseY);
+    }
+
+    /** Replaces this with "this, then {@code next}". */
+    public BoxTransform postConcat(BoxTransform next) {
+        return set(scaleX * next.scaleX, scaleY * next.scaleY, offsetX * next.scaleX + next.offsetX,
+                offsetY * next.scaleY + next.offsetY);
+    }
+
+    public float mapX(float x) {
+        return x * scaleX + offsetX;
+    }
+
+    public float mapY(float y) {
+        return y * scaleY + offsetY;
+    }
+
+    /** Maps {@code count} packed left/top/right/bottom boxes; src and dst may alias. */
+    public void mapBoxes(float[] src, float[] dst, int count) {
+        int end = count * FrameGeometry.BOX_STRIDE;
+        for (int i = 0; i < end; i += FrameGeometry.BOX_STRIDE) {
+            dst[i] = src[i] * scaleX + offsetX;
+            dst[i + 1] = src[i + 1] * scaleY + offsetY;
+            dst[i + 2] = src[i + 2] * scaleX + offsetX;
+            dst[i + 3] = src[i + 3] * scaleY + offsetY;
+        }
+    }
+
+    public float getScaleX() {
+        return scaleX;
+    }
+
+    public float getScaleY() {
+        return scaleY;
+    }
+
+    public float getOffsetX() {
+        return offsetX;
+    }
+
+    public float getOffsetY() {
+        return offsetY;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BoxTransform)) {
+            return false;
+        }
+        BoxTransform other = (BoxTransform) o;
+        return scaleX == other.scaleX && scaleY == other.scaleY && offsetX == other.offsetX
+                && offsetY == other.offsetY;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Float.floatToIntBits(scaleX);
+        result = 31 * result + Float.floatToIntBits(scaleY);
+        result = 31 * result + Float.floatToIntBits(offsetX);
+        return 31 * result + Float.floatToIntBits(offsetY);
+    }
+
+    @Override
+    public String toString() {
+        return "BoxTransform{scale=" + scaleX + "x" + scaleY + ", offset=" + offsetX + "," + offsetY + "}";
+    }
+}
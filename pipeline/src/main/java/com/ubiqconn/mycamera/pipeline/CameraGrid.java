@@ -0,0 +1,66 @@
+package com.ubiqconn.mycamera.pipeline;
+
+/**
+ * Grid for showing {@code count} camera previews on one screen: the column count
+ * whose tiles come closest to {@code tileAspect} (width / height), preferring fewer
+ * empty cells on a tie. Two cameras end up side by side in landscape and stacked
+ * in portrait, as the original two-pane layout did.
+ */
+public final class CameraGrid {
+
+    private final int count;
+    private final int columns;
+    private final int rows;
+
+    private CameraGrid(int count, int columns) {
+        this.count = count;
+        this.columns = columns;
+        this.rows = (count + columns - 1) / columns;
+    }
+
+    public static CameraGrid layout(int count, int width, int height, float tileAspect) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count must be positive");
+        }
+        int bestColumns = 1;
+        double bestScore = Double.MAX_VALUE;
+        int bestEmpty = Integer.MAX_VALUE;
+        for (int columns = 1; columns <= count; columns++) {
+            int rows = (count + columns - 1) / columns;
+            double aspect = ((double) width / columns) / ((double) height / rows);
+            double score = Math.abs(Math.log(aspect / tileAspect));
+            int empty = columns * rows - count;
+            if (score < bestScore - 1e-9 || (score < bestScore + 1e-9 && empty < bestEmpty)) {
+                bestColumns = columns;
+                bestScore = score;
+                bestEmpty = empty;
+            }
+        }
+        return new CameraGrid(count, bestColumns);
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int row(int index) {
+        return index / columns;
+    }
+
+    public int column(int index) {
+        return index % columns;
+    }
+
+    @Override
+    public String toString() {
+        return count + " in " + columns + "x" + rows;
+    }
+}
@@ -0,0 +1,54 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Picks the cameras to stream at once from the combinations the device can run
+ * concurrently (CameraManager.getConcurrentCameraIds).
+ */
+public final class CameraSelection {
+
+    private CameraSelection() {
+    }
+
+    /**
+     * Largest subset of {@code cameraIds}, at most {@code max}, that one concurrent
+     * combination covers, in {@code cameraIds} order; on a tie, the one with the
+     * earlier cameras. Without any usable combination only the first camera is
+     * opened.
+     */
+    public static List<String> select(List<String> cameraIds, Collection<? extends Set<String>> concurrent,
+            int max) {
+        if (cameraIds.isEmpty() || max <= 0) {
+            return Collections.emptyList();
+        }
+        List<String> best = Collections.singletonList(cameraIds.get(0));
+        for (Set<String> combination : concurrent) {
+            List<String> subset = new ArrayList<>();
+            for (String id : cameraIds) {
+                if (subset.size() < max && combination.contains(id)) {
+                    subset.add(id);
+                }
+            }
+            if (subset.size() > best.size()
+                    || (subset.size() == best.size() && isEarlier(subset, best, cameraIds))) {
+                best = subset;
+            }
+        }
+        return best;
+    }
+
+    private static boolean isEarlier(List<String> lhs, List<String> rhs, List<String> order) {
+        for (int i = 0; i < lhs.size(); i++) {
+            int compare = Integer.compare(order.indexOf(lhs.get(i)), order.indexOf(rhs.get(i)));
+            if (compare != 0) {
+                return compare < 0;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,210 @@
+package com.ubiqconn.mycamera.pipeline;
+
+/**
+ * Crop selection and budget for a two-model cascade. The fast model's detections
+ * at or above {@code highScore} are kept as they are; those between
+ * {@code lowScore} and {@code highScore} are uncertain and, within a per-frame cap
+ * and a crops-per-second token budget, are cropped with some context and re-scored
+ * by a heavier model. Uncertain detections that miss the budget are dropped, which
+ * is what a plain {@code highScore} threshold would have done.
+ *
+ * Also keeps the cascade's statistics. Not thread-safe; one selector per camera.
+ */
+public class CascadeSelector {
+
+    private final float lowScore;
+    private final float highScore;
+    private final float padding;
+    private final int minCropSize;
+    private final int maxCropsPerFrame;
+    private final double cropsPerMs;
+    private final double burst;
+
+    private double tokens;
+    private long lastRefillMs = Long.MIN_VALUE;
+    // Candidate order, by descending score.
+    private int[] order = new int[0];
+
+    private long frames;
+    private long framesWithCrops;
+    private long uncertain;
+    private long cropped;
+    private long overBudget;
+    private long confirmed;
+    private long rejected;
+    private long refineNanos;
+
+    /**
+     * @param padding          context added on each side of a candidate, as a fraction of its size
+     * @param minCropSize      crops are grown to at least this many pixels a side, frame permitting
+     * @param maxCropsPerFrame most candidates re-scored per frame
+     * @param cropsPerSecond   sustained re-scoring rate; up to {@code burst} crops may be saved up
+     */
+    public CascadeSelector(float lowScore, float highScore, float padding, int minCropSize, int maxCropsPerFrame,
+            double cropsPerSecond, int burst) {
+        if (lowScore > highScore) {
+            throw new IllegalArgumentException("lowScore above highScore");
+        }
+        this.lowScore = lowScore;
+        this.highScore = highScore;
+        this.padding = padding;
+        this.minCropSize = minCropSize;
+        this.maxCropsPerFrame = maxCropsPerFrame;
+        this.cropsPerMs = cropsPerSecond / 1000.0;
+        this.burst = burst;
+        tokens = burst;
+    }
+
+    public boolean isConfident(float score) {
+        return score >= highScore;
+    }
+
+    public float getLowScore() {
+        return lowScore;
+    }
+
+    public float getHighScore() {
+        return highScore;
+    }
+
+    /**
+     * Picks the uncertain detections to re-score this frame, most promising first.
+     * Writes their indices to {@code candidates} and their crops, packed
+     * left/top/right/bottom integer pixels within the frame, to {@code crops}.
+     * Returns how many were picked.
+     */
+    public int select(long nowMs, float[] boxes, float[] scores, int count, int frameWidth, int frameHeight,
+            int[] candidates, int[] crops) {
+        refill(nowMs);
+        frames++;
+        if (order.length < count) {
+            order = new int[count];
+        }
+        int inBand = 0;
+        for (int i = 0; i < count; i++) {
+            float score = scores[i];
+            if (score < lowScore || score >= highScore) {
+                continue;
+            }
+            // Insertion by descending score.
+            int j = inBand - 1;
+            while (j >= 0 && scores[order[j]] < score) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = i;
+            inBand++;
+        }
+        uncertain += inBand;
+
+        int picked = 0;
+        int limit = Math.min(Math.min(inBand, maxCropsPerFrame), Math.min(candidates.length,
+                crops.length / FrameGeometry.BOX_STRIDE));
+        while (picked < limit && tokens >= 1) {
+            int index = order[picked];
+            candidates[picked] = index;
+            crop(boxes, index * FrameGeometry.BOX_STRIDE, frameWidth, frameHeight, crops,
+                    picked * FrameGeometry.BOX_STRIDE);
+            tokens -= 1;
+            picked++;
+        }
+        cropped += picked;
+        overBudget += inBand - picked;
+        if (picked > 0) {
+            framesWithCrops++;
+        }
+        return picked;
+    }
+
+    private void refill(long nowMs) {
+        if (lastRefillMs != Long.MIN_VALUE && nowMs > lastRefillMs) {
+            tokens = Math.min(burst, tokens + (nowMs - lastRefillMs) * cropsPerMs);
+        }
+        if (lastRefillMs == Long.MIN_VALUE || nowMs > lastRefillMs) {
+            lastRefillMs = nowMs;
+        }
+    }
+
+    // Pads the box, grows it to the minimum size around its centre and shifts it inside the frame.
+    private void crop(float[] boxes, int b, int frameWidth, int frameHeight, int[] out, int o) {
+        float width = boxes[b + 2] - boxes[b];
+        float height = boxes[b + 3] - boxes[b + 1];
+        int cropWidth = Math.min(frameWidth, Math.max(minCropSize, Math.round(width * (1 + 2 * padding))));
+        int cropHeight = Math.min(frameHeight, Math.max(minCropSize, Math.round(height * (1 + 2 * padding))));
+        float centreX = (boxes[b] + boxes[b + 2]) / 2;
+        float centreY = (boxes[b + 1] + boxes[b + 3]) / 2;
+        int left = Math.max(0, Math.min(frameWidth - cropWidth, Math.round(centreX - cropWidth / 2f)));
+        int top = Math.max(0, Math.min(frameHeight - cropHeight, Math.round(centreY - cropHeight / 2f)));
+        out[o] = left;
+        out[o + 1] = top;
+        out[o + 2] = left + cropWidth;
+        out[o + 3] = top + cropHeight;
+    }
+
+    /**
+     * Index of the refined box (frame pixels) that best overlaps the candidate at
+     * {@code candidateOffset}, with IoU of at least {@code minIou}; -1 if none does.
+     */
+    public static int match(float[] candidateBoxes, int candidateOffset, float[] refinedBoxes, int refinedCount,
+            float minIou) {
+        int best = -1;
+        float bestIou = minIou;
+        for (int i = 0; i < refinedCount; i++) {
+            float iou = BoxTracker.iou(candidateBoxes, candidateOffset, refinedBoxes, i * FrameGeometry.BOX_STRIDE);
+            if (iou >= bestIou) {
+                best = i;
+                bestIou = iou;
+            }
+        }
+        return best;
+    }
+
+    /** Records a re-scored candidate: confirmed by the heavier model or not, and what it cost. */
+    public void onRefined(boolean isConfirmed, long nanos) {
+        if (isConfirmed) {
+            confirmed++;
+        } else {
+            rejected++;
+        }
+        refineNanos += nanos;
+    }
+
+    public long getFrameCount() {
+        return frames;
+    }
+
+    public long getCroppedCount() {
+        return cropped;
+    }
+
+    public long getOverBudgetCount() {
+        return overBudget;
+    }
+
+    public long getConfirmedCount() {
+        return confirmed;
+    }
+
+    public long getRejectedCount() {
+        return rejected;
+    }
+
+    /** Fraction of frames that had at least one crop re-scored. */
+    public double getHitRate() {
+        return frames > 0 ? (double) framesWithCrops / frames : 0;
+    }
+
+    /** Heavier-model time averaged over all frames, in ms. */
+    public double getExtraMsPerFrame() {
+        return frames > 0 ? refineNanos / 1e6 / frames : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(java.util.Locale.US,
+                "Cascade{frames=%d, hit rate %.1f%%, crops=%d (%.2f/frame), over budget=%d, confirmed=%d,"
+                        + " rejected=%d, +%.1f ms/frame}",
+                frames, getHitRate() * 100, cropped, frames > 0 ? (double) cropped / frames : 0, overBudget,
+                confirmed, rejected, getExtraMsPerFrame());
+    }
+}
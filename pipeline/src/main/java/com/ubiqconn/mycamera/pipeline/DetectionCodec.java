@@ -0,0 +1,150 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary encoding of one camera's detections for one frame, as streamed
+ * by {@link DetectionServer}. Big-endian, length-prefixed:
+ *
+ * <pre>
+ * int32  length of the rest of the message
+ * uint8  version (1)
+ * uint8  camera ID length n, then n bytes of UTF-8
+ * int64  sensor timestamp, ns (elapsedRealtimeNanos clock; 0 if unknown)
+ * uint16 frame width, uint16 frame height
+ * uint16 detection count, then per detection 12 bytes:
+ *        uint16 left, top, right, bottom: fraction of the frame size * 65535
+ *        int16  category index (-1 if unknown)
+ *        uint16 score * 65535
+ * </pre>
+ *
+ * Quantised boxes are within 1/65535 of the frame size, well under a pixel.
+ */
+public final class DetectionCodec {
+
+    public static final int VERSION = 1;
+    public static final int LENGTH_BYTES = 4;
+    // Version, ID length, timestamp, width, height, count.
+    private static final int HEADER_BYTES = 1 + 1 + 8 + 2 + 2 + 2;
+    public static final int DETECTION_BYTES = 12;
+    public static final int MAX_DETECTIONS = 0xffff;
+    private static final float QUANT = 65535f;
+
+    /** One decoded message. */
+    public static final class Message {
+        public final String cameraId;
+        public final long timestampNs;
+        public final int width;
+        public final int height;
+        public final int count;
+        /** Packed left/top/right/bottom in frame pixels. */
+        public final float[] boxes;
+        public final int[] categories;
+        public final float[] scores;
+
+        Message(String cameraId, long timestampNs, int width, int height, int count) {
+            this.cameraId = cameraId;
+            this.timestampNs = timestampNs;
+            this.width = width;
+            this.height = height;
+            this.count = count;
+            boxes = new float[count * FrameGeometry.BOX_STRIDE];
+            categories = new int[count];
+            scores = new float[count];
+        }
+    }
+
+    private DetectionCodec() {
+    }
+
+    /** UTF-8 camera ID for {@link #encode}, encoded once per camera rather than per frame. */
+    public static byte[] cameraId(String cameraId) {
+        byte[] bytes = cameraId.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xff) {
+            throw new IllegalArgumentException("Camera ID too long: " + cameraId);
+        }
+        return bytes;
+    }
+
+    /** Bytes {@link #encode} writes, length prefix included. */
+    public static int encodedSize(byte[] cameraId, int count) {
+        return LENGTH_BYTES + HEADER_BYTES + cameraId.length + Math.min(count, MAX_DETECTIONS) * DETECTION_BYTES;
+    }
+
+    /**
+     * Writes one message at {@code out}'s position, which must have
+     * {@link #encodedSize} bytes remaining. Boxes are in pixels of a
+     * {@code width x height} frame and are clamped to it.
+     */
+    public static void encode(ByteBuffer out, byte[] cameraId, long timestampNs, int width, int height,
+            float[] boxes, int[] categories, float[] scores, int count) {
+        count = Math.min(count, MAX_DETECTIONS);
+        out.putInt(encodedSize(cameraId, count) - LENGTH_BYTES);
+        out.put((byte) VERSION);
+        out.put((byte) cameraId.length);
+        out.put(cameraId);
+        out.putLong(timestampNs);
+        out.putShort((short) width);
+        out.putShort((short) height);
+        out.putShort((short) count);
+        float scaleX = QUANT / width;
+        float scaleY = QUANT / height;
+        for (int i = 0; i < count; i++) {
+            int b = i * FrameGeometry.BOX_STRIDE;
+            out.putShort(quantise(boxes[b] * scaleX));
+            out.putShort(quantise(boxes[b + 1] * scaleY));
+            out.putShort(quantise(boxes[b + 2] * scaleX));
+            out.putShort(quantise(boxes[b + 3] * scaleY));
+            out.putShort((short) categories[i]);
+            out.putShort(quantise(scores[i] * QUANT));
+        }
+    }
+
+    private static short quantise(float value) {
+        if (value <= 0) {
+            return 0;
+        }
+        return (short) (value >= QUANT ? 0xffff : (int) (value + 0.5f));
+    }
+
+    /**
+     * Decodes the message at {@code in}'s position and advances past it. Returns
+     * null, leaving the position alone, if the buffer does not yet hold all of it.
+     */
+    public static Message decode(ByteBuffer in) {
+        if (in.remaining() < LENGTH_BYTES) {
+            return null;
+        }
+        int start = in.position();
+        int length = in.getInt(start);
+        if (in.remaining() < LENGTH_BYTES + length) {
+            return null;
+        }
+        in.position(start + LENGTH_BYTES);
+        int version = in.get() & 0xff;
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported version " + version);
+        }
+        byte[] id = new byte[in.get() & 0xff];
+        in.get(id);
+        long timestampNs = in.getLong();
+        int width = in.getShort() & 0xffff;
+        int height = in.getShort() & 0xffff;
+        int count = in.getShort() & 0xffff;
+        Message message = new Message(new String(id, StandardCharsets.UTF_8), timestampNs, width, height, count);
+        float scaleX = width / QUANT;
+        float scaleY = height / QUANT;
+        for (int i = 0; i < count; i++) {
+            int b = i * FrameGeometry.BOX_STRIDE;
+            message.boxes[b] = (in.getShort() & 0xffff) * scaleX;
+            message.boxes[b + 1] = (in.getShort() & 0xffff) * scaleY;
+            message.boxes[b + 2] = (in.getShort() & 0xffff) * scaleX;
+            message.boxes[b + 3] = (in.getShort() & 0xffff) * scaleY;
+            message.categories[i] = in.getShort();
+            message.scores[i] = (in.getShort() & 0xffff) / QUANT;
+        }
+        in.position(start + LENGTH_BYTES + length);
+        return message;
+    }
+}
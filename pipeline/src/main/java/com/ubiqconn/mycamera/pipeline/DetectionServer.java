@@ -0,0 +1,308 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams every camera's latest detections to local subscribers over TCP on the
+ * loopback interface, one {@link DetectionCodec} message per camera frame.
+ * Subscribers just connect and read; anything they send is ignored.
+ *
+ * {@link #publish} never blocks on a subscriber: it encodes the message into the
+ * camera's latest-wins slot and wakes the selector thread, which copies new slots
+ * into each subscriber's bounded buffer and writes them non-blocking, several
+ * messages per write. A subscriber that falls behind skips to each camera's newest
+ * frame (counted as coalesced) instead of building a backlog.
+ */
+public class DetectionServer {
+
+    // A camera's newest encoded message; guarded by the lock.
+    private static final class Latest {
+        final byte[] cameraId;
+        ByteBuffer data;
+        long sequence;
+
+        Latest(byte[] cameraId) {
+            this.cameraId = cameraId;
+        }
+    }
+
+    // Selector thread only.
+    private static final class Client {
+        final SocketChannel channel;
+        // Bytes waiting to be written, in write mode (position = pending length).
+        final ByteBuffer out;
+        final Map<String, Long> sentSequences = new HashMap<>();
+
+        Client(SocketChannel channel, int bufferBytes) {
+            this.channel = channel;
+            out = ByteBuffer.allocate(bufferBytes);
+        }
+    }
+
+    private final int port;
+    private final int clientBufferBytes;
+
+    private final Object lock = new Object();
+    private final Map<String, Latest> latest = new LinkedHashMap<>();
+    private long published;
+
+    private volatile Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread thread;
+    private volatile boolean closed;
+    private final List<Client> clients = new ArrayList<>();
+    private final ByteBuffer discard = ByteBuffer.allocate(256);
+    private volatile int clientCount;
+    private volatile long sent;
+    private volatile long coalesced;
+    private volatile long oversized;
+
+    /**
+     * @param port              loopback port, or 0 for any free one (see {@link #getPort})
+     * @param clientBufferBytes per-subscriber buffer; a message larger than this is never sent
+     */
+    public DetectionServer(int port, int clientBufferBytes) {
+        this.port = port;
+        this.clientBufferBytes = clientBufferBytes;
+    }
+
+    public void start() throws IOException {
+        Selector selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        this.selector = selector;
+        thread = new Thread(this::run, "DetectionServer");
+        thread.start();
+    }
+
+    /** The port actually bound, once started. */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Publishes one camera frame's detections (see {@link DetectionCodec#encode});
+     * returns without waiting for any subscriber. Does nothing while none is connected.
+     */
+    public void publish(String cameraId, long timestampNs, int width, int height, float[] boxes, int[] categories,
+            float[] scores, int count) {
+        if (clientCount == 0) {
+            return;
+        }
+        synchronized (lock) {
+            Latest slot = latest.get(cameraId);
+            if (slot == null) {
+                slot = new Latest(DetectionCodec.cameraId(cameraId));
+                latest.put(cameraId, slot);
+            }
+            int size = DetectionCodec.encodedSize(slot.cameraId, count);
+            if (slot.data == null || slot.data.capacity() < size) {
+                slot.data = ByteBuffer.allocate(size);
+            }
+            slot.data.clear();
+            DetectionCodec.encode(slot.data, slot.cameraId, timestampNs, width, height, boxes, categories, scores,
+                    count);
+            slot.data.flip();
+            slot.sequence++;
+            published++;
+        }
+        Selector selector = this.selector;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                selector.select();
+                if (closed) {
+                    break;
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable()) {
+                        read(key);
+                    }
+                }
+                // Writable subscribers and new messages are both handled here.
+                for (int i = clients.size() - 1; i >= 0; i--) {
+                    Client client = clients.get(i);
+                    fill(client);
+                    flush(client);
+                }
+            }
+        } catch (IOException e) {
+            // Selector failure: nothing left to serve.
+        } finally {
+            for (Client client : clients) {
+                closeQuietly(client);
+            }
+            clients.clear();
+            clientCount = 0;
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                // Closing anyway.
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Client client = new Client(channel, clientBufferBytes);
+        channel.register(selector, SelectionKey.OP_READ, client);
+        clients.add(client);
+        clientCount = clients.size();
+    }
+
+    private void read(SelectionKey key) {
+        Client client = (Client) key.attachment();
+        try {
+            discard.clear();
+            if (client.channel.read(discard) < 0) {
+                drop(client);
+            }
+        } catch (IOException e) {
+            drop(client);
+        }
+    }
+
+    // Appends every camera message the client has not had yet and has room for.
+    private void fill(Client client) {
+        if (!client.channel.isOpen()) {
+            return;
+        }
+        synchronized (lock) {
+            for (Map.Entry<String, Latest> entry : latest.entrySet()) {
+                Latest slot = entry.getValue();
+                Long sentSequence = client.sentSequences.get(entry.getKey());
+                long last = sentSequence != null ? sentSequence : slot.sequence - 1;
+                if (last >= slot.sequence) {
+                    continue;
+                }
+                int size = slot.data.remaining();
+                if (size > client.out.capacity()) {
+                    oversized++;
+                } else if (size <= client.out.remaining()) {
+                    client.out.put(slot.data.duplicate());
+                    sent++;
+                    coalesced += slot.sequence - last - 1;
+                } else {
+                    // No room yet; a newer frame may replace this one meanwhile.
+                    continue;
+                }
+                client.sentSequences.put(entry.getKey(), slot.sequence);
+            }
+        }
+    }
+
+    private void flush(Client client) {
+        if (!client.channel.isOpen()) {
+            return;
+        }
+        try {
+            client.out.flip();
+            if (client.out.hasRemaining()) {
+                client.channel.write(client.out);
+            }
+            client.out.compact();
+            SelectionKey key = client.channel.keyFor(selector);
+            int ops = client.out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+            if (key.interestOps() != ops) {
+                key.interestOps(ops);
+            }
+        } catch (IOException e) {
+            drop(client);
+        }
+    }
+
+    private void drop(Client client) {
+        closeQuietly(client);
+        clients.remove(client);
+        clientCount = clients.size();
+    }
+
+    private static void closeQuietly(Client client) {
+        try {
+            client.channel.close();
+        } catch (IOException e) {
+            // Already gone.
+        }
+    }
+
+    /** Disconnects all subscribers and stops the selector thread. */
+    public void close() {
+        closed = true;
+        Selector selector = this.selector;
+        if (selector == null) {
+            return;
+        }
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getClientCount() {
+        return clientCount;
+    }
+
+    public long getPublishedCount() {
+        synchronized (lock) {
+            return published;
+        }
+    }
+
+    /** Messages handed to subscribers, counted once per subscriber. */
+    public long getSentCount() {
+        return sent;
+    }
+
+    /** Messages a slow subscriber skipped because a newer frame of the same camera replaced them. */
+    public long getCoalescedCount() {
+        return coalesced;
+    }
+
+    /** Messages never sent because they exceed a subscriber's buffer. */
+    public long getOversizedCount() {
+        return oversized;
+    }
+
+    @Override
+    public String toString() {
+        return "DetectionServer{clients=" + clientCount + ", published=" + getPublishedCount() + ", sent=" + sent
+                + ", coalesced=" + coalesced + ", oversized=" + oversized + "}";
+    }
+}
@@ -0,0 +1,72 @@
+package com.ubiqconn.mycamera.pipeline;
+
+/**
+ * Reusable, preallocated detector output: packed left/top/right/bottom boxes with
+ * a score and label each.
+ */
+public class Detections {
+
+    private final int capacity;
+    private final float[] boxes;
+    private final float[] scores;
+    private final String[] labels;
+    private int count;
+
+    public Detections(int capacity) {
+        this.capacity = capacity;
+        boxes = new float[capacity * FrameGeometry.BOX_STRIDE];
+        scores = new float[capacity];
+        labels = new String[capacity];
+    }
+
+    public void clear() {
+        for (int i = 0; i < count; i++) {
+            labels[i] = null;
+        }
+        count = 0;
+    }
+
+    /** Appends a detection; returns false once full. */
+    public boolean add(float left, float top, float right, float bottom, float score, String label) {
+        if (count == capacity) {
+            return false;
+        }
+        int b = count * FrameGeometry.BOX_STRIDE;
+        boxes[b] = left;
+        boxes[b + 1] = top;
+        boxes[b + 2] = right;
+        boxes[b + 3] = bottom;
+        scores[count] = score;
+        labels[count] = label;
+        count++;
+        return true;
+    }
+
+    /** Stages every detection into {@code tracker} for its next update. */
+    public void stageInto(BoxTracker tracker) {
+        for (int i = 0; i < count; i++) {
+            int b = i * FrameGeometry.BOX_STRIDE;
+            tracker.stage(boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3], scores[i], labels[i]);
+        }
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public float[] boxes() {
+        return boxes;
+    }
+
+    public float[] scores() {
+        return scores;
+    }
+
+    public String[] labels() {
+        return labels;
+    }
+}
@@ -0,0 +1,18 @@
+package com.ubiqconn.mycamera.pipeline;
+
+/**
+ * A synchronous object detector, so the pipeline can run against MediaPipe on a
+ * device or against a stub on a plain JVM.
+ *
+ * @param <F> frame type
+ */
+public interface Detector<F> {
+
+    /**
+     * Detects objects in {@code frame}, replacing the contents of {@code out} with
+     * boxes in the frame's pixel coordinates.
+     */
+    void detect(F frame, Detections out);
+
+    void close();
+}
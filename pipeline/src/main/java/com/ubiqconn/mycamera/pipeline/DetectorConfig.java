@@ -0,0 +1,104 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * How detectors are run: which delegate, and how many independent instances
+ * (each with its own interpreter) share the cameras' frames.
+ */
+public final class DetectorConfig {
+
+    public enum Backend {
+        CPU,
+        GPU
+    }
+
+    /**
+     * Each CPU instance runs its own multi-threaded interpreter; more than one per
+     * four cores only oversubscribes them. Bounds both the default pool size and
+     * the configurations worth tuning.
+     */
+    public static final int CORES_PER_CPU_INSTANCE = 4;
+
+    private final Backend backend;
+    private final int instances;
+
+    public DetectorConfig(Backend backend, int instances) {
+        if (instances <= 0) {
+            throw new IllegalArgumentException("instances must be positive");
+        }
+        this.backend = backend;
+        this.instances = instances;
+    }
+
+    public Backend getBackend() {
+        return backend;
+    }
+
+    public int getInstances() {
+        return instances;
+    }
+
+    /** Frames that can usefully be in inference at once: no camera runs two at a time. */
+    public int getWorkers(int cameraCount) {
+        return Math.max(1, Math.min(instances, cameraCount));
+    }
+
+    /**
+     * Configurations worth measuring on a device: one to {@code cameraCount} CPU
+     * instances (bounded by the cores available), then a single GPU instance.
+     */
+    public static List<DetectorConfig> candidates(int cores, int cameraCount, boolean includeGpu) {
+        List<DetectorConfig> candidates = new ArrayList<>();
+        int maxCpu = Math.max(1, Math.min(cameraCount, cores / CORES_PER_CPU_INSTANCE));
+        for (int instances = 1; instances <= maxCpu; instances++) {
+            candidates.add(new DetectorConfig(Backend.CPU, instances));
+        }
+        if (includeGpu) {
+            candidates.add(new DetectorConfig(Backend.GPU, 1));
+        }
+        return candidates;
+    }
+
+    /** Inverse of {@link #toString}, e.g. "cpu:2"; null if {@code value} is not a config. */
+    public static DetectorConfig parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        int colon = value.indexOf(':');
+        if (colon < 0) {
+            return null;
+        }
+        try {
+            Backend backend = Backend.valueOf(value.substring(0, colon).trim().toUpperCase(Locale.US));
+            int instances = Integer.parseInt(value.substring(colon + 1).trim());
+            return instances > 0 ? new DetectorConfig(backend, instances) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DetectorConfig)) {
+            return false;
+        }
+        DetectorConfig other = (DetectorConfig) o;
+        return backend == other.backend && instances == other.instances;
+    }
+
+    @Override
+    public int hashCode() {
+        return backend.hashCode() * 31 + instances;
+    }
+
+    @Override
+    public String toString() {
+        return backend.name().toLowerCase(Locale.US) + ":" + instances;
+    }
+}
@@ -0,0 +1,108 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Picks the fastest {@link DetectorConfig} for a device by measuring each
+ * candidate, and caches the choice in a properties file keyed by device, so only
+ * the first launch in a given setup pays for the measurement.
+ */
+public class DetectorTuner {
+
+    /** Measures one configuration; throws if the device cannot run it (e.g. no GPU delegate). */
+    public interface Trial {
+        double inferencesPerSecond(DetectorConfig config) throws Exception;
+    }
+
+    // A simpler configuration (fewer instances, CPU) wins unless the other is clearly
+    // faster: measurements are short and noisy, and every instance costs memory.
+    private static final double MIN_SPEEDUP = 1.05;
+
+    private final File cacheFile;
+    private final String key;
+    private final List<DetectorConfig> measured = new ArrayList<>();
+    private final List<Double> scores = new ArrayList<>();
+
+    /** @param key identifies everything the result depends on: device, model, camera count */
+    public DetectorTuner(File cacheFile, String key) {
+        this.cacheFile = cacheFile;
+        this.key = key;
+    }
+
+    /** The configuration chosen by an earlier {@link #tune} for this key, or null. */
+    public DetectorConfig cached() {
+        return DetectorConfig.parse(load().getProperty(key));
+    }
+
+    /**
+     * Measures {@code candidates} in order and stores the fastest. Candidates that
+     * fail are skipped; returns null if all of them do.
+     */
+    public DetectorConfig tune(List<DetectorConfig> candidates, Trial trial) throws IOException {
+        DetectorConfig best = null;
+        double bestScore = 0;
+        for (DetectorConfig candidate : candidates) {
+            double score;
+            try {
+                score = trial.inferencesPerSecond(candidate);
+            } catch (Exception e) {
+                continue;
+            }
+            measured.add(candidate);
+            scores.add(score);
+            if (best == null || score > bestScore * MIN_SPEEDUP) {
+                best = candidate;
+                bestScore = score;
+            }
+        }
+        if (best != null) {
+            Properties properties = load();
+            properties.setProperty(key, best.toString());
+            store(properties);
+        }
+        return best;
+    }
+
+    /** Measured configurations and their scores from the last {@link #tune}, for logging. */
+    public String describe() {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < measured.size(); i++) {
+            if (i > 0) {
+                out.append(", ");
+            }
+            out.append(measured.get(i)).append('=').append(String.format(Locale.US, "%.1f", scores.get(i)));
+        }
+        return out.toString();
+    }
+
+    private Properties load() {
+        Properties properties = new Properties();
+        if (cacheFile.exists()) {
+            try (InputStream in = new FileInputStream(cacheFile)) {
+                properties.load(in);
+            } catch (IOException e) {
+                // A corrupt cache only costs a re-tune.
+            }
+        }
+        return properties;
+    }
+
+    private void store(Properties properties) throws IOException {
+        File parent = cacheFile.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        try (OutputStream out = new FileOutputStream(cacheFile)) {
+            properties.store(out, "DetectorTuner results");
+        }
+    }
+}
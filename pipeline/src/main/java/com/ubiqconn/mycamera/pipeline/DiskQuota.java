@@ -0,0 +1,132 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the files of one directory within a byte quota, deleting the least
+ * recently used first. Files count as used when written ({@link #add}) or read
+ * ({@link #touch}); files already there are ordered by modification time when the
+ * directory is first scanned. Temporary ".tmp" files are ignored. Thread-safe.
+ */
+public class DiskQuota {
+
+    public static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final long maxBytes;
+    // File name -> size, least recently used first.
+    private final LinkedHashMap<String, Long> files = new LinkedHashMap<>(16, 0.75f, true);
+    private boolean scanned;
+    private long usedBytes;
+    private long evicted;
+
+    public DiskQuota(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    // Called with the lock held.
+    private void scanIfNeeded() {
+        if (scanned) {
+            return;
+        }
+        scanned = true;
+        File[] existing = directory.listFiles();
+        if (existing == null) {
+            return;
+        }
+        List<File> sorted = new ArrayList<>(Arrays.asList(existing));
+        sorted.sort(new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                int byTime = Long.compare(lhs.lastModified(), rhs.lastModified());
+                return byTime != 0 ? byTime : lhs.getName().compareTo(rhs.getName());
+            }
+        });
+        for (File file : sorted) {
+            if (file.isFile() && !file.getName().endsWith(TEMP_SUFFIX)) {
+                record(file.getName(), file.length());
+            }
+        }
+    }
+
+    private void record(String name, long size) {
+        Long previous = files.put(name, size);
+        usedBytes += size - (previous != null ? previous : 0);
+    }
+
+    /**
+     * Records a file just written to the directory as the most recently used and
+     * deletes the least recently used others until the quota holds. The new file
+     * itself is kept even if it alone exceeds the quota. Returns the number deleted.
+     */
+    public synchronized int add(File file) {
+        scanIfNeeded();
+        record(file.getName(), file.length());
+        return evict(file.getName());
+    }
+
+    /** Marks a file as just used, e.g. when it is viewed or shared. */
+    public synchronized void touch(String name) {
+        scanIfNeeded();
+        files.get(name);
+    }
+
+    /** Deletes least recently used files until the quota holds; returns the number deleted. */
+    public synchronized int trim() {
+        scanIfNeeded();
+        return evict(null);
+    }
+
+    // Called with the lock held.
+    private int evict(String keep) {
+        int deleted = 0;
+        Iterator<Map.Entry<String, Long>> it = files.entrySet().iterator();
+        while (usedBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            if (entry.getKey().equals(keep)) {
+                continue;
+            }
+            File file = new File(directory, entry.getKey());
+            // A file deleted behind our back is simply forgotten.
+            if (file.delete() || !file.exists()) {
+                usedBytes -= entry.getValue();
+                it.remove();
+                deleted++;
+            }
+        }
+        evicted += deleted;
+        return deleted;
+    }
+
+    public synchronized long getUsedBytes() {
+        scanIfNeeded();
+        return usedBytes;
+    }
+
+    public synchronized int getFileCount() {
+        scanIfNeeded();
+        return files.size();
+    }
+
+    public synchronized long getEvictedCount() {
+        return evicted;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DiskQuota{" + files.size() + " files, " + usedBytes / 1024 + "/" + maxBytes / 1024 + " KB, evicted="
+                + evicted + "}";
+    }
+}
@@ -0,0 +1,82 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A tightly packed single-plane image, as produced by {@link ReplayFrameSource}.
+ * The pixel buffer may be a view into a memory-mapped file; it is only valid
+ * until the frame is released back to its source.
+ */
+public final class Frame {
+
+    public static final int FORMAT_GRAY8 = 1;
+    public static final int FORMAT_RGBA8888 = 2;
+
+    private final ByteBuffer data;
+    private final int width;
+    private final int height;
+    private final int format;
+    private final long timestampNanos;
+    private final long index;
+
+    public Frame(ByteBuffer data, int width, int height, int format, long timestampNanos, long index) {
+        this.data = data;
+        this.width = width;
+        this.height = height;
+        this.format = format;
+        this.timestampNanos = timestampNanos;
+        this.index = index;
+    }
+
+    public static int bytesPerPixel(int format) {
+        switch (format) {
+            case FORMAT_GRAY8:
+                return 1;
+            case FORMAT_RGBA8888:
+                return 4;
+            default:
+                throw new IllegalArgumentException("Unknown frame format " + format);
+        }
+    }
+
+    public ByteBuffer getData() {
+        return data;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getFormat() {
+        return format;
+    }
+
+    public int getRowStride() {
+        return width * bytesPerPixel(format);
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    /** Position in the source's sequence, counting on across replay loops. */
+    public long getIndex() {
+        return index;
+    }
+
+    /** Downsamples this frame's luma into {@code out}, like {@link MotionGate#sampleLuma}. */
+    public void sampleLuma(byte[] out, int outWidth, int outHeight) {
+        if (format == FORMAT_GRAY8) {
+            MotionGate.sampleLuma(data, width, 1, width, height, out, outWidth, outHeight);
+            return;
+        }
+        // RGBA: the green channel is a good enough luma proxy for change detection.
+        ByteBuffer green = data.duplicate();
+        green.position(1);
+        MotionGate.sampleLuma(green.slice(), getRowStride(), 4, width, height, out, outWidth, outHeight);
+    }
+}
@@ -0,0 +1,123 @@
+package com.ubiqconn.mycamera.pipeline;
+
+/**
+ * Per-frame and per-session coordinate math shared by MainActivity and OverlayView,
+ * kept free of android.graphics so it can be tested and benchmarked on a JDK.
+ *
+ * Boxes are packed as {@code left, top, right, bottom} quadruples. Affine
+ * transforms are six floats in android.graphics.Matrix value order:
+ * {@code scaleX, skewX, transX, skewY, scaleY, transY}.
+ */
+public final class FrameGeometry {
+
+    public static final int BOX_STRIDE = 4;
+    public static final int AFFINE_SIZE = 6;
+
+    private FrameGeometry() {
+    }
+
+    /** Scales {@code count} packed boxes from image to view coordinates; src and dst may alias. */
+    public static void scaleBoxes(float[] src, float[] dst, int count, float scaleX, float scaleY) {
+        int end = count * BOX_STRIDE;
+        for (int i = 0; i < end; i += BOX_STRIDE) {
+            dst[i] = src[i] * scaleX;
+            dst[i + 1] = src[i + 1] * scaleY;
+            dst[i + 2] = src[i + 2] * scaleX;
+            dst[i + 3] = src[i + 3] * scaleY;
+        }
+    }
+
+    /**
+     * Rotation to apply to a sensor image so it is upright on a display rotated by
+     * {@code displayRotationDegrees} (0, 90, 180 or 270).
+     */
+    public static int rotationCompensation(int sensorOrientation, int displayRotationDegrees, boolean frontFacing) {
+        if (frontFacing) {
+            return (sensorOrientation + displayRotationDegrees) % 360;
+        }
+        return (sensorOrientation - displayRotationDegrees + 360) % 360;
+    }
+
+    /**
+     * TextureView transform that fills a {@code viewWidth x viewHeight} view with a
+     * {@code previewWidth x previewHeight} buffer on a display rotated by
+     * {@code displayRotation} quarter turns (Surface.ROTATION_* values). Writes the
+     * affine into {@code out}.
+     */
+    public static void previewTransform(int viewWidth, int viewHeight, int previewWidth, int previewHeight,
+            int displayRotation, float[] out) {
+        setIdentity(out);
+        float centerX = viewWidth / 2f;
+        float centerY = viewHeight / 2f;
+        if (displayRotation == 1 || displayRotation == 3) {
+            // Map the view rect onto the (rotated) buffer rect centred on the view...
+            float bufferWidth = previewHeight;
+            float bufferHeight = previewWidth;
+            float sx = bufferWidth / viewWidth;
+            float sy = bufferHeight / viewHeight;
+            out[0] = sx;
+            out[2] = centerX - bufferWidth / 2f;
+            out[4] = sy;
+            out[5] = centerY - bufferHeight / 2f;
+            // ...then cover the view and rotate against the display.
+            float scale = Math.max((float) viewHeight / previewHeight, (float) viewWidth / previewWidth);
+            postScale(out, scale, centerX, centerY);
+            postRotate(out, 90 * (displayRotation - 2), centerX, centerY);
+        } else if (displayRotation == 2) {
+            postRotate(out, 180, centerX, centerY);
+        }
+    }
+
+    public static void setIdentity(float[] m) {
+        m[0] = 1;
+        m[1] = 0;
+        m[2] = 0;
+        m[3] = 0;
+        m[4] = 1;
+        m[5] = 0;
+    }
+
+    /** m = S(scale, pivot) * m, like Matrix.postScale. */
+    public static void postScale(float[] m, float scale, float px, float py) {
+        float tx = px - scale * px;
+        float ty = py - scale * py;
+        m[0] *= scale;
+        m[1] *= scale;
+        m[2] = m[2] * scale + tx;
+        m[3] *= scale;
+        m[4] *= scale;
+        m[5] = m[5] * scale + ty;
+    }
+
+    /** m = R(degrees, pivot) * m, like Matrix.postRotate. */
+    public static void postRotate(float[] m, float degrees, float px, float py) {
+        double radians = Math.toRadians(degrees);
+        float sin = snapToZero(Math.sin(radians));
+        float cos = snapToZero(Math.cos(radians));
+        float tx = px - cos * px + sin * py;
+        float ty = py - sin * px - cos * py;
+        float a = m[0];
+        float b = m[1];
+        float c = m[2];
+        float d = m[3];
+        float e = m[4];
+        float f = m[5];
+        m[0] = cos * a - sin * d;
+        m[1] = cos * b - sin * e;
+        m[2] = cos * c - sin * f + tx;
+        m[3] = sin * a + cos * d;
+        m[4] = sin * b + cos * e;
+        m[5] = sin * c + cos * f + ty;
+    }
+
+    /** Applies {@code m} to point (x, y), writing x' and y' to {@code out[offset]} and {@code out[offset + 1]}. */
+    public static void mapPoint(float[] m, float x, float y, float[] out, int offset) {
+        out[offset] = m[0] * x + m[1] * y + m[2];
+        out[offset + 1] = m[3] * x + m[4] * y + m[5];
+    }
+
+    private static float snapToZero(double value) {
+        // Quarter turns must be exact, as in Skia's SkScalarSinSnapToZero.
+        return Math.abs(value) < 1e-6 ? 0f : (float) value;
+    }
+}
@@ -0,0 +1,73 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free single-slot handoff from one camera's capture to its inference.
+ * Publishing overwrites whatever is waiting, and the overwritten (stale) frame is
+ * handed straight back to its owner, so the consumer always picks up the most
+ * recent frame and no frame is ever held twice or lost.
+ *
+ * Any number of producers and consumers may use one mailbox concurrently.
+ */
+public class FrameMailbox<F> {
+
+    /** Takes back frames that will never be consumed. */
+    public interface Releaser<F> {
+        void release(F frame);
+    }
+
+    private final AtomicReference<F> slot = new AtomicReference<>();
+    private final Releaser<F> releaser;
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong replaced = new AtomicLong();
+
+    public FrameMailbox(Releaser<F> releaser) {
+        this.releaser = releaser;
+    }
+
+    /** Leaves {@code frame} for the consumer; returns false if it overwrote (and released) a waiting one. */
+    public boolean publish(F frame) {
+        published.incrementAndGet();
+        F stale = slot.getAndSet(frame);
+        if (stale == null) {
+            return true;
+        }
+        replaced.incrementAndGet();
+        releaser.release(stale);
+        return false;
+    }
+
+    /** The waiting frame, now owned by the caller, or null if there is none. */
+    public F take() {
+        // Cheap read first: polling an empty mailbox should not bounce the cache line.
+        return slot.get() == null ? null : slot.getAndSet(null);
+    }
+
+    /** Releases a waiting frame, e.g. when the camera closes. */
+    public void clear() {
+        F frame = slot.getAndSet(null);
+        if (frame != null) {
+            releaser.release(frame);
+        }
+    }
+
+    public boolean isEmpty() {
+        return slot.get() == null;
+    }
+
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    /** Frames overwritten before anyone took them. */
+    public long getReplacedCount() {
+        return replaced.get();
+    }
+
+    @Override
+    public String toString() {
+        return "FrameMailbox{published=" + published.get() + ", replaced=" + replaced.get() + "}";
+    }
+}
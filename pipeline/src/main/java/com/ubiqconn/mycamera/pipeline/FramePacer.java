@@ -0,0 +1,259 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.util.Arrays;
+
+/**
+ * Closed-loop capture pacing for one camera.
+ *
+ * The pacer is fed the frames handed to the detector, their measured latency and
+ * the frames the detector dropped, and adjusts the capture interval:
+ * <ul>
+ * <li>{@link Mode#LATENCY_BOUNDED} backs off multiplicatively whenever the smoothed
+ * latency exceeds the target or frames queue up, and speeds up gradually while
+ * there is headroom.</li>
+ * <li>{@link Mode#MAX_THROUGHPUT} tracks the smoothed latency itself, keeping the
+ * detector busy without letting a queue build.</li>
+ * </ul>
+ * The interval always stays within the min/max FPS limits and this camera's share of
+ * the shared {@link Budget}. Time is passed in, so traces can be replayed in tests.
+ */
+public class FramePacer {
+
+    public enum Mode {
+        LATENCY_BOUNDED,
+        MAX_THROUGHPUT
+    }
+
+    private static final double LATENCY_SMOOTHING = 0.2;
+    private static final double BACKOFF_FACTOR = 1.25;
+    private static final double SPEEDUP_FACTOR = 0.95;
+    private static final double HEADROOM = 0.8;
+    private static final double TRACKING_GAIN = 0.5;
+
+    private final Mode mode;
+    private final double minIntervalMs;
+    private final double maxIntervalMs;
+    private final long targetLatencyMs;
+    private final Budget budget;
+
+    private double intervalMs;
+    private double smoothedLatencyMs = -1;
+    private int queueDepth;
+    private long lastCaptureMs = Long.MIN_VALUE;
+    private long completed;
+    private long dropped;
+
+    public FramePacer(Mode mode, float minFps, float maxFps, long targetLatencyMs, Budget budget) {
+        if (minFps <= 0 || maxFps < minFps) {
+            throw new IllegalArgumentException("Invalid FPS range " + minFps + ".." + maxFps);
+        }
+        this.mode = mode;
+        this.minIntervalMs = 1000.0 / maxFps;
+        this.maxIntervalMs = 1000.0 / minFps;
+        this.targetLatencyMs = targetLatencyMs;
+        this.budget = budget;
+        // Start conservatively and let the controller speed up.
+        this.intervalMs = maxIntervalMs;
+        if (budget != null) {
+            budget.register(this, 1000.0 / intervalMs);
+        }
+    }
+
+    /** Whether a frame arriving at {@code nowMs} should be analysed (for sources faster than the pace). */
+    public synchronized boolean shouldCapture(long nowMs) {
+        return lastCaptureMs == Long.MIN_VALUE || nowMs - lastCaptureMs >= getIntervalMsLocked();
+    }
+
+    public synchronized void onFrameSubmitted(long nowMs) {
+        lastCaptureMs = nowMs;
+        queueDepth++;
+    }
+
+    /** A frame was taken at the pace but never submitted, e.g. skipped by the motion gate. */
+    public synchronized void onFrameSkipped(long nowMs) {
+        lastCaptureMs = nowMs;
+    }
+
+    public synchronized void onFrameCompleted(long latencyMs) {
+        queueDepth = Math.max(0, queueDepth - 1);
+        completed++;
+        smoothedLatencyMs = smoothedLatencyMs < 0 ? latencyMs
+                : smoothedLatencyMs + LATENCY_SMOOTHING * (latencyMs - smoothedLatencyMs);
+
+        if (mode == Mode.LATENCY_BOUNDED) {
+            if (smoothedLatencyMs > targetLatencyMs || queueDepth > 1) {
+                intervalMs *= BACKOFF_FACTOR;
+            } else if (smoothedLatencyMs < targetLatencyMs * HEADROOM && queueDepth <= 1) {
+                intervalMs *= SPEEDUP_FACTOR;
+            }
+        } else {
+            double target = queueDepth > 1 ? smoothedLatencyMs * BACKOFF_FACTOR : smoothedLatencyMs;
+            intervalMs += TRACKING_GAIN * (target - intervalMs);
+        }
+        update();
+    }
+
+    /** A submitted frame was discarded by the detector because it was busy. */
+    public synchronized void onFrameDropped() {
+        queueDepth = Math.max(0, queueDepth - 1);
+        dropped++;
+        intervalMs *= BACKOFF_FACTOR;
+        update();
+    }
+
+    public synchronized long getIntervalMs() {
+        return Math.round(getIntervalMsLocked());
+    }
+
+    public synchronized int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public synchronized double getSmoothedLatencyMs() {
+        return smoothedLatencyMs;
+    }
+
+    public synchronized long getCompletedCount() {
+        return completed;
+    }
+
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    public void close() {
+        if (budget != null) {
+            budget.unregister(this);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FramePacer{" + mode + ", interval=" + Math.round(getIntervalMsLocked()) + " ms, latency="
+                + Math.round(smoothedLatencyMs) + " ms, queue=" + queueDepth + ", completed=" + completed
+                + ", dropped=" + dropped + "}";
+    }
+
+    private void update() {
+        intervalMs = Math.max(minIntervalMs, Math.min(maxIntervalMs, intervalMs));
+        if (budget != null) {
+            budget.setDemand(this, 1000.0 / intervalMs);
+        }
+    }
+
+    private double getIntervalMsLocked() {
+        double interval = intervalMs;
+        if (budget != null) {
+            // The budget may only slow a camera down, never below its own min FPS.
+            interval = Math.max(interval, Math.min(maxIntervalMs, 1000.0 / budget.getAllotmentFps(this)));
+        }
+        return interval;
+    }
+
+    /**
+     * Global FPS budget shared by all cameras. Cameras demanding less than an equal
+     * share leave the rest to the others (max-min fair split).
+     */
+    public static class Budget {
+        private double totalFps;
+        // Registered pacers in registration order; setDemand runs once per inference,
+        // so reallocation works in place on these and never allocates.
+        private FramePacer[] pacers = new FramePacer[4];
+        private double[] demands = new double[4];
+        private double[] allotments = new double[4];
+        // Indices into the arrays above, sorted by demand.
+        private int[] order = new int[4];
+        private int count;
+
+        public Budget(double totalFps) {
+            this.totalFps = totalFps;
+        }
+
+        /** Changes the budget at run time, e.g. to throttle analysis while the device is hot. */
+        public synchronized void setTotalFps(double totalFps) {
+            this.totalFps = totalFps;
+            reallocate();
+        }
+
+        public synchronized double getTotalFps() {
+            return totalFps;
+        }
+
+        public synchronized double getAllotmentFps(FramePacer pacer) {
+            int index = indexOf(pacer);
+            return index >= 0 ? allotments[index] : totalFps;
+        }
+
+        synchronized void register(FramePacer pacer, double demandFps) {
+            int index = indexOf(pacer);
+            if (index < 0) {
+                if (count == pacers.length) {
+                    int capacity = count * 2;
+                    pacers = Arrays.copyOf(pacers, capacity);
+                    demands = Arrays.copyOf(demands, capacity);
+                    allotments = Arrays.copyOf(allotments, capacity);
+                    order = Arrays.copyOf(order, capacity);
+                }
+                index = count++;
+                pacers[index] = pacer;
+            }
+            demands[index] = demandFps;
+            reallocate();
+        }
+
+        synchronized void unregister(FramePacer pacer) {
+            int index = indexOf(pacer);
+            if (index < 0) {
+                return;
+            }
+            int tail = count - index - 1;
+            System.arraycopy(pacers, index + 1, pacers, index, tail);
+            System.arraycopy(demands, index + 1, demands, index, tail);
+            pacers[--count] = null;
+            reallocate();
+        }
+
+        synchronized void setDemand(FramePacer pacer, double demandFps) {
+            int index = indexOf(pacer);
+            if (index >= 0) {
+                demands[index] = demandFps;
+                reallocate();
+            }
+        }
+
+        private int indexOf(FramePacer pacer) {
+            for (int i = 0; i < count; i++) {
+                if (pacers[i] == pacer) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void reallocate() {
+            // Stable insertion sort by demand; there are only a handful of cameras.
+            for (int i = 0; i < count; i++) {
+                int index = i;
+                int j = i - 1;
+                while (j >= 0 && demands[order[j]] > demands[index]) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = index;
+            }
+
+            double remaining = totalFps;
+            int left = count;
+            for (int i = 0; i < count; i++) {
+                int index = order[i];
+                double fairShare = remaining / left;
+                // A camera that wants less than its share keeps asking for more as it
+                // speeds up, so it is allotted its fair share but only consumes its demand.
+                double used = Math.min(demands[index], fairShare);
+                allotments[index] = left == 1 ? remaining : Math.max(used, fairShare);
+                remaining -= used;
+                left--;
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Bounded pool of reusable frame buffers.
+ *
+ * At most {@code capacity} buffers exist at any time. {@link #acquire()} hands out an
+ * idle buffer (hit) or allocates a new one while below capacity (miss), and returns
+ * null when every buffer is in flight so the caller can skip the frame instead of
+ * allocating. Every acquired buffer must come back exactly once through
+ * {@link #release(Object)} or {@link #discard(Object)}.
+ */
+public class FramePool<T> {
+
+    public interface Allocator<T> {
+        T allocate();
+
+        void free(T frame);
+    }
+
+    private final int capacity;
+    private final Allocator<T> allocator;
+    private final ArrayDeque<T> idle = new ArrayDeque<>();
+    private final Set<T> inFlight = Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+    private int allocating;
+    private boolean closed;
+
+    private long hits;
+    private long misses;
+    private long exhausted;
+
+    public FramePool(int capacity, Allocator<T> allocator) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.allocator = allocator;
+    }
+
+    /** Returns a buffer to fill, or null if the pool is closed or all buffers are in flight. */
+    public T acquire() {
+        synchronized (this) {
+            if (closed) {
+                return null;
+            }
+            T frame = idle.pollFirst();
+            if (frame != null) {
+                hits++;
+                inFlight.add(frame);
+                return frame;
+            }
+            if (inFlight.size() + allocating >= capacity) {
+                exhausted++;
+                return null;
+            }
+            misses++;
+            allocating++;
+        }
+        // Allocate outside the lock; the slot is already reserved.
+        T frame = null;
+        boolean keep = false;
+        try {
+            frame = allocator.allocate();
+        } finally {
+            synchronized (this) {
+                allocating--;
+                if (frame != null && !closed) {
+                    inFlight.add(frame);
+                    keep = true;
+                }
+            }
+        }
+        if (!keep && frame != null) {
+            allocator.free(frame);
+            return null;
+        }
+        return frame;
+    }
+
+    /** Hands a buffer back for reuse. Fails if it is not currently in flight. */
+    public void release(T frame) {
+        boolean free;
+        synchronized (this) {
+            takeBack(frame);
+            free = closed;
+            if (!free) {
+                idle.addFirst(frame);
+            }
+        }
+        if (free) {
+            allocator.free(frame);
+        }
+    }
+
+    /** Frees a buffer instead of reusing it, e.g. when filling it failed. */
+    public void discard(T frame) {
+        synchronized (this) {
+            takeBack(frame);
+        }
+        allocator.free(frame);
+    }
+
+    /** Frees idle buffers. In-flight buffers are freed when they are released. */
+    public void close() {
+        ArrayDeque<T> toFree;
+        synchronized (this) {
+            closed = true;
+            toFree = new ArrayDeque<>(idle);
+            idle.clear();
+        }
+        for (T frame : toFree) {
+            allocator.free(frame);
+        }
+    }
+
+    public synchronized int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getExhaustedCount() {
+        return exhausted;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FramePool{hits=" + hits + ", misses=" + misses + ", exhausted=" + exhausted
+                + ", inFlight=" + inFlight.size() + ", idle=" + idle.size() + "/" + capacity + "}";
+    }
+
+    private void takeBack(T frame) {
+        if (!inFlight.remove(frame)) {
+            throw new IllegalStateException("Frame is not in flight (double release?): " + frame);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes frame sequences for {@link ReplayFrameSource}. The format is a fixed
+ * header (magic, version, width, height, format, frame count) followed by
+ * fixed-size records of a timestamp and the tightly packed pixels, big-endian,
+ * so any frame can be located without an index.
+ */
+public class FrameRecorder implements Closeable {
+
+    static final int MAGIC = 0x4D434652; // "MCFR"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 24;
+    static final int FRAME_HEADER_BYTES = 8;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final int format;
+    private final int frameBytes;
+    private final ByteBuffer header = ByteBuffer.allocate(Math.max(HEADER_BYTES, FRAME_HEADER_BYTES));
+    private int frameCount;
+
+    public FrameRecorder(File recording, int width, int height, int format) throws IOException {
+        this.width = width;
+        this.height = height;
+        this.format = format;
+        this.frameBytes = width * height * Frame.bytesPerPixel(format);
+        file = new RandomAccessFile(recording, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+        writeHeader();
+    }
+
+    /** Appends one frame; {@code pixels} must hold exactly one tightly packed frame from its position. */
+    public void append(ByteBuffer pixels, long timestampNanos) throws IOException {
+        if (pixels.remaining() != frameBytes) {
+            throw new IllegalArgumentException("Expected " + frameBytes + " bytes, got " + pixels.remaining());
+        }
+        header.clear();
+        header.putLong(timestampNanos).flip();
+        writeFully(header);
+        writeFully(pixels);
+        frameCount++;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.position(0);
+            writeHeader();
+        } finally {
+            file.close();
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        header.clear();
+        header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(format).putInt(frameCount).flip();
+        writeFully(header);
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
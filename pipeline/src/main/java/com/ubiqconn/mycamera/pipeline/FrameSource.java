@@ -0,0 +1,22 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Where the pipeline pulls frames from: a live camera, or a recording replayed
+ * from disk for headless benchmarks.
+ *
+ * @param <F> frame type
+ */
+public interface FrameSource<F> extends Closeable {
+
+    /**
+     * Blocks until the next frame is due and returns it, or null once the source
+     * is exhausted or closed. The caller owns the frame until {@link #release}.
+     */
+    F acquireNext() throws IOException, InterruptedException;
+
+    /** Returns a frame obtained from {@link #acquireNext}; it must not be used afterwards. */
+    void release(F frame);
+}
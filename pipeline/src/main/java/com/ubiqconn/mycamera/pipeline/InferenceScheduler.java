@@ -0,0 +1,314 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Central inference scheduler shared by all cameras, decoupled from the camera
+ * callback threads. Each camera owns a latest-wins slot: submitting a frame
+ * replaces (and discards) any frame still waiting there. A fixed set of worker
+ * threads serves the slots round-robin or by weight, and never runs two frames
+ * of the same camera at once, so per-camera latency is bounded by one inference
+ * plus one turn of the other cameras.
+ *
+ * @param <F> frame type; the scheduler only hands frames to the {@link Worker}
+ */
+public class InferenceScheduler<F> {
+
+    public enum Policy {
+        /** Cameras with a pending frame take turns. */
+        ROUND_ROBIN,
+        /** Smooth weighted round-robin: a weight-2 camera is served twice as often as a weight-1 one. */
+        WEIGHTED
+    }
+
+    public interface Worker<F> {
+        /** Runs inference on {@code frame}; called on a scheduler thread. */
+        void process(String cameraId, F frame);
+
+        /** {@code frame} will never be processed (replaced by a newer one, or the scheduler closed). */
+        void discard(String cameraId, F frame);
+    }
+
+    private static class Slot<F> {
+        final String cameraId;
+        F pending;
+        boolean busy;
+        int weight = 1;
+        int currentWeight;
+        long submitted;
+        long served;
+        long replaced;
+
+        Slot(String cameraId) {
+            this.cameraId = cameraId;
+        }
+    }
+
+    private final int workerCount;
+    private final Policy policy;
+    private final Worker<F> worker;
+    private final String threadName;
+
+    private final Object lock = new Object();
+    private final Map<String, Slot<F>> slotsById = new HashMap<>();
+    private final List<Slot<F>> slots = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private int cursor;
+    private boolean closed;
+
+    public InferenceScheduler(int workerCount, Policy policy, Worker<F> worker, String threadName) {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("workerCount must be positive");
+        }
+        this.workerCount = workerCount;
+        this.policy = policy;
+        this.worker = worker;
+        this.threadName = threadName;
+    }
+
+    public void start() {
+        synchronized (lock) {
+            if (!threads.isEmpty()) {
+                return;
+            }
+            for (int i = 0; i < workerCount; i++) {
+                Thread thread = new Thread(this::runWorker, threadName + "-" + i);
+                threads.add(thread);
+                thread.start();
+            }
+        }
+    }
+
+    /** Relative share of inference for a camera under {@link Policy#WEIGHTED}; default 1. */
+    public void setWeight(String cameraId, int weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("weight must be positive");
+        }
+        synchronized (lock) {
+            slot(cameraId).weight = weight;
+        }
+    }
+
+    /** Queues {@code frame} as the camera's latest; any frame still waiting is discarded. */
+    public void submit(String cameraId, F frame) {
+        F replaced;
+        synchronized (lock) {
+            if (closed) {
+                replaced = frame;
+            } else {
+                Slot<F> slot = slot(cameraId);
+                replaced = slot.pending;
+                slot.pending = frame;
+                slot.submitted++;
+                if (replaced != null) {
+                    slot.replaced++;
+                }
+                // Not notify(): awaitIdle() callers wait on the same monitor and could take
+                // the wake-up meant for an idle worker, leaving the frame unserved.
+                lock.notifyAll();
+            }
+        }
+        if (replaced != null) {
+            worker.discard(cameraId, replaced);
+        }
+    }
+
+    private Slot<F> slot(String cameraId) {
+        Slot<F> slot = slotsById.get(cameraId);
+        if (slot == null) {
+            slot = new Slot<>(cameraId);
+            slotsById.put(cameraId, slot);
+            slots.add(slot);
+        }
+        return slot;
+    }
+
+    private void runWorker() {
+        while (true) {
+            Slot<F> slot = null;
+            F frame;
+            synchronized (lock) {
+                while (!closed && (slot = next()) == null) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed || slot == null) {
+                    return;
+                }
+                frame = slot.pending;
+                slot.pending = null;
+                slot.busy = true;
+            }
+            try {
+                worker.process(slot.cameraId, frame);
+            } catch (RuntimeException e) {
+                // Keep serving the other cameras; the worker reports its own errors.
+            } finally {
+                synchronized (lock) {
+                    slot.busy = false;
+                    slot.served++;
+                    // Wake a worker for the pending frame, and anyone in awaitIdle.
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+
+    // Called with the lock held.
+    private Slot<F> next() {
+        int count = slots.size();
+        if (policy == Policy.ROUND_ROBIN) {
+            for (int i = 0; i < count; i++) {
+                Slot<F> slot = slots.get((cursor + i) % count);
+                if (slot.pending != null && !slot.busy) {
+                    cursor = (cursor + i + 1) % count;
+                    return slot;
+                }
+            }
+            return null;
+        }
+        Slot<F> best = null;
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            Slot<F> slot = slots.get(i);
+            if (slot.pending == null || slot.busy) {
+                continue;
+            }
+            slot.currentWeight += slot.weight;
+            total += slot.weight;
+            if (best == null || slot.currentWeight > best.currentWeight) {
+                best = slot;
+            }
+        }
+        if (best != null) {
+            best.currentWeight -= total;
+        }
+        return best;
+    }
+
+    /**
+     * Discards every waiting frame but keeps the workers running, e.g. while the
+     * cameras are closed and the scheduler is kept warm for their return.
+     */
+    public void discardPending() {
+        List<Slot<F>> pending = new ArrayList<>();
+        List<F> frames = new ArrayList<>();
+        synchronized (lock) {
+            takePending(pending, frames);
+            lock.notifyAll();
+        }
+        discard(pending, frames);
+    }
+
+    // Called with the lock held.
+    private void takePending(List<Slot<F>> pending, List<F> frames) {
+        for (Slot<F> slot : slots) {
+            if (slot.pending != null) {
+                pending.add(slot);
+                frames.add(slot.pending);
+                slot.pending = null;
+            }
+        }
+    }
+
+    private void discard(List<Slot<F>> pending, List<F> frames) {
+        for (int i = 0; i < pending.size(); i++) {
+            worker.discard(pending.get(i).cameraId, frames.get(i));
+        }
+    }
+
+    /** Blocks until no frame is waiting or being processed. */
+    public void awaitIdle() throws InterruptedException {
+        synchronized (lock) {
+            while (!closed && hasWork()) {
+                lock.wait();
+            }
+        }
+    }
+
+    /** As {@link #awaitIdle()}, but gives up after {@code timeoutMs}; false if work remains. */
+    public boolean awaitIdle(long timeoutMs) throws InterruptedException {
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        synchronized (lock) {
+            while (!closed && hasWork()) {
+                long remainingNanos = deadlineNanos - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(lock, remainingNanos);
+            }
+            return true;
+        }
+    }
+
+    // Called with the lock held.
+    private boolean hasWork() {
+        for (int i = 0, n = slots.size(); i < n; i++) {
+            Slot<F> slot = slots.get(i);
+            if (slot.pending != null || slot.busy) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Stops the workers after their current frame and discards every pending frame. */
+    public void close() {
+        List<Slot<F>> pending = new ArrayList<>();
+        List<F> frames = new ArrayList<>();
+        List<Thread> workers;
+        synchronized (lock) {
+            closed = true;
+            takePending(pending, frames);
+            lock.notifyAll();
+            workers = new ArrayList<>(threads);
+        }
+        discard(pending, frames);
+        for (Thread thread : workers) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    public long getServedCount(String cameraId) {
+        synchronized (lock) {
+            Slot<F> slot = slotsById.get(cameraId);
+            return slot != null ? slot.served : 0;
+        }
+    }
+
+    public long getReplacedCount(String cameraId) {
+        synchronized (lock) {
+            Slot<F> slot = slotsById.get(cameraId);
+            return slot != null ? slot.replaced : 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder("InferenceScheduler{").append(policy).append(", workers=")
+                .append(workerCount);
+        synchronized (lock) {
+            for (Slot<F> slot : slots) {
+                out.append(", ").append(slot.cameraId).append(": submitted=").append(slot.submitted)
+                        .append(" served=").append(slot.served).append(" replaced=").append(slot.replaced);
+            }
+        }
+        return out.append('}').toString();
+    }
+}
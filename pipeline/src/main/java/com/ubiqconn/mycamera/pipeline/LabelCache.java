@@ -0,0 +1,41 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Formatted "label 0.87" strings, built once per label and score bucket so the
+ * overlay can draw text without formatting on every frame.
+ */
+public class LabelCache {
+
+    // Scores are shown with two decimals, so there are 101 distinct strings per label.
+    private static final int BUCKETS = 101;
+
+    private final HashMap<String, String[]> byLabel = new HashMap<>();
+
+    public static int bucket(float score) {
+        int bucket = Math.round(score * (BUCKETS - 1));
+        return Math.max(0, Math.min(BUCKETS - 1, bucket));
+    }
+
+    /** Text for {@code label} at {@code score}; allocates only the first time a pair is seen. */
+    public String get(String label, float score) {
+        String[] texts = byLabel.get(label);
+        if (texts == null) {
+            texts = new String[BUCKETS];
+            byLabel.put(label, texts);
+        }
+        int bucket = bucket(score);
+        String text = texts[bucket];
+        if (text == null) {
+            text = String.format(Locale.US, "%s %.2f", label, bucket / (float) (BUCKETS - 1));
+            texts[bucket] = text;
+        }
+        return text;
+    }
+
+    public int getLabelCount() {
+        return byLabel.size();
+    }
+}
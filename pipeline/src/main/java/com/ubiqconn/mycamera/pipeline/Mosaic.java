@@ -0,0 +1,160 @@
+package com.ubiqconn.mycamera.pipeline;
+
+/**
+ * Packs the frames of several cameras into one model input, side by side or
+ * stacked, so a single detector call covers all of them. Each frame is
+ * letterboxed into its own region; detections on the mosaic are assigned back
+ * to the region holding their centre, clipped to that frame's content, and
+ * mapped into the frame's own pixels.
+ *
+ * Not thread-safe: {@link #place} and {@link #unmap} for one mosaic happen on
+ * the thread that runs its detection.
+ */
+public class Mosaic {
+
+    public enum Arrangement {
+        /** Regions in one row, each {@code width / count} wide. */
+        SIDE_BY_SIDE,
+        /** Regions in one column, each {@code height / count} high. */
+        STACKED
+    }
+
+    private final Arrangement arrangement;
+    private final int width;
+    private final int height;
+    private final int regionCount;
+    // Packed left/top/right/bottom of each region, and of the frame letterboxed into it.
+    private final float[] regions;
+    private final float[] content;
+    private final BoxTransform[] toMosaic;
+    private final BoxTransform[] toFrame;
+
+    public Mosaic(Arrangement arrangement, int regionCount, int width, int height) {
+        if (regionCount <= 0) {
+            throw new IllegalArgumentException("regionCount must be positive");
+        }
+        this.arrangement = arrangement;
+        this.width = width;
+        this.height = height;
+        this.regionCount = regionCount;
+        regions = new float[regionCount * FrameGeometry.BOX_STRIDE];
+        content = new float[regionCount * FrameGeometry.BOX_STRIDE];
+        toMosaic = new BoxTransform[regionCount];
+        toFrame = new BoxTransform[regionCount];
+        for (int i = 0; i < regionCount; i++) {
+            int r = i * FrameGeometry.BOX_STRIDE;
+            if (arrangement == Arrangement.SIDE_BY_SIDE) {
+                regions[r] = (float) width * i / regionCount;
+                regions[r + 1] = 0;
+                regions[r + 2] = (float) width * (i + 1) / regionCount;
+                regions[r + 3] = height;
+            } else {
+                regions[r] = 0;
+                regions[r + 1] = (float) height * i / regionCount;
+                regions[r + 2] = width;
+                regions[r + 3] = (float) height * (i + 1) / regionCount;
+            }
+            toMosaic[i] = new BoxTransform();
+            toFrame[i] = new BoxTransform();
+        }
+    }
+
+    /** The arrangement that wastes less of the mosaic on letterbox bars for frames of this aspect. */
+    public static Arrangement bestArrangement(int regionCount, int width, int height, int frameWidth,
+            int frameHeight) {
+        float sideBySide = fill(width / (float) regionCount, height, frameWidth, frameHeight);
+        float stacked = fill(width, height / (float) regionCount, frameWidth, frameHeight);
+        return stacked > sideBySide ? Arrangement.STACKED : Arrangement.SIDE_BY_SIDE;
+    }
+
+    // Fraction of a cell a letterboxed frame covers.
+    private static float fill(float cellWidth, float cellHeight, int frameWidth, int frameHeight) {
+        float scale = Math.min(cellWidth / frameWidth, cellHeight / frameHeight);
+        return frameWidth * scale * frameHeight * scale / (cellWidth * cellHeight);
+    }
+
+    /**
+     * Letterboxes a {@code frameWidth x frameHeight} frame into {@code region} and
+     * returns the frame-to-mosaic transform, e.g. for drawing the frame. The
+     * returned instance is reused for the region.
+     */
+    public BoxTransform place(int region, int frameWidth, int frameHeight) {
+        int r = region * FrameGeometry.BOX_STRIDE;
+        float left = regions[r];
+        float top = regions[r + 1];
+        float regionWidth = regions[r + 2] - left;
+        float regionHeight = regions[r + 3] - top;
+        float scale = Math.min(regionWidth / frameWidth, regionHeight / frameHeight);
+        float offsetX = left + (regionWidth - frameWidth * scale) / 2f;
+        float offsetY = top + (regionHeight - frameHeight * scale) / 2f;
+        toMosaic[region].set(scale, scale, offsetX, offsetY);
+        toFrame[region].set(toMosaic[region]).invert();
+        content[r] = offsetX;
+        content[r + 1] = offsetY;
+        content[r + 2] = offsetX + frameWidth * scale;
+        content[r + 3] = offsetY + frameHeight * scale;
+        return toMosaic[region];
+    }
+
+    /** Region whose area holds the centre of the box at {@code offset}, or -1 if none does. */
+    public int regionOf(float[] boxes, int offset) {
+        float centreX = (boxes[offset] + boxes[offset + 2]) / 2f;
+        float centreY = (boxes[offset + 1] + boxes[offset + 3]) / 2f;
+        for (int i = 0; i < regionCount; i++) {
+            int r = i * FrameGeometry.BOX_STRIDE;
+            if (centreX >= regions[r] && centreX < regions[r + 2] && centreY >= regions[r + 1]
+                    && centreY < regions[r + 3]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Clips the mosaic box at {@code offset} to {@code region}'s frame and maps it in
+     * place into that frame's pixels. Returns false, leaving the box undefined, if
+     * nothing of it lies on the frame (e.g. it sits in a letterbox bar).
+     */
+    public boolean unmap(int region, float[] boxes, int offset) {
+        int r = region * FrameGeometry.BOX_STRIDE;
+        float left = Math.max(boxes[offset], content[r]);
+        float top = Math.max(boxes[offset + 1], content[r + 1]);
+        float right = Math.min(boxes[offset + 2], content[r + 2]);
+        float bottom = Math.min(boxes[offset + 3], content[r + 3]);
+        if (right <= left || bottom <= top) {
+            return false;
+        }
+        BoxTransform transform = toFrame[region];
+        boxes[offset] = transform.mapX(left);
+        boxes[offset + 1] = transform.mapY(top);
+        boxes[offset + 2] = transform.mapX(right);
+        boxes[offset + 3] = transform.mapY(bottom);
+        return true;
+    }
+
+    /** Packed left/top/right/bottom of each region in mosaic pixels. */
+    public float[] regions() {
+        return regions;
+    }
+
+    public Arrangement getArrangement() {
+        return arrangement;
+    }
+
+    public int getRegionCount() {
+        return regionCount;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public String toString() {
+        return "Mosaic{" + regionCount + " " + arrangement + ", " + width + "x" + height + "}";
+    }
+}
@@ -0,0 +1,135 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Cheap scene-change pre-filter in front of the detector. Each frame is reduced to
+ * a small luma thumbnail and compared with the thumbnail of the last frame that was
+ * actually analysed; if too few thumbnail pixels changed, the frame is skipped and
+ * the previous results are reused. A frame is always analysed once
+ * {@code refreshIntervalMs} has passed, so slow drift and missed motion recover.
+ *
+ * One gate per camera; not thread-safe, call it from that camera's frame thread.
+ */
+public class MotionGate {
+
+    private final int thumbnailWidth;
+    private final int thumbnailHeight;
+    private final int pixelNoise;
+    private final float changedFraction;
+    private final long refreshIntervalMs;
+
+    private byte[] current;
+    private byte[] reference;
+    private boolean hasReference;
+    private long lastAnalysedMs;
+
+    private long evaluated;
+    private long skipped;
+    private float lastChanged;
+
+    /**
+     * @param pixelNoise        luma difference (0..255) below which a pixel counts as unchanged
+     * @param changedFraction   fraction of thumbnail pixels that must change to analyse the frame
+     * @param refreshIntervalMs longest time between analysed frames, however static the scene
+     */
+    public MotionGate(int thumbnailWidth, int thumbnailHeight, int pixelNoise, float changedFraction,
+            long refreshIntervalMs) {
+        this.thumbnailWidth = thumbnailWidth;
+        this.thumbnailHeight = thumbnailHeight;
+        this.pixelNoise = pixelNoise;
+        this.changedFraction = changedFraction;
+        this.refreshIntervalMs = refreshIntervalMs;
+        current = new byte[thumbnailWidth * thumbnailHeight];
+        reference = new byte[thumbnailWidth * thumbnailHeight];
+    }
+
+    public int getThumbnailWidth() {
+        return thumbnailWidth;
+    }
+
+    public int getThumbnailHeight() {
+        return thumbnailHeight;
+    }
+
+    /** Buffer to fill with the current frame's thumbnail before {@link #shouldAnalyze}. */
+    public byte[] thumbnail() {
+        return current;
+    }
+
+    /**
+     * Compares the current thumbnail with the last analysed one. Returns true if the
+     * frame should go to the detector, in which case it becomes the new reference.
+     */
+    public boolean shouldAnalyze(long nowMs) {
+        evaluated++;
+        int length = current.length;
+        int changed = hasReference ? countChanged(current, reference, length, pixelNoise) : length;
+        lastChanged = (float) changed / length;
+        if (hasReference && lastChanged < changedFraction && nowMs - lastAnalysedMs < refreshIntervalMs) {
+            skipped++;
+            return false;
+        }
+        byte[] swap = reference;
+        reference = current;
+        current = swap;
+        hasReference = true;
+        lastAnalysedMs = nowMs;
+        return true;
+    }
+
+    /** Forgets the reference frame, so the next frame is always analysed. */
+    public void reset() {
+        hasReference = false;
+    }
+
+    public long getEvaluatedCount() {
+        return evaluated;
+    }
+
+    public long getSkippedCount() {
+        return skipped;
+    }
+
+    /** Fraction of thumbnail pixels that changed in the last evaluated frame. */
+    public float getLastChangedFraction() {
+        return lastChanged;
+    }
+
+    /** Number of positions where {@code a} and {@code b} differ by more than {@code noise}. */
+    public static int countChanged(byte[] a, byte[] b, int length, int noise) {
+        int changed = 0;
+        for (int i = 0; i < length; i++) {
+            int diff = (a[i] & 0xff) - (b[i] & 0xff);
+            if (diff > noise || diff < -noise) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Downsamples a luma plane (e.g. the Y plane of a YUV_420_888 image) into
+     * {@code out}, averaging four samples per thumbnail cell. Uses absolute reads
+     * only, so the buffer's position is untouched.
+     */
+    public static void sampleLuma(ByteBuffer plane, int rowStride, int pixelStride, int width, int height,
+            byte[] out, int outWidth, int outHeight) {
+        for (int ty = 0; ty < outHeight; ty++) {
+            int y0 = (ty * 4 + 1) * height / (outHeight * 4);
+            int y1 = (ty * 4 + 3) * height / (outHeight * 4);
+            for (int tx = 0; tx < outWidth; tx++) {
+                int x0 = (tx * 4 + 1) * width / (outWidth * 4) * pixelStride;
+                int x1 = (tx * 4 + 3) * width / (outWidth * 4) * pixelStride;
+                int sum = (plane.get(y0 * rowStride + x0) & 0xff) + (plane.get(y0 * rowStride + x1) & 0xff)
+                        + (plane.get(y1 * rowStride + x0) & 0xff) + (plane.get(y1 * rowStride + x1) & 0xff);
+                out[ty * outWidth + tx] = (byte) (sum >> 2);
+            }
+        }
+    }
+
+    /** Approximate BT.601 luma of an ARGB_8888 pixel. */
+    public static int luma(int argb) {
+        return (((argb >> 16) & 0xff) * 77 + ((argb >> 8) & 0xff) * 150 + (argb & 0xff) * 29) >> 8;
+    }
+}
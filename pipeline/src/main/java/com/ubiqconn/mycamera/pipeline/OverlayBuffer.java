@@ -0,0 +1,141 @@
+package com.ubiqconn.mycamera.pipeline;
+
+/**
+ * Double-buffered, preallocated storage for the boxes an overlay draws. Results
+ * are written into the back buffer and published with {@link #commit}, which
+ * swaps the buffers and reports whether anything visible changed, so the view
+ * only redraws when it has to.
+ *
+ * Not thread-safe; owned by the UI thread.
+ */
+public class OverlayBuffer {
+
+    private final int capacity;
+
+    private float[] frontBoxes;
+    private float[] frontScores;
+    private String[] frontLabels;
+    private int frontCount;
+
+    private float[] backBoxes;
+    private float[] backScores;
+    private String[] backLabels;
+    private int backCount;
+
+    public OverlayBuffer(int capacity) {
+        this.capacity = capacity;
+        frontBoxes = new float[capacity * FrameGeometry.BOX_STRIDE];
+        backBoxes = new float[capacity * FrameGeometry.BOX_STRIDE];
+        frontScores = new float[capacity];
+        backScores = new float[capacity];
+        frontLabels = new String[capacity];
+        backLabels = new String[capacity];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** Starts filling the back buffer. */
+    public void begin() {
+        backCount = 0;
+    }
+
+    /** Appends a box to the back buffer; returns false once it is full. */
+    public boolean add(float left, float top, float right, float bottom, float score, String label) {
+        if (backCount == capacity) {
+            return false;
+        }
+        int b = backCount * FrameGeometry.BOX_STRIDE;
+        backBoxes[b] = left;
+        backBoxes[b + 1] = top;
+        backBoxes[b + 2] = right;
+        backBoxes[b + 3] = bottom;
+        backScores[backCount] = score;
+        backLabels[backCount] = label;
+        backCount++;
+        return true;
+    }
+
+    /** Back buffer arrays for producers that write in bulk, e.g. BoxTracker.predict; see {@link #setBackCount}. */
+    public float[] backBoxes() {
+        return backBoxes;
+    }
+
+    public float[] backScores() {
+        return backScores;
+    }
+
+    public String[] backLabels() {
+        return backLabels;
+    }
+
+    public void setBackCount(int count) {
+        backCount = Math.min(count, capacity);
+    }
+
+    /**
+     * Publishes the back buffer. Returns true if it differs from the previous front
+     * buffer: a different count, a label, a score at two-decimal precision, or any
+     * box edge moving by more than {@code tolerance}.
+     */
+    public boolean commit(float tolerance) {
+        boolean changed = differs(tolerance);
+
+        float[] boxes = frontBoxes;
+        frontBoxes = backBoxes;
+        backBoxes = boxes;
+        float[] scores = frontScores;
+        frontScores = backScores;
+        backScores = scores;
+        String[] labels = frontLabels;
+        frontLabels = backLabels;
+        backLabels = labels;
+        frontCount = backCount;
+        backCount = 0;
+        return changed;
+    }
+
+    private boolean differs(float tolerance) {
+        if (backCount != frontCount) {
+            return true;
+        }
+        for (int i = 0; i < backCount; i++) {
+            if (backLabels[i] != frontLabels[i] && (backLabels[i] == null || !backLabels[i].equals(frontLabels[i]))) {
+                return true;
+            }
+            if (LabelCache.bucket(backScores[i]) != LabelCache.bucket(frontScores[i])) {
+                return true;
+            }
+        }
+        int end = backCount * FrameGeometry.BOX_STRIDE;
+        for (int i = 0; i < end; i++) {
+            if (Math.abs(backBoxes[i] - frontBoxes[i]) > tolerance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int count() {
+        return frontCount;
+    }
+
+    /** Front buffer, valid until the next {@link #commit}. */
+    public float[] boxes() {
+        return frontBoxes;
+    }
+
+    public float[] scores() {
+        return frontScores;
+    }
+
+    public String[] labels() {
+        return frontLabels;
+    }
+
+    public void clear() {
+        begin();
+        commit(0f);
+    }
+}
@@ -0,0 +1,213 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the pull side of the pipeline without any camera or UI: one thread per
+ * {@link FrameSource} pulls frames, passes them through the motion gate and hands
+ * them to a shared {@link InferenceScheduler}, whose workers run the
+ * {@link Detector} and feed the per-camera {@link BoxTracker}. Everything is
+ * accounted in {@link PipelineMetrics}, so a replayed recording gives the same
+ * processed/skipped/dropped picture a device would.
+ *
+ * @param <F> frame type
+ */
+public class PipelineDriver<F> {
+
+    /** What the driver needs to know about a frame, beyond handing it to the detector. */
+    public interface FrameAccess<F> {
+        long timestampNanos(F frame);
+
+        /** Downsamples the frame's luma into {@code out}; see {@link MotionGate#sampleLuma}. */
+        void sampleLuma(F frame, byte[] out, int outWidth, int outHeight);
+    }
+
+    /** {@link FrameAccess} for {@link Frame}. */
+    public static final FrameAccess<Frame> FRAMES = new FrameAccess<Frame>() {
+        @Override
+        public long timestampNanos(Frame frame) {
+            return frame.getTimestampNanos();
+        }
+
+        @Override
+        public void sampleLuma(Frame frame, byte[] out, int outWidth, int outHeight) {
+            frame.sampleLuma(out, outWidth, outHeight);
+        }
+    };
+
+    private static class Lane<F> {
+        final String cameraId;
+        final FrameSource<F> source;
+        final PipelineMetrics.CameraMetrics metrics;
+        final BoxTracker tracker = new BoxTracker();
+        final Detections detections = new Detections(BoxTracker.DEFAULT_CAPACITY);
+        MotionGate gate;
+        long acquired;
+
+        Lane(String cameraId, FrameSource<F> source, PipelineMetrics.CameraMetrics metrics) {
+            this.cameraId = cameraId;
+            this.source = source;
+            this.metrics = metrics;
+        }
+    }
+
+    private final Detector<F> detector;
+    private final FrameAccess<F> access;
+    private final int workerCount;
+    private final InferenceScheduler.Policy policy;
+    private final PipelineMetrics metrics;
+    private final Map<String, Lane<F>> lanes = new LinkedHashMap<>();
+
+    private int gateWidth;
+    private int gateHeight;
+    private int gateNoise;
+    private float gateFraction;
+    private long gateRefreshMs;
+
+    private volatile boolean stopped;
+
+    public PipelineDriver(Detector<F> detector, FrameAccess<F> access, int workerCount,
+            InferenceScheduler.Policy policy, PipelineMetrics metrics) {
+        this.detector = detector;
+        this.access = access;
+        this.workerCount = workerCount;
+        this.policy = policy;
+        this.metrics = metrics;
+    }
+
+    /** Gates every source with a {@link MotionGate} of these parameters; off by default. */
+    public void setMotionGate(int thumbnailWidth, int thumbnailHeight, int pixelNoise, float changedFraction,
+            long refreshIntervalMs) {
+        gateWidth = thumbnailWidth;
+        gateHeight = thumbnailHeight;
+        gateNoise = pixelNoise;
+        gateFraction = changedFraction;
+        gateRefreshMs = refreshIntervalMs;
+    }
+
+    public void addSource(String cameraId, FrameSource<F> source) {
+        lanes.put(cameraId, new Lane<>(cameraId, source, metrics.camera(cameraId)));
+    }
+
+    /**
+     * Pulls every source until it is exhausted (or {@link #stop} is called), waits for
+     * in-flight inference, closes the sources and returns the elapsed wall time in
+     * nanoseconds.
+     */
+    public long run() throws InterruptedException, IOException {
+        final InferenceScheduler<F> scheduler = new InferenceScheduler<>(workerCount, policy,
+                new InferenceScheduler.Worker<F>() {
+                    @Override
+                    public void process(String cameraId, F frame) {
+                        detect(lanes.get(cameraId), frame);
+                    }
+
+                    @Override
+                    public void discard(String cameraId, F frame) {
+                        Lane<F> lane = lanes.get(cameraId);
+                        lane.metrics.onDropped();
+                        lane.source.release(frame);
+                    }
+                }, "PipelineDriver");
+        final List<Throwable> failures = new ArrayList<>();
+        List<Thread> pullers = new ArrayList<>();
+        for (final Lane<F> lane : lanes.values()) {
+            if (gateWidth > 0) {
+                lane.gate = new MotionGate(gateWidth, gateHeight, gateNoise, gateFraction, gateRefreshMs);
+            }
+            pullers.add(new Thread(() -> {
+                try {
+                    pull(lane, scheduler);
+                } catch (Throwable t) {
+                    synchronized (failures) {
+                        failures.add(t);
+                    }
+                }
+            }, "PipelineDriver-" + lane.cameraId));
+        }
+
+        long startNanos = System.nanoTime();
+        scheduler.start();
+        for (Thread puller : pullers) {
+            puller.start();
+        }
+        try {
+            for (Thread puller : pullers) {
+                puller.join();
+            }
+            scheduler.awaitIdle();
+        } finally {
+            scheduler.close();
+            for (Lane<F> lane : lanes.values()) {
+                lane.source.close();
+            }
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        if (!failures.isEmpty()) {
+            Throwable failure = failures.get(0);
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            throw new IllegalStateException("Frame source failed", failure);
+        }
+        return elapsedNanos;
+    }
+
+    /** Makes {@link #run} return after the frames already pulled; safe from any thread. */
+    public void stop() {
+        stopped = true;
+    }
+
+    private void pull(Lane<F> lane, InferenceScheduler<F> scheduler) throws IOException, InterruptedException {
+        F frame;
+        while (!stopped && (frame = lane.source.acquireNext()) != null) {
+            lane.acquired++;
+            if (lane.gate != null) {
+                long gateStart = System.nanoTime();
+                access.sampleLuma(frame, lane.gate.thumbnail(), gateWidth, gateHeight);
+                boolean analyse = lane.gate.shouldAnalyze(TimeUnit.NANOSECONDS.toMillis(access.timestampNanos(frame)));
+                lane.metrics.recordNanos(PipelineMetrics.Stage.GATE, System.nanoTime() - gateStart);
+                if (!analyse) {
+                    lane.metrics.onSkipped();
+                    lane.source.release(frame);
+                    continue;
+                }
+            }
+            scheduler.submit(lane.cameraId, frame);
+        }
+    }
+
+    // Runs on a scheduler worker; the scheduler never runs two frames of one lane at once.
+    private void detect(Lane<F> lane, F frame) {
+        try {
+            long startNanos = System.nanoTime();
+            detector.detect(frame, lane.detections);
+            lane.metrics.recordNanos(PipelineMetrics.Stage.INFERENCE, System.nanoTime() - startNanos);
+            lane.detections.stageInto(lane.tracker);
+            lane.tracker.update(TimeUnit.NANOSECONDS.toMillis(access.timestampNanos(frame)));
+            lane.metrics.onProcessed();
+        } finally {
+            lane.source.release(frame);
+        }
+    }
+
+    public BoxTracker getTracker(String cameraId) {
+        return lanes.get(cameraId).tracker;
+    }
+
+    /** Detections from the camera's most recent inference; read only after {@link #run} returns. */
+    public Detections getDetections(String cameraId) {
+        return lanes.get(cameraId).detections;
+    }
+
+    /** Frames pulled from the camera's source; read only after {@link #run} returns. */
+    public long getAcquiredCount(String cameraId) {
+        return lanes.get(cameraId).acquired;
+    }
+}
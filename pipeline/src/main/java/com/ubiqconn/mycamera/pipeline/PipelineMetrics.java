@@ -0,0 +1,180 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-camera, per-stage pipeline metrics: a latency histogram for every stage plus
+ * processed/dropped/skipped frame counters. Recording is allocation-free once a camera's
+ * metrics exist; snapshots are formatted off the frame path for the log file and
+ * the on-screen HUD.
+ */
+public class PipelineMetrics {
+
+    public enum Stage {
+        /** Frame trigger (or sensor exposure) until the frame is in hand. */
+        CAPTURE,
+        /** Motion gate: thumbnail sampling and comparison with the last analysed frame. */
+        GATE,
+        /** Copying or wrapping the frame for the detector. */
+        COPY,
+        /** Submission to the detector until its results are back. */
+        INFERENCE,
+        /** Posting results until the UI thread picks them up. */
+        UI_POST,
+        /** OverlayView.onDraw. */
+        DRAW,
+        /** Frame capture until the UI thread has its results: what the user actually waits for. */
+        END_TO_END
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    public static class CameraMetrics {
+        private final LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private long lastSnapshotProcessed;
+        private long lastSnapshotNanos;
+        private double fps;
+
+        CameraMetrics(long nowNanos) {
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = new LatencyHistogram();
+            }
+            lastSnapshotNanos = nowNanos;
+        }
+
+        public void recordNanos(Stage stage, long nanos) {
+            histograms[stage.ordinal()].recordNanos(nanos);
+        }
+
+        public void recordMicros(Stage stage, long micros) {
+            histograms[stage.ordinal()].recordMicros(micros);
+        }
+
+        public void onProcessed() {
+            processed.incrementAndGet();
+        }
+
+        public void onDropped() {
+            dropped.incrementAndGet();
+        }
+
+        /** A frame the motion gate let through without inference, reusing the previous results. */
+        public void onSkipped() {
+            skipped.incrementAndGet();
+        }
+
+        public LatencyHistogram getHistogram(Stage stage) {
+            return histograms[stage.ordinal()];
+        }
+
+        public long getProcessedCount() {
+            return processed.get();
+        }
+
+        public long getDroppedCount() {
+            return dropped.get();
+        }
+
+        public long getSkippedCount() {
+            return skipped.get();
+        }
+
+        /** Fraction of gated frames that skipped inference. */
+        public double getSkipRatio() {
+            long skippedCount = skipped.get();
+            long total = skippedCount + processed.get();
+            return total == 0 ? 0 : (double) skippedCount / total;
+        }
+
+        /** Processed frames per second over the interval since the previous snapshot. */
+        public synchronized double getFps() {
+            return fps;
+        }
+
+        synchronized void updateFps(long nowNanos) {
+            long count = processed.get();
+            long elapsed = nowNanos - lastSnapshotNanos;
+            if (elapsed > 0) {
+                fps = (count - lastSnapshotProcessed) * 1e9 / elapsed;
+            }
+            lastSnapshotProcessed = count;
+            lastSnapshotNanos = nowNanos;
+        }
+
+        void appendTo(StringBuilder out) {
+            out.append(String.format(Locale.US, "fps=%.1f processed=%d dropped=%d skipped=%d (%.0f%%)%n",
+                    getFps(), processed.get(), dropped.get(), skipped.get(), getSkipRatio() * 100));
+            for (Stage stage : STAGES) {
+                LatencyHistogram histogram = histograms[stage.ordinal()];
+                if (histogram.getCount() == 0) {
+                    continue;
+                }
+                out.append(String.format(Locale.US, "  %-10s n=%-6d p50=%6.1f p90=%6.1f p99=%6.1f max=%6.1f ms%n",
+                        stage, histogram.getCount(),
+                        histogram.getPercentileMicros(50) / 1000.0,
+                        histogram.getPercentileMicros(90) / 1000.0,
+                        histogram.getPercentileMicros(99) / 1000.0,
+                        histogram.getMaxMicros() / 1000.0));
+            }
+        }
+    }
+
+    private final ConcurrentHashMap<String, CameraMetrics> cameras = new ConcurrentHashMap<>();
+
+    public CameraMetrics camera(String cameraId) {
+        CameraMetrics metrics = cameras.get(cameraId);
+        if (metrics == null) {
+            metrics = cameras.computeIfAbsent(cameraId, id -> new CameraMetrics(System.nanoTime()));
+        }
+        return metrics;
+    }
+
+    /** Updates each camera's FPS over the last interval and formats all cameras. */
+    public String snapshot(long nowNanos) {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, CameraMetrics> entry : new TreeMap<>(cameras).entrySet()) {
+            entry.getValue().updateFps(nowNanos);
+            out.append("camera ").append(entry.getKey()).append(' ');
+            entry.getValue().appendTo(out);
+        }
+        return out.toString();
+    }
+
+    /** Formats one camera for the HUD, without touching the FPS interval. */
+    public String describe(String cameraId) {
+        CameraMetrics metrics = cameras.get(cameraId);
+        if (metrics == null) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder();
+        metrics.appendTo(out);
+        return out.toString();
+    }
+
+    public void reset() {
+        cameras.clear();
+    }
+
+    /** Appends a timestamped snapshot to {@code file}, creating parent directories. */
+    public static void appendSnapshot(File file, long wallClockMillis, String snapshot) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        try (Writer writer = new FileWriter(file, true)) {
+            writer.write("# " + wallClockMillis + "\n");
+            writer.write(snapshot);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a recording written by {@link FrameRecorder}. The file is memory-mapped
+ * once and frames are handed out as zero-copy views into the mapping, either at a
+ * fixed rate or as fast as the consumer pulls them.
+ *
+ * Safe for one consumer thread; {@link #close} may be called from any thread.
+ */
+public class ReplayFrameSource implements FrameSource<Frame> {
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer mapped;
+    private final int width;
+    private final int height;
+    private final int format;
+    private final int frameCount;
+    private final int frameBytes;
+    private final long intervalNanos;
+    private final boolean loop;
+
+    private long nextIndex;
+    private long startNanos;
+    private volatile boolean closed;
+
+    /**
+     * @param fps  replay rate, or 0 to deliver frames as fast as they are pulled
+     * @param loop restart from the first frame at the end instead of finishing
+     */
+    public ReplayFrameSource(File recording, float fps, boolean loop) throws IOException {
+        file = new RandomAccessFile(recording, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Recording too large to map: " + size + " bytes");
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (size < FrameRecorder.HEADER_BYTES || mapped.getInt(0) != FrameRecorder.MAGIC) {
+                throw new IOException("Not a frame recording: " + recording);
+            }
+            if (mapped.getInt(4) != FrameRecorder.VERSION) {
+                throw new IOException("Unsupported recording version " + mapped.getInt(4));
+            }
+            width = mapped.getInt(8);
+            height = mapped.getInt(12);
+            format = mapped.getInt(16);
+            frameCount = mapped.getInt(20);
+            frameBytes = width * height * Frame.bytesPerPixel(format);
+            long expected = FrameRecorder.HEADER_BYTES + (long) frameCount * (FrameRecorder.FRAME_HEADER_BYTES + frameBytes);
+            if (size < expected) {
+                throw new IOException("Truncated recording: " + size + " of " + expected + " bytes");
+            }
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+        this.intervalNanos = fps > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / fps) : 0;
+        this.loop = loop;
+    }
+
+    @Override
+    public Frame acquireNext() throws InterruptedException {
+        if (closed || frameCount == 0 || (!loop && nextIndex >= frameCount)) {
+            return null;
+        }
+        if (intervalNanos > 0) {
+            if (nextIndex == 0) {
+                startNanos = System.nanoTime();
+            }
+            // Schedule against the start, so a slow consumer does not accumulate drift.
+            long waitNanos = startNanos + nextIndex * intervalNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+            if (closed) {
+                return null;
+            }
+        }
+        long index = nextIndex++;
+        int position = FrameRecorder.HEADER_BYTES
+                + (int) (index % frameCount) * (FrameRecorder.FRAME_HEADER_BYTES + frameBytes);
+        long timestampNanos = mapped.getLong(position);
+        ByteBuffer pixels = mapped.duplicate();
+        pixels.position(position + FrameRecorder.FRAME_HEADER_BYTES);
+        pixels.limit(position + FrameRecorder.FRAME_HEADER_BYTES + frameBytes);
+        return new Frame(pixels.slice(), width, height, format, timestampNanos, index);
+    }
+
+    @Override
+    public void release(Frame frame) {
+        // Frames are views into the mapping; nothing to give back.
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getFormat() {
+        return format;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        // The mapping itself stays valid until it is garbage collected.
+        file.close();
+    }
+}
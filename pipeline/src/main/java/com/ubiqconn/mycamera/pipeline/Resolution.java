@@ -0,0 +1,54 @@
+package com.ubiqconn.mycamera.pipeline;
+
+/**
+ * Plain-JDK stand-in for android.util.Size, so sizing logic can run off-device.
+ */
+public final class Resolution {
+
+    private final int width;
+    private final int height;
+
+    public Resolution(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getArea() {
+        return (long) width * height;
+    }
+
+    /** Whether both resolutions have exactly the same aspect ratio. */
+    public boolean hasAspectRatioOf(Resolution other) {
+        return (long) width * other.height == (long) height * other.width;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Resolution)) {
+            return false;
+        }
+        Resolution other = (Resolution) o;
+        return width == other.width && height == other.height;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * width + height;
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height;
+    }
+}
@@ -0,0 +1,78 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Decides when a detection is worth an evidence snapshot: its label is one of the
+ * watched categories, its score is high enough, and that category has not fired
+ * for the same camera within its cooldown. Thread-safe.
+ */
+public class SnapshotTrigger {
+
+    private final Map<String, Long> cooldownsMs;
+    private final float minScore;
+    // cameraId + '\n' + label -> time it last fired.
+    private final Map<String, Long> lastFiredMs = new HashMap<>();
+
+    /** @param cooldownsMs watched labels (matched case-insensitively) and their cooldowns */
+    public SnapshotTrigger(Map<String, Long> cooldownsMs, float minScore) {
+        this.cooldownsMs = new HashMap<>();
+        for (Map.Entry<String, Long> entry : cooldownsMs.entrySet()) {
+            this.cooldownsMs.put(entry.getKey().toLowerCase(Locale.US), entry.getValue());
+        }
+        this.minScore = minScore;
+    }
+
+    /**
+     * Parses "label[:cooldownMs],...", e.g. "person,car:30000"; labels without a
+     * cooldown get {@code defaultCooldownMs}. Null for null or empty.
+     */
+    public static SnapshotTrigger parse(String spec, long defaultCooldownMs, float minScore) {
+        if (spec == null || spec.trim().isEmpty()) {
+            return null;
+        }
+        Map<String, Long> cooldowns = new HashMap<>();
+        for (String item : spec.split(",")) {
+            item = item.trim();
+            if (item.isEmpty()) {
+                continue;
+            }
+            int colon = item.indexOf(':');
+            if (colon < 0) {
+                cooldowns.put(item, defaultCooldownMs);
+            } else {
+                cooldowns.put(item.substring(0, colon).trim(), Long.parseLong(item.substring(colon + 1).trim()));
+            }
+        }
+        return new SnapshotTrigger(cooldowns, minScore);
+    }
+
+    /**
+     * Returns true, and starts the cooldown, if {@code label} at {@code score} on
+     * {@code cameraId} should be captured now.
+     */
+    public synchronized boolean fire(String cameraId, String label, float score, long nowMs) {
+        if (label == null || score < minScore) {
+            return false;
+        }
+        String category = label.toLowerCase(Locale.US);
+        Long cooldownMs = cooldownsMs.get(category);
+        if (cooldownMs == null) {
+            return false;
+        }
+        String key = cameraId + '\n' + category;
+        Long last = lastFiredMs.get(key);
+        if (last != null && nowMs - last < cooldownMs) {
+            return false;
+        }
+        lastFiredMs.put(key, nowMs);
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "SnapshotTrigger{" + cooldownsMs + ", minScore=" + minScore + "}";
+    }
+}
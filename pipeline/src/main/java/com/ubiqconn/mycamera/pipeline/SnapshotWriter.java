@@ -0,0 +1,241 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Write-behind queue for snapshots: frames are handed over from the detection
+ * thread, compressed and written by a few encoder threads, and the directory is kept
+ * within its {@link DiskQuota}. The queue is bounded and never blocks the
+ * submitter: when it is full the oldest waiting frame is dropped and counted.
+ *
+ * Files are written under a temporary name and renamed once complete, so readers
+ * never see half a snapshot.
+ *
+ * @param <F> frame type; the writer only hands frames to the {@link Encoder}
+ */
+public class SnapshotWriter<F> {
+
+    public interface Encoder<F> {
+        /** Compresses {@code frame} into {@code out}; called on an encoder thread. */
+        void encode(F frame, OutputStream out) throws IOException;
+
+        /** The writer is done with {@code frame}: written, failed or dropped. */
+        void release(F frame);
+    }
+
+    private static final class Job<F> {
+        final String fileName;
+        final F frame;
+
+        Job(String fileName, F frame) {
+            this.fileName = fileName;
+            this.frame = frame;
+        }
+    }
+
+    private final File directory;
+    private final int capacity;
+    private final int threadCount;
+    private final Encoder<F> encoder;
+    private final DiskQuota quota;
+    private final String threadName;
+
+    private final Object lock = new Object();
+    private final ArrayDeque<Job<F>> queue;
+    private final List<Thread> threads = new ArrayList<>();
+    private int busy;
+    private boolean closed;
+
+    private long submitted;
+    private long written;
+    private long dropped;
+    private long failed;
+
+    public SnapshotWriter(File directory, int capacity, int threadCount, Encoder<F> encoder, DiskQuota quota,
+            String threadName) {
+        if (capacity <= 0 || threadCount <= 0) {
+            throw new IllegalArgumentException("capacity and threadCount must be positive");
+        }
+        this.directory = directory;
+        this.capacity = capacity;
+        this.threadCount = threadCount;
+        this.encoder = encoder;
+        this.quota = quota;
+        this.threadName = threadName;
+        queue = new ArrayDeque<>(capacity);
+    }
+
+    public void start() {
+        synchronized (lock) {
+            if (!threads.isEmpty()) {
+                return;
+            }
+            for (int i = 0; i < threadCount; i++) {
+                Thread thread = new Thread(this::runEncoder, threadName + "-" + i);
+                // Compression must not compete with inference.
+                thread.setPriority(Thread.MIN_PRIORITY);
+                threads.add(thread);
+                thread.start();
+            }
+        }
+    }
+
+    /**
+     * Queues {@code frame} to be written as {@code fileName}. Never blocks: if the
+     * queue is full the oldest waiting frame is dropped. Returns false if a frame was
+     * dropped for this one, or this one was because the writer is closed.
+     */
+    public boolean submit(String fileName, F frame) {
+        Job<F> drop = null;
+        synchronized (lock) {
+            if (closed) {
+                drop = new Job<>(fileName, frame);
+            } else {
+                submitted++;
+                if (queue.size() == capacity) {
+                    drop = queue.pollFirst();
+                    dropped++;
+                }
+                queue.addLast(new Job<>(fileName, frame));
+                // Not notify(): awaitIdle() callers wait on the same monitor and could take
+                // the wake-up meant for an idle encoder, leaving the snapshot unwritten.
+                lock.notifyAll();
+            }
+        }
+        if (drop != null) {
+            encoder.release(drop.frame);
+            return false;
+        }
+        return true;
+    }
+
+    private void runEncoder() {
+        while (true) {
+            Job<F> job;
+            synchronized (lock) {
+                while (!closed && queue.isEmpty()) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+                job = queue.pollFirst();
+                busy++;
+            }
+            boolean ok = false;
+            try {
+                ok = write(job);
+            } finally {
+                encoder.release(job.frame);
+                synchronized (lock) {
+                    busy--;
+                    if (ok) {
+                        written++;
+                    } else {
+                        failed++;
+                    }
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+
+    private boolean write(Job<F> job) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return false;
+        }
+        File target = new File(directory, job.fileName);
+        File temp = new File(directory, job.fileName + DiskQuota.TEMP_SUFFIX);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+            encoder.encode(job.frame, out);
+        } catch (IOException | RuntimeException e) {
+            temp.delete();
+            return false;
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            return false;
+        }
+        if (quota != null) {
+            quota.add(target);
+        }
+        return true;
+    }
+
+    /** Blocks until nothing is queued or being written. */
+    public void awaitIdle() throws InterruptedException {
+        synchronized (lock) {
+            while (!closed && (!queue.isEmpty() || busy > 0)) {
+                lock.wait();
+            }
+        }
+    }
+
+    /** Stops the encoders after their current snapshot and drops everything still queued. */
+    public void close() {
+        List<Job<F>> pending;
+        List<Thread> encoders;
+        synchronized (lock) {
+            closed = true;
+            pending = new ArrayList<>(queue);
+            dropped += pending.size();
+            queue.clear();
+            lock.notifyAll();
+            encoders = new ArrayList<>(threads);
+        }
+        for (Job<F> job : pending) {
+            encoder.release(job.frame);
+        }
+        for (Thread thread : encoders) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public long getSubmittedCount() {
+        synchronized (lock) {
+            return submitted;
+        }
+    }
+
+    public long getWrittenCount() {
+        synchronized (lock) {
+            return written;
+        }
+    }
+
+    public long getDroppedCount() {
+        synchronized (lock) {
+            return dropped;
+        }
+    }
+
+    public long getFailedCount() {
+        synchronized (lock) {
+            return failed;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (lock) {
+            return "SnapshotWriter{submitted=" + submitted + ", written=" + written + ", dropped=" + dropped
+                    + ", failed=" + failed + ", queued=" + queue.size() + (quota != null ? ", " + quota : "") + "}";
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cold-start milestones (first preview frame, model loaded, first detection, ...)
+ * as milliseconds since process start. Each milestone keeps its first time only, so
+ * call sites can mark unconditionally on every frame. Thread-safe.
+ */
+public class StartupMetrics {
+
+    private final long startMs;
+    private final ConcurrentHashMap<String, Long> milestones = new ConcurrentHashMap<>();
+
+    /** @param startMs process start, on the same clock as the times passed to {@link #mark} */
+    public StartupMetrics(long startMs) {
+        this.startMs = startMs;
+    }
+
+    /** Records {@code milestone} at {@code nowMs} unless it was already reached; returns true if recorded. */
+    public boolean mark(String milestone, long nowMs) {
+        // Cheap check first: most calls come from the frame path after the fact.
+        return !milestones.containsKey(milestone) && milestones.putIfAbsent(milestone, nowMs - startMs) == null;
+    }
+
+    /** Milliseconds from start to {@code milestone}, or -1 if it has not been reached. */
+    public long get(String milestone) {
+        Long elapsed = milestones.get(milestone);
+        return elapsed != null ? elapsed : -1;
+    }
+
+    public boolean has(String milestone) {
+        return milestones.containsKey(milestone);
+    }
+
+    /** Milestones in the order they were reached, e.g. "camera_open_0=180 first_preview_0=412". */
+    public String format() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(milestones.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> lhs, Map.Entry<String, Long> rhs) {
+                int byTime = Long.compare(lhs.getValue(), rhs.getValue());
+                return byTime != 0 ? byTime : lhs.getKey().compareTo(rhs.getKey());
+            }
+        });
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, Long> entry : entries) {
+            if (out.length() > 0) {
+                out.append(' ');
+            }
+            out.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return out.toString();
+    }
+
+    /**
+     * Appends one line per launch to {@code file}, tagged with the app version so
+     * startup can be compared across releases.
+     */
+    public void append(File file, String version, long wallClockMillis) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        try (Writer writer = new FileWriter(file, true)) {
+            writer.write(wallClockMillis + " version=" + version + " " + format() + "\n");
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chooses preview and analysis stream sizes for all open cameras together instead
+ * of one camera at a time. Each camera starts from the cheapest pair that covers its
+ * view and the model input, within the sizes concurrent sessions are guaranteed; if
+ * the cameras' combined pixel rate is still over the ISP budget, the most expensive
+ * camera steps down one pair at a time. Analysis streams keep the preview's aspect
+ * ratio and are never planned below the model input. Plain data in and out, so plans
+ * can be checked against output-size tables captured from devices.
+ */
+public final class StreamPlanner {
+
+    /** What one camera can output and the view it has to fill. */
+    public static final class CameraStreams {
+        final String cameraId;
+        final Resolution[] previewSizes;
+        final Resolution[] analysisSizes;
+        final int viewWidth;
+        final int viewHeight;
+
+        /**
+         * @param previewSizes  SurfaceTexture output sizes, sensor aspect first, as the camera lists them
+         * @param analysisSizes YUV_420_888 output sizes, or empty without an analysis stream
+         */
+        public CameraStreams(String cameraId, Resolution[] previewSizes, Resolution[] analysisSizes, int viewWidth,
+                int viewHeight) {
+            this.cameraId = cameraId;
+            this.previewSizes = previewSizes;
+            this.analysisSizes = analysisSizes;
+            this.viewWidth = viewWidth;
+            this.viewHeight = viewHeight;
+        }
+    }
+
+    /** Limits shared by the sessions that stream at the same time. */
+    public static final class Limits {
+        final Resolution maxPreview;
+        final Resolution maxAnalysis;
+        final long maxPixelsPerSecond;
+        final int fps;
+
+        /**
+         * @param maxPreview         largest preview size, or null for any
+         * @param maxAnalysis        largest analysis size, or null for any
+         * @param maxPixelsPerSecond budget for all streams of all cameras, or 0 for none
+         * @param fps                frame rate the streams run at
+         */
+        public Limits(Resolution maxPreview, Resolution maxAnalysis, long maxPixelsPerSecond, int fps) {
+            this.maxPreview = maxPreview;
+            this.maxAnalysis = maxAnalysis;
+            this.maxPixelsPerSecond = maxPixelsPerSecond;
+            this.fps = fps;
+        }
+    }
+
+    /** The sizes planned for one camera. */
+    public static final class Choice {
+        private final Resolution preview;
+        private final Resolution analysis;
+        private final long pixelsPerSecond;
+
+        Choice(Resolution preview, Resolution analysis, int fps) {
+            this.preview = preview;
+            this.analysis = analysis;
+            long pixels = preview.getArea() + (analysis != null ? analysis.getArea() : 0);
+            this.pixelsPerSecond = pixels * fps;
+        }
+
+        public Resolution getPreview() {
+            return preview;
+        }
+
+        /** Null when the camera has no analysis stream. */
+        public Resolution getAnalysis() {
+            return analysis;
+        }
+
+        public long getPixelsPerSecond() {
+            return pixelsPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            return "preview " + preview + (analysis != null ? ", analysis " + analysis : "");
+        }
+    }
+
+    public static final class Plan {
+        private final Map<String, Choice> choices;
+        private final long pixelsPerSecond;
+        private final boolean withinBudget;
+
+        Plan(Map<String, Choice> choices, long pixelsPerSecond, boolean withinBudget) {
+            this.choices = Collections.unmodifiableMap(choices);
+            this.pixelsPerSecond = pixelsPerSecond;
+            this.withinBudget = withinBudget;
+        }
+
+        /** Null for a camera that was not planned. */
+        public Choice get(String cameraId) {
+            return choices.get(cameraId);
+        }
+
+        public long getPixelsPerSecond() {
+            return pixelsPerSecond;
+        }
+
+        /** False if even the cheapest pairs exceed the budget; they are planned anyway. */
+        public boolean isWithinBudget() {
+            return withinBudget;
+        }
+
+        @Override
+        public String toString() {
+            return "StreamPlan{" + choices + ", " + pixelsPerSecond / 1000000 + " Mpx/s"
+                    + (withinBudget ? "" : " over budget") + "}";
+        }
+    }
+
+    private static final Comparator<Choice> BY_COST = new Comparator<Choice>() {
+        @Override
+        public int compare(Choice lhs, Choice rhs) {
+            return Long.compare(lhs.pixelsPerSecond, rhs.pixelsPerSecond);
+        }
+    };
+
+    private StreamPlanner() {
+    }
+
+    /**
+     * @param minAnalysisWidth narrowest useful analysis frame, i.e. the model input width
+     */
+    public static Plan plan(List<CameraStreams> cameras, Limits limits, int minAnalysisWidth) {
+        int count = cameras.size();
+        List<List<Choice>> candidates = new ArrayList<>(count);
+        int[] picks = new int[count];
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            CameraStreams camera = cameras.get(i);
+            List<Choice> options = candidates(camera, limits, minAnalysisWidth);
+            candidates.add(options);
+            picks[i] = initialPick(options, camera);
+            total += options.get(picks[i]).pixelsPerSecond;
+        }
+
+        // Over budget: step the most expensive camera down to its next cheaper pair.
+        while (limits.maxPixelsPerSecond > 0 && total > limits.maxPixelsPerSecond) {
+            int worst = -1;
+            for (int i = 0; i < count; i++) {
+                if (picks[i] > 0 && (worst < 0 || candidates.get(i).get(picks[i]).pixelsPerSecond
+                        > candidates.get(worst).get(picks[worst]).pixelsPerSecond)) {
+                    worst = i;
+                }
+            }
+            if (worst < 0) {
+                break;
+            }
+            total -= candidates.get(worst).get(picks[worst]).pixelsPerSecond;
+            picks[worst]--;
+            total += candidates.get(worst).get(picks[worst]).pixelsPerSecond;
+        }
+
+        Map<String, Choice> choices = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            choices.put(cameras.get(i).cameraId, candidates.get(i).get(picks[i]));
+        }
+        return new Plan(choices, total, limits.maxPixelsPerSecond <= 0 || total <= limits.maxPixelsPerSecond);
+    }
+
+    // One pair per usable preview size, cheapest first.
+    private static List<Choice> candidates(CameraStreams camera, Limits limits, int minAnalysisWidth) {
+        Resolution[] analysisSizes = within(camera.analysisSizes, limits.maxAnalysis);
+        List<Choice> options = new ArrayList<>();
+        for (Resolution preview : previewSizes(camera, limits)) {
+            Resolution analysis = analysisSizes.length > 0
+                    ? StreamSizes.chooseAnalysisSize(analysisSizes, preview, minAnalysisWidth) : null;
+            options.add(new Choice(preview, analysis, limits.fps));
+        }
+        Collections.sort(options, BY_COST);
+        return options;
+    }
+
+    // Sizes with the sensor's aspect ratio that fit the limit; failing that, any that fit.
+    private static Resolution[] previewSizes(CameraStreams camera, Limits limits) {
+        Resolution[] fitting = within(camera.previewSizes, limits.maxPreview);
+        if (fitting.length == 0) {
+            return new Resolution[] { smallest(camera.previewSizes) };
+        }
+        Resolution sensorAspect = camera.previewSizes[0];
+        List<Resolution> sameAspect = new ArrayList<>();
+        for (Resolution size : fitting) {
+            if (size.hasAspectRatioOf(sensorAspect)) {
+                sameAspect.add(size);
+            }
+        }
+        return sameAspect.isEmpty() ? fitting : sameAspect.toArray(new Resolution[0]);
+    }
+
+    // Cheapest pair whose preview covers the view, as chooseOptimalSize; else the largest.
+    private static int initialPick(List<Choice> options, CameraStreams camera) {
+        int largest = 0;
+        for (int i = 0; i < options.size(); i++) {
+            Resolution preview = options.get(i).preview;
+            if (preview.getWidth() >= camera.viewWidth && preview.getHeight() >= camera.viewHeight) {
+                return i;
+            }
+            if (preview.getArea() > options.get(largest).preview.getArea()) {
+                largest = i;
+            }
+        }
+        return largest;
+    }
+
+    private static Resolution[] within(Resolution[] sizes, Resolution max) {
+        if (max == null) {
+            return sizes;
+        }
+        List<Resolution> fitting = new ArrayList<>();
+        for (Resolution size : sizes) {
+            if (size.getWidth() <= max.getWidth() && size.getHeight() <= max.getHeight()) {
+                fitting.add(size);
+            }
+        }
+        return fitting.toArray(new Resolution[0]);
+    }
+
+    private static Resolution smallest(Resolution[] sizes) {
+        Resolution smallest = sizes[0];
+        for (Resolution size : sizes) {
+            if (size.getArea() < smallest.getArea()) {
+                smallest = size;
+            }
+        }
+        return smallest;
+    }
+}
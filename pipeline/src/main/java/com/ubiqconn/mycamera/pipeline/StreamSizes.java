@@ -0,0 +1,79 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Output size selection for the preview and analysis streams.
+ */
+public final class StreamSizes {
+
+    private static final Comparator<Resolution> BY_AREA = new Comparator<Resolution>() {
+        @Override
+        public int compare(Resolution lhs, Resolution rhs) {
+            return Long.compare(lhs.getArea(), rhs.getArea());
+        }
+    };
+
+    private StreamSizes() {
+    }
+
+    /**
+     * Smallest size with the first choice's aspect ratio that covers the view, or else
+     * the largest size that does not.
+     */
+    public static Resolution chooseOptimalSize(Resolution[] choices, int textureViewWidth, int textureViewHeight) {
+        List<Resolution> bigEnough = new ArrayList<>();
+        List<Resolution> notBigEnough = new ArrayList<>();
+        int w = choices[0].getWidth();
+        int h = choices[0].getHeight();
+        for (Resolution option : choices) {
+            if (option.getHeight() == option.getWidth() * h / w &&
+                    option.getWidth() >= textureViewWidth && option.getHeight() >= textureViewHeight) {
+                bigEnough.add(option);
+            } else {
+                notBigEnough.add(option);
+            }
+        }
+
+        if (bigEnough.size() > 0) {
+            return Collections.min(bigEnough, BY_AREA);
+        } else if (notBigEnough.size() > 0) {
+            return Collections.max(notBigEnough, BY_AREA);
+        } else {
+            return choices[0];
+        }
+    }
+
+    /**
+     * Smallest size with the preview's aspect ratio that is at least {@code minWidth}
+     * wide; the model downsamples anything larger anyway.
+     */
+    public static Resolution chooseAnalysisSize(Resolution[] choices, Resolution previewSize, int minWidth) {
+        Resolution best = null;
+        for (Resolution option : choices) {
+            if (!option.hasAspectRatioOf(previewSize) || option.getWidth() < minWidth) {
+                continue;
+            }
+            if (best == null || option.getArea() < best.getArea()) {
+                best = option;
+            }
+        }
+        if (best != null) {
+            return best;
+        }
+        return chooseOptimalSize(choices, minWidth, minWidth * previewSize.getHeight() / previewSize.getWidth());
+    }
+
+    /**
+     * Largest size with the source's aspect ratio that fits inside
+     * {@code maxWidth x maxHeight}, never upscaling: the content area of a letterboxed
+     * model input.
+     */
+    public static Resolution fitWithin(int width, int height, int maxWidth, int maxHeight) {
+        float scale = Math.min(1f, Math.min((float) maxWidth / width, (float) maxHeight / height));
+        return new Resolution(Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale)));
+    }
+}
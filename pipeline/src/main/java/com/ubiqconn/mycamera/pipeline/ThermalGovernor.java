@@ -0,0 +1,145 @@
+package com.ubiqconn.mycamera.pipeline;
+
+/**
+ * Steps the pipeline down a ladder of degradations while the device is hot or short
+ * of power, and back up once it has cooled. Levels are cumulative: each one keeps the
+ * degradations of the levels below it.
+ *
+ * Thermal status uses PowerManager's THERMAL_STATUS_* values. MODERATE and SEVERE
+ * step down one level per interval (SEVERE faster), CRITICAL and above go straight
+ * to the last level, LIGHT holds the current level and NONE steps back up one level
+ * per {@code stepUpMs} of uninterrupted cool. Low battery (not charging) or battery
+ * saver keeps at least {@link Level#ANALYSIS_FPS}. Time is passed in, so thermal
+ * traces can be replayed in tests.
+ */
+public class ThermalGovernor {
+
+    public static final int THERMAL_STATUS_NONE = 0;
+    public static final int THERMAL_STATUS_LIGHT = 1;
+    public static final int THERMAL_STATUS_MODERATE = 2;
+    public static final int THERMAL_STATUS_SEVERE = 3;
+    public static final int THERMAL_STATUS_CRITICAL = 4;
+
+    public enum Level {
+        NORMAL,
+        /** Lower analysis frame rate. */
+        ANALYSIS_FPS,
+        /** Lower sensor frame rate (CONTROL_AE_TARGET_FPS_RANGE). */
+        SENSOR_FPS,
+        /** Smaller analysis stream. */
+        ANALYSIS_RESOLUTION,
+        /** No inference on any camera but the primary one. */
+        SECONDARY_PAUSED;
+
+        /** Whether this level applies {@code degradation}. */
+        public boolean includes(Level degradation) {
+            return ordinal() >= degradation.ordinal();
+        }
+    }
+
+    private static final Level[] LEVELS = Level.values();
+
+    private final long stepDownMs;
+    private final long severeStepDownMs;
+    private final long stepUpMs;
+    private final int lowBatteryPercent;
+
+    private Level level = Level.NORMAL;
+    private long lastChangeMs = Long.MIN_VALUE;
+    private long coolSinceMs = -1;
+    private long transitions;
+
+    /**
+     * @param stepDownMs        time between steps down at MODERATE
+     * @param severeStepDownMs  time between steps down at SEVERE
+     * @param stepUpMs          cool time before, and between, steps up
+     * @param lowBatteryPercent battery level at or below which, unplugged, analysis is throttled
+     */
+    public ThermalGovernor(long stepDownMs, long severeStepDownMs, long stepUpMs, int lowBatteryPercent) {
+        this.stepDownMs = stepDownMs;
+        this.severeStepDownMs = severeStepDownMs;
+        this.stepUpMs = stepUpMs;
+        this.lowBatteryPercent = lowBatteryPercent;
+    }
+
+    /**
+     * Feeds the current state and returns the level to run at.
+     *
+     * @param batteryPercent 0..100, or negative if unknown
+     */
+    public synchronized Level update(long nowMs, int thermalStatus, int batteryPercent, boolean charging,
+            boolean powerSave) {
+        Level floor = powerSave || (!charging && batteryPercent >= 0 && batteryPercent <= lowBatteryPercent)
+                ? Level.ANALYSIS_FPS : Level.NORMAL;
+        if (thermalStatus >= THERMAL_STATUS_CRITICAL) {
+            coolSinceMs = -1;
+            setLevel(LEVELS[LEVELS.length - 1], nowMs);
+        } else if (thermalStatus >= THERMAL_STATUS_MODERATE) {
+            coolSinceMs = -1;
+            long interval = thermalStatus >= THERMAL_STATUS_SEVERE ? severeStepDownMs : stepDownMs;
+            if (level.ordinal() < LEVELS.length - 1 && sinceChange(nowMs) >= interval) {
+                setLevel(LEVELS[level.ordinal() + 1], nowMs);
+            }
+        } else if (thermalStatus == THERMAL_STATUS_NONE) {
+            if (coolSinceMs < 0) {
+                coolSinceMs = nowMs;
+            }
+            if (level.ordinal() > floor.ordinal() && nowMs - coolSinceMs >= stepUpMs
+                    && sinceChange(nowMs) >= stepUpMs) {
+                setLevel(LEVELS[level.ordinal() - 1], nowMs);
+            }
+        } else {
+            // LIGHT: neither hot enough to step down nor cool enough to step up.
+            coolSinceMs = -1;
+        }
+        if (level.ordinal() < floor.ordinal()) {
+            setLevel(floor, nowMs);
+        }
+        return level;
+    }
+
+    private long sinceChange(long nowMs) {
+        return lastChangeMs == Long.MIN_VALUE ? Long.MAX_VALUE : nowMs - lastChangeMs;
+    }
+
+    private void setLevel(Level next, long nowMs) {
+        if (next != level) {
+            level = next;
+            lastChangeMs = nowMs;
+            transitions++;
+        }
+    }
+
+    public synchronized Level getLevel() {
+        return level;
+    }
+
+    public synchronized long getTransitionCount() {
+        return transitions;
+    }
+
+    /**
+     * Index of the range in {@code ranges} (pairs of lower/upper FPS) to run the
+     * sensor at when throttled: the lowest upper bound that still reaches
+     * {@code minFps}, widest on a tie; -1 if there are none.
+     */
+    public static int chooseThrottledFpsRange(int[][] ranges, int minFps) {
+        int best = -1;
+        for (int i = 0; i < ranges.length; i++) {
+            int[] range = ranges[i];
+            if (range[1] < minFps) {
+                continue;
+            }
+            if (best < 0 || range[1] < ranges[best][1]
+                    || (range[1] == ranges[best][1] && range[0] < ranges[best][0])) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ThermalGovernor{" + level + ", transitions=" + transitions + "}";
+    }
+}
@@ -0,0 +1,118 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.util.Locale;
+
+/**
+ * Splits a frame into a grid of overlapping tiles for tiled inference, so small or
+ * distant objects are seen at close to the model's input resolution instead of
+ * being squeezed with the whole frame. Optionally adds the whole frame as a last
+ * tile, which still catches objects larger than a tile.
+ */
+public final class TileLayout {
+
+    private final int columns;
+    private final int rows;
+    private final float overlap;
+    private final boolean includeFullFrame;
+
+    /**
+     * @param overlap fraction of a tile shared with its neighbour, 0 to below 1; objects
+     *                cut by one tile border appear whole in the next tile
+     */
+    public TileLayout(int columns, int rows, float overlap, boolean includeFullFrame) {
+        if (columns <= 0 || rows <= 0) {
+            throw new IllegalArgumentException("Invalid grid " + columns + "x" + rows);
+        }
+        if (overlap < 0 || overlap >= 1) {
+            throw new IllegalArgumentException("overlap must be in [0, 1)");
+        }
+        this.columns = columns;
+        this.rows = rows;
+        this.overlap = overlap;
+        this.includeFullFrame = includeFullFrame;
+    }
+
+    /**
+     * Parses "COLUMNSxROWS", e.g. "2x2"; null for null, empty or "off".
+     *
+     * @throws IllegalArgumentException for anything else, including non-numeric sides
+     */
+    public static TileLayout parse(String grid, float overlap, boolean includeFullFrame) {
+        if (grid == null || grid.isEmpty() || "off".equalsIgnoreCase(grid)) {
+            return null;
+        }
+        int x = grid.toLowerCase(Locale.US).indexOf('x');
+        if (x <= 0) {
+            throw new IllegalArgumentException("Expected COLUMNSxROWS, got " + grid);
+        }
+        return new TileLayout(Integer.parseInt(grid.substring(0, x).trim()),
+                Integer.parseInt(grid.substring(x + 1).trim()), overlap, includeFullFrame);
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getTileCount() {
+        return columns * rows + (includeFullFrame ? 1 : 0);
+    }
+
+    /**
+     * Writes the tiles of a {@code width x height} frame to {@code out} as packed
+     * left/top/right/bottom pixels, grid tiles row by row and then the whole frame.
+     * Returns the tile count.
+     */
+    public int layout(int width, int height, int[] out) {
+        int tileWidth = tileSize(width, columns);
+        int tileHeight = tileSize(height, rows);
+        int i = 0;
+        for (int row = 0; row < rows; row++) {
+            int top = offset(row, rows, height, tileHeight);
+            for (int column = 0; column < columns; column++) {
+                int left = offset(column, columns, width, tileWidth);
+                out[i++] = left;
+                out[i++] = top;
+                out[i++] = left + tileWidth;
+                out[i++] = top + tileHeight;
+            }
+        }
+        if (includeFullFrame) {
+            out[i++] = 0;
+            out[i++] = 0;
+            out[i++] = width;
+            out[i++] = height;
+        }
+        return i / FrameGeometry.BOX_STRIDE;
+    }
+
+    /** Frame size whose grid tiles come out {@code tileWidth x tileHeight}, e.g. the model input. */
+    public Resolution frameSizeFor(int tileWidth, int tileHeight) {
+        return new Resolution(Math.round(tileWidth * span(columns)), Math.round(tileHeight * span(rows)));
+    }
+
+    // Tiles in a row cover this many tile widths.
+    private float span(int count) {
+        return count - (count - 1) * overlap;
+    }
+
+    private int tileSize(int length, int count) {
+        return Math.min(length, Math.round(length / span(count)));
+    }
+
+    // Spreads the tiles evenly so the first starts at 0 and the last ends at the frame edge.
+    private static int offset(int index, int count, int length, int tileLength) {
+        if (count == 1) {
+            return 0;
+        }
+        return Math.round((float) index * (length - tileLength) / (count - 1));
+    }
+
+    @Override
+    public String toString() {
+        return columns + "x" + rows + " overlap " + overlap + (includeFullFrame ? " + full frame" : "");
+    }
+}
@@ -0,0 +1,191 @@
+package com.ubiqconn.mycamera.pipeline;
+
+/**
+ * Merges per-tile detections into frame coordinates with cross-tile non-maximum
+ * suppression. Boxes are kept in descending score order; a box is dropped when a
+ * kept box of the same label overlaps it by {@code iouThreshold}, or, for boxes from
+ * different tiles, when either covers {@code containmentThreshold} of the other:
+ * an object cut at a tile border shows up as a partial box in one tile and a
+ * whole one in the next, and their IoU alone is low. Cross-tile duplicates grow
+ * the kept box to the union of both, stitching fragments back together.
+ *
+ * Preallocated and single-threaded: begin, add every tile's boxes, merge, read.
+ */
+public class TileMerger {
+
+    private final int capacity;
+    private final float iouThreshold;
+    private final float containmentThreshold;
+
+    private final float[] boxes;
+    private final float[] scores;
+    private final int[] categories;
+    private final String[] labels;
+    private final int[] tiles;
+    private final int[] order;
+    private final boolean[] suppressed;
+
+    private final float[] mergedBoxes;
+    private final float[] mergedScores;
+    private final int[] mergedCategories;
+    private final String[] mergedLabels;
+    private final int[] mergedTiles;
+
+    private int count;
+    private int mergedCount;
+
+    public TileMerger(int capacity, float iouThreshold, float containmentThreshold) {
+        this.capacity = capacity;
+        this.iouThreshold = iouThreshold;
+        this.containmentThreshold = containmentThreshold;
+        boxes = new float[capacity * FrameGeometry.BOX_STRIDE];
+        scores = new float[capacity];
+        categories = new int[capacity];
+        labels = new String[capacity];
+        tiles = new int[capacity];
+        order = new int[capacity];
+        suppressed = new boolean[capacity];
+        mergedBoxes = new float[capacity * FrameGeometry.BOX_STRIDE];
+        mergedScores = new float[capacity];
+        mergedCategories = new int[capacity];
+        mergedLabels = new String[capacity];
+        mergedTiles = new int[capacity];
+    }
+
+    public void begin() {
+        count = 0;
+        mergedCount = 0;
+    }
+
+    /**
+     * Adds a box found in {@code tile}, in tile pixels; {@code tileLeft/tileTop} place
+     * the tile in the frame, {@code category} is the label's index in the model's label
+     * map. Returns false once full.
+     */
+    public boolean add(int tile, float tileLeft, float tileTop, float left, float top, float right, float bottom,
+            float score, int category, String label) {
+        if (count == capacity) {
+            return false;
+        }
+        int b = count * FrameGeometry.BOX_STRIDE;
+        boxes[b] = left + tileLeft;
+        boxes[b + 1] = top + tileTop;
+        boxes[b + 2] = right + tileLeft;
+        boxes[b + 3] = bottom + tileTop;
+        scores[count] = score;
+        categories[count] = category;
+        labels[count] = label;
+        tiles[count] = tile;
+        count++;
+        return true;
+    }
+
+    /** Runs the suppression; returns the number of boxes kept. */
+    public int merge() {
+        // Insertion sort by descending score: a few dozen boxes, no allocation.
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            int j = i - 1;
+            while (j >= 0 && scores[order[j]] < scores[index]) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = index;
+            suppressed[i] = false;
+        }
+
+        mergedCount = 0;
+        for (int i = 0; i < count; i++) {
+            int candidate = order[i];
+            int kept = findDuplicate(candidate);
+            if (kept < 0) {
+                int b = candidate * FrameGeometry.BOX_STRIDE;
+                System.arraycopy(boxes, b, mergedBoxes, mergedCount * FrameGeometry.BOX_STRIDE,
+                        FrameGeometry.BOX_STRIDE);
+                mergedScores[mergedCount] = scores[candidate];
+                mergedCategories[mergedCount] = categories[candidate];
+                mergedLabels[mergedCount] = labels[candidate];
+                mergedTiles[mergedCount] = tiles[candidate];
+                mergedCount++;
+            } else {
+                suppressed[candidate] = true;
+                if (mergedTiles[kept] != tiles[candidate]) {
+                    union(kept, candidate);
+                }
+            }
+        }
+        return mergedCount;
+    }
+
+    // Index of the kept box that {@code candidate} duplicates, or -1.
+    private int findDuplicate(int candidate) {
+        int b = candidate * FrameGeometry.BOX_STRIDE;
+        for (int k = 0; k < mergedCount; k++) {
+            if (!labelsMatch(mergedLabels[k], labels[candidate])) {
+                continue;
+            }
+            int m = k * FrameGeometry.BOX_STRIDE;
+            if (BoxTracker.iou(mergedBoxes, m, boxes, b) >= iouThreshold) {
+                return k;
+            }
+            if (mergedTiles[k] != tiles[candidate]
+                    && containment(mergedBoxes, m, boxes, b) >= containmentThreshold) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    private void union(int kept, int candidate) {
+        int m = kept * FrameGeometry.BOX_STRIDE;
+        int b = candidate * FrameGeometry.BOX_STRIDE;
+        mergedBoxes[m] = Math.min(mergedBoxes[m], boxes[b]);
+        mergedBoxes[m + 1] = Math.min(mergedBoxes[m + 1], boxes[b + 1]);
+        mergedBoxes[m + 2] = Math.max(mergedBoxes[m + 2], boxes[b + 2]);
+        mergedBoxes[m + 3] = Math.max(mergedBoxes[m + 3], boxes[b + 3]);
+    }
+
+    private static boolean labelsMatch(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /** Intersection over the smaller box's area. */
+    static float containment(float[] a, int ai, float[] b, int bi) {
+        float width = Math.min(a[ai + 2], b[bi + 2]) - Math.max(a[ai], b[bi]);
+        float height = Math.min(a[ai + 3], b[bi + 3]) - Math.max(a[ai + 1], b[bi + 1]);
+        if (width <= 0 || height <= 0) {
+            return 0f;
+        }
+        float areaA = (a[ai + 2] - a[ai]) * (a[ai + 3] - a[ai + 1]);
+        float areaB = (b[bi + 2] - b[bi]) * (b[bi + 3] - b[bi + 1]);
+        float smaller = Math.min(areaA, areaB);
+        return smaller > 0 ? width * height / smaller : 0f;
+    }
+
+    /** Boxes added since {@link #begin}, before suppression. */
+    public int getInputCount() {
+        return count;
+    }
+
+    public int count() {
+        return mergedCount;
+    }
+
+    /** Kept boxes in frame pixels, packed left/top/right/bottom, highest score first. */
+    public float[] boxes() {
+        return mergedBoxes;
+    }
+
+    public float[] scores() {
+        return mergedScores;
+    }
+
+    /** Category indices of the kept boxes, as passed to {@link #add}. */
+    public int[] categories() {
+        return mergedCategories;
+    }
+
+    public String[] labels() {
+        return mergedLabels;
+    }
+}
@@ -0,0 +1,91 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts YUV_420_888 planes (camera analysis frames) to packed RGBA, the layout
+ * the detector takes from a ByteBuffer. Full-range BT.601, as camera YUV is;
+ * chroma is shared by each 2x2 block. Any row and pixel strides are accepted, so
+ * both planar (I420) and semi-planar (NV12/NV21) buffers work unchanged.
+ *
+ * The output buffer is reused for every frame of the same size; one converter per
+ * camera, not thread-safe.
+ */
+public class YuvConverter {
+
+    // 16.16 fixed-point coefficients.
+    private static final int R_FROM_V = 91881;  // 1.402
+    private static final int G_FROM_U = 22554;  // 0.344136
+    private static final int G_FROM_V = 46802;  // 0.714136
+    private static final int B_FROM_U = 116130; // 1.772
+    // Saturation by table rather than branches, which mispredict on real images.
+    // Luma plus any chroma term stays within -228..483.
+    private static final int CLAMP_OFFSET = 384;
+    private static final byte[] CLAMP = new byte[1024];
+
+    static {
+        for (int i = 0; i < CLAMP.length; i++) {
+            CLAMP[i] = (byte) Math.max(0, Math.min(255, i - CLAMP_OFFSET));
+        }
+    }
+
+    private ByteBuffer out;
+    private byte[] row = new byte[0];
+    private byte[] yRow = new byte[0];
+    private byte[] uRow = new byte[0];
+    private byte[] vRow = new byte[0];
+    private int width;
+    private int height;
+
+    /**
+     * Converts a frame and returns the RGBA buffer, {@code width * height * 4} bytes
+     * from position 0; valid until the next call. The planes' positions are untouched.
+     */
+    public ByteBuffer convert(ByteBuffer y, int yRowStride, int yPixelStride, ByteBuffer u, ByteBuffer v,
+            int uvRowStride, int uvPixelStride, int width, int height) {
+        if (out == null || this.width != width || this.height != height) {
+            // Direct, so the detector can read it without another copy.
+            out = ByteBuffer.allocateDirect(width * height * 4);
+            row = new byte[width * 4];
+            this.width = width;
+            this.height = height;
+        }
+        // Rows are read in bulk: per-pixel reads from a direct buffer cost several times more.
+        int yLength = (width - 1) * yPixelStride + 1;
+        int uvLength = ((width - 1) >> 1) * uvPixelStride + 1;
+        if (yRow.length < yLength || uRow.length < uvLength) {
+            yRow = new byte[yLength];
+            uRow = new byte[uvLength];
+            vRow = new byte[uvLength];
+        }
+        ByteBuffer yPlane = y.duplicate();
+        ByteBuffer uPlane = u.duplicate();
+        ByteBuffer vPlane = v.duplicate();
+        out.clear();
+        for (int r = 0; r < height; r++) {
+            yPlane.position(r * yRowStride);
+            yPlane.get(yRow, 0, yLength);
+            if ((r & 1) == 0) {
+                int uvRow = (r >> 1) * uvRowStride;
+                uPlane.position(uvRow);
+                uPlane.get(uRow, 0, uvLength);
+                vPlane.position(uvRow);
+                vPlane.get(vRow, 0, uvLength);
+            }
+            for (int c = 0, o = 0; c < width; c++, o += 4) {
+                int luma = yRow[c * yPixelStride] & 0xff;
+                int uvOffset = (c >> 1) * uvPixelStride;
+                int cb = (uRow[uvOffset] & 0xff) - 128;
+                int cr = (vRow[uvOffset] & 0xff) - 128;
+                int base = luma + CLAMP_OFFSET;
+                row[o] = CLAMP[base + ((R_FROM_V * cr) >> 16)];
+                row[o + 1] = CLAMP[base - ((G_FROM_U * cb + G_FROM_V * cr) >> 16)];
+                row[o + 2] = CLAMP[base + ((B_FROM_U * cb) >> 16)];
+                row[o + 3] = (byte) 0xff;
+            }
+            out.put(row, 0, width * 4);
+        }
+        out.flip();
+        return out;
+    }
+}
@@ -0,0 +1,155 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BoxTrackerTest {
+
+    private final float[] boxes = new float[BoxTracker.DEFAULT_CAPACITY * FrameGeometry.BOX_STRIDE];
+    private final int[] ids = new int[BoxTracker.DEFAULT_CAPACITY];
+    private final float[] scores = new float[BoxTracker.DEFAULT_CAPACITY];
+    private final String[] labels = new String[BoxTracker.DEFAULT_CAPACITY];
+
+    private static void stageBox(BoxTracker tracker, float cx, float cy, float size, String label) {
+        tracker.stage(cx - size / 2, cy - size / 2, cx + size / 2, cy + size / 2, 0.9f, label);
+    }
+
+    private int predict(BoxTracker tracker, long timeMs) {
+        return tracker.predict(timeMs, boxes, ids, scores, labels);
+    }
+
+    private float centreX(int index) {
+        return (boxes[index * 4] + boxes[index * 4 + 2]) / 2;
+    }
+
+    @Test
+    public void stationaryObjectKeepsItsId() {
+        BoxTracker tracker = new BoxTracker();
+        for (int frame = 0; frame < 10; frame++) {
+            stageBox(tracker, 100, 100, 50, "cup");
+            tracker.update(frame * 100L);
+        }
+        assertEquals(1, predict(tracker, 1000));
+        assertEquals(1, ids[0]);
+        assertEquals("cup", labels[0]);
+        assertEquals(100, centreX(0), 0.5f);
+    }
+
+    @Test
+    public void constantVelocityIsExtrapolatedBetweenDetections() {
+        BoxTracker tracker = new BoxTracker();
+        // 200 px/s to the right, detected at 10 fps.
+        for (int frame = 0; frame <= 20; frame++) {
+            stageBox(tracker, 100 + 20 * frame, 200, 80, "person");
+            tracker.update(frame * 100L);
+        }
+        // Half way to the next detection the box should be half way there too.
+        assertEquals(1, predict(tracker, 2050));
+        assertEquals(510, centreX(0), 3f);
+        assertEquals(1, ids[0]);
+    }
+
+    @Test
+    public void separateObjectsGetDistinctStableIds() {
+        BoxTracker tracker = new BoxTracker();
+        int firstId = -1;
+        int secondId = -1;
+        for (int frame = 0; frame < 10; frame++) {
+            // Staging order alternates; association must not depend on it.
+            if (frame % 2 == 0) {
+                stageBox(tracker, 100 + 5 * frame, 100, 60, "a");
+                stageBox(tracker, 400 - 5 * frame, 300, 60, "b");
+            } else {
+                stageBox(tracker, 400 - 5 * frame, 300, 60, "b");
+                stageBox(tracker, 100 + 5 * frame, 100, 60, "a");
+            }
+            tracker.update(frame * 100L);
+            int count = predict(tracker, frame * 100L);
+            assertEquals(2, count);
+            for (int i = 0; i < count; i++) {
+                int id = ids[i];
+                if ("a".equals(labels[i])) {
+                    if (firstId < 0) firstId = id;
+                    assertEquals(firstId, id);
+                } else {
+                    if (secondId < 0) secondId = id;
+                    assertEquals(secondId, id);
+                }
+            }
+        }
+        assertNotEquals(firstId, secondId);
+    }
+
+    @Test
+    public void lostTrackCoastsThenExpires() {
+        BoxTracker tracker = new BoxTracker(8, 0.3f, 2, 0.6f, 0.2f);
+        stageBox(tracker, 100, 100, 50, "cup");
+        tracker.update(0);
+        tracker.update(100);
+        tracker.update(200);
+        assertEquals(1, tracker.getTrackCount());
+        tracker.update(300);
+        assertEquals(0, tracker.getTrackCount());
+
+        stageBox(tracker, 100, 100, 50, "cup");
+        tracker.update(400);
+        predict(tracker, 400);
+        assertEquals("a returning object is a new track", 2, ids[0]);
+    }
+
+    @Test
+    public void jumpBeyondIouThresholdStartsNewTrack() {
+        BoxTracker tracker = new BoxTracker();
+        stageBox(tracker, 100, 100, 50, "cup");
+        tracker.update(0);
+        stageBox(tracker, 600, 600, 50, "cup");
+        tracker.update(100);
+        assertEquals(2, tracker.getTrackCount());
+    }
+
+    @Test
+    public void staleResultsAreIgnored() {
+        BoxTracker tracker = new BoxTracker();
+        stageBox(tracker, 100, 100, 50, "cup");
+        tracker.update(1000);
+        stageBox(tracker, 600, 600, 50, "cup");
+        tracker.update(900);
+        assertEquals(1, tracker.getTrackCount());
+    }
+
+    @Test
+    public void capacityBoundsTracksAndStagedDetections() {
+        BoxTracker tracker = new BoxTracker(4, 0.3f, 3, 0.6f, 0.2f);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(tracker.stage(i * 100, 0, i * 100 + 50, 50, 0.9f, "x"));
+        }
+        assertFalse(tracker.stage(900, 0, 950, 50, 0.9f, "x"));
+        tracker.update(0);
+        assertEquals(4, tracker.getTrackCount());
+    }
+
+    @Test
+    public void predictDoesNotChangeState() {
+        BoxTracker tracker = new BoxTracker();
+        for (int frame = 0; frame <= 5; frame++) {
+            stageBox(tracker, 100 + 10 * frame, 100, 50, "cup");
+            tracker.update(frame * 100L);
+        }
+        predict(tracker, 550);
+        float first = centreX(0);
+        predict(tracker, 5000);
+        predict(tracker, 550);
+        assertEquals(first, centreX(0), 0f);
+    }
+
+    @Test
+    public void iou_overlapAndDisjoint() {
+        float[] a = {0, 0, 10, 10};
+        float[] b = {5, 0, 15, 10};
+        float[] c = {20, 20, 30, 30};
+        assertEquals(1f / 3f, BoxTracker.iou(a, 0, b, 0), 1e-6f);
+        assertEquals(0f, BoxTracker.iou(a, 0, c, 0), 0f);
+        assertEquals(1f, BoxTracker.iou(a, 0, a, 0), 0f);
+    }
+}
@@ -0,0 +1,69 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BoxTransformTest {
+
+    private static final float EPSILON = 1e-3f;
+
+    @Test
+    public void letterboxCentresContentWithBars() {
+        // 1920x1080 into a 320x320 model input: 320x180 content, 70 px bars top and bottom.
+        BoxTransform toModel = new BoxTransform().setLetterbox(1920, 1080, 320, 320);
+        assertEquals(1 / 6f, toModel.getScaleX(), 1e-7f);
+        assertEquals(0f, toModel.getOffsetX(), 0f);
+        assertEquals(70f, toModel.getOffsetY(), EPSILON);
+        assertEquals(0f, toModel.mapX(0), 0f);
+        assertEquals(320f, toModel.mapX(1920), EPSILON);
+        assertEquals(70f, toModel.mapY(0), EPSILON);
+        assertEquals(250f, toModel.mapY(1080), EPSILON);
+    }
+
+    @Test
+    public void modelBoxesMapBackToSourceExactly() {
+        BoxTransform toModel = new BoxTransform().setLetterbox(640, 480, 320, 320);
+        float[] source = {12.5f, 40f, 300f, 479f, 0f, 0f, 640f, 480f};
+        float[] model = new float[8];
+        toModel.mapBoxes(source, model, 2);
+
+        float[] back = new float[8];
+        new BoxTransform().set(toModel).invert().mapBoxes(model, back, 2);
+        assertArrayEquals(source, back, EPSILON);
+    }
+
+    @Test
+    public void centerCropCoversAndCropsSymmetrically() {
+        // 16:9 frame on a square view: scaled to the height, both sides cropped equally.
+        BoxTransform toView = new BoxTransform().setCenterCrop(1920, 1080, 1000, 1000);
+        assertEquals(1000f, toView.mapY(1080), EPSILON);
+        float left = toView.mapX(0);
+        float right = toView.mapX(1920);
+        assertEquals(-left, right - 1000f, EPSILON);
+        assertEquals(500f, toView.mapX(960), EPSILON);
+    }
+
+    @Test
+    public void postConcatEqualsMappingTwice() {
+        BoxTransform modelToSource = new BoxTransform().setLetterbox(1280, 720, 320, 320).invert();
+        BoxTransform sourceToView = new BoxTransform().setCenterCrop(1280, 720, 1080, 1920);
+        BoxTransform combined = new BoxTransform().set(modelToSource).postConcat(sourceToView);
+
+        float[] box = {10f, 80f, 200f, 240f};
+        float[] twice = new float[4];
+        modelToSource.mapBoxes(box, twice, 1);
+        sourceToView.mapBoxes(twice, twice, 1);
+        float[] once = new float[4];
+        combined.mapBoxes(box, once, 1);
+        assertArrayEquals(twice, once, EPSILON);
+    }
+
+    @Test
+    public void stretchScalesAxesIndependently() {
+        BoxTransform toView = new BoxTransform().setStretch(320, 180, 1080, 960);
+        assertEquals(1080f, toView.mapX(320), EPSILON);
+        assertEquals(960f, toView.mapY(180), EPSILON);
+        assertEquals(new BoxTransform(1080 / 320f, 960 / 180f, 0, 0), toView);
+    }
+}
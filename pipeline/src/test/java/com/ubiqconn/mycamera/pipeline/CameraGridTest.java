@@ -0,0 +1,43 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CameraGridTest {
+
+    @Test
+    public void twoCamerasSideBySideInLandscapeAndStackedInPortrait() {
+        CameraGrid landscape = CameraGrid.layout(2, 2400, 1080, 1f);
+        assertEquals(2, landscape.getColumns());
+        assertEquals(1, landscape.getRows());
+
+        CameraGrid portrait = CameraGrid.layout(2, 1080, 2400, 1f);
+        assertEquals(1, portrait.getColumns());
+        assertEquals(2, portrait.getRows());
+    }
+
+    @Test
+    public void fourCamerasFormASquareOnASquareScreen() {
+        CameraGrid grid = CameraGrid.layout(4, 1000, 1000, 1f);
+        assertEquals(2, grid.getColumns());
+        assertEquals(2, grid.getRows());
+        assertEquals(1, grid.row(3));
+        assertEquals(1, grid.column(3));
+    }
+
+    @Test
+    public void tileAspectDrivesTheShape() {
+        // Six 4:3 tiles on a 16:9 landscape screen: 3x2 gives 640x540 tiles.
+        CameraGrid grid = CameraGrid.layout(6, 1920, 1080, 4f / 3f);
+        assertEquals(3, grid.getColumns());
+        assertEquals(2, grid.getRows());
+    }
+
+    @Test
+    public void singleCameraFillsTheScreen() {
+        CameraGrid grid = CameraGrid.layout(1, 1080, 2400, 1f);
+        assertEquals(1, grid.getColumns());
+        assertEquals(1, grid.getRows());
+    }
+}
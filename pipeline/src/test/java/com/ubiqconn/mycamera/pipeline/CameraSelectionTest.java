@@ -0,0 +1,55 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class CameraSelectionTest {
+
+    private static Set<String> combination(String... ids) {
+        return new HashSet<>(Arrays.asList(ids));
+    }
+
+    @Test
+    public void largestConcurrentCombinationWins() {
+        List<String> ids = Arrays.asList("0", "1", "2", "3");
+        List<Set<String>> concurrent = Arrays.asList(combination("0", "1"), combination("1", "2", "3"));
+        assertEquals(Arrays.asList("1", "2", "3"), CameraSelection.select(ids, concurrent, 8));
+    }
+
+    @Test
+    public void tiesPreferEarlierCameras() {
+        List<String> ids = Arrays.asList("0", "1", "2");
+        List<Set<String>> concurrent = Arrays.asList(combination("1", "2"), combination("0", "2"));
+        assertEquals(Arrays.asList("0", "2"), CameraSelection.select(ids, concurrent, 8));
+    }
+
+    @Test
+    public void capsAtMax() {
+        List<String> ids = Arrays.asList("0", "1", "2", "3");
+        List<Set<String>> concurrent = Collections.singletonList(combination("0", "1", "2", "3"));
+        assertEquals(Arrays.asList("0", "1"), CameraSelection.select(ids, concurrent, 2));
+    }
+
+    @Test
+    public void withoutConcurrencyOnlyTheFirstCameraOpens() {
+        List<String> ids = Arrays.asList("0", "1");
+        assertEquals(Collections.singletonList("0"),
+                CameraSelection.select(ids, Collections.<Set<String>>emptyList(), 8));
+        assertTrue(CameraSelection.select(Collections.<String>emptyList(),
+                Collections.<Set<String>>emptyList(), 8).isEmpty());
+    }
+
+    @Test
+    public void combinationsWithUnknownCamerasAreIgnored() {
+        List<String> ids = Arrays.asList("0", "1");
+        List<Set<String>> concurrent = Collections.singletonList(combination("5", "6"));
+        assertEquals(Collections.singletonList("0"), CameraSelection.select(ids, concurrent, 8));
+    }
+}
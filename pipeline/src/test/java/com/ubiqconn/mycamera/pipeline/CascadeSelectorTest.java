@@ -0,0 +1,95 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class CascadeSelectorTest {
+
+    private final int[] candidates = new int[8];
+    private final int[] crops = new int[8 * FrameGeometry.BOX_STRIDE];
+
+    private static CascadeSelector selector(int maxPerFrame, double perSecond, int burst) {
+        return new CascadeSelector(0.3f, 0.5f, 0.25f, 64, maxPerFrame, perSecond, burst);
+    }
+
+    @Test
+    public void onlyUncertainDetectionsAreSelectedBestFirst() {
+        CascadeSelector selector = selector(4, 10, 4);
+        float[] boxes = new float[5 * FrameGeometry.BOX_STRIDE];
+        float[] scores = {0.9f, 0.35f, 0.2f, 0.45f, 0.5f};
+        for (int i = 0; i < 5; i++) {
+            boxes[i * 4] = i * 100;
+            boxes[i * 4 + 1] = 100;
+            boxes[i * 4 + 2] = i * 100 + 80;
+            boxes[i * 4 + 3] = 180;
+        }
+        assertEquals(2, selector.select(0, boxes, scores, 5, 1000, 1000, candidates, crops));
+        assertEquals(3, candidates[0]);
+        assertEquals(1, candidates[1]);
+        assertTrue(selector.isConfident(0.5f));
+        assertFalse(selector.isConfident(0.45f));
+    }
+
+    @Test
+    public void cropIsPaddedAndKeptInsideTheFrame() {
+        CascadeSelector selector = selector(4, 10, 4);
+        // 80x80 box padded by a quarter a side: 120x120 around the centre.
+        assertEquals(1, selector.select(0, new float[] {100, 100, 180, 180}, new float[] {0.4f}, 1, 640, 480,
+                candidates, crops));
+        assertArrayEquals(new int[] {80, 80, 200, 200}, Arrays.copyOf(crops, 4));
+
+        // At the corner the crop shifts inwards rather than leaving the frame.
+        selector.select(0, new float[] {600, 440, 640, 480}, new float[] {0.4f}, 1, 640, 480, candidates, crops);
+        assertArrayEquals(new int[] {576, 416, 640, 480}, Arrays.copyOf(crops, 4));
+    }
+
+    @Test
+    public void smallBoxesGetTheMinimumCrop() {
+        CascadeSelector selector = selector(4, 10, 4);
+        selector.select(0, new float[] {300, 200, 310, 210}, new float[] {0.4f}, 1, 640, 480, candidates, crops);
+        assertEquals(64, crops[2] - crops[0]);
+        assertEquals(64, crops[3] - crops[1]);
+    }
+
+    @Test
+    public void budgetLimitsCropsPerFrameAndPerSecond() {
+        // Two per frame, one per second sustained, at most three saved up.
+        CascadeSelector selector = selector(2, 1, 3);
+        float[] boxes = new float[4 * FrameGeometry.BOX_STRIDE];
+        float[] scores = {0.4f, 0.4f, 0.4f, 0.4f};
+        assertEquals(2, selector.select(0, boxes, scores, 4, 640, 480, candidates, crops));
+        assertEquals(1, selector.select(100, boxes, scores, 4, 640, 480, candidates, crops));
+        assertEquals(0, selector.select(200, boxes, scores, 4, 640, 480, candidates, crops));
+        assertEquals(1, selector.select(1200, boxes, scores, 4, 640, 480, candidates, crops));
+        assertEquals(2, selector.select(10000, boxes, scores, 4, 640, 480, candidates, crops));
+        assertEquals(6, selector.getCroppedCount());
+        assertEquals(4 * 5 - 6, selector.getOverBudgetCount());
+        assertEquals(0.8, selector.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void matchPicksTheBestOverlap() {
+        float[] candidate = {100, 100, 200, 200};
+        float[] refined = {
+                300, 300, 400, 400,
+                110, 100, 210, 200,
+                100, 100, 200, 200,
+        };
+        assertEquals(2, CascadeSelector.match(candidate, 0, refined, 3, 0.3f));
+        assertEquals(-1, CascadeSelector.match(candidate, 0, refined, 1, 0.3f));
+    }
+
+    @Test
+    public void statisticsAccumulate() {
+        CascadeSelector selector = selector(2, 10, 2);
+        selector.select(0, new float[] {0, 0, 10, 10}, new float[] {0.4f}, 1, 640, 480, candidates, crops);
+        selector.select(10, new float[0], new float[0], 0, 640, 480, candidates, crops);
+        selector.onRefined(true, 20000000);
+        assertEquals(1, selector.getConfirmedCount());
+        assertEquals(0.5, selector.getHitRate(), 1e-9);
+        assertEquals(10.0, selector.getExtraMsPerFrame(), 1e-9);
+    }
+}
@@ -0,0 +1,65 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DetectionCodecTest {
+
+    private static final byte[] CAMERA = DetectionCodec.cameraId("1");
+
+    @Test
+    public void roundTripWithinQuantisationError() {
+        float[] boxes = {10.5f, 20.25f, 300f, 240f, 0f, 0f, 639.9f, 479.9f};
+        int[] categories = {0, 17};
+        float[] scores = {0.91f, 0.5f};
+        ByteBuffer buffer = ByteBuffer.allocate(DetectionCodec.encodedSize(CAMERA, 2));
+        DetectionCodec.encode(buffer, CAMERA, 123456789012L, 640, 480, boxes, categories, scores, 2);
+        assertFalse("encodedSize is exact", buffer.hasRemaining());
+        buffer.flip();
+
+        DetectionCodec.Message message = DetectionCodec.decode(buffer);
+        assertNotNull(message);
+        assertEquals("1", message.cameraId);
+        assertEquals(123456789012L, message.timestampNs);
+        assertEquals(640, message.width);
+        assertEquals(480, message.height);
+        assertEquals(2, message.count);
+        assertArrayEquals(boxes, message.boxes, 640f / 65535);
+        assertArrayEquals(categories, message.categories);
+        assertArrayEquals(scores, message.scores, 1f / 65535);
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void twelveBytesPerDetection() {
+        assertEquals(DetectionCodec.encodedSize(CAMERA, 0) + 5 * 12, DetectionCodec.encodedSize(CAMERA, 5));
+    }
+
+    @Test
+    public void boxesAreClampedToTheFrame() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        DetectionCodec.encode(buffer, CAMERA, 0, 100, 100, new float[] {-5, -1, 120, 100.5f}, new int[] {-1},
+                new float[] {1f}, 1);
+        buffer.flip();
+        DetectionCodec.Message message = DetectionCodec.decode(buffer);
+        assertArrayEquals(new float[] {0, 0, 100, 100}, message.boxes, 0.01f);
+        assertEquals(-1, message.categories[0]);
+    }
+
+    @Test
+    public void partialMessageIsLeftInTheBuffer() {
+        ByteBuffer full = ByteBuffer.allocate(DetectionCodec.encodedSize(CAMERA, 1));
+        DetectionCodec.encode(full, CAMERA, 7, 10, 10, new float[] {1, 1, 2, 2}, new int[] {3}, new float[] {0.5f}, 1);
+        full.flip();
+        ByteBuffer partial = ByteBuffer.allocate(full.remaining());
+        partial.put(full.array(), 0, full.remaining() - 1).flip();
+        assertNull(DetectionCodec.decode(partial));
+        assertEquals(0, partial.position());
+
+        DetectionCodec.Message message = DetectionCodec.decode(full);
+        assertEquals(7, message.timestampNs);
+        assertEquals(3, message.categories[0]);
+    }
+}
@@ -0,0 +1,164 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DetectionServerTest {
+
+    private static final int DETECTIONS = 100;
+
+    private final float[] boxes = new float[DETECTIONS * FrameGeometry.BOX_STRIDE];
+    private final int[] categories = new int[DETECTIONS];
+    private final float[] scores = new float[DETECTIONS];
+    private final ByteBuffer in = ByteBuffer.allocate(1 << 16);
+    private DetectionServer server;
+    private SocketChannel client;
+
+    @Before
+    public void setUp() throws IOException {
+        for (int i = 0; i < DETECTIONS; i++) {
+            int b = i * FrameGeometry.BOX_STRIDE;
+            boxes[b] = i;
+            boxes[b + 1] = i;
+            boxes[b + 2] = i + 10;
+            boxes[b + 3] = i + 10;
+            categories[i] = i % 80;
+            scores[i] = 0.5f;
+        }
+        server = new DetectionServer(0, 16 * 1024);
+        server.start();
+        in.flip();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (client != null) {
+            client.close();
+        }
+        server.close();
+    }
+
+    private void connect(int receiveBufferBytes) throws Exception {
+        client = SocketChannel.open();
+        if (receiveBufferBytes > 0) {
+            client.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferBytes);
+        }
+        client.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getClientCount() == 0) {
+            assertTrue("server never saw the client", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private DetectionCodec.Message receive() throws IOException {
+        while (true) {
+            DetectionCodec.Message message = DetectionCodec.decode(in);
+            if (message != null) {
+                return message;
+            }
+            in.compact();
+            if (client.read(in) < 0) {
+                throw new IOException("closed");
+            }
+            in.flip();
+        }
+    }
+
+    private void publish(String cameraId, long timestampNs, int count) {
+        server.publish(cameraId, timestampNs, 640, 480, boxes, categories, scores, count);
+    }
+
+    @Test
+    public void subscriberReceivesEachCamerasFrames() throws Exception {
+        connect(0);
+        publish("0", 100, 3);
+        DetectionCodec.Message first = receive();
+        publish("1", 200, 1);
+        DetectionCodec.Message second = receive();
+
+        assertEquals("0", first.cameraId);
+        assertEquals(100, first.timestampNs);
+        assertEquals(3, first.count);
+        assertEquals(2, first.categories[2]);
+        assertEquals("1", second.cameraId);
+        assertEquals(1, second.count);
+        assertEquals(2, server.getSentCount());
+    }
+
+    @Test
+    public void slowSubscriberIsCoalescedToTheNewestFrame() throws Exception {
+        connect(4096);
+        // About 1.2 KB per message, far more than the socket and client buffers hold.
+        int frames = 20000;
+        for (int i = 1; i <= frames; i++) {
+            publish("0", i, DETECTIONS);
+        }
+
+        long received = 0;
+        long first = 0;
+        long last = 0;
+        while (last != frames) {
+            DetectionCodec.Message message = receive();
+            assertTrue("frames arrive in order", message.timestampNs > last);
+            if (first == 0) {
+                first = message.timestampNs;
+            }
+            last = message.timestampNs;
+            received++;
+        }
+        assertTrue("some frames were skipped", received < frames);
+        // Frames replaced before the selector first served this subscriber were never its to skip.
+        assertEquals(frames - first + 1, received + server.getCoalescedCount());
+    }
+
+    @Test
+    public void subscriberThatKeepsUpGetsEveryFrame() throws Exception {
+        connect(0);
+        for (int i = 1; i <= 200; i++) {
+            publish("0", i, 10);
+            assertEquals(i, receive().timestampNs);
+        }
+        assertEquals(0, server.getCoalescedCount());
+    }
+
+    @Test
+    public void disconnectedSubscriberIsDropped() throws Exception {
+        connect(0);
+        client.close();
+        client = null;
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getClientCount() > 0) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+        // Nothing to send to: publishing is a no-op.
+        publish("0", 1, 1);
+        assertEquals(0, server.getPublishedCount());
+    }
+
+    @Test
+    public void oversizedMessageIsSkipped() throws Exception {
+        server.close();
+        server = new DetectionServer(0, 256);
+        server.start();
+        connect(0);
+        publish("0", 1, DETECTIONS);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getOversizedCount() == 0) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+        publish("0", 2, 1);
+        assertEquals(2, receive().timestampNs);
+    }
+}
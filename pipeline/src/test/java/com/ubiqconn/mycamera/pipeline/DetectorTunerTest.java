@@ -0,0 +1,89 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.io.File;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class DetectorTunerTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static final DetectorConfig CPU1 = new DetectorConfig(DetectorConfig.Backend.CPU, 1);
+    private static final DetectorConfig CPU2 = new DetectorConfig(DetectorConfig.Backend.CPU, 2);
+    private static final DetectorConfig GPU1 = new DetectorConfig(DetectorConfig.Backend.GPU, 1);
+
+    @Test
+    public void picksFastestAndCachesIt() throws Exception {
+        File cache = new File(folder.getRoot(), "tuning/detector.properties");
+        DetectorTuner tuner = new DetectorTuner(cache, "pixel|8|2");
+        assertNull(tuner.cached());
+
+        DetectorConfig best = tuner.tune(Arrays.asList(CPU1, CPU2, GPU1), config ->
+                config.equals(CPU2) ? 30 : 12);
+        assertEquals(CPU2, best);
+        assertEquals(CPU2, new DetectorTuner(cache, "pixel|8|2").cached());
+        assertNull("other keys are tuned separately", new DetectorTuner(cache, "pixel|8|1").cached());
+    }
+
+    @Test
+    public void failingCandidatesAreSkipped() throws Exception {
+        DetectorTuner tuner = new DetectorTuner(folder.newFile(), "k");
+        DetectorConfig best = tuner.tune(Arrays.asList(CPU1, GPU1), config -> {
+            if (config.getBackend() == DetectorConfig.Backend.GPU) {
+                throw new IllegalStateException("no GPU delegate");
+            }
+            return 10;
+        });
+        assertEquals(CPU1, best);
+        assertEquals("cpu:1=10.0", tuner.describe());
+    }
+
+    @Test
+    public void marginalGainsKeepTheSimplerConfig() throws Exception {
+        DetectorTuner tuner = new DetectorTuner(folder.newFile(), "k");
+        assertEquals(CPU1, tuner.tune(Arrays.asList(CPU1, CPU2), config -> config == CPU1 ? 20 : 20.5));
+    }
+
+    @Test
+    public void allFailingStoresNothing() throws Exception {
+        File cache = folder.newFile();
+        DetectorTuner tuner = new DetectorTuner(cache, "k");
+        assertNull(tuner.tune(Arrays.asList(CPU1), config -> {
+            throw new RuntimeException();
+        }));
+        assertNull(tuner.cached());
+    }
+
+    @Test
+    public void corruptCacheIsIgnored() throws Exception {
+        File cache = folder.newFile();
+        java.nio.file.Files.write(cache.toPath(), "k=banana\n".getBytes("UTF-8"));
+        assertNull(new DetectorTuner(cache, "k").cached());
+    }
+
+    @Test
+    public void candidatesAreBoundedByCoresAndCameras() {
+        assertEquals(Arrays.asList(CPU1, CPU2, GPU1), DetectorConfig.candidates(8, 2, true));
+        assertEquals(Arrays.asList(CPU1), DetectorConfig.candidates(8, 1, false));
+        // One instance per four cores, as the default pool size assumes.
+        assertEquals(Arrays.asList(CPU1, CPU2), DetectorConfig.candidates(8, 4, false));
+        assertEquals(Arrays.asList(CPU1), DetectorConfig.candidates(2, 4, false));
+        assertEquals(Arrays.asList(CPU1), DetectorConfig.candidates(1, 0, false));
+    }
+
+    @Test
+    public void parseRoundTrips() {
+        assertEquals(CPU2, DetectorConfig.parse(CPU2.toString()));
+        assertEquals(GPU1, DetectorConfig.parse(" gpu : 1 "));
+        assertNull(DetectorConfig.parse("cpu:0"));
+        assertNull(DetectorConfig.parse("npu:1"));
+        assertNull(DetectorConfig.parse("cpu"));
+        assertEquals(2, CPU2.getWorkers(4));
+        assertEquals(1, CPU2.getWorkers(1));
+    }
+}
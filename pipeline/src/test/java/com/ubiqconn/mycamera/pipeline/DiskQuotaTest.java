@@ -0,0 +1,69 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class DiskQuotaTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File write(String name, int size, long modifiedMs) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[size]);
+        }
+        assertTrue(file.setLastModified(modifiedMs));
+        return file;
+    }
+
+    @Test
+    public void existingFilesAreScannedOldestFirst() throws Exception {
+        write("new.jpg", 10, 3000000);
+        write("old.jpg", 10, 1000000);
+        write("mid.jpg", 10, 2000000);
+        write("partial.jpg.tmp", 100, 4000000);
+        DiskQuota quota = new DiskQuota(folder.getRoot(), 20);
+        assertEquals(30, quota.getUsedBytes());
+        assertEquals(1, quota.trim());
+        assertFalse(new File(folder.getRoot(), "old.jpg").exists());
+        assertTrue(new File(folder.getRoot(), "mid.jpg").exists());
+        assertTrue("temporary files are not counted", new File(folder.getRoot(), "partial.jpg.tmp").exists());
+    }
+
+    @Test
+    public void touchedFileSurvivesEviction() throws Exception {
+        DiskQuota quota = new DiskQuota(folder.getRoot(), 25);
+        quota.add(write("a.jpg", 10, 1000000));
+        quota.add(write("b.jpg", 10, 2000000));
+        quota.touch("a.jpg");
+        assertEquals(1, quota.add(write("c.jpg", 10, 3000000)));
+        assertTrue(new File(folder.getRoot(), "a.jpg").exists());
+        assertFalse(new File(folder.getRoot(), "b.jpg").exists());
+        assertEquals(2, quota.getFileCount());
+    }
+
+    @Test
+    public void newFileIsKeptEvenAboveQuota() throws Exception {
+        DiskQuota quota = new DiskQuota(folder.getRoot(), 5);
+        quota.add(write("a.jpg", 3, 1000000));
+        assertEquals(1, quota.add(write("big.jpg", 10, 2000000)));
+        assertTrue(new File(folder.getRoot(), "big.jpg").exists());
+        assertEquals(10, quota.getUsedBytes());
+    }
+
+    @Test
+    public void rewrittenFileIsCountedOnce() throws Exception {
+        DiskQuota quota = new DiskQuota(folder.getRoot(), 100);
+        quota.add(write("a.jpg", 10, 1000000));
+        quota.add(write("a.jpg", 30, 2000000));
+        assertEquals(30, quota.getUsedBytes());
+        assertEquals(1, quota.getFileCount());
+    }
+}
@@ -0,0 +1,74 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameGeometryTest {
+
+    private static final float EPSILON = 1e-3f;
+
+    @Test
+    public void rotationCompensation_matchesSensorAndFacing() {
+        assertEquals(90, FrameGeometry.rotationCompensation(90, 0, false));
+        assertEquals(0, FrameGeometry.rotationCompensation(90, 90, false));
+        assertEquals(180, FrameGeometry.rotationCompensation(90, 270, false));
+        assertEquals(270, FrameGeometry.rotationCompensation(270, 0, true));
+        assertEquals(0, FrameGeometry.rotationCompensation(270, 90, true));
+    }
+
+    @Test
+    public void scaleBoxes_scalesEachCoordinateInPlace() {
+        float[] boxes = {10, 20, 30, 40, 1, 2, 3, 4, 99, 99, 99, 99};
+        FrameGeometry.scaleBoxes(boxes, boxes, 2, 2f, 0.5f);
+        assertArrayEquals(new float[]{20, 10, 60, 20, 2, 1, 6, 2, 99, 99, 99, 99}, boxes, 0f);
+    }
+
+    @Test
+    public void previewTransform_identityInNaturalOrientation() {
+        float[] m = new float[FrameGeometry.AFFINE_SIZE];
+        FrameGeometry.previewTransform(1080, 1920, 1920, 1080, 0, m);
+        assertArrayEquals(new float[]{1, 0, 0, 0, 1, 0}, m, 0f);
+    }
+
+    @Test
+    public void previewTransform_upsideDownRotatesAboutCentre() {
+        float[] m = new float[FrameGeometry.AFFINE_SIZE];
+        float[] p = new float[2];
+        FrameGeometry.previewTransform(1080, 1920, 1920, 1080, 2, m);
+        FrameGeometry.mapPoint(m, 0, 0, p, 0);
+        assertEquals(1080, p[0], EPSILON);
+        assertEquals(1920, p[1], EPSILON);
+    }
+
+    @Test
+    public void previewTransform_landscapeCoversViewKeepingAspect() {
+        for (int rotation : new int[]{1, 3}) {
+            float[] m = new float[FrameGeometry.AFFINE_SIZE];
+            float[] corners = new float[8];
+            FrameGeometry.previewTransform(1000, 500, 1920, 1080, rotation, m);
+            FrameGeometry.mapPoint(m, 0, 0, corners, 0);
+            FrameGeometry.mapPoint(m, 1000, 0, corners, 2);
+            FrameGeometry.mapPoint(m, 0, 500, corners, 4);
+            FrameGeometry.mapPoint(m, 1000, 500, corners, 6);
+
+            float minX = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, minY = Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+            for (int i = 0; i < corners.length; i += 2) {
+                minX = Math.min(minX, corners[i]);
+                maxX = Math.max(maxX, corners[i]);
+                minY = Math.min(minY, corners[i + 1]);
+                maxY = Math.max(maxY, corners[i + 1]);
+            }
+            // Centre-crop: exact fit horizontally, overflow vertically, 16:9 preserved.
+            assertEquals(0, minX, EPSILON);
+            assertEquals(1000, maxX, EPSILON);
+            assertEquals(-31.25f, minY, EPSILON);
+            assertEquals(531.25f, maxY, EPSILON);
+
+            float[] centre = new float[2];
+            FrameGeometry.mapPoint(m, 500, 250, centre, 0);
+            assertEquals(500, centre[0], EPSILON);
+            assertEquals(250, centre[1], EPSILON);
+        }
+    }
+}
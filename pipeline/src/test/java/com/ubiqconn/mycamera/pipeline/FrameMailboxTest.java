@@ -0,0 +1,164 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class FrameMailboxTest {
+
+    /** Fake frame that detects being handed back or consumed twice. */
+    private static class Frame {
+        final int producer;
+        final int sequence;
+        final AtomicInteger endings = new AtomicInteger();
+
+        Frame(int producer, int sequence) {
+            this.producer = producer;
+            this.sequence = sequence;
+        }
+    }
+
+    private static class CountingReleaser implements FrameMailbox.Releaser<Frame> {
+        final AtomicInteger released = new AtomicInteger();
+
+        @Override
+        public void release(Frame frame) {
+            assertEquals("frame ended twice", 1, frame.endings.incrementAndGet());
+            released.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void takeReturnsLatestAndReleasesOverwritten() {
+        CountingReleaser releaser = new CountingReleaser();
+        FrameMailbox<Frame> mailbox = new FrameMailbox<>(releaser);
+        Frame first = new Frame(0, 0);
+        Frame second = new Frame(0, 1);
+
+        assertNull(mailbox.take());
+        assertTrue(mailbox.publish(first));
+        assertFalse(mailbox.publish(second));
+        assertEquals(1, first.endings.get());
+        assertSame(second, mailbox.take());
+        assertTrue(mailbox.isEmpty());
+        assertNull(mailbox.take());
+        assertEquals(2, mailbox.getPublishedCount());
+        assertEquals(1, mailbox.getReplacedCount());
+    }
+
+    @Test
+    public void clearReleasesWaitingFrame() {
+        CountingReleaser releaser = new CountingReleaser();
+        FrameMailbox<Frame> mailbox = new FrameMailbox<>(releaser);
+        mailbox.publish(new Frame(0, 0));
+        mailbox.clear();
+        mailbox.clear();
+        assertEquals(1, releaser.released.get());
+        assertNull(mailbox.take());
+    }
+
+    @Test
+    public void concurrentProducersAndConsumersNeverLoseOrDuplicateFrames() throws Exception {
+        final int producers = 2;
+        final int consumers = 2;
+        final int framesPerProducer = 2000;
+        for (int round = 0; round < 50; round++) {
+            final CountingReleaser releaser = new CountingReleaser();
+            final FrameMailbox<Frame> mailbox = new FrameMailbox<>(releaser);
+            final List<Frame> published = new ArrayList<>();
+            final AtomicInteger consumed = new AtomicInteger();
+            final AtomicInteger producing = new AtomicInteger(producers);
+            final AtomicReference<Throwable> failure = new AtomicReference<>();
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<>();
+
+            for (int p = 0; p < producers; p++) {
+                final List<Frame> frames = new ArrayList<>();
+                for (int i = 0; i < framesPerProducer; i++) {
+                    frames.add(new Frame(p, i));
+                }
+                published.addAll(frames);
+                threads.add(new Thread(() -> {
+                    try {
+                        start.await();
+                        for (Frame frame : frames) {
+                            mailbox.publish(frame);
+                            if (frame.sequence % 64 == 0) {
+                                Thread.yield();
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        producing.decrementAndGet();
+                    }
+                }));
+            }
+            for (int c = 0; c < consumers; c++) {
+                threads.add(new Thread(() -> {
+                    int[] lastSequence = new int[producers];
+                    Arrays.fill(lastSequence, -1);
+                    try {
+                        start.await();
+                        while (true) {
+                            boolean done = producing.get() == 0;
+                            Frame frame = mailbox.take();
+                            if (frame == null) {
+                                if (done) {
+                                    return;
+                                }
+                                continue;
+                            }
+                            assertEquals("frame ended twice", 1, frame.endings.incrementAndGet());
+                            // Each consumer sees every producer's frames in publishing order:
+                            // once a newer frame was waiting, an older one can never be taken.
+                            assertTrue("stale frame taken", frame.sequence > lastSequence[frame.producer]);
+                            lastSequence[frame.producer] = frame.sequence;
+                            consumed.incrementAndGet();
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            if (failure.get() != null) {
+                throw new AssertionError("round " + round, failure.get());
+            }
+            assertTrue(mailbox.isEmpty());
+            assertEquals(producers * framesPerProducer, consumed.get() + releaser.released.get());
+            assertEquals(releaser.released.get(), mailbox.getReplacedCount());
+            for (Frame frame : published) {
+                assertEquals(1, frame.endings.get());
+            }
+        }
+    }
+
+    @Test
+    public void slowConsumerAlwaysGetsTheNewestFrame() throws Exception {
+        CountingReleaser releaser = new CountingReleaser();
+        FrameMailbox<Frame> mailbox = new FrameMailbox<>(releaser);
+        // Capture runs at 3x the inference rate: the busy-flag gate this replaces
+        // analysed the frame that arrived first; the mailbox hands over the last one.
+        for (int tick = 0; tick < 30; tick++) {
+            mailbox.publish(new Frame(0, tick));
+            if (tick % 3 == 2) {
+                assertEquals(tick, mailbox.take().sequence);
+            }
+        }
+        assertEquals(20, releaser.released.get());
+    }
+}
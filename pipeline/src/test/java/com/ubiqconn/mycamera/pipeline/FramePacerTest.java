@@ -0,0 +1,211 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FramePacerTest {
+
+    /** Latency of one inference started at a given simulated time. */
+    private interface LatencyTrace {
+        long latencyAt(long nowMs);
+    }
+
+    /**
+     * Replays latency traces against pacers, each driving a single detector that drops
+     * frames while busy, like DetectorPool with one idle detector. Runs in 1 ms steps.
+     */
+    private static class Simulation {
+        final FramePacer[] pacers;
+        final LatencyTrace[] traces;
+        final long[] busyUntil;
+        final long[] startedAt;
+        long now;
+
+        Simulation(FramePacer[] pacers, LatencyTrace[] traces) {
+            this.pacers = pacers;
+            this.traces = traces;
+            this.busyUntil = new long[pacers.length];
+            this.startedAt = new long[pacers.length];
+            for (int i = 0; i < pacers.length; i++) {
+                busyUntil[i] = -1;
+            }
+        }
+
+        Simulation(FramePacer pacer, LatencyTrace trace) {
+            this(new FramePacer[] { pacer }, new LatencyTrace[] { trace });
+        }
+
+        Simulation runUntil(long toMs) {
+            for (; now < toMs; now++) {
+                for (int i = 0; i < pacers.length; i++) {
+                    step(i);
+                }
+            }
+            return this;
+        }
+
+        private void step(int i) {
+            if (pacers[i] == null) {
+                return;
+            }
+            if (busyUntil[i] >= 0 && now >= busyUntil[i]) {
+                pacers[i].onFrameCompleted(now - startedAt[i]);
+                busyUntil[i] = -1;
+            }
+            if (pacers[i].shouldCapture(now)) {
+                pacers[i].onFrameSubmitted(now);
+                if (busyUntil[i] >= 0) {
+                    pacers[i].onFrameDropped();
+                } else {
+                    startedAt[i] = now;
+                    busyUntil[i] = now + traces[i].latencyAt(now);
+                }
+            }
+        }
+    }
+
+    private static LatencyTrace constant(final long latencyMs) {
+        return new LatencyTrace() {
+            @Override
+            public long latencyAt(long nowMs) {
+                return latencyMs;
+            }
+        };
+    }
+
+    @Test
+    public void latencyBoundedSpeedsUpToMaxFpsWithHeadroom() {
+        FramePacer pacer = new FramePacer(FramePacer.Mode.LATENCY_BOUNDED, 2, 15, 200, null);
+        new Simulation(pacer, constant(20)).runUntil(30000);
+
+        assertEquals(67, pacer.getIntervalMs());
+        assertEquals(0, pacer.getDroppedCount());
+    }
+
+    @Test
+    public void latencyBoundedBacksOffToMinFpsWhenDetectorTooSlow() {
+        FramePacer pacer = new FramePacer(FramePacer.Mode.LATENCY_BOUNDED, 2, 15, 200, null);
+        new Simulation(pacer, constant(400)).runUntil(30000);
+
+        assertEquals(500, pacer.getIntervalMs());
+    }
+
+    @Test
+    public void latencyBoundedFollowsLatencyChanges() {
+        FramePacer pacer = new FramePacer(FramePacer.Mode.LATENCY_BOUNDED, 1, 30, 150, null);
+        LatencyTrace throttled = new LatencyTrace() {
+            @Override
+            public long latencyAt(long nowMs) {
+                return nowMs < 30000 || nowMs >= 60000 ? 25 : 180;
+            }
+        };
+
+        Simulation simulation = new Simulation(pacer, throttled);
+        long fast = simulation.runUntil(30000).pacers[0].getIntervalMs();
+        long slow = simulation.runUntil(60000).pacers[0].getIntervalMs();
+        long recovered = simulation.runUntil(90000).pacers[0].getIntervalMs();
+
+        assertEquals(33, fast);
+        assertTrue("expected back-off, got " + slow, slow > 3 * fast);
+        assertEquals(33, recovered);
+    }
+
+    @Test
+    public void maxThroughputTracksInferenceLatency() {
+        FramePacer pacer = new FramePacer(FramePacer.Mode.MAX_THROUGHPUT, 1, 60, 0, null);
+        new Simulation(pacer, constant(80)).runUntil(30000);
+
+        long interval = pacer.getIntervalMs();
+        assertTrue("interval " + interval, interval >= 80 && interval <= 100);
+        // Nearly every frame is analysed: throughput close to 1000 / 80.
+        assertTrue("completed " + pacer.getCompletedCount(), pacer.getCompletedCount() > 30000 / 100);
+        assertTrue("dropped " + pacer.getDroppedCount(), pacer.getDroppedCount() < pacer.getCompletedCount() / 10);
+    }
+
+    @Test
+    public void maxFpsLimitCapsFastDetector() {
+        FramePacer pacer = new FramePacer(FramePacer.Mode.MAX_THROUGHPUT, 1, 10, 0, null);
+        new Simulation(pacer, constant(5)).runUntil(10000);
+
+        assertEquals(100, pacer.getIntervalMs());
+    }
+
+    @Test
+    public void budgetSplitsEquallyBetweenBusyCameras() {
+        FramePacer.Budget budget = new FramePacer.Budget(20);
+        FramePacer first = new FramePacer(FramePacer.Mode.MAX_THROUGHPUT, 1, 30, 0, budget);
+        FramePacer second = new FramePacer(FramePacer.Mode.MAX_THROUGHPUT, 1, 30, 0, budget);
+        Simulation simulation = new Simulation(new FramePacer[] { first, second }, new LatencyTrace[] { constant(10), constant(10) });
+        simulation.runUntil(20000);
+
+        assertEquals(100, first.getIntervalMs());
+        assertEquals(100, second.getIntervalMs());
+    }
+
+    @Test
+    public void budgetGivesUnusedShareToOtherCamera() {
+        FramePacer.Budget budget = new FramePacer.Budget(20);
+        FramePacer slow = new FramePacer(FramePacer.Mode.MAX_THROUGHPUT, 1, 30, 0, budget);
+        FramePacer fast = new FramePacer(FramePacer.Mode.MAX_THROUGHPUT, 1, 30, 0, budget);
+        Simulation simulation = new Simulation(new FramePacer[] { slow, fast }, new LatencyTrace[] { constant(250), constant(10) });
+        simulation.runUntil(20000);
+
+        // The slow camera runs at ~4 FPS, leaving ~16 FPS to the fast one.
+        assertTrue("slow " + slow.getIntervalMs(), slow.getIntervalMs() >= 250);
+        assertTrue("fast " + fast.getIntervalMs(), fast.getIntervalMs() < 70);
+    }
+
+    @Test
+    public void budgetNeverPushesBelowMinFps() {
+        FramePacer.Budget budget = new FramePacer.Budget(2);
+        FramePacer first = new FramePacer(FramePacer.Mode.MAX_THROUGHPUT, 5, 30, 0, budget);
+        FramePacer second = new FramePacer(FramePacer.Mode.MAX_THROUGHPUT, 5, 30, 0, budget);
+        Simulation simulation = new Simulation(new FramePacer[] { first, second }, new LatencyTrace[] { constant(10), constant(10) });
+        simulation.runUntil(5000);
+
+        assertEquals(200, first.getIntervalMs());
+        assertEquals(200, second.getIntervalMs());
+    }
+
+    @Test
+    public void closedPacerReleasesItsShare() {
+        FramePacer.Budget budget = new FramePacer.Budget(20);
+        FramePacer first = new FramePacer(FramePacer.Mode.MAX_THROUGHPUT, 1, 30, 0, budget);
+        FramePacer second = new FramePacer(FramePacer.Mode.MAX_THROUGHPUT, 1, 30, 0, budget);
+        Simulation simulation = new Simulation(new FramePacer[] { first, second }, new LatencyTrace[] { constant(10), constant(10) });
+        simulation.runUntil(5000);
+
+        second.close();
+        simulation.pacers[1] = null;
+        simulation.runUntil(10000);
+
+        assertEquals(50, first.getIntervalMs());
+    }
+
+    @Test
+    public void loweredBudgetSlowsRunningCameras() {
+        FramePacer.Budget budget = new FramePacer.Budget(20);
+        FramePacer first = new FramePacer(FramePacer.Mode.MAX_THROUGHPUT, 1, 30, 0, budget);
+        FramePacer second = new FramePacer(FramePacer.Mode.MAX_THROUGHPUT, 1, 30, 0, budget);
+        Simulation simulation = new Simulation(new FramePacer[] { first, second }, new LatencyTrace[] { constant(10), constant(10) });
+        simulation.runUntil(5000);
+
+        budget.setTotalFps(10);
+        simulation.runUntil(10000);
+
+        assertEquals(200, first.getIntervalMs());
+        assertEquals(200, second.getIntervalMs());
+    }
+
+    @Test
+    public void shouldCaptureHonoursInterval() {
+        FramePacer pacer = new FramePacer(FramePacer.Mode.LATENCY_BOUNDED, 5, 5, 200, null);
+
+        assertTrue(pacer.shouldCapture(0));
+        pacer.onFrameSubmitted(0);
+        assertFalse(pacer.shouldCapture(199));
+        assertTrue(pacer.shouldCapture(200));
+        assertEquals(1, pacer.getQueueDepth());
+    }
+}
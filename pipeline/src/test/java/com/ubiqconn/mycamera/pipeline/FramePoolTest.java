@@ -0,0 +1,178 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class FramePoolTest {
+
+    /** Fake frame buffer that detects being handed out twice or used after free. */
+    private static class Buffer {
+        final AtomicInteger owners = new AtomicInteger();
+        volatile boolean freed;
+    }
+
+    private static class CountingAllocator implements FramePool.Allocator<Buffer> {
+        final AtomicInteger allocated = new AtomicInteger();
+        final AtomicInteger freed = new AtomicInteger();
+
+        @Override
+        public Buffer allocate() {
+            allocated.incrementAndGet();
+            return new Buffer();
+        }
+
+        @Override
+        public void free(Buffer frame) {
+            assertFalse("buffer freed twice", frame.freed);
+            frame.freed = true;
+            freed.incrementAndGet();
+        }
+
+        int live() {
+            return allocated.get() - freed.get();
+        }
+    }
+
+    @Test
+    public void reusesReleasedBuffers() {
+        CountingAllocator allocator = new CountingAllocator();
+        FramePool<Buffer> pool = new FramePool<>(2, allocator);
+
+        Buffer first = pool.acquire();
+        pool.release(first);
+        Buffer second = pool.acquire();
+
+        assertSame(first, second);
+        assertEquals(1, pool.getMissCount());
+        assertEquals(1, pool.getHitCount());
+        assertEquals(1, pool.getInFlightCount());
+        assertEquals(1, allocator.allocated.get());
+    }
+
+    @Test
+    public void returnsNullWhenAllBuffersInFlight() {
+        CountingAllocator allocator = new CountingAllocator();
+        FramePool<Buffer> pool = new FramePool<>(2, allocator);
+
+        assertNotNull(pool.acquire());
+        assertNotNull(pool.acquire());
+        assertNull(pool.acquire());
+
+        assertEquals(1, pool.getExhaustedCount());
+        assertEquals(2, allocator.allocated.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void doubleReleaseFails() {
+        FramePool<Buffer> pool = new FramePool<>(2, new CountingAllocator());
+        Buffer buffer = pool.acquire();
+        pool.release(buffer);
+        pool.release(buffer);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void releaseAfterDiscardFails() {
+        FramePool<Buffer> pool = new FramePool<>(2, new CountingAllocator());
+        Buffer buffer = pool.acquire();
+        pool.discard(buffer);
+        pool.release(buffer);
+    }
+
+    @Test
+    public void discardFreesAndMakesRoom() {
+        CountingAllocator allocator = new CountingAllocator();
+        FramePool<Buffer> pool = new FramePool<>(1, allocator);
+
+        Buffer buffer = pool.acquire();
+        pool.discard(buffer);
+
+        assertTrue(buffer.freed);
+        assertNotNull(pool.acquire());
+        assertEquals(2, allocator.allocated.get());
+    }
+
+    @Test
+    public void closeFreesIdleNowAndInFlightOnRelease() {
+        CountingAllocator allocator = new CountingAllocator();
+        FramePool<Buffer> pool = new FramePool<>(2, allocator);
+        Buffer idle = pool.acquire();
+        Buffer busy = pool.acquire();
+        pool.release(idle);
+
+        pool.close();
+        assertTrue(idle.freed);
+        assertFalse(busy.freed);
+        assertNull(pool.acquire());
+
+        pool.release(busy);
+        assertTrue(busy.freed);
+        assertEquals(0, allocator.live());
+    }
+
+    @Test
+    public void concurrentDropsNeverLeakOrDoubleRelease() throws Exception {
+        final int capacity = 3;
+        final int threads = 8;
+        final int iterations = 20000;
+        final CountingAllocator allocator = new CountingAllocator();
+        final FramePool<Buffer> pool = new FramePool<>(capacity, allocator);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final AtomicInteger held = new AtomicInteger();
+        final AtomicInteger maxHeld = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final long seed = t;
+            Thread worker = new Thread(() -> {
+                Random random = new Random(seed);
+                try {
+                    start.await();
+                    for (int i = 0; i < iterations; i++) {
+                        Buffer buffer = pool.acquire();
+                        if (buffer == null) {
+                            continue;
+                        }
+                        assertEquals("buffer handed out twice", 1, buffer.owners.incrementAndGet());
+                        assertFalse("freed buffer handed out", buffer.freed);
+                        maxHeld.accumulateAndGet(held.incrementAndGet(), Math::max);
+                        held.decrementAndGet();
+                        buffer.owners.decrementAndGet();
+                        // Mix of processed frames, dropped frames and failed captures.
+                        if (random.nextInt(10) == 0) {
+                            pool.discard(buffer);
+                        } else {
+                            pool.release(buffer);
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(0, pool.getInFlightCount());
+        assertTrue("pool exceeded its bound: " + maxHeld.get(), maxHeld.get() <= capacity);
+        assertEquals(pool.getIdleCount(), allocator.live());
+
+        pool.close();
+        assertEquals(0, allocator.live());
+    }
+}
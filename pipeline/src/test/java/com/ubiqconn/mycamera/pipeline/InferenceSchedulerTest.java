@@ -0,0 +1,280 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class InferenceSchedulerTest {
+
+    /** Always-backlogged cameras: every processed frame is immediately followed by a new one. */
+    private static class BackloggedWorker implements InferenceScheduler.Worker<Integer> {
+        InferenceScheduler<Integer> scheduler;
+        final Map<String, AtomicInteger> served = new ConcurrentHashMap<>();
+        final AtomicInteger total = new AtomicInteger();
+        final CountDownLatch done;
+        final int limit;
+
+        BackloggedWorker(int limit) {
+            this.limit = limit;
+            done = new CountDownLatch(1);
+        }
+
+        @Override
+        public void process(String cameraId, Integer frame) {
+            served.computeIfAbsent(cameraId, id -> new AtomicInteger()).incrementAndGet();
+            if (total.incrementAndGet() >= limit) {
+                done.countDown();
+                return;
+            }
+            scheduler.submit(cameraId, frame + 1);
+        }
+
+        @Override
+        public void discard(String cameraId, Integer frame) {
+        }
+
+        int served(String cameraId) {
+            AtomicInteger count = served.get(cameraId);
+            return count != null ? count.get() : 0;
+        }
+    }
+
+    private static BackloggedWorker runBacklogged(InferenceScheduler.Policy policy, int weightA, int weightB)
+            throws InterruptedException {
+        BackloggedWorker worker = new BackloggedWorker(3000);
+        InferenceScheduler<Integer> scheduler = new InferenceScheduler<>(1, policy, worker, "test");
+        worker.scheduler = scheduler;
+        scheduler.setWeight("a", weightA);
+        scheduler.setWeight("b", weightB);
+        scheduler.submit("a", 0);
+        scheduler.submit("b", 0);
+        scheduler.start();
+        assertTrue(worker.done.await(10, TimeUnit.SECONDS));
+        scheduler.close();
+        return worker;
+    }
+
+    @Test
+    public void roundRobinServesCamerasEqually() throws InterruptedException {
+        BackloggedWorker worker = runBacklogged(InferenceScheduler.Policy.ROUND_ROBIN, 5, 1);
+        assertEquals(worker.served("a"), worker.served("b"), 1);
+    }
+
+    @Test
+    public void weightedServesInProportion() throws InterruptedException {
+        BackloggedWorker worker = runBacklogged(InferenceScheduler.Policy.WEIGHTED, 2, 1);
+        assertEquals(2000, worker.served("a"), 2);
+        assertEquals(1000, worker.served("b"), 2);
+    }
+
+    @Test
+    public void latestFrameWinsAndReplacedFramesAreDiscarded() throws InterruptedException {
+        List<Integer> processed = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> discarded = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch processedOne = new CountDownLatch(1);
+        InferenceScheduler<Integer> scheduler = new InferenceScheduler<>(1, InferenceScheduler.Policy.ROUND_ROBIN,
+                new InferenceScheduler.Worker<Integer>() {
+                    @Override
+                    public void process(String cameraId, Integer frame) {
+                        processed.add(frame);
+                        processedOne.countDown();
+                    }
+
+                    @Override
+                    public void discard(String cameraId, Integer frame) {
+                        discarded.add(frame);
+                    }
+                }, "test");
+        for (int i = 1; i <= 5; i++) {
+            scheduler.submit("a", i);
+        }
+        scheduler.start();
+        assertTrue(processedOne.await(5, TimeUnit.SECONDS));
+        scheduler.close();
+
+        assertEquals(Collections.singletonList(5), processed);
+        assertEquals(java.util.Arrays.asList(1, 2, 3, 4), discarded);
+        assertEquals(4, scheduler.getReplacedCount("a"));
+        assertEquals(1, scheduler.getServedCount("a"));
+    }
+
+    @Test
+    public void sameCameraIsNeverProcessedConcurrently() throws InterruptedException {
+        AtomicInteger inside = new AtomicInteger();
+        AtomicInteger maxInside = new AtomicInteger();
+        AtomicInteger processed = new AtomicInteger();
+        InferenceScheduler<Integer> scheduler = new InferenceScheduler<>(4, InferenceScheduler.Policy.ROUND_ROBIN,
+                new InferenceScheduler.Worker<Integer>() {
+                    @Override
+                    public void process(String cameraId, Integer frame) {
+                        maxInside.accumulateAndGet(inside.incrementAndGet(), Math::max);
+                        try {
+                            Thread.sleep(1);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        inside.decrementAndGet();
+                        processed.incrementAndGet();
+                    }
+
+                    @Override
+                    public void discard(String cameraId, Integer frame) {
+                    }
+                }, "test");
+        scheduler.start();
+        for (int i = 0; i < 200; i++) {
+            scheduler.submit("a", i);
+            Thread.sleep(0, 200_000);
+        }
+        scheduler.close();
+        assertEquals(1, maxInside.get());
+        assertTrue(processed.get() > 0);
+    }
+
+    @Test
+    public void closeDiscardsPendingAndLaterSubmissions() {
+        List<Integer> discarded = Collections.synchronizedList(new ArrayList<>());
+        InferenceScheduler<Integer> scheduler = new InferenceScheduler<>(1, InferenceScheduler.Policy.ROUND_ROBIN,
+                new InferenceScheduler.Worker<Integer>() {
+                    @Override
+                    public void process(String cameraId, Integer frame) {
+                        fail("not started");
+                    }
+
+                    @Override
+                    public void discard(String cameraId, Integer frame) {
+                        discarded.add(frame);
+                    }
+                }, "test");
+        scheduler.submit("a", 1);
+        scheduler.submit("b", 2);
+        scheduler.close();
+        scheduler.submit("a", 3);
+        assertEquals(java.util.Arrays.asList(1, 2, 3), discarded);
+    }
+
+    @Test
+    public void discardPendingKeepsWorkersServing() throws InterruptedException {
+        List<Integer> processed = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> discarded = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch served = new CountDownLatch(1);
+        InferenceScheduler<Integer> scheduler = new InferenceScheduler<>(1, InferenceScheduler.Policy.ROUND_ROBIN,
+                new InferenceScheduler.Worker<Integer>() {
+                    @Override
+                    public void process(String cameraId, Integer frame) {
+                        processed.add(frame);
+                        served.countDown();
+                    }
+
+                    @Override
+                    public void discard(String cameraId, Integer frame) {
+                        discarded.add(frame);
+                    }
+                }, "test");
+        scheduler.submit("a", 1);
+        scheduler.submit("b", 2);
+        scheduler.discardPending();
+        scheduler.awaitIdle();
+        assertEquals(java.util.Arrays.asList(1, 2), discarded);
+
+        // Frames submitted after the drain, e.g. once the cameras reopen, are still served.
+        scheduler.start();
+        scheduler.submit("a", 3);
+        assertTrue(served.await(5, TimeUnit.SECONDS));
+        scheduler.awaitIdle();
+        scheduler.close();
+        assertEquals(Collections.singletonList(3), processed);
+    }
+
+    @Test
+    public void awaitIdleWithTimeoutGivesUpOnABusyWorker() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        InferenceScheduler<Integer> scheduler = new InferenceScheduler<>(1, InferenceScheduler.Policy.ROUND_ROBIN,
+                new InferenceScheduler.Worker<Integer>() {
+                    @Override
+                    public void process(String cameraId, Integer frame) {
+                        started.countDown();
+                        try {
+                            release.await(5, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+
+                    @Override
+                    public void discard(String cameraId, Integer frame) {
+                    }
+                }, "test");
+        scheduler.start();
+        scheduler.submit("a", 1);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        long startNanos = System.nanoTime();
+        assertFalse(scheduler.awaitIdle(50));
+        assertTrue(System.nanoTime() - startNanos >= TimeUnit.MILLISECONDS.toNanos(50));
+
+        release.countDown();
+        assertTrue(scheduler.awaitIdle(5000));
+        scheduler.close();
+    }
+
+    @Test
+    public void submitWhileAwaitingIdleStillReachesAWorker() throws InterruptedException {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch secondServed = new CountDownLatch(1);
+        InferenceScheduler<Integer> scheduler = new InferenceScheduler<>(2, InferenceScheduler.Policy.ROUND_ROBIN,
+                new InferenceScheduler.Worker<Integer>() {
+                    @Override
+                    public void process(String cameraId, Integer frame) {
+                        if ("a".equals(cameraId)) {
+                            // Stays busy until camera b's frame has been served by the other worker.
+                            firstStarted.countDown();
+                            try {
+                                secondServed.await(5, TimeUnit.SECONDS);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        } else {
+                            secondServed.countDown();
+                        }
+                    }
+
+                    @Override
+                    public void discard(String cameraId, Integer frame) {
+                    }
+                }, "test");
+        scheduler.submit("a", 1);
+        // Waits on the scheduler's monitor before either worker does, e.g. pausing on the UI thread.
+        Thread waiter = new Thread(() -> {
+            try {
+                scheduler.awaitIdle();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "awaitIdle");
+        waiter.start();
+        while (waiter.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        scheduler.start();
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+        // Let the idle worker reach its wait too.
+        Thread.sleep(50);
+
+        scheduler.submit("b", 2);
+        assertTrue("frame submitted during awaitIdle was not served", secondServed.await(1, TimeUnit.SECONDS));
+        waiter.join(5000);
+        assertFalse(waiter.isAlive());
+        scheduler.close();
+    }
+}
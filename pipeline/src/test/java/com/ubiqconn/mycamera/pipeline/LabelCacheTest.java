@@ -0,0 +1,25 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LabelCacheTest {
+
+    @Test
+    public void formatsLikeTheOverlayDid() {
+        LabelCache cache = new LabelCache();
+        assertEquals("person 0.87", cache.get("person", 0.8712f));
+        assertEquals("null 1.00", cache.get(null, 1.2f));
+        assertEquals("cup 0.00", cache.get("cup", -0.1f));
+    }
+
+    @Test
+    public void sameBucketReturnsSameInstance() {
+        LabelCache cache = new LabelCache();
+        String first = cache.get("person", 0.871f);
+        assertSame(first, cache.get(new String("person"), 0.869f));
+        assertNotSame(first, cache.get("person", 0.88f));
+        assertEquals(1, cache.getLabelCount());
+    }
+}
@@ -0,0 +1,78 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverEveryValueInOrder() {
+        int previous = -1;
+        for (long value = 0; value <= LatencyHistogram.MAX_VALUE; value = value < 4096 ? value + 1 : value * 17 / 16) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(index >= previous);
+            assertTrue(LatencyHistogram.lowestEquivalentValue(index) <= value);
+            assertTrue(LatencyHistogram.highestEquivalentValue(index) >= value);
+            previous = index;
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(LatencyHistogram.MAX_VALUE));
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10; i++) {
+            histogram.recordMicros(i);
+        }
+
+        assertEquals(10, histogram.getCount());
+        assertEquals(5, histogram.getPercentileMicros(50));
+        assertEquals(10, histogram.getPercentileMicros(100));
+        assertEquals(5.5, histogram.getMeanMicros(), 1e-9);
+    }
+
+    @Test
+    public void percentilesWithinRelativeError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(42);
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1000 + random.nextInt(200000);
+            histogram.recordMicros(values[i]);
+        }
+        java.util.Arrays.sort(values);
+
+        for (double percentile : new double[] { 50, 90, 99, 99.9 }) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long reported = histogram.getPercentileMicros(percentile);
+            assertTrue(percentile + ": " + reported + " vs " + exact,
+                    Math.abs(reported - exact) <= exact / 16 + 1);
+        }
+        assertEquals(values[values.length - 1], histogram.getMaxMicros());
+    }
+
+    @Test
+    public void clampsOutOfRangeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordMicros(-5);
+        histogram.recordMicros(Long.MAX_VALUE);
+
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMicros(50));
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.getPercentileMicros(100));
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(5_000_000);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxMicros());
+        assertEquals(0, histogram.getPercentileMicros(99));
+    }
+}
@@ -0,0 +1,74 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MosaicTest {
+
+    @Test
+    public void sideBySidePlacesEachFrameInItsHalf() {
+        Mosaic mosaic = new Mosaic(Mosaic.Arrangement.SIDE_BY_SIDE, 2, 320, 320);
+        // 320x240 into a 160x320 cell: scale 0.5, centred vertically.
+        BoxTransform left = mosaic.place(0, 320, 240);
+        assertEquals(0.5f, left.getScaleX(), 0f);
+        assertEquals(0f, left.getOffsetX(), 0f);
+        assertEquals(100f, left.getOffsetY(), 0f);
+        BoxTransform right = mosaic.place(1, 320, 240);
+        assertEquals(160f, right.getOffsetX(), 0f);
+    }
+
+    @Test
+    public void boxesAreSplitByRegionAndMappedBack() {
+        Mosaic mosaic = new Mosaic(Mosaic.Arrangement.STACKED, 2, 320, 320);
+        mosaic.place(0, 640, 480);
+        mosaic.place(1, 640, 480);
+        // Stacked cells are 320x160; 640x480 fits at scale 1/3, 213.3 wide, centred.
+        float offsetX = (320 - 640f / 3) / 2;
+        float[] boxes = {
+                offsetX + 10, 20, offsetX + 30, 40,
+                offsetX + 10, 180, offsetX + 30, 200,
+        };
+        assertEquals(0, mosaic.regionOf(boxes, 0));
+        assertEquals(1, mosaic.regionOf(boxes, 4));
+
+        assertTrue(mosaic.unmap(0, boxes, 0));
+        assertArrayEquals(new float[] {30, 60, 90, 120}, copy(boxes, 0), 1e-3f);
+        assertTrue(mosaic.unmap(1, boxes, 4));
+        assertArrayEquals(new float[] {30, 60, 90, 120}, copy(boxes, 4), 1e-3f);
+    }
+
+    @Test
+    public void boxAcrossTheSeamGoesToItsCentreAndIsClipped() {
+        Mosaic mosaic = new Mosaic(Mosaic.Arrangement.SIDE_BY_SIDE, 2, 320, 320);
+        mosaic.place(0, 160, 320);
+        mosaic.place(1, 160, 320);
+        float[] box = {120, 10, 170, 50};
+        assertEquals(0, mosaic.regionOf(box, 0));
+        assertTrue(mosaic.unmap(0, box, 0));
+        assertArrayEquals(new float[] {120, 10, 160, 50}, box, 1e-3f);
+    }
+
+    @Test
+    public void boxInALetterboxBarIsDropped() {
+        Mosaic mosaic = new Mosaic(Mosaic.Arrangement.SIDE_BY_SIDE, 2, 320, 320);
+        // Content rows 100..220; the bars above and below are padding.
+        mosaic.place(0, 320, 240);
+        float[] box = {10, 20, 50, 90};
+        assertEquals(0, mosaic.regionOf(box, 0));
+        assertFalse(mosaic.unmap(0, box, 0));
+        assertEquals(-1, mosaic.regionOf(new float[] {400, 10, 420, 30}, 0));
+    }
+
+    @Test
+    public void bestArrangementFollowsFrameAspect() {
+        assertEquals(Mosaic.Arrangement.STACKED, Mosaic.bestArrangement(2, 320, 320, 640, 480));
+        assertEquals(Mosaic.Arrangement.SIDE_BY_SIDE, Mosaic.bestArrangement(2, 320, 320, 480, 640));
+    }
+
+    private static float[] copy(float[] boxes, int offset) {
+        float[] out = new float[FrameGeometry.BOX_STRIDE];
+        System.arraycopy(boxes, offset, out, 0, out.length);
+        return out;
+    }
+}
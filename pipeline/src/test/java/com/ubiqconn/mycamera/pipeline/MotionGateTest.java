@@ -0,0 +1,130 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MotionGateTest {
+
+    private static final int W = 32;
+    private static final int H = 24;
+
+    private static MotionGate newGate() {
+        return new MotionGate(W, H, 12, 0.01f, 2000);
+    }
+
+    private static void fill(MotionGate gate, byte[] frame) {
+        System.arraycopy(frame, 0, gate.thumbnail(), 0, frame.length);
+    }
+
+    private static byte[] noisyScene(Random random, int base) {
+        byte[] frame = new byte[W * H];
+        for (int i = 0; i < frame.length; i++) {
+            // Sensor noise well inside the per-pixel tolerance.
+            frame[i] = (byte) (base + (i % 7) * 10 + random.nextInt(9) - 4);
+        }
+        return frame;
+    }
+
+    @Test
+    public void firstFrameIsAlwaysAnalysed() {
+        MotionGate gate = newGate();
+        fill(gate, new byte[W * H]);
+        assertTrue(gate.shouldAnalyze(0));
+    }
+
+    @Test
+    public void staticNoisySceneIsSkippedUntilRefresh() {
+        MotionGate gate = newGate();
+        Random random = new Random(1);
+        fill(gate, noisyScene(random, 60));
+        assertTrue(gate.shouldAnalyze(0));
+        for (long t = 100; t < 2000; t += 100) {
+            fill(gate, noisyScene(random, 60));
+            assertFalse("t=" + t, gate.shouldAnalyze(t));
+        }
+        fill(gate, noisyScene(random, 60));
+        assertTrue("forced refresh", gate.shouldAnalyze(2000));
+        assertEquals(19, gate.getSkippedCount());
+        assertEquals(21, gate.getEvaluatedCount());
+    }
+
+    @Test
+    public void smallMovingObjectIsAnalysed() {
+        MotionGate gate = newGate();
+        byte[] frame = new byte[W * H];
+        fill(gate, frame);
+        assertTrue(gate.shouldAnalyze(0));
+
+        // A 3x3 bright patch appears: 9 of 768 pixels, just over 1%.
+        for (int y = 10; y < 13; y++) {
+            Arrays.fill(frame, y * W + 5, y * W + 8, (byte) 200);
+        }
+        fill(gate, frame);
+        assertTrue(gate.shouldAnalyze(100));
+        assertEquals(9f / (W * H), gate.getLastChangedFraction(), 1e-6f);
+    }
+
+    @Test
+    public void skippedFramesAreComparedWithLastAnalysedFrame() {
+        MotionGate gate = newGate();
+        byte[] frame = new byte[W * H];
+        fill(gate, frame);
+        assertTrue(gate.shouldAnalyze(0));
+        // A patch creeping by a column per frame: each step is small, the total is not.
+        boolean analysed = false;
+        for (int step = 1; step <= 6 && !analysed; step++) {
+            frame[10 * W + step] = (byte) 200;
+            frame[11 * W + step] = (byte) 200;
+            fill(gate, frame);
+            analysed = gate.shouldAnalyze(step * 100L);
+        }
+        assertTrue(analysed);
+    }
+
+    @Test
+    public void resetForcesNextFrame() {
+        MotionGate gate = newGate();
+        fill(gate, new byte[W * H]);
+        assertTrue(gate.shouldAnalyze(0));
+        fill(gate, new byte[W * H]);
+        assertFalse(gate.shouldAnalyze(100));
+        gate.reset();
+        fill(gate, new byte[W * H]);
+        assertTrue(gate.shouldAnalyze(200));
+    }
+
+    @Test
+    public void countChanged_treatsBytesAsUnsigned() {
+        byte[] a = {0, (byte) 255, 100, 10};
+        byte[] b = {(byte) 255, 0, 105, 30};
+        assertEquals(3, MotionGate.countChanged(a, b, 4, 12));
+    }
+
+    @Test
+    public void sampleLuma_averagesCellsAndHonoursStrides() {
+        // 8x4 plane with row padding, left half dark and right half bright.
+        int width = 8, height = 4, rowStride = 12;
+        ByteBuffer plane = ByteBuffer.allocateDirect(rowStride * height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                plane.put(y * rowStride + x, (byte) (x < 4 ? 20 : 220));
+            }
+        }
+        byte[] out = new byte[2 * 2];
+        MotionGate.sampleLuma(plane, rowStride, 1, width, height, out, 2, 2);
+        assertArrayEquals(new byte[]{20, (byte) 220, 20, (byte) 220}, out);
+        assertEquals(0, plane.position());
+    }
+
+    @Test
+    public void luma_weightsChannels() {
+        assertEquals(0, MotionGate.luma(0xff000000));
+        assertEquals(255, MotionGate.luma(0xffffffff));
+        assertTrue(MotionGate.luma(0xff00ff00) > MotionGate.luma(0xffff0000));
+    }
+}
@@ -0,0 +1,84 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class OverlayBufferTest {
+
+    @Test
+    public void commitPublishesBackBuffer() {
+        OverlayBuffer buffer = new OverlayBuffer(4);
+        buffer.begin();
+        buffer.add(1, 2, 3, 4, 0.5f, "cat");
+        assertEquals(0, buffer.count());
+        assertTrue(buffer.commit(0.5f));
+        assertEquals(1, buffer.count());
+        assertArrayEquals(new float[]{1, 2, 3, 4}, java.util.Arrays.copyOf(buffer.boxes(), 4), 0f);
+        assertEquals("cat", buffer.labels()[0]);
+    }
+
+    @Test
+    public void unchangedResultsAreNotReportedAsChanged() {
+        OverlayBuffer buffer = new OverlayBuffer(4);
+        for (int frame = 0; frame < 3; frame++) {
+            buffer.begin();
+            buffer.add(10, 10, 50, 50, 0.801f, new String("cat"));
+            buffer.add(60, 60, 90, 90, 0.5f, "dog");
+            boolean changed = buffer.commit(0.5f);
+            assertEquals("frame " + frame, frame == 0, changed);
+        }
+    }
+
+    @Test
+    public void movementLabelScoreAndCountChangesAreDetected() {
+        OverlayBuffer buffer = new OverlayBuffer(4);
+        fill(buffer, 10f, 0.8f, "cat", 1);
+        buffer.commit(0.5f);
+
+        fill(buffer, 10.4f, 0.8f, "cat", 1);
+        assertFalse("within tolerance", buffer.commit(0.5f));
+        fill(buffer, 11f, 0.8f, "cat", 1);
+        assertTrue("moved", buffer.commit(0.5f));
+        fill(buffer, 11f, 0.81f, "cat", 1);
+        assertTrue("score changed at display precision", buffer.commit(0.5f));
+        fill(buffer, 11f, 0.81f, "dog", 1);
+        assertTrue("label changed", buffer.commit(0.5f));
+        fill(buffer, 11f, 0.81f, "dog", 2);
+        assertTrue("count changed", buffer.commit(0.5f));
+    }
+
+    @Test
+    public void addStopsAtCapacity() {
+        OverlayBuffer buffer = new OverlayBuffer(2);
+        buffer.begin();
+        assertTrue(buffer.add(0, 0, 1, 1, 1f, null));
+        assertTrue(buffer.add(0, 0, 1, 1, 1f, null));
+        assertFalse(buffer.add(0, 0, 1, 1, 1f, null));
+        buffer.setBackCount(5);
+        buffer.commit(0f);
+        assertEquals(2, buffer.count());
+    }
+
+    @Test
+    public void bulkWritesThroughBackArrays() {
+        OverlayBuffer buffer = new OverlayBuffer(2);
+        buffer.backBoxes()[0] = 5;
+        buffer.backScores()[0] = 0.3f;
+        buffer.backLabels()[0] = "cup";
+        buffer.setBackCount(1);
+        assertTrue(buffer.commit(0f));
+        assertEquals(5f, buffer.boxes()[0], 0f);
+        assertEquals("cup", buffer.labels()[0]);
+
+        buffer.clear();
+        assertEquals(0, buffer.count());
+    }
+
+    private static void fill(OverlayBuffer buffer, float left, float score, String label, int count) {
+        buffer.begin();
+        for (int i = 0; i < count; i++) {
+            buffer.add(left, 10, left + 40, 50, score, label);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PipelineDriverTest {
+
+    private static final int SIZE = 64;
+
+    /** Generates GRAY8 frames with a bright square that moves {@code speed} px per frame. */
+    private static class SyntheticSource implements FrameSource<Frame> {
+        final int frames;
+        final int speed;
+        final AtomicInteger outstanding = new AtomicInteger();
+        // Like an ImageReader with maxImages=1 when set: the next frame waits for the last release.
+        Semaphore buffers;
+        int next;
+
+        SyntheticSource(int frames, int speed) {
+            this.frames = frames;
+            this.speed = speed;
+        }
+
+        @Override
+        public Frame acquireNext() throws InterruptedException {
+            if (next == frames) {
+                return null;
+            }
+            if (buffers != null) {
+                buffers.acquire();
+            }
+            ByteBuffer pixels = ByteBuffer.allocate(SIZE * SIZE);
+            int x = (next * speed) % (SIZE - 16);
+            for (int row = 16; row < 32; row++) {
+                for (int col = x; col < x + 16; col++) {
+                    pixels.put(row * SIZE + col, (byte) 255);
+                }
+            }
+            outstanding.incrementAndGet();
+            Frame frame = new Frame(pixels, SIZE, SIZE, Frame.FORMAT_GRAY8, next * 33_000_000L, next);
+            next++;
+            return frame;
+        }
+
+        @Override
+        public void release(Frame frame) {
+            outstanding.decrementAndGet();
+            if (buffers != null) {
+                buffers.release();
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /** Reports the bright square's bounding box, after a fixed inference delay. */
+    private static class StubDetector implements Detector<Frame> {
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public void detect(Frame frame, Detections out) {
+            calls.incrementAndGet();
+            out.clear();
+            ByteBuffer data = frame.getData();
+            int left = SIZE;
+            int right = -1;
+            for (int col = 0; col < SIZE; col++) {
+                if (data.get(20 * SIZE + col) != 0) {
+                    left = Math.min(left, col);
+                    right = col;
+                }
+            }
+            if (right >= 0) {
+                out.add(left, 16, right + 1, 32, 0.9f, "square");
+            }
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void everyFrameIsProcessedSkippedOrDroppedAndReleased() throws Exception {
+        StubDetector detector = new StubDetector();
+        PipelineMetrics metrics = new PipelineMetrics();
+        PipelineDriver<Frame> driver = new PipelineDriver<>(detector, PipelineDriver.FRAMES, 1,
+                InferenceScheduler.Policy.ROUND_ROBIN, metrics);
+        driver.setMotionGate(16, 16, 12, 0.01f, 10_000);
+        SyntheticSource still = new SyntheticSource(200, 0);
+        SyntheticSource moving = new SyntheticSource(200, 1);
+        driver.addSource("still", still);
+        driver.addSource("moving", moving);
+
+        assertTrue(driver.run() > 0);
+
+        for (String id : new String[] {"still", "moving"}) {
+            PipelineMetrics.CameraMetrics camera = metrics.camera(id);
+            assertEquals(id, 200, driver.getAcquiredCount(id));
+            assertEquals(id, 200, camera.getProcessedCount() + camera.getSkippedCount() + camera.getDroppedCount());
+        }
+        assertEquals(0, still.outstanding.get());
+        assertEquals(0, moving.outstanding.get());
+        assertEquals(detector.calls.get(),
+                metrics.camera("still").getProcessedCount() + metrics.camera("moving").getProcessedCount());
+
+        // A static scene is analysed once (the refresh interval is longer than the replay) and then gated.
+        assertEquals(1, metrics.camera("still").getProcessedCount());
+        assertEquals(199, metrics.camera("still").getSkippedCount());
+        assertTrue(metrics.camera("moving").getProcessedCount() > 1);
+    }
+
+    @Test
+    public void trackerFollowsTheDetectedObject() throws Exception {
+        PipelineMetrics metrics = new PipelineMetrics();
+        PipelineDriver<Frame> driver = new PipelineDriver<>(new StubDetector(), PipelineDriver.FRAMES, 2,
+                InferenceScheduler.Policy.ROUND_ROBIN, metrics);
+        SyntheticSource source = new SyntheticSource(30, 1);
+        source.buffers = new Semaphore(1);
+        driver.addSource("cam", source);
+        driver.run();
+
+        assertEquals(30, driver.getAcquiredCount("cam"));
+        assertEquals(30, metrics.camera("cam").getProcessedCount());
+        assertEquals(1, driver.getTracker("cam").getTrackCount());
+        Detections detections = driver.getDetections("cam");
+        assertEquals(1, detections.count());
+        assertEquals("square", detections.labels()[0]);
+    }
+}
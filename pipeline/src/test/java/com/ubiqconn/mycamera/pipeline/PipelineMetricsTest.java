@@ -0,0 +1,58 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PipelineMetricsTest {
+
+    @Test
+    public void snapshotReportsIntervalFps() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        PipelineMetrics.CameraMetrics camera = metrics.camera("0");
+        long start = System.nanoTime();
+        metrics.snapshot(start);
+        for (int i = 0; i < 30; i++) {
+            camera.onProcessed();
+        }
+        camera.recordMicros(PipelineMetrics.Stage.INFERENCE, 40000);
+
+        String snapshot = metrics.snapshot(start + 2_000_000_000L);
+
+        assertEquals(15.0, camera.getFps(), 1e-9);
+        assertTrue(snapshot, snapshot.startsWith("camera 0 fps=15.0 processed=30 dropped=0"));
+        assertTrue(snapshot, snapshot.contains("INFERENCE"));
+        assertFalse(snapshot, snapshot.contains("DRAW"));
+    }
+
+    @Test
+    public void snapshotListsCamerasInIdOrder() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        metrics.camera("1").onDropped();
+        metrics.camera("0").recordNanos(PipelineMetrics.Stage.DRAW, 3_000_000);
+
+        String snapshot = metrics.snapshot(System.nanoTime());
+
+        assertTrue(snapshot, snapshot.indexOf("camera 0") < snapshot.indexOf("camera 1"));
+        assertTrue(snapshot, snapshot.contains("dropped=1"));
+        assertTrue(metrics.describe("0"), metrics.describe("0").contains("DRAW"));
+        assertEquals("", metrics.describe("2"));
+    }
+
+    @Test
+    public void skipRatioCountsGatedFrames() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        PipelineMetrics.CameraMetrics camera = metrics.camera("0");
+        assertEquals(0, camera.getSkipRatio(), 0);
+        camera.onProcessed();
+        for (int i = 0; i < 3; i++) {
+            camera.onSkipped();
+        }
+        camera.recordMicros(PipelineMetrics.Stage.GATE, 50);
+
+        assertEquals(0.75, camera.getSkipRatio(), 1e-9);
+        String description = metrics.describe("0");
+        assertTrue(description, description.contains("skipped=3 (75%)"));
+        assertTrue(description, description.contains("GATE"));
+    }
+}
@@ -0,0 +1,125 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class ReplayFrameSourceTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File record(int width, int height, int format, int frames) throws IOException {
+        File file = folder.newFile();
+        int size = width * height * Frame.bytesPerPixel(format);
+        try (FrameRecorder recorder = new FrameRecorder(file, width, height, format)) {
+            for (int i = 0; i < frames; i++) {
+                ByteBuffer pixels = ByteBuffer.allocate(size);
+                for (int p = 0; p < size; p++) {
+                    pixels.put(p, (byte) (i * 10 + p));
+                }
+                recorder.append(pixels, i * 33_000_000L);
+            }
+        }
+        return file;
+    }
+
+    @Test
+    public void roundTripsHeaderTimestampsAndPixels() throws Exception {
+        File file = record(4, 3, Frame.FORMAT_RGBA8888, 3);
+        try (ReplayFrameSource source = new ReplayFrameSource(file, 0, false)) {
+            assertEquals(4, source.getWidth());
+            assertEquals(3, source.getHeight());
+            assertEquals(Frame.FORMAT_RGBA8888, source.getFormat());
+            assertEquals(3, source.getFrameCount());
+            for (int i = 0; i < 3; i++) {
+                Frame frame = source.acquireNext();
+                assertEquals(i, frame.getIndex());
+                assertEquals(i * 33_000_000L, frame.getTimestampNanos());
+                assertEquals(48, frame.getData().remaining());
+                assertEquals((byte) (i * 10), frame.getData().get(0));
+                assertEquals((byte) (i * 10 + 47), frame.getData().get(47));
+                source.release(frame);
+            }
+            assertNull(source.acquireNext());
+        }
+    }
+
+    @Test
+    public void loopRestartsAndKeepsCountingIndices() throws Exception {
+        File file = record(2, 2, Frame.FORMAT_GRAY8, 2);
+        try (ReplayFrameSource source = new ReplayFrameSource(file, 0, true)) {
+            for (int i = 0; i < 5; i++) {
+                Frame frame = source.acquireNext();
+                assertEquals(i, frame.getIndex());
+                assertEquals((byte) (i % 2 * 10), frame.getData().get(0));
+            }
+        }
+    }
+
+    @Test
+    public void fixedRateIsPaced() throws Exception {
+        File file = record(2, 2, Frame.FORMAT_GRAY8, 6);
+        try (ReplayFrameSource source = new ReplayFrameSource(file, 100, false)) {
+            long start = System.nanoTime();
+            int frames = 0;
+            while (source.acquireNext() != null) {
+                frames++;
+            }
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            assertEquals(6, frames);
+            // Frame 0 is due immediately, frame 5 at 50 ms.
+            assertTrue("elapsed " + elapsedMs, elapsedMs >= 45);
+        }
+    }
+
+    @Test
+    public void closedSourceReturnsNull() throws Exception {
+        ReplayFrameSource source = new ReplayFrameSource(record(2, 2, Frame.FORMAT_GRAY8, 2), 0, true);
+        source.close();
+        assertNull(source.acquireNext());
+    }
+
+    @Test
+    public void rejectsForeignAndTruncatedFiles() throws Exception {
+        File foreign = folder.newFile();
+        try (RandomAccessFile out = new RandomAccessFile(foreign, "rw")) {
+            out.write(new byte[64]);
+        }
+        try {
+            new ReplayFrameSource(foreign, 0, false);
+            fail();
+        } catch (IOException expected) {
+        }
+
+        File truncated = record(4, 4, Frame.FORMAT_GRAY8, 2);
+        try (RandomAccessFile out = new RandomAccessFile(truncated, "rw")) {
+            out.setLength(out.length() - 1);
+        }
+        try {
+            new ReplayFrameSource(truncated, 0, false);
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void sampleLumaReadsGreenChannelOfRgba() {
+        ByteBuffer pixels = ByteBuffer.allocate(8 * 8 * 4);
+        for (int p = 0; p < 64; p++) {
+            pixels.put(p * 4, (byte) 255);
+            pixels.put(p * 4 + 1, (byte) (p < 32 ? 40 : 200));
+        }
+        Frame frame = new Frame(pixels, 8, 8, Frame.FORMAT_RGBA8888, 0, 0);
+        byte[] out = new byte[4];
+        frame.sampleLuma(out, 2, 2);
+        assertEquals(40, out[0] & 0xff);
+        assertEquals(200, out[3] & 0xff);
+    }
+}
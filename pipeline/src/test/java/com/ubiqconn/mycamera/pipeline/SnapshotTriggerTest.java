@@ -0,0 +1,36 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SnapshotTriggerTest {
+
+    @Test
+    public void firesOncePerCooldownPerCameraAndLabel() {
+        SnapshotTrigger trigger = SnapshotTrigger.parse("person, car:10000", 5000, 0.6f);
+        assertTrue(trigger.fire("0", "person", 0.9f, 1000));
+        assertFalse(trigger.fire("0", "person", 0.9f, 5999));
+        assertTrue("other cameras have their own cooldown", trigger.fire("1", "person", 0.9f, 2000));
+        assertTrue(trigger.fire("0", "person", 0.9f, 6000));
+
+        assertTrue(trigger.fire("0", "car", 0.9f, 1000));
+        assertFalse(trigger.fire("0", "car", 0.9f, 10999));
+        assertTrue(trigger.fire("0", "car", 0.9f, 11000));
+    }
+
+    @Test
+    public void ignoresOtherLabelsAndLowScores() {
+        SnapshotTrigger trigger = SnapshotTrigger.parse("Person", 5000, 0.6f);
+        assertFalse(trigger.fire("0", "cup", 0.9f, 0));
+        assertFalse(trigger.fire("0", "person", 0.5f, 0));
+        assertFalse(trigger.fire("0", null, 0.9f, 0));
+        assertTrue("labels match case-insensitively", trigger.fire("0", "PERSON", 0.7f, 0));
+    }
+
+    @Test
+    public void emptySpecIsOff() {
+        assertNull(SnapshotTrigger.parse(null, 5000, 0.5f));
+        assertNull(SnapshotTrigger.parse(" ", 5000, 0.5f));
+    }
+}
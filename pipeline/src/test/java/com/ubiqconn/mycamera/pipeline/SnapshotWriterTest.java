@@ -0,0 +1,195 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class SnapshotWriterTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /** Writes the frame's text; blocks on {@link #gate} once armed, to hold the encoder. */
+    private static class FakeEncoder implements SnapshotWriter.Encoder<String> {
+        final List<String> released = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch started = new CountDownLatch(1);
+        volatile CountDownLatch gate;
+
+        @Override
+        public void encode(String frame, OutputStream out) throws IOException {
+            started.countDown();
+            CountDownLatch g = gate;
+            if (g != null) {
+                try {
+                    g.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            if (frame.startsWith("bad")) {
+                throw new IOException("cannot encode " + frame);
+            }
+            out.write(frame.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void release(String frame) {
+            released.add(frame);
+        }
+    }
+
+    private final FakeEncoder encoder = new FakeEncoder();
+    private SnapshotWriter<String> writer;
+
+    @After
+    public void tearDown() {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    private File dir() {
+        return new File(folder.getRoot(), "snapshots");
+    }
+
+    @Test
+    public void writesEverySnapshotAndReleasesFrames() throws Exception {
+        writer = new SnapshotWriter<>(dir(), 4, 2, encoder, null, "Encoder");
+        writer.start();
+        assertTrue(writer.submit("a.jpg", "aaa"));
+        assertTrue(writer.submit("b.jpg", "bbbb"));
+        writer.awaitIdle();
+        assertEquals(3, new File(dir(), "a.jpg").length());
+        assertEquals(4, new File(dir(), "b.jpg").length());
+        assertEquals(2, writer.getWrittenCount());
+        assertEquals(2, encoder.released.size());
+    }
+
+    @Test
+    public void fullQueueDropsOldestWithoutBlocking() throws Exception {
+        encoder.gate = new CountDownLatch(1);
+        writer = new SnapshotWriter<>(dir(), 2, 1, encoder, null, "Encoder");
+        writer.start();
+        writer.submit("1.jpg", "one");
+        assertTrue(encoder.started.await(5, TimeUnit.SECONDS));
+        // The encoder is busy with "one"; two fit in the queue.
+        assertTrue(writer.submit("2.jpg", "two"));
+        assertTrue(writer.submit("3.jpg", "three"));
+        assertFalse(writer.submit("4.jpg", "four"));
+        assertEquals(1, writer.getDroppedCount());
+        assertEquals("two", encoder.released.get(0));
+
+        encoder.gate.countDown();
+        writer.awaitIdle();
+        assertTrue(new File(dir(), "1.jpg").exists());
+        assertFalse(new File(dir(), "2.jpg").exists());
+        assertTrue(new File(dir(), "3.jpg").exists());
+        assertTrue(new File(dir(), "4.jpg").exists());
+        assertEquals(4, writer.getSubmittedCount());
+        assertEquals(3, writer.getWrittenCount());
+    }
+
+    @Test
+    public void failedEncodeLeavesNoFile() throws Exception {
+        writer = new SnapshotWriter<>(dir(), 2, 1, encoder, null, "Encoder");
+        writer.start();
+        writer.submit("x.jpg", "bad frame");
+        writer.awaitIdle();
+        assertEquals(1, writer.getFailedCount());
+        assertArrayEquals(new String[0], dir().list());
+        assertEquals(Collections.singletonList("bad frame"), encoder.released);
+    }
+
+    @Test
+    public void quotaEvictsOldestSnapshots() throws Exception {
+        DiskQuota quota = new DiskQuota(dir(), 25);
+        writer = new SnapshotWriter<>(dir(), 4, 1, encoder, quota, "Encoder");
+        writer.start();
+        for (int i = 0; i < 4; i++) {
+            writer.submit(i + ".jpg", "0123456789");
+            writer.awaitIdle();
+        }
+        assertFalse(new File(dir(), "0.jpg").exists());
+        assertFalse(new File(dir(), "1.jpg").exists());
+        assertTrue(new File(dir(), "3.jpg").exists());
+        assertEquals(20, quota.getUsedBytes());
+        assertEquals(2, quota.getEvictedCount());
+    }
+
+    @Test
+    public void closeDropsQueuedFramesAndRejectsNewOnes() throws Exception {
+        encoder.gate = new CountDownLatch(1);
+        writer = new SnapshotWriter<>(dir(), 4, 1, encoder, null, "Encoder");
+        writer.start();
+        writer.submit("1.jpg", "one");
+        assertTrue(encoder.started.await(5, TimeUnit.SECONDS));
+        writer.submit("2.jpg", "two");
+        encoder.gate.countDown();
+        writer.close();
+        assertTrue(encoder.released.contains("two"));
+        assertFalse(writer.submit("3.jpg", "three"));
+        assertTrue(encoder.released.contains("three"));
+    }
+
+    @Test
+    public void submitWhileAwaitingIdleStillReachesAnEncoder() throws Exception {
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        CountDownLatch fastWritten = new CountDownLatch(1);
+        writer = new SnapshotWriter<>(dir(), 4, 2, new SnapshotWriter.Encoder<String>() {
+            @Override
+            public void encode(String frame, OutputStream out) throws IOException {
+                if (frame.equals("slow")) {
+                    // Holds one encoder until the other has written the next frame.
+                    slowStarted.countDown();
+                    try {
+                        fastWritten.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                } else {
+                    fastWritten.countDown();
+                }
+                out.write(frame.getBytes(StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void release(String frame) {
+            }
+        }, null, "Encoder");
+        writer.submit("slow.jpg", "slow");
+        // Waits on the writer's monitor before either encoder does.
+        Thread waiter = new Thread(() -> {
+            try {
+                writer.awaitIdle();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "awaitIdle");
+        waiter.start();
+        while (waiter.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        writer.start();
+        assertTrue(slowStarted.await(5, TimeUnit.SECONDS));
+        // Let the idle encoder reach its wait too.
+        Thread.sleep(50);
+
+        writer.submit("fast.jpg", "fast");
+        assertTrue("snapshot submitted during awaitIdle was not written", fastWritten.await(1, TimeUnit.SECONDS));
+        waiter.join(5000);
+        assertFalse(waiter.isAlive());
+        assertEquals(2, writer.getWrittenCount());
+    }
+}
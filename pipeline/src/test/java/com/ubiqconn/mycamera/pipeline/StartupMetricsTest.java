@@ -0,0 +1,51 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class StartupMetricsTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void firstMarkWins() {
+        StartupMetrics metrics = new StartupMetrics(1000);
+        assertEquals(-1, metrics.get("first_detection"));
+        assertTrue(metrics.mark("first_detection", 1800));
+        assertFalse(metrics.mark("first_detection", 2500));
+        assertEquals(800, metrics.get("first_detection"));
+        assertTrue(metrics.has("first_detection"));
+    }
+
+    @Test
+    public void formatListsMilestonesInOrderReached() {
+        StartupMetrics metrics = new StartupMetrics(0);
+        metrics.mark("first_detection", 900);
+        metrics.mark("camera_open_0", 200);
+        metrics.mark("model_loaded", 450);
+        assertEquals("camera_open_0=200 model_loaded=450 first_detection=900", metrics.format());
+    }
+
+    @Test
+    public void appendWritesOneLinePerLaunch() throws Exception {
+        File file = new File(folder.getRoot(), "metrics/startup_metrics.txt");
+        StartupMetrics first = new StartupMetrics(0);
+        first.mark("first_preview_0", 300);
+        first.append(file, "1.0", 111);
+        StartupMetrics second = new StartupMetrics(0);
+        second.mark("first_preview_0", 250);
+        second.append(file, "1.1", 222);
+
+        List<String> lines = Files.readAllLines(file.toPath());
+        assertEquals(2, lines.size());
+        assertEquals("111 version=1.0 first_preview_0=300", lines.get(0));
+        assertEquals("222 version=1.1 first_preview_0=250", lines.get(1));
+    }
+}
@@ -0,0 +1,94 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class StreamPlannerTest {
+
+    // SurfaceTexture and YUV_420_888 output sizes of a typical 12 MP back camera.
+    private static final Resolution[] PHONE_SIZES = {
+            new Resolution(4032, 3024),
+            new Resolution(3840, 2160),
+            new Resolution(1920, 1440),
+            new Resolution(1920, 1080),
+            new Resolution(1440, 1080),
+            new Resolution(1280, 960),
+            new Resolution(1280, 720),
+            new Resolution(1024, 768),
+            new Resolution(800, 600),
+            new Resolution(640, 480),
+            new Resolution(640, 360),
+            new Resolution(352, 288),
+            new Resolution(320, 240),
+            new Resolution(176, 144),
+    };
+    private static final int MODEL_INPUT = 320;
+    private static final int FPS = 30;
+    private static final StreamPlanner.Limits UNLIMITED = new StreamPlanner.Limits(null, null, 0, FPS);
+    // Guaranteed for concurrent cameras: PRIV up to 1440p next to YUV up to 720p.
+    private static final StreamPlanner.Limits CONCURRENT = new StreamPlanner.Limits(new Resolution(1920, 1440),
+            new Resolution(1280, 720), 0, FPS);
+
+    private static StreamPlanner.CameraStreams camera(String id, int viewWidth, int viewHeight) {
+        return new StreamPlanner.CameraStreams(id, PHONE_SIZES, PHONE_SIZES, viewWidth, viewHeight);
+    }
+
+    @Test
+    public void singleUnlimitedCameraMatchesPerCameraChoice() {
+        StreamPlanner.Plan plan = StreamPlanner.plan(Collections.singletonList(camera("0", 1000, 600)), UNLIMITED,
+                MODEL_INPUT);
+        Resolution preview = StreamSizes.chooseOptimalSize(PHONE_SIZES, 1000, 600);
+        assertEquals(preview, plan.get("0").getPreview());
+        assertEquals(StreamSizes.chooseAnalysisSize(PHONE_SIZES, preview, MODEL_INPUT), plan.get("0").getAnalysis());
+        assertTrue(plan.isWithinBudget());
+    }
+
+    @Test
+    public void concurrentLimitsCapBothStreams() {
+        StreamPlanner.Plan plan = StreamPlanner.plan(Arrays.asList(camera("0", 3000, 2000), camera("1", 3000, 2000)),
+                CONCURRENT, MODEL_INPUT);
+        for (String id : new String[] { "0", "1" }) {
+            assertEquals(new Resolution(1920, 1440), plan.get(id).getPreview());
+            assertEquals(new Resolution(320, 240), plan.get(id).getAnalysis());
+        }
+    }
+
+    @Test
+    public void overBudgetStepsDownTheMostExpensiveCamera() {
+        StreamPlanner.Limits limits = new StreamPlanner.Limits(null, null, 60000000L, FPS);
+        StreamPlanner.Plan plan = StreamPlanner.plan(Arrays.asList(camera("big", 1900, 1400), camera("small", 600, 400)),
+                limits, MODEL_INPUT);
+        assertEquals(new Resolution(1280, 960), plan.get("big").getPreview());
+        assertEquals(new Resolution(640, 480), plan.get("small").getPreview());
+        assertTrue(plan.getPixelsPerSecond() <= 60000000L);
+        assertTrue(plan.isWithinBudget());
+        assertEquals(plan.get("big").getPixelsPerSecond() + plan.get("small").getPixelsPerSecond(),
+                plan.getPixelsPerSecond());
+    }
+
+    @Test
+    public void impossibleBudgetStillKeepsTheModelInput() {
+        StreamPlanner.Limits limits = new StreamPlanner.Limits(null, null, 1000000L, FPS);
+        StreamPlanner.Plan plan = StreamPlanner.plan(Arrays.asList(camera("0", 1080, 1080), camera("1", 1080, 1080)),
+                limits, MODEL_INPUT);
+        assertFalse(plan.isWithinBudget());
+        for (String id : new String[] { "0", "1" }) {
+            assertTrue(plan.get(id).getAnalysis().getWidth() >= MODEL_INPUT);
+            assertTrue(plan.get(id).getAnalysis().hasAspectRatioOf(plan.get(id).getPreview()));
+        }
+    }
+
+    @Test
+    public void withoutAnalysisSizesOnlyThePreviewIsPlanned() {
+        StreamPlanner.CameraStreams previewOnly = new StreamPlanner.CameraStreams("0", PHONE_SIZES,
+                new Resolution[0], 640, 480);
+        StreamPlanner.Plan plan = StreamPlanner.plan(Collections.singletonList(previewOnly), UNLIMITED, MODEL_INPUT);
+        assertEquals(new Resolution(640, 480), plan.get("0").getPreview());
+        assertNull(plan.get("0").getAnalysis());
+        assertEquals(640L * 480 * FPS, plan.getPixelsPerSecond());
+    }
+}
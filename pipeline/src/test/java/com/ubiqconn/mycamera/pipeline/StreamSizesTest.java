@@ -0,0 +1,42 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StreamSizesTest {
+
+    private static final Resolution[] CHOICES = {
+            new Resolution(1920, 1080),
+            new Resolution(4032, 3024),
+            new Resolution(1280, 720),
+            new Resolution(640, 480),
+            new Resolution(640, 360),
+            new Resolution(320, 180),
+    };
+
+    @Test
+    public void chooseOptimalSize_smallestCoveringSizeWithFirstAspect() {
+        assertEquals(new Resolution(1280, 720), StreamSizes.chooseOptimalSize(CHOICES, 1000, 600));
+    }
+
+    @Test
+    public void chooseOptimalSize_fallsBackToLargestWhenNothingCovers() {
+        assertEquals(new Resolution(4032, 3024), StreamSizes.chooseOptimalSize(CHOICES, 5000, 5000));
+    }
+
+    @Test
+    public void chooseAnalysisSize_smallestMatchingAspectAboveMinimum() {
+        assertEquals(new Resolution(640, 360),
+                StreamSizes.chooseAnalysisSize(CHOICES, new Resolution(1920, 1080), 640));
+        assertEquals(new Resolution(640, 480),
+                StreamSizes.chooseAnalysisSize(CHOICES, new Resolution(4032, 3024), 640));
+    }
+
+    @Test
+    public void fitWithin_keepsAspectAndNeverUpscales() {
+        assertEquals(new Resolution(320, 284), StreamSizes.fitWithin(1080, 960, 320, 320));
+        assertEquals(new Resolution(180, 320), StreamSizes.fitWithin(1080, 1920, 320, 320));
+        assertEquals(new Resolution(200, 100), StreamSizes.fitWithin(200, 100, 320, 320));
+    }
+}
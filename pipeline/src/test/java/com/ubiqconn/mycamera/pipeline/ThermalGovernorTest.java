@@ -0,0 +1,109 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ThermalGovernorTest {
+
+    private static final long TICK_MS = 5000;
+
+    private static ThermalGovernor newGovernor() {
+        return new ThermalGovernor(30000, 10000, 60000, 15);
+    }
+
+    /**
+     * Replays a thermal trace sampled every {@link #TICK_MS}: each segment holds a
+     * status for a duration. Returns the level after every tick.
+     */
+    private static List<ThermalGovernor.Level> replay(ThermalGovernor governor, long startMs, long[][] segments) {
+        List<ThermalGovernor.Level> levels = new ArrayList<>();
+        long now = startMs;
+        for (long[] segment : segments) {
+            for (long end = now + segment[1]; now < end; now += TICK_MS) {
+                levels.add(governor.update(now, (int) segment[0], 80, false, false));
+            }
+        }
+        return levels;
+    }
+
+    @Test
+    public void moderateStepsDownOneLevelPerInterval() {
+        ThermalGovernor governor = newGovernor();
+        List<ThermalGovernor.Level> levels = replay(governor, 0,
+                new long[][] { { ThermalGovernor.THERMAL_STATUS_MODERATE, 65000 } });
+        // The first step is immediate, then one every 30 s.
+        assertEquals(ThermalGovernor.Level.ANALYSIS_FPS, levels.get(0));
+        assertEquals(ThermalGovernor.Level.ANALYSIS_FPS, levels.get(5));
+        assertEquals(ThermalGovernor.Level.SENSOR_FPS, levels.get(6));
+        assertEquals(ThermalGovernor.Level.ANALYSIS_RESOLUTION, levels.get(12));
+    }
+
+    @Test
+    public void severeStepsDownFasterAndStopsAtTheLastLevel() {
+        ThermalGovernor governor = newGovernor();
+        replay(governor, 0, new long[][] { { ThermalGovernor.THERMAL_STATUS_SEVERE, 120000 } });
+        assertEquals(ThermalGovernor.Level.SECONDARY_PAUSED, governor.getLevel());
+        assertEquals(4, governor.getTransitionCount());
+    }
+
+    @Test
+    public void criticalJumpsStraightToTheLastLevel() {
+        ThermalGovernor governor = newGovernor();
+        assertEquals(ThermalGovernor.Level.SECONDARY_PAUSED,
+                governor.update(0, ThermalGovernor.THERMAL_STATUS_CRITICAL, 80, false, false));
+    }
+
+    @Test
+    public void coolingStepsBackUpAfterTheHoldTime() {
+        ThermalGovernor governor = newGovernor();
+        replay(governor, 0, new long[][] { { ThermalGovernor.THERMAL_STATUS_SEVERE, 40000 } });
+        assertEquals(ThermalGovernor.Level.SECONDARY_PAUSED, governor.getLevel());
+
+        List<ThermalGovernor.Level> levels = replay(governor, 40000,
+                new long[][] { { ThermalGovernor.THERMAL_STATUS_NONE, 300000 } });
+        assertEquals(ThermalGovernor.Level.SECONDARY_PAUSED, levels.get(11));
+        assertEquals(ThermalGovernor.Level.ANALYSIS_RESOLUTION, levels.get(12));
+        assertEquals(ThermalGovernor.Level.NORMAL, governor.getLevel());
+    }
+
+    @Test
+    public void lightHoldsAndBriefCoolSpellsDoNotStepUp() {
+        ThermalGovernor governor = newGovernor();
+        replay(governor, 0, new long[][] { { ThermalGovernor.THERMAL_STATUS_MODERATE, 35000 } });
+        assertEquals(ThermalGovernor.Level.SENSOR_FPS, governor.getLevel());
+
+        // A realistic trace hovering around the threshold: never 60 s of NONE in a row.
+        replay(governor, 35000, new long[][] {
+                { ThermalGovernor.THERMAL_STATUS_LIGHT, 60000 },
+                { ThermalGovernor.THERMAL_STATUS_NONE, 40000 },
+                { ThermalGovernor.THERMAL_STATUS_LIGHT, 20000 },
+                { ThermalGovernor.THERMAL_STATUS_NONE, 50000 },
+        });
+        assertEquals(ThermalGovernor.Level.SENSOR_FPS, governor.getLevel());
+    }
+
+    @Test
+    public void lowBatteryKeepsAnalysisThrottledUntilCharging() {
+        ThermalGovernor governor = newGovernor();
+        assertEquals(ThermalGovernor.Level.ANALYSIS_FPS,
+                governor.update(0, ThermalGovernor.THERMAL_STATUS_NONE, 10, false, false));
+        assertEquals(ThermalGovernor.Level.ANALYSIS_FPS,
+                governor.update(120000, ThermalGovernor.THERMAL_STATUS_NONE, 10, false, false));
+        assertEquals(ThermalGovernor.Level.NORMAL,
+                governor.update(190000, ThermalGovernor.THERMAL_STATUS_NONE, 10, true, false));
+        assertEquals(ThermalGovernor.Level.ANALYSIS_FPS,
+                governor.update(200000, ThermalGovernor.THERMAL_STATUS_NONE, 80, true, true));
+    }
+
+    @Test
+    public void chooseThrottledFpsRange_lowestUpperBoundAboveMinimum() {
+        int[][] ranges = { { 15, 30 }, { 30, 30 }, { 7, 15 }, { 15, 15 }, { 5, 10 } };
+        assertEquals(2, ThermalGovernor.chooseThrottledFpsRange(ranges, 15));
+        assertEquals(0, ThermalGovernor.chooseThrottledFpsRange(ranges, 20));
+        assertEquals(-1, ThermalGovernor.chooseThrottledFpsRange(ranges, 60));
+    }
+}
@@ -0,0 +1,68 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class TileLayoutTest {
+
+    private final int[] tiles = new int[16 * FrameGeometry.BOX_STRIDE];
+
+    @Test
+    public void gridTilesOverlapAndCoverTheFrame() {
+        TileLayout layout = new TileLayout(2, 2, 0.2f, false);
+        assertEquals(4, layout.layout(1000, 800, tiles));
+        // 2 tiles with 20% overlap span 1.8 tile widths.
+        assertArrayEquals(new int[] {0, 0, 556, 444}, Arrays.copyOfRange(tiles, 0, 4));
+        assertArrayEquals(new int[] {444, 0, 1000, 444}, Arrays.copyOfRange(tiles, 4, 8));
+        assertArrayEquals(new int[] {444, 356, 1000, 800}, Arrays.copyOfRange(tiles, 12, 16));
+        // Neighbours share the overlap.
+        assertEquals(556 - 444, tiles[2] - tiles[4]);
+    }
+
+    @Test
+    public void fullFrameIsTheLastTile() {
+        TileLayout layout = new TileLayout(3, 1, 0f, true);
+        assertEquals(4, layout.getTileCount());
+        assertEquals(4, layout.layout(900, 300, tiles));
+        assertArrayEquals(new int[] {0, 0, 300, 300, 300, 0, 600, 300, 600, 0, 900, 300, 0, 0, 900, 300},
+                Arrays.copyOfRange(tiles, 0, 16));
+    }
+
+    @Test
+    public void frameSizeForModelInputTiles() {
+        TileLayout layout = new TileLayout(2, 2, 0.25f, false);
+        Resolution frame = layout.frameSizeFor(320, 320);
+        assertEquals(560, frame.getWidth());
+        assertEquals(560, frame.getHeight());
+        layout.layout(frame.getWidth(), frame.getHeight(), tiles);
+        assertEquals(320, tiles[2] - tiles[0]);
+        assertEquals(320, tiles[3] - tiles[1]);
+    }
+
+    @Test
+    public void parse() {
+        TileLayout layout = TileLayout.parse("3X2", 0.1f, false);
+        assertEquals(3, layout.getColumns());
+        assertEquals(2, layout.getRows());
+        assertNull(TileLayout.parse("off", 0.1f, false));
+        assertNull(TileLayout.parse(null, 0.1f, false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseRejectsGarbage() {
+        TileLayout.parse("four", 0.1f, false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseRejectsNonNumericSides() {
+        TileLayout.parse("2xtwo", 0.1f, false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void overlapMustBeBelowOne() {
+        new TileLayout(2, 2, 1f, false);
+    }
+}
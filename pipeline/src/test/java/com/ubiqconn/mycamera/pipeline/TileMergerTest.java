@@ -0,0 +1,93 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class TileMergerTest {
+
+    private final TileMerger merger = new TileMerger(32, 0.5f, 0.7f);
+
+    @Test
+    public void boxesAreMovedIntoFrameCoordinates() {
+        merger.begin();
+        merger.add(1, 400, 300, 10, 20, 50, 60, 0.9f, 41, "cup");
+        assertEquals(1, merger.merge());
+        assertArrayEquals(new float[] {410, 320, 450, 360},
+                Arrays.copyOf(merger.boxes(), 4), 0f);
+    }
+
+    @Test
+    public void duplicateInOverlapKeepsHighestScore() {
+        merger.begin();
+        // The same object seen by two neighbouring tiles.
+        merger.add(0, 0, 0, 100, 100, 200, 200, 0.6f, 0, "person");
+        merger.add(1, 80, 0, 22, 102, 121, 201, 0.8f, 0, "person");
+        assertEquals(1, merger.merge());
+        assertEquals(0.8f, merger.scores()[0], 0f);
+        assertEquals(2, merger.getInputCount());
+    }
+
+    @Test
+    public void seamFragmentIsAbsorbedAndBoxGrowsToTheUnion() {
+        merger.begin();
+        // Whole object in tile 1; tile 0 only sees its left part, cut at x=150.
+        merger.add(1, 100, 0, 20, 100, 120, 200, 0.9f, 2, "car");
+        merger.add(0, 0, 0, 118, 98, 150, 200, 0.5f, 2, "car");
+        assertEquals(1, merger.merge());
+        assertArrayEquals(new float[] {118, 98, 220, 200}, Arrays.copyOf(merger.boxes(), 4), 0f);
+    }
+
+    @Test
+    public void nestedBoxesInTheSameTileAreKept() {
+        merger.begin();
+        // A face inside a person: low IoU, same tile, so containment does not apply.
+        merger.add(0, 0, 0, 100, 100, 300, 400, 0.9f, 0, "person");
+        merger.add(0, 0, 0, 150, 120, 200, 170, 0.8f, 0, "person");
+        assertEquals(2, merger.merge());
+    }
+
+    @Test
+    public void differentLabelsAreNotSuppressed() {
+        merger.begin();
+        merger.add(0, 0, 0, 100, 100, 200, 200, 0.9f, 15, "cat");
+        merger.add(1, 0, 0, 100, 100, 200, 200, 0.8f, 16, "dog");
+        assertEquals(2, merger.merge());
+        assertEquals("cat", merger.labels()[0]);
+        assertEquals("dog", merger.labels()[1]);
+        assertEquals(15, merger.categories()[0]);
+        assertEquals(16, merger.categories()[1]);
+    }
+
+    @Test
+    public void resultsAreSortedByScore() {
+        merger.begin();
+        merger.add(0, 0, 0, 0, 0, 10, 10, 0.3f, 1, "a");
+        merger.add(1, 0, 0, 100, 0, 110, 10, 0.9f, 1, "a");
+        merger.add(2, 0, 0, 200, 0, 210, 10, 0.6f, 1, "a");
+        assertEquals(3, merger.merge());
+        assertArrayEquals(new float[] {0.9f, 0.6f, 0.3f}, Arrays.copyOf(merger.scores(), 3), 0f);
+    }
+
+    @Test
+    public void addStopsAtCapacity() {
+        TileMerger small = new TileMerger(2, 0.5f, 0.7f);
+        small.begin();
+        assertTrue(small.add(0, 0, 0, 0, 0, 1, 1, 0.5f, 1, "a"));
+        assertTrue(small.add(0, 0, 0, 5, 5, 6, 6, 0.5f, 1, "a"));
+        assertFalse(small.add(0, 0, 0, 9, 9, 10, 10, 0.5f, 1, "a"));
+        small.begin();
+        assertEquals(0, small.merge());
+    }
+
+    @Test
+    public void containment() {
+        float[] big = {0, 0, 100, 100};
+        float[] small = {10, 10, 30, 30};
+        float[] half = {50, 0, 150, 100};
+        assertEquals(1f, TileMerger.containment(big, 0, small, 0), 0f);
+        assertEquals(0.5f, TileMerger.containment(big, 0, half, 0), 1e-6f);
+    }
+}
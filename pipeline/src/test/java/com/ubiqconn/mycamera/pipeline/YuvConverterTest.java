@@ -0,0 +1,77 @@
+package com.ubiqconn.mycamera.pipeline;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class YuvConverterTest {
+
+    private final YuvConverter converter = new YuvConverter();
+
+    private static ByteBuffer filled(int size, int value) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        for (int i = 0; i < size; i++) {
+            buffer.put(i, (byte) value);
+        }
+        return buffer;
+    }
+
+    private static int[] pixel(ByteBuffer rgba, int width, int x, int y) {
+        int i = (y * width + x) * 4;
+        return new int[] {rgba.get(i) & 0xff, rgba.get(i + 1) & 0xff, rgba.get(i + 2) & 0xff, rgba.get(i + 3) & 0xff};
+    }
+
+    @Test
+    public void neutralChromaGivesGrey() {
+        ByteBuffer rgba = converter.convert(filled(16, 128), 4, 1, filled(4, 128), filled(4, 128), 2, 1, 4, 4);
+        assertEquals(4 * 4 * 4, rgba.remaining());
+        assertArrayEquals(new int[] {128, 128, 128, 255}, pixel(rgba, 4, 3, 3));
+    }
+
+    @Test
+    public void saturatedColoursConvert() {
+        // BT.601 full-range red and blue.
+        int[] red = pixel(converter.convert(filled(4, 76), 2, 1, filled(1, 85), filled(1, 255), 1, 1, 2, 2), 2, 0, 0);
+        assertEquals(254, red[0], 1);
+        assertEquals(0, red[1], 1);
+        assertEquals(0, red[2], 1);
+        int[] blue = pixel(converter.convert(filled(4, 29), 2, 1, filled(1, 255), filled(1, 107), 1, 1, 2, 2), 2, 1,
+                1);
+        assertEquals(0, blue[0], 1);
+        assertEquals(0, blue[1], 1);
+        assertEquals(254, blue[2], 1);
+    }
+
+    @Test
+    public void paddedRowsAndInterleavedChromaAreFollowed() {
+        // 4x2 frame, Y rows padded to 8 bytes; NV21-style chroma, V then U, pixel stride 2.
+        ByteBuffer y = filled(16, 0);
+        for (int x = 0; x < 4; x++) {
+            y.put(x, (byte) 100);
+            y.put(8 + x, (byte) 200);
+        }
+        ByteBuffer vu = filled(8, 128);
+        // Right-hand 2x2 block: strong V (red shift).
+        vu.put(2, (byte) 228);
+        ByteBuffer v = vu.duplicate();
+        ByteBuffer u = ((ByteBuffer) vu.duplicate().position(1)).slice();
+        ByteBuffer rgba = converter.convert(y, 8, 1, u, v, 8, 2, 4, 2);
+
+        assertArrayEquals(new int[] {100, 100, 100, 255}, pixel(rgba, 4, 0, 0));
+        assertArrayEquals(new int[] {200, 200, 200, 255}, pixel(rgba, 4, 1, 1));
+        int[] shifted = pixel(rgba, 4, 2, 0);
+        assertTrue(shifted[0] > 200 && shifted[1] < 100 && shifted[2] == 100);
+    }
+
+    @Test
+    public void outputBufferIsReusedForTheSameSize() {
+        ByteBuffer first = converter.convert(filled(16, 10), 4, 1, filled(4, 128), filled(4, 128), 2, 1, 4, 4);
+        ByteBuffer second = converter.convert(filled(16, 20), 4, 1, filled(4, 128), filled(4, 128), 2, 1, 4, 4);
+        assertSame(first, second);
+        assertEquals(20, second.get(0));
+        ByteBuffer resized = converter.convert(filled(4, 30), 2, 1, filled(1, 128), filled(1, 128), 1, 1, 2, 2);
+        assertEquals(2 * 2 * 4, resized.remaining());
+    }
+}